@@ -118,6 +118,13 @@ public class CommandLine
      */
     public String arff_file;
 
+    /**
+     * If the feature values loaded from ACE XML files are to be written into a
+     * memory-mapped feature matrix rather than kept in memory, this specifies
+     * the path of the file to store them in.
+     */
+    public String feature_matrix_file;
+
     // Processing Options
 
     /**
@@ -136,6 +143,11 @@ public class CommandLine
      */
     public String cross_validation_string;
 
+    /**
+     * The maximum number of cross validation folds to train and test at the same time.
+     */
+    public int number_threads = Runtime.getRuntime().availableProcessors();
+
     /**
      * Specifies the number of folds to be used for cross validation during experimentation.
      */
@@ -352,6 +364,10 @@ public class CommandLine
                 }
                 feature_vector_files = feature_vector_file_list.toArray(new String[1]);
             }
+            // Memory-map the loaded feature values
+            feature_matrix_file = Utils.getOption("mmap", options);
+            if (feature_matrix_file.length() == 0)
+                feature_matrix_file = null;
 
             // Training options
             if(Utils.getFlag("train", options))
@@ -366,6 +382,11 @@ public class CommandLine
             cross_validation_string = Utils.getOption("cv", options);
             if (cross_validation_string.length() == 0)
                 cross_validation_string = null;
+            String threads_option = Utils.getOption("threads", options);
+            if (threads_option.length() != 0)
+                number_threads = (new Integer(threads_option)).intValue();
+            if (number_threads < 1)
+                throw new Exception("Must specify at least 1 thread.");
 
             // Experimentation options
             experimentation_string = Utils.getOption("exp", options);
@@ -448,12 +469,14 @@ public class CommandLine
              DataBoard data_board = null;
 
              // Load Instances into DataBoard object
-             // Parse the XML files
+             // Parse the XML files, writing the feature values straight into
+             // the feature matrix if requested
              if (arff_file == null)
                  data_board = new DataBoard(taxonomy_file,
                         feature_key_file,
                         feature_vector_files,
-                        classifications_file);
+                        classifications_file,
+                        feature_matrix_file == null ? null : new File(feature_matrix_file));
              else
                  // if using data from an ARFF file, instances are converted to ACE datatypes stored in this data_board
                  data_board = new DataBoard(arff_file);
@@ -560,6 +583,7 @@ public class CommandLine
                         classifier_type,
                         feature_selector,
                         number_folds,
+                        number_threads,
                         max_attribute,
                         out,
                         verbose));
@@ -588,6 +612,7 @@ public class CommandLine
                         order_randomly,
                         file_name,
                         number_folds,
+                        number_threads,
                         output,
                         verbose,
                         max_attribute);
@@ -678,6 +703,9 @@ public class CommandLine
                 "-lmclas: Load the specified classifications_file XML file(s).\n" +
                 "-arff: Load training or testing data from an ARFF file instead of XML files(s)." +
                 "Note that it is assumed that the class attribute is the last attribute.\n" +
+                "-mmap: Write the feature values loaded from the feature_vector_file XML file(s) " +
+                "into the specified file as they are parsed and memory-map it, rather than keeping " +
+                "them in memory.\n" +
                 "\nTRAINING OPTIONS:\n" +
                 "-train: Train the Classifier\n" +
                 "-learner: (required flag) Specify the type of Classifier to be trained.\n" +
@@ -712,6 +740,9 @@ public class CommandLine
                 "or an arff file, depending on the filetype of the input data.\n" +
                 "\nCROSS-VALIDATING OPTIONS:\n" +
                 "-cv: Perform a cross validation. Must specify number of folds as option.\n" +
+                "-threads: The maximum number of folds to train and test at the same time. " +
+                "Fewer are used if there does not appear to be enough memory. Defaults to the " +
+                "number of processors.\n" +
                 "-learner: (required flag) Specify the type of Weka Classifier to be used during cross validation\n" +
                 "Types of classifiers can be specified in accordance to the following codes:\n" +
                 "\t>Unweighted k-nn (k = 1): IBk\n" +
@@ -741,6 +772,7 @@ public class CommandLine
                 "\nEXPERIMENTATION OPTIONS\n" +
                 "-exp: Perform a cross-validation and output the results to standard out. Specifies the number of cross-validation folds.\n" +
                 "-sres: Saves results in files with the given base file name. If not present, results are saved with default base file name.\n" +
+                "-threads: The maximum number of cross-validation folds to train and test at the same time. Defaults to the number of processors.\n" +
                 "-sarff: Saves training data to an arff file after parsing, after thinning and again after feature selection, if any. Useful for testing.\n" +
                 "-max_spread: The maximum ratio between the number of training instances belonging to any class compared to the least populous class.\n" +
                 "-max_memb: The maximum number of training instances that may belong to each class.\n" +
@@ -761,6 +793,7 @@ public class CommandLine
          System.out.println("testing_to_load_classifiers_file: " + testing_to_load_classifiers_file);
          System.out.println("save_file: " + save_file);
          System.out.println("cross_validation_string: " + cross_validation_string);
+         System.out.println("number_threads: " + number_threads);
          System.out.println("experimentation_string: " + experimentation_string);
          System.out.println("dimensionality reduction: " + feature_selector);
          System.out.println("order_randomly: " + order_randomly);
@@ -772,6 +805,7 @@ public class CommandLine
          System.out.println("classifications_file: " + classifications_file);
          System.out.println("feature_vector_files[0]: " + feature_vector_files[0]);
          System.out.println("arff_file: " + arff_file);
+         System.out.println("feature_matrix_file: " + feature_matrix_file);
      }
 
 
@@ -293,6 +293,8 @@ public class Coordinator {
      *                                      type of dimensionality reduction to be
      *                                      performed.
      * @param folds                         The number of cross-validation folds
+     * @param number_threads                The maximum number of folds to train and
+     *                                      test at the same time.
      * @param max_attribute                 If the number of attributes for a
      *                                      data set is larger than this number,
      *                                      an exhaustive search will be not be
@@ -311,6 +313,7 @@ public class Coordinator {
             String classifier_type,
             String feature_selector,
             int folds,
+            int number_threads,
             int max_attribute,
             OutputStream out,
             boolean verbose)
@@ -372,6 +375,7 @@ public class Coordinator {
 
         // Initialize object to perform cross validation, Instances are partitioned
         CrossValidator cver = new CrossValidator(instances, folds, identifiers, num_overall, hierarchy);
+        cver.setNumberOfThreads(number_threads);
         String results = "";
         try
         {
@@ -432,6 +436,8 @@ public class Coordinator {
      * @param   results_base_file_name          The results of the experimentation will be stored
      *                                          in multiple files with this as the base file name.
      * @param   folds                           The number of cross-validation folds to perform.
+     * @param   number_threads                  The maximum number of folds to train and test at
+     *                                          the same time.
      * @param   out                             The OutputStream to which status reports are printed.
      * @param   verbose                         Whether or not to include detailed information
      *                                          about the dimensionality reduction of the best
@@ -450,6 +456,7 @@ public class Coordinator {
             boolean order_randomly,
             String results_base_file_name,
             int folds,
+            int number_threads,
             OutputStream out,
             boolean verbose,
             int max_attribute)
@@ -495,6 +502,7 @@ public class Coordinator {
         {
             // Experiment on this set of Instances
             Experimenter exp = new Experimenter(out);
+            exp.setNumberOfThreads(number_threads);
             best = exp.crossValidateMultiApproaches(folds, instances, results_base_file_name,
                     save_intermediate_arffs, verbose, max_attribute, identifiers, num_overall, hierarchy);
         }
@@ -526,7 +534,7 @@ public class Coordinator {
             // Load Instances from ACE XML files
             // Set attributes to use for instances overall
             String relation_name = relation + "Relation";
-            int initial_capacity = 100;
+            int initial_capacity = data_board.getNumTotal();
             instances = data_board.getInstanceAttributes(relation_name, initial_capacity);
 
             // Set up individual instances
@@ -12,7 +12,10 @@ import java.io.*;
 import java.text.*;
 import ace.datatypes.*;
 import weka.core.*;
+import weka.classifiers.Classifier;
+import weka.classifiers.lazy.IBk;
 import java.util.LinkedList;
+import java.util.concurrent.*;
 
 
 /**
@@ -31,6 +34,11 @@ import java.util.LinkedList;
  * of a single cross validation) or in the <i>Experimenter</i> class (in the context
  * of experimentation).
  *
+ * <p> Folds may be trained and tested concurrently (see <i>setNumberOfThreads</i>).
+ * Each fold then uses its own copy of the Classifier and its own training and testing
+ * Instances, and the results of the folds are combined in fold order, so they are the
+ * same whatever the number of threads.
+ *
  * @author Cory McKay (ACE 1.x) and Jessica Thompson (ACE 2.x)
  */
 public class CrossValidator
@@ -51,6 +59,11 @@ public class CrossValidator
 
     String[][][] names;
 
+    /**
+     * The maximum number of folds that may be trained and tested at the same time.
+     */
+    private int number_threads = 1;
+
     /* CONSTRUCTORS **********************************************************/
 
     /**
@@ -105,9 +118,31 @@ public class CrossValidator
 
     /* PUBLIC METHODS ********************************************************/
 
+    /**
+     * Sets the maximum number of folds that may be trained and tested at the same
+     * time by <i>crossValidate</i>. Fewer folds are processed at once if there does
+     * not appear to be enough free memory for this many (see
+     * <i>getMaximumConcurrentFolds</i>). The default is 1.
+     *
+     * @param number_threads    The maximum number of folds to process at once.
+     * @throws Exception        If number_threads is less than 1.
+     */
+    public void setNumberOfThreads(int number_threads)
+            throws Exception
+    {
+        if (number_threads < 1)
+            throw new Exception("The number of threads must be at least 1.");
+        this.number_threads = number_threads;
+    }
+
     /**
      * Cross validates a set of Weka Instances.
      *
+     * <p> If more than one thread has been set, several folds are processed at once.
+     * Each fold is then trained and tested with a copy of the untrained Classifier
+     * of <i>trained</i>. In either case, <i>trained</i> is left holding the Classifier
+     * trained on the last fold.
+     *
      * @param trained                   The Serializable object that stores the Weka Classifier
      *                                  and dimensionality reduction objects.
      * @param cvres                     Holds the results of the cross validation. In the
@@ -165,18 +200,128 @@ public class CrossValidator
         // Give progress report to the user
         out.write(("\tCross Validating....\n").getBytes());
 
+        long cross_val_start_time = System.currentTimeMillis();
+        int num_folds = folds.length;
+        // Get class names from instances for use in confusion matrix
+        String[] classes = getClassNames(instances);
+
+        // Perform and time the cross-validation
+        // For each fold, train, test, and store, with as many folds at once as
+        // threads and memory allow
+        boolean report_per_fold = (cvres.length == 1);
+        FoldResults[] fold_results = new FoldResults[num_folds];
+        int concurrent_folds = Math.min(number_threads, num_folds);
+        concurrent_folds = Math.min(concurrent_folds, getMaximumConcurrentFolds(instances));
+        if (concurrent_folds <= 1)
+        {
+            for (int fold = 0; fold < num_folds; fold++)
+                fold_results[fold] = crossValidateFold(fold, trained, instances, classes,
+                        save_intermediate_arffs, report_per_fold, verbose);
+        }
+        else
+        {
+            // Make an untrained copy of the Classifier for each fold before any
+            // of them is trained
+            Classifier[] copies = Classifier.makeCopies(trained.classifier, num_folds);
+
+            ExecutorService pool = Executors.newFixedThreadPool(concurrent_folds);
+            try
+            {
+                LinkedList<Future<FoldResults>> tasks = new LinkedList<Future<FoldResults>>();
+                for (int fold = 0; fold < num_folds; fold++)
+                {
+                    final int this_fold = fold;
+                    final TrainedModel fold_model = new TrainedModel(copies[fold], trained.attribute_selector, null);
+                    final Instances these_instances = instances;
+                    final String[] these_classes = classes;
+                    final boolean save_arffs = save_intermediate_arffs;
+                    final boolean this_report_per_fold = report_per_fold;
+                    final boolean this_verbose = verbose;
+                    tasks.add(pool.submit(new Callable<FoldResults>()
+                    {
+                        public FoldResults call() throws Exception
+                        {
+                            return crossValidateFold(this_fold, fold_model, these_instances, these_classes,
+                                    save_arffs, this_report_per_fold, this_verbose);
+                        }
+                    }));
+                }
+
+                // Collect the results in fold order, reporting the problem of the
+                // first fold that failed
+                int fold = 0;
+                for (Future<FoldResults> task : tasks)
+                {
+                    try
+                    {
+                        fold_results[fold] = task.get();
+                    }
+                    catch (ExecutionException e)
+                    {
+                        if (e.getCause() instanceof Exception)
+                            throw (Exception) e.getCause();
+                        else if (e.getCause() instanceof Error)
+                            throw (Error) e.getCause();
+                        throw e;
+                    }
+                    fold++;
+                }
+            }
+            finally
+            {
+                pool.shutdownNow();
+            }
+        }
+        // Keep track of how long the cross validation took to finish.
+        long cross_val_end_time = System.currentTimeMillis();
+
+        return combineFoldResults(trained, cvres, fold_results, classes, cv_results,
+                file_name, feature_selector, cross_val_end_time - cross_val_start_time, i);
+    }
+
+    /**
+     * Combines the results of the folds of a cross validation, in fold order, and
+     * stores and reports them in the same way as <i>crossValidate</i>.
+     * <i>trained</i> is left holding the Classifier trained on the last fold.
+     *
+     * @param trained               The TrainedModel to store in the results.
+     * @param cvres                 Holds the results of the cross validation. A
+     *                              summary of each fold is only included if
+     *                              this has a size of one.
+     * @param fold_results          The results of each fold, as returned by
+     *                              <i>crossValidateFold</i>.
+     * @param classes               The names of the classes of the Instances.
+     * @param cv_results            The main statistics are appended to this.
+     * @param file_name             The file to save the results to, or null.
+     * @param feature_selector      The name of the feature selector used, or null.
+     * @param cross_val_time        The time taken by the cross validation, in
+     *                              milliseconds.
+     * @param i                     The index of the array of
+     *                              <i>CrossValidationResults</i> objects to access.
+     * @return                      A string containing a summary of the results
+     *                              of this cross validation.
+     * @throws Exception            If the results cannot be saved.
+     */
+    String combineFoldResults(TrainedModel trained,
+            CrossValidationResults[] cvres,
+            FoldResults[] fold_results,
+            String[] classes,
+            StringBuffer cv_results,
+            String file_name,
+            String feature_selector,
+            long cross_val_time,
+            int i)
+            throws Exception
+    {
         // Get measurments and objects needed for the calculation of cross validation statistics
         // Limit measurments to 2 decimal places
         DecimalFormat df = new DecimalFormat("####0.0#");
-        long cross_val_start_time = System.currentTimeMillis();
-        int num_folds = folds.length;
+        int num_folds = fold_results.length;
         // Array to store error rates of each fold
         double[] error_rates = new double[num_folds];
         // Array to store confusion matricies for each fold
         // First index is actual classification, second index is predicted classification
         double[][][] confusion_matrices = new double[num_folds][][];
-        // Get class names from instances for use in confusion matrix
-        String[] classes = getClassNames(instances);
 
         // Initialize StringBuffer object to store a summary of the results of this
         // cross validation
@@ -185,50 +330,29 @@ public class CrossValidator
         per_fold.append("\n==================================================\n");
         per_fold.append("\n----------RESULTS PER FOLD----------\n");
 
-        // Perform and time the cross-validation
-        // For each fold, train, test, and store.
+        // Leave the TrainedModel as it would have been had the folds been
+        // processed one after another with it
+        TrainedModel last_model = fold_results[num_folds - 1].model;
+        if (last_model != trained)
+        {
+            trained.classifier = last_model.classifier;
+            trained.class_attribute = last_model.class_attribute;
+        }
+
+        // Combine the results of the folds in order
         for (int fold = 0; fold < num_folds; fold++)
         {
-            // Initialize empty Instances objects to store training and testing data
-            Instances training = new Instances(instances, 100);
-            Instances testing = new Instances(instances, 100);
-
-            // Get training and testing instances
-            // Appropriate instances are added to Instances objects training and testing
-            String[][] identifiers = getPartitionedInstances(training, testing, fold);
-            // Train the Classifier
-            Trainer.train(training, trained);
-
-            // Test the Classifier, store results
-            Instances classified = InstanceClassifier.classifyInstances(trained, testing,
-                    save_intermediate_arffs);
-
-            // Calculate statistics per fold
-            // Get error rate and confusion matrix for this classification
-            double correct_count = InstanceClassifier.getCorrectCount(testing, classified);
-            double total_count = (double) testing.numInstances();
-            double success_rate = 100.0 * correct_count / total_count;
-            error_rates[fold] = 100 - success_rate;
-            confusion_matrices[fold] = InstanceClassifier.getConfusionMatrix(testing, classified, classes);
-
-            // Only collect summary of statistics per fold when performing a single cross validation
-            if(cvres.length == 1)
-            {
-                per_fold.append("\n*************** FOLD: " + fold + " ***************");
-                per_fold.append("\nSuccess rate: " + df.format(success_rate));
-                per_fold.append("\nConfusion matrix: \n" + InstanceClassifier.formatConfusionMatrix(confusion_matrices[fold], classes));
-                // Give report of individual classifications if verbose option was specified
-                if(verbose)
-                    per_fold.append(getClassifications(testing, classified, training, identifiers) + "\n");
-            }
+            error_rates[fold] = fold_results[fold].error_rate;
+            confusion_matrices[fold] = fold_results[fold].confusion_matrix;
+            if (cvres.length == 1)
+                per_fold.append(fold_results[fold].report);
+            fold_results[fold] = null;
         }
-        // Keep track of how long the cross validation took to finish.
-        long cross_val_end_time = System.currentTimeMillis();
 
         // Calculate and store statistics overall
         //cvres[i].classifier_descriptions = (trained.classifier.getClass().toString().substring(trained.classifier.getClass().toString().lastIndexOf(".")+1));
         cvres[i].error_rates = mckay.utilities.staticlibraries.MathAndStatsMethods.getAverage(error_rates);
-        cvres[i].cross_val_times = ((double) (cross_val_end_time - cross_val_start_time)) / 60000.0;
+        cvres[i].cross_val_times = ((double) cross_val_time) / 60000.0;
         cvres[i].standard_deviation = mckay.utilities.staticlibraries.MathAndStatsMethods.getStandardDeviation(error_rates);
         double[][] average_confusion_matrix = getOverallConfusionMatrix(confusion_matrices);
         cvres[i].cross_validation_confusion_matrices = InstanceClassifier.formatConfusionMatrix(average_confusion_matrix, classes);
@@ -515,6 +639,203 @@ public class CrossValidator
 
     /* PRIVATE METHODS *******************************************************/
 
+    /**
+     * Trains and tests the given TrainedModel on one fold of the cross validation.
+     * This method only reads the fields of this object, so it may be called for
+     * different folds at once as long as each call is given its own TrainedModel.
+     * <i>Experimenter</i> calls it directly in order to schedule the folds of
+     * many cross validations together.
+     *
+     * @param fold                      The fold to train and test.
+     * @param trained                   Holds the Weka Classifier to train and test.
+     * @param instances                 The Weka Instances used in cross validation.
+     * @param classes                   The names of the classes of the Instances.
+     * @param save_intermediate_arffs   Passed on when classifying the testing instances.
+     * @param report_per_fold           Whether or not to prepare a summary of the
+     *                                  results of this fold.
+     * @param verbose                   Whether or not to include the classification
+     *                                  of each instance in the summary.
+     * @return                          The results of the fold.
+     * @throws Exception                If a problem occurs.
+     */
+    FoldResults crossValidateFold(int fold,
+            TrainedModel trained,
+            Instances instances,
+            String[] classes,
+            boolean save_intermediate_arffs,
+            boolean report_per_fold,
+            boolean verbose)
+            throws Exception
+    {
+        long start_time = System.currentTimeMillis();
+
+        // Initialize empty Instances objects to store training and testing data
+        Instances training = new Instances(instances, 100);
+        Instances testing = new Instances(instances, 100);
+
+        // Get training and testing instances
+        // Appropriate instances are added to Instances objects training and testing
+        String[][] identifiers = getPartitionedInstances(training, testing, fold);
+        // Train the Classifier
+        Trainer.train(training, trained);
+
+        // Test the Classifier, store results
+        Instances classified = InstanceClassifier.classifyInstances(trained, testing,
+                save_intermediate_arffs);
+
+        FoldResults results = getFoldResults(fold, trained, training, testing, classified,
+                identifiers, classes, report_per_fold, verbose);
+        results.time = System.currentTimeMillis() - start_time;
+        return results;
+    }
+
+    /**
+     * Trains and tests several IBk k-nearest neighbour classifiers on one fold
+     * of the cross validation, finding the neighbours of each testing instance
+     * only once for all of them with a <i>KNNEvaluator</i>. The results are the
+     * same as if <i>crossValidateFold</i> were called for each classifier.
+     * Like <i>crossValidateFold</i>, this method may be called for different
+     * folds at once.
+     *
+     * @param fold              The fold to train and test.
+     * @param trained           Each holds an IBk classifier accepted by
+     *                          <i>KNNEvaluator.canEvaluate</i>.
+     * @param instances         The Weka Instances used in cross validation.
+     * @param classes           The names of the classes of the Instances.
+     * @param train_models      Whether or not to also train the IBk classifiers
+     *                          themselves, so that they can be used afterwards.
+     *                          This does not affect the results.
+     * @param report_per_fold   Whether or not to prepare a summary of the
+     *                          results of this fold.
+     * @param verbose           Whether or not to include the classification
+     *                          of each instance in the summary.
+     * @return                  The results of the fold for each classifier, in
+     *                          the same order as trained. The time of each is
+     *                          an equal share of the total time.
+     * @throws Exception        If a problem occurs.
+     */
+    FoldResults[] crossValidateKNNFold(int fold,
+            TrainedModel[] trained,
+            Instances instances,
+            String[] classes,
+            boolean train_models,
+            boolean report_per_fold,
+            boolean verbose)
+            throws Exception
+    {
+        long start_time = System.currentTimeMillis();
+
+        // Get training and testing instances
+        Instances training = new Instances(instances, 100);
+        Instances testing = new Instances(instances, 100);
+        String[][] identifiers = getPartitionedInstances(training, testing, fold);
+
+        // Train the classifiers if they are to be kept
+        IBk[] classifiers = new IBk[trained.length];
+        for (int i = 0; i < trained.length; i++)
+        {
+            classifiers[i] = (IBk) trained[i].classifier;
+            if (train_models)
+                Trainer.train(training, trained[i]);
+        }
+
+        // Classify the testing instances with all of the classifiers at once
+        KNNEvaluator evaluator = new KNNEvaluator(classifiers);
+        evaluator.buildEvaluator(training);
+        double[][] classifications = evaluator.classifyInstances(testing);
+
+        // Store the results of each classifier
+        FoldResults[] results = new FoldResults[trained.length];
+        for (int i = 0; i < trained.length; i++)
+        {
+            Instances classified = new Instances(testing);
+            for (int inst = 0; inst < classified.numInstances(); inst++)
+                classified.instance(inst).setClassValue(classifications[i][inst]);
+            results[i] = getFoldResults(fold, trained[i], training, testing, classified,
+                    identifiers, classes, report_per_fold, verbose);
+        }
+        long time = (System.currentTimeMillis() - start_time) / trained.length;
+        for (int i = 0; i < trained.length; i++)
+            results[i].time = time;
+        return results;
+    }
+
+    /**
+     * Finds the error rate and confusion matrix of the classification of the
+     * testing instances of one fold of the cross validation, and prepares a
+     * summary of them if requested.
+     *
+     * @param fold              The fold.
+     * @param trained           The TrainedModel that classified the instances.
+     * @param training          The training instances of the fold.
+     * @param testing           The testing instances of the fold.
+     * @param classified        The testing instances with the classes found
+     *                          for them.
+     * @param identifiers       The identifiers of the instances of the fold.
+     * @param classes           The names of the classes of the Instances.
+     * @param report_per_fold   Whether or not to prepare a summary of the
+     *                          results of this fold.
+     * @param verbose           Whether or not to include the classification
+     *                          of each instance in the summary.
+     * @return                  The results of the fold, apart from the time.
+     * @throws Exception        If a problem occurs.
+     */
+    private FoldResults getFoldResults(int fold,
+            TrainedModel trained,
+            Instances training,
+            Instances testing,
+            Instances classified,
+            String[][] identifiers,
+            String[] classes,
+            boolean report_per_fold,
+            boolean verbose)
+            throws Exception
+    {
+        // Calculate statistics per fold
+        // Get error rate and confusion matrix for this classification
+        FoldResults results = new FoldResults();
+        results.model = trained;
+        double correct_count = InstanceClassifier.getCorrectCount(testing, classified);
+        double total_count = (double) testing.numInstances();
+        double success_rate = 100.0 * correct_count / total_count;
+        results.error_rate = 100 - success_rate;
+        results.confusion_matrix = InstanceClassifier.getConfusionMatrix(testing, classified, classes);
+
+        // Only collect summary of statistics per fold when performing a single cross validation
+        if (report_per_fold)
+        {
+            DecimalFormat df = new DecimalFormat("####0.0#");
+            results.report = new StringBuffer();
+            results.report.append("\n*************** FOLD: " + fold + " ***************");
+            results.report.append("\nSuccess rate: " + df.format(success_rate));
+            results.report.append("\nConfusion matrix: \n" + InstanceClassifier.formatConfusionMatrix(results.confusion_matrix, classes));
+            // Give report of individual classifications if verbose option was specified
+            if(verbose)
+                results.report.append(getClassifications(testing, classified, training, identifiers) + "\n");
+        }
+        return results;
+    }
+
+    /**
+     * Estimates how many folds can be trained and tested at once with the memory
+     * that is still available to the Java Runtime. Each fold is taken to need four
+     * times the memory of the given Instances: one copy each for its training and
+     * testing Instances and for the classified testing Instances, and as much
+     * again for the Classifier. This is only a rough guide, since the memory that a
+     * Classifier needs varies greatly from one type to another.
+     *
+     * @param instances     The Weka Instances used in cross validation.
+     * @return              The estimated number of folds, at least 1.
+     */
+    static int getMaximumConcurrentFolds(Instances instances)
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long per_instance = 8L * instances.numAttributes() + 64L;
+        long per_fold = 4L * per_instance * Math.max(1, instances.numInstances());
+        return (int) Math.max(1L, Math.min(Integer.MAX_VALUE, available / per_fold));
+    }
+
     /**
      * Divides the given set of Instances into the specified number of folds based
      * on the random numbers in <i>partition</i> generated by the method <i>generatePartitionArray</i>.
@@ -646,4 +967,39 @@ public class CrossValidator
 
         return compare;
     }
-}
\ No newline at end of file
+
+
+    /* INTERNAL CLASSES ******************************************************/
+
+    /**
+     * The results of training and testing one fold of a cross validation.
+     */
+    static class FoldResults
+    {
+        /**
+         * The TrainedModel holding the Classifier trained on this fold.
+         */
+        TrainedModel model;
+
+        /**
+         * The percentage of testing instances that were misclassified.
+         */
+        double error_rate;
+
+        /**
+         * The confusion matrix of the testing instances. First index is actual
+         * classification, second index is predicted classification.
+         */
+        double[][] confusion_matrix;
+
+        /**
+         * A summary of the results of this fold, or null if none was prepared.
+         */
+        StringBuffer report;
+
+        /**
+         * The time taken to train and test this fold, in milliseconds.
+         */
+        long time;
+    }
+}
@@ -12,6 +12,8 @@ import java.io.*;
 import java.text.*;
 import java.util.LinkedList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import weka.classifiers.*;
 import weka.core.*;
 import weka.classifiers.bayes.*;
@@ -46,6 +48,15 @@ import weka.attributeSelection.AttributeSelection;
  * Classifier is tested on the publication set and results are saved to the
  * "experimentation_results_best_results_overall.txt" file.
  *
+ * <p>Each fold of the cross validation of each Classifier on each set of dimensionality
+ * reduced instances is a separate unit of work, except that the folds of the IBk
+ * k-nearest neighbour Classifiers are processed together by a <i>KNNEvaluator</i>,
+ * which finds the neighbours of each instance only once. These units are shared out among a number
+ * of threads (see <i>setNumberOfThreads</i>), longest expected first, with a limit on how many
+ * Classifiers that are expensive to train are run at once. The results are combined in the
+ * same order as if everything had been done one step at a time, so the saved reports are
+ * the same whatever the number of threads, apart from the times taken.
+ *
  * @author Cory McKay (ACE 1.x) and Jessica Thompson (ACE 2.x)
  */
 
@@ -59,6 +70,11 @@ public class Experimenter
      */
     OutputStream out;
 
+    /**
+     * The maximum number of folds that may be trained and tested at the same time.
+     */
+    private int number_threads = 1;
+
     /* CONSTRUCTOR ***********************************************************/
 
     /**
@@ -73,6 +89,23 @@ public class Experimenter
 
     /* PUBLIC METHOD *********************************************************/
 
+    /**
+     * Sets the maximum number of cross validation folds that may be trained and
+     * tested at the same time by <i>crossValidateMultiApproaches</i>. Fewer are used
+     * if there does not appear to be enough free memory for this many. The default
+     * is 1.
+     *
+     * @param number_threads    The maximum number of folds to process at once.
+     * @throws Exception        If number_threads is less than 1.
+     */
+    public void setNumberOfThreads(int number_threads)
+            throws Exception
+    {
+        if (number_threads < 1)
+            throw new Exception("The number of threads must be at least 1.");
+        this.number_threads = number_threads;
+    }
+
     /**
      * Apply a variety of dimensionality reduction and classification techniques
      * to the given instances. Results are calculated using cross-validation.
@@ -172,12 +205,12 @@ public class Experimenter
         CrossValidationResults[][] cvres = new CrossValidationResults[instances_array.length][];
         int[] best_indices = new int[instances_array.length];
 
-        // Apply a variety of classifiers to each set of instances
+        // Prepare the cross validation of a variety of classifiers with each set
+        // of instances
+        CrossValidator[] validators = new CrossValidator[instances_array.length];
+        Classifier[][] classifiers = new Classifier[instances_array.length][];
         for (int inst = 0; inst < instances_array.length; inst++)
         {
-            // A summary of the results of this experiment
-            StringBuffer cv_results = new StringBuffer();
-
             // Give user status update
             // Print the results of the feature selection that was performed
             // for this set of instances
@@ -190,35 +223,47 @@ public class Experimenter
             out.write((features_selected[inst] + "\n").getBytes());
 
             // Prepare a variety of untrained classifiers to perform tests with
-            Classifier[] classifiers = Coordinator.getAllUntrainedClassifiers(classifier_descriptions_list);
+            classifiers[inst] = Coordinator.getAllUntrainedClassifiers(classifier_descriptions_list);
 
             // This array specifies the partitioning of the Instances for the experimentation.
             // The same partitioning will be used for all cross validations.
             int[] partition_array = CrossValidator.generatePartitionArray(folds, num_overall);
-            // Perform cross-validataion with each classifier, storing the classifier
-            // description and its performance and erasing the classifier
+            validators[inst] = new CrossValidator(instances_array[inst], partition_array, folds, hierarchy, identifiers);
+        }
+
+        // Cross validate each classifier with each set of instances
+        CrossValidator.FoldResults[][][] fold_results = crossValidateAll(validators, instances_array,
+                classifiers, classifier_descriptions_list, folds, save_intermediate_arffs);
 
-            CrossValidator cver = new CrossValidator(instances_array[inst], partition_array, folds, hierarchy, identifiers);
+        // Report the results for each set of instances
+        for (int inst = 0; inst < instances_array.length; inst++)
+        {
+            // A summary of the results of this experiment
+            StringBuffer cv_results = new StringBuffer();
             cvres[inst] = CrossValidationResults.generateArray(classifier_descriptions_list);
+            String[] classes = CrossValidator.getClassNames(instances_array[inst]);
 
-            for (int i = 0; i < classifiers.length; i++)
+            for (int i = 0; i < classifiers[inst].length; i++)
             {
-                // Trained Model to be used during Cross Validation
+                // Trained Model holding the Classifier trained on the last fold
                 TrainedModel trained = new TrainedModel();
-                trained.classifier = classifiers[i];
 
-                // Report current progress to standard out
-                out.write(("Testing classifier " + (i + 1) + " of " + classifiers.length + "...\n").getBytes());
+                // Time taken by all of the folds
+                long cross_val_time = 0;
+                for (int fold = 0; fold < folds; fold++)
+                    cross_val_time += fold_results[inst][i][fold].time;
 
                 // This should always be null because Experimenter coordinates the
                 // saving of its own file.
                 String file_name = null;
 
-                // Cross validate this set of Instances with this Classifier
-                cver.crossValidate(trained, cvres[inst], instances_array[inst],
-                        out, cv_results, file_name, cvres[inst][i].classifier_descriptions,
-                        save_intermediate_arffs, verbose, i);
+                // Store the results of the cross validation of this set of
+                // Instances with this Classifier
+                validators[inst].combineFoldResults(trained, cvres[inst], fold_results[inst][i],
+                        classes, cv_results, file_name, cvres[inst][i].classifier_descriptions,
+                        cross_val_time, i);
             }
+            fold_results[inst] = null;
 
             // Store error rates of each cross validation
             double[] error_rates = new double[cvres[inst].length];
@@ -375,6 +420,263 @@ public class Experimenter
         trained.classifier.setOptions(options);
     }
 
+    /**
+     * Cross validates each of the given Classifiers with each of the given sets of
+     * Instances. Each fold of each cross validation is a separate unit of work, and
+     * the units are shared out among the threads of this object, starting with those
+     * expected to take longest. Each unit trains and tests its own copy of the
+     * untrained Classifier. The IBk Classifiers that a <i>KNNEvaluator</i> can
+     * imitate are tested together, in one unit for each fold. No more than half of the threads (and at least one) may
+     * be running Classifiers that are expensive to train at any one time, so that
+     * their memory use is limited and cheaper units can fill in around them.
+     *
+     * @param validators                The CrossValidator of each set of Instances.
+     * @param instances_array           The sets of Instances.
+     * @param classifiers               The untrained Classifiers for each set of
+     *                                  Instances. First index is the set of Instances.
+     * @param classifier_descriptions   The descriptions of the Classifiers, used in
+     *                                  progress reports.
+     * @param folds                     The number of folds of each cross validation.
+     * @param save_intermediate_arffs   Passed on when classifying the testing instances.
+     * @return                          The results of each fold. First index is the
+     *                                  set of Instances, second is the Classifier and
+     *                                  third is the fold. Only the results of the last
+     *                                  fold keep their trained Classifier.
+     * @throws Exception                The problem of the first unit of work that
+     *                                  failed, if any.
+     */
+    private CrossValidator.FoldResults[][][] crossValidateAll(final CrossValidator[] validators,
+            final Instances[] instances_array,
+            final Classifier[][] classifiers,
+            final LinkedList<String> classifier_descriptions,
+            final int folds,
+            final boolean save_intermediate_arffs)
+            throws Exception
+    {
+        final CrossValidator.FoldResults[][][] results = new CrossValidator.FoldResults[instances_array.length][][];
+        final int[][] folds_remaining = new int[instances_array.length][];
+        final String[][] classes = new String[instances_array.length][];
+
+        // Prepare the units of work, longest expected first
+        final LinkedList<GridUnit> pending = new LinkedList<GridUnit>();
+        int max_folds_in_memory = Integer.MAX_VALUE;
+        for (int inst = 0; inst < instances_array.length; inst++)
+        {
+            results[inst] = new CrossValidator.FoldResults[classifiers[inst].length][folds];
+            folds_remaining[inst] = new int[classifiers[inst].length];
+            classes[inst] = CrossValidator.getClassNames(instances_array[inst]);
+            max_folds_in_memory = Math.min(max_folds_in_memory,
+                    CrossValidator.getMaximumConcurrentFolds(instances_array[inst]));
+
+            // Find the IBk Classifiers to test together
+            LinkedList<Integer> knn_list = new LinkedList<Integer>();
+            for (int i = 0; i < classifiers[inst].length; i++)
+                if (KNNEvaluator.canEvaluate(classifiers[inst][i]))
+                    knn_list.add(new Integer(i));
+            int[] knn_classifiers = new int[knn_list.size()];
+            for (int i = 0; i < knn_classifiers.length; i++)
+                knn_classifiers[i] = knn_list.get(i).intValue();
+
+            for (int i = 0; i < classifiers[inst].length; i++)
+            {
+                folds_remaining[inst][i] = folds;
+                if (knn_classifiers.length > 1 && knn_list.contains(new Integer(i)))
+                {
+                    if (i != knn_classifiers[0])
+                        continue;
+                    for (int fold = 0; fold < folds; fold++)
+                        pending.add(new GridUnit(inst, knn_classifiers, fold, classifiers[inst][i], instances_array[inst]));
+                }
+                else
+                {
+                    for (int fold = 0; fold < folds; fold++)
+                        pending.add(new GridUnit(inst, new int[] {i}, fold, classifiers[inst][i], instances_array[inst]));
+                }
+            }
+        }
+        Collections.sort(pending, new Comparator<GridUnit>()
+        {
+            public int compare(GridUnit a, GridUnit b)
+            {
+                return Double.compare(b.expected_cost, a.expected_cost);
+            }
+        });
+
+        int number_workers = Math.min(number_threads, pending.size());
+        number_workers = Math.max(1, Math.min(number_workers, max_folds_in_memory));
+        final int max_heavy = Math.max(1, number_workers / 2);
+        final int[] heavy_running = new int[1];
+        final Throwable[] problem = new Throwable[1];
+
+        // Start the workers, each of which repeatedly takes the first unit of work
+        // that it may run
+        Thread[] workers = new Thread[number_workers];
+        for (int w = 0; w < workers.length; w++)
+        {
+            workers[w] = new Thread("ACE experimenter " + (w + 1))
+            {
+                public void run()
+                {
+                    while (true)
+                    {
+                        GridUnit unit = null;
+                        synchronized (pending)
+                        {
+                            while (unit == null)
+                            {
+                                if (problem[0] != null || pending.isEmpty())
+                                    return;
+                                for (GridUnit candidate : pending)
+                                    if (!candidate.heavy || heavy_running[0] < max_heavy)
+                                    {
+                                        unit = candidate;
+                                        break;
+                                    }
+                                if (unit == null)
+                                {
+                                    try
+                                    {
+                                        pending.wait();
+                                    }
+                                    catch (InterruptedException e)
+                                    {
+                                        return;
+                                    }
+                                }
+                            }
+                            pending.remove(unit);
+                            if (unit.heavy)
+                                heavy_running[0]++;
+                        }
+
+                        boolean[] last_fold_of_classifier = new boolean[unit.classifiers.length];
+                        try
+                        {
+                            // Train and test this fold with its own copies of the Classifiers
+                            TrainedModel[] models = new TrainedModel[unit.classifiers.length];
+                            for (int c = 0; c < models.length; c++)
+                            {
+                                Classifier copy = Classifier.makeCopy(classifiers[unit.instances][unit.classifiers[c]]);
+                                models[c] = new TrainedModel(copy, null, null);
+                            }
+                            CrossValidator.FoldResults[] fold_results;
+                            if (models.length == 1)
+                                fold_results = new CrossValidator.FoldResults[] {
+                                    validators[unit.instances].crossValidateFold(unit.fold, models[0],
+                                            instances_array[unit.instances], classes[unit.instances],
+                                            save_intermediate_arffs, false, false)};
+                            else
+                                fold_results = validators[unit.instances].crossValidateKNNFold(unit.fold, models,
+                                        instances_array[unit.instances], classes[unit.instances],
+                                        unit.fold == folds - 1, false, false);
+                            synchronized (results)
+                            {
+                                for (int c = 0; c < models.length; c++)
+                                {
+                                    if (unit.fold != folds - 1)
+                                        fold_results[c].model = null;
+                                    results[unit.instances][unit.classifiers[c]][unit.fold] = fold_results[c];
+                                    folds_remaining[unit.instances][unit.classifiers[c]]--;
+                                    last_fold_of_classifier[c] = (folds_remaining[unit.instances][unit.classifiers[c]] == 0);
+                                }
+                            }
+                        }
+                        catch (Throwable t)
+                        {
+                            synchronized (pending)
+                            {
+                                if (problem[0] == null)
+                                    problem[0] = t;
+                            }
+                        }
+                        finally
+                        {
+                            synchronized (pending)
+                            {
+                                if (unit.heavy)
+                                    heavy_running[0]--;
+                                pending.notifyAll();
+                            }
+                        }
+
+                        // Report progress
+                        for (int c = 0; c < unit.classifiers.length; c++)
+                        {
+                            if (last_fold_of_classifier[c])
+                            {
+                                synchronized (out)
+                                {
+                                    try
+                                    {
+                                        out.write(("Tested " + classifier_descriptions.get(unit.classifiers[c]) +
+                                                " on feature set " + (unit.instances + 1) + " of " +
+                                                instances_array.length + "...\n").getBytes());
+                                    }
+                                    catch (IOException e)
+                                    {
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            };
+            workers[w].start();
+        }
+
+        // Wait for the workers to finish
+        for (int w = 0; w < workers.length; w++)
+            workers[w].join();
+        if (problem[0] instanceof Exception)
+            throw (Exception) problem[0];
+        else if (problem[0] instanceof Error)
+            throw (Error) problem[0];
+        else if (problem[0] != null)
+            throw new Exception(problem[0].toString());
+        return results;
+    }
+
+    /**
+     * Returns whether the given type of Classifier is expensive to train, in time
+     * and in memory: support vector machines, neural networks and ensembles.
+     *
+     * @param classifier    The Classifier in question.
+     * @return              Whether it is expensive to train.
+     */
+    private static boolean isExpensiveToTrain(Classifier classifier)
+    {
+        return (classifier instanceof SMO ||
+                classifier instanceof MultilayerPerceptron ||
+                classifier instanceof AdaBoostM1 ||
+                classifier instanceof Bagging);
+    }
+
+    /**
+     * Returns a rough estimate of the relative time needed to train and test the
+     * given Classifier on one fold of the given Instances. This is only used to
+     * decide the order in which folds are processed, so only its order of magnitude
+     * matters.
+     *
+     * @param classifier    The Classifier in question.
+     * @param instances     The Instances it is cross validated with.
+     * @return              The estimated relative time.
+     */
+    private static double getExpectedCost(Classifier classifier, Instances instances)
+    {
+        double weight;
+        if (classifier instanceof MultilayerPerceptron)
+            weight = 100.0;
+        else if (classifier instanceof SMO || classifier instanceof AdaBoostM1 || classifier instanceof Bagging)
+            weight = 30.0;
+        else if (classifier instanceof J48)
+            weight = 5.0;
+        else if (classifier instanceof IBk)
+            weight = 2.0;
+        else
+            weight = 1.0;
+        return weight * instances.numInstances() * instances.numAttributes();
+    }
+
     /**
      * Randomly selects instances to be a part of the publication set and removes
      * them from the Instances object that will be used during experimentation. Only overall
@@ -467,4 +769,58 @@ public class Experimenter
         }
         return valid;
     }
+
+
+    /* INTERNAL CLASSES ******************************************************/
+
+    /**
+     * A unit of work of <i>crossValidateAll</i>: one fold of the cross validation
+     * of one Classifier, or of several IBk Classifiers together, with one set of
+     * Instances.
+     */
+    private static class GridUnit
+    {
+        /**
+         * The index of the set of Instances.
+         */
+        int instances;
+
+        /**
+         * The indices of the Classifiers.
+         */
+        int[] classifiers;
+
+        /**
+         * The fold.
+         */
+        int fold;
+
+        /**
+         * Whether the Classifier is expensive to train.
+         */
+        boolean heavy;
+
+        /**
+         * The estimated relative time that this unit will take.
+         */
+        double expected_cost;
+
+        /**
+         * Describes a unit of work.
+         *
+         * @param instances     The index of the set of Instances.
+         * @param classifiers   The indices of the Classifiers.
+         * @param fold          The fold.
+         * @param classifier    The first of the Classifiers.
+         * @param data          The set of Instances.
+         */
+        GridUnit(int instances, int[] classifiers, int fold, Classifier classifier, Instances data)
+        {
+            this.instances = instances;
+            this.classifiers = classifiers;
+            this.fold = fold;
+            heavy = isExpensiveToTrain(classifier);
+            expected_cost = getExpectedCost(classifier, data);
+        }
+    }
 }
@@ -0,0 +1,948 @@
+/*
+ * KNNEvaluator.java
+ * Version 2.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package ace;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import weka.classifiers.Classifier;
+import weka.classifiers.lazy.IBk;
+import weka.core.*;
+
+
+/**
+ * Classifies Weka Instances with several Weka IBk k-nearest neighbour classifiers
+ * at once, finding the neighbours of each instance only once for all of them.
+ * Experimenter tries many IBk classifiers that differ only in k and in how
+ * neighbours are weighted, and each of them would otherwise measure the distance
+ * from each instance to every training instance again.
+ *
+ * <p>The classifications are exactly the same as those that the IBk classifiers
+ * themselves would make. Distances are calculated in the same way as by IBk,
+ * including its updating of the minimum and maximum value of each attribute with
+ * each instance that it classifies, so the instances of a set must be classified
+ * in order. As with IBk, training instances that are as distant as the kth
+ * nearest neighbour are also counted as neighbours.
+ *
+ * <p>When there are many training instances compared to the number of
+ * attributes, the neighbours are found with a k-d tree of the training
+ * instances. Otherwise, which is usual for the many features extracted by
+ * jMIR, the distance to every training instance is measured.
+ *
+ * @author Cory McKay (ACE 1.x) and Jessica Thompson (ACE 2.x)
+ */
+public class KNNEvaluator
+{
+    /* FIELDS ****************************************************************/
+
+
+    /**
+     * The number of neighbours used by each classifier.
+     */
+    private int[] k_values;
+
+    /**
+     * The IBk distance weighting of each classifier.
+     */
+    private int[] weightings;
+
+    /**
+     * The largest number of neighbours used by any of the classifiers.
+     */
+    private int max_k;
+
+    /**
+     * The values of the training instances that have a class value. The first
+     * index is the instance and the second is the attribute.
+     */
+    private double[][] training_values;
+
+    /**
+     * The weights of the training instances that have a class value.
+     */
+    private double[] training_weights;
+
+    /**
+     * The Weka type of each attribute.
+     */
+    private int[] attribute_types;
+
+    /**
+     * The index of the class attribute.
+     */
+    private int class_index;
+
+    /**
+     * The Weka type of the class attribute.
+     */
+    private int class_type;
+
+    /**
+     * The number of classes.
+     */
+    private int number_classes;
+
+    /**
+     * The number of attributes that contribute to distances, as counted by IBk.
+     */
+    private double number_attributes_used;
+
+    /**
+     * The smallest value seen of each attribute, or NaN if none has been seen.
+     */
+    private double[] min;
+
+    /**
+     * The largest value seen of each attribute, or NaN if none has been seen.
+     */
+    private double[] max;
+
+    /**
+     * The indices of the numeric attributes that the k-d tree divides the
+     * training instances by.
+     */
+    private int[] tree_attributes;
+
+    /**
+     * The root of the k-d tree of the training instances, or null if every
+     * training instance is to be checked.
+     */
+    private TreeNode tree;
+
+    /**
+     * The training instances ordered as in the leaves of the k-d tree.
+     */
+    private int[] tree_rows;
+
+    /**
+     * The largest number of dimensions for which a k-d tree is used.
+     */
+    private static final int MAXIMUM_TREE_DIMENSIONS = 16;
+
+    /**
+     * A k-d tree is only used if there are at least this many training instances
+     * for each of the 2^d cells that d dimensions divide space into.
+     */
+    private static final int MINIMUM_INSTANCES_PER_CELL = 8;
+
+    /**
+     * The largest number of training instances in a leaf of the k-d tree.
+     */
+    private static final int LEAF_SIZE = 16;
+
+    /**
+     * Subtracted from the smallest possible distance to the training instances
+     * of a node of the k-d tree, so that rounding errors can never cause a
+     * neighbour to be missed.
+     */
+    private static final double BOUND_TOLERANCE = 1.0E-9;
+
+
+    /* CONSTRUCTOR ***********************************************************/
+
+
+    /**
+     * Prepares to classify instances as the given IBk classifiers would. The
+     * classifiers themselves are not changed.
+     *
+     * @param classifiers   The IBk classifiers to imitate. Each must be one that
+     *                      canEvaluate accepts.
+     * @throws Exception    If a classifier cannot be imitated.
+     */
+    public KNNEvaluator(IBk[] classifiers)
+            throws Exception
+    {
+        k_values = new int[classifiers.length];
+        weightings = new int[classifiers.length];
+        max_k = 0;
+        for (int i = 0; i < classifiers.length; i++)
+        {
+            if (!canEvaluate(classifiers[i]))
+                throw new Exception("IBk classifiers that cross validate, use a window, do not " +
+                        "normalize attributes or have a k of less than 1 cannot be evaluated together.");
+            k_values[i] = classifiers[i].getKNN();
+            weightings[i] = classifiers[i].getDistanceWeighting().getSelectedTag().getID();
+            max_k = Math.max(max_k, k_values[i]);
+        }
+    }
+
+
+    /* PUBLIC METHODS ********************************************************/
+
+
+    /**
+     * Returns whether the given Classifier is an IBk classifier that can be
+     * imitated by this class. This is the case unless it selects k by cross
+     * validation, keeps only a window of training instances, does not
+     * normalize attributes or has a k of less than 1.
+     *
+     * @param classifier    The Classifier to check.
+     * @return              Whether it can be imitated.
+     */
+    public static boolean canEvaluate(Classifier classifier)
+    {
+        if (!(classifier instanceof IBk))
+            return false;
+        IBk ibk = (IBk) classifier;
+        return (ibk.getKNN() >= 1 && !ibk.getCrossValidate() &&
+                ibk.getWindowSize() == 0 && !ibk.getNoNormalization());
+    }
+
+
+    /**
+     * Stores the given training instances, as IBk's buildClassifier method does.
+     *
+     * @param training      The training instances.
+     * @throws Exception    If the instances have no class attribute or have
+     *                      string attributes.
+     */
+    public void buildEvaluator(Instances training)
+            throws Exception
+    {
+        if (training.classIndex() < 0)
+            throw new Exception("No class attribute assigned to instances.");
+        if (training.checkForStringAttributes())
+            throw new Exception("Cannot handle string attributes.");
+
+        class_index = training.classIndex();
+        class_type = training.classAttribute().type();
+        number_classes = training.numClasses();
+        int number_attributes = training.numAttributes();
+
+        // Keep the training instances that have a class value
+        int number_training = 0;
+        for (int inst = 0; inst < training.numInstances(); inst++)
+            if (!training.instance(inst).classIsMissing())
+                number_training++;
+        training_values = new double[number_training][];
+        training_weights = new double[number_training];
+        int row = 0;
+        for (int inst = 0; inst < training.numInstances(); inst++)
+        {
+            Instance instance = training.instance(inst);
+            if (!instance.classIsMissing())
+            {
+                training_values[row] = instance.toDoubleArray();
+                training_weights[row] = instance.weight();
+                row++;
+            }
+        }
+
+        // Find the type of each attribute and the number used in distances
+        attribute_types = new int[number_attributes];
+        number_attributes_used = 0.0;
+        for (int att = 0; att < number_attributes; att++)
+        {
+            Attribute attribute = training.attribute(att);
+            attribute_types[att] = attribute.type();
+            if (att != class_index && (attribute.isNominal() || attribute.isNumeric()))
+                number_attributes_used += 1.0;
+        }
+
+        // Find the smallest and largest value of each attribute
+        min = new double[number_attributes];
+        max = new double[number_attributes];
+        Arrays.fill(min, Double.NaN);
+        Arrays.fill(max, Double.NaN);
+        for (row = 0; row < training_values.length; row++)
+            updateMinMax(training_values[row]);
+
+        buildTree();
+    }
+
+
+    /**
+     * Classifies the given instances with each of the classifiers, in the order
+     * of the instances.
+     *
+     * @param testing       The instances to classify.
+     * @return              The classifications. The first index is the
+     *                      classifier, in the order given to the constructor,
+     *                      and the second is the instance. Each classification
+     *                      is the one that the classifier's classifyInstance
+     *                      method would return.
+     * @throws Exception    If there are no training instances.
+     */
+    public double[][] classifyInstances(Instances testing)
+            throws Exception
+    {
+        if (training_values.length == 0)
+            throw new Exception("No training instances!");
+
+        double[][] classifications = new double[k_values.length][testing.numInstances()];
+        int[] rows = new int[training_values.length];
+        double[] distances = new double[training_values.length];
+        NeighbourList[] neighbours = new NeighbourList[max_k + 1];
+        for (int inst = 0; inst < testing.numInstances(); inst++)
+        {
+            Instance instance = testing.instance(inst);
+            double[] values = instance.toDoubleArray();
+            updateMinMax(values);
+
+            // Find the training instances that may be among the nearest neighbours
+            int count = findCandidates(values, rows, distances);
+
+            // Classify with each classifier, finding the neighbours once for each k
+            Arrays.fill(neighbours, null);
+            for (int i = 0; i < k_values.length; i++)
+            {
+                int k = k_values[i];
+                if (neighbours[k] == null)
+                    neighbours[k] = findNeighbours(k, rows, distances, count);
+                double[] distribution = makeDistribution(neighbours[k], weightings[i]);
+                classifications[i][inst] = getClassification(distribution, instance.classAttribute());
+            }
+        }
+        return classifications;
+    }
+
+
+    /* PRIVATE METHODS *******************************************************/
+
+
+    /**
+     * Finds the training instances that may be among the max_k nearest
+     * neighbours of the given values, in the order of the training instances,
+     * and their distances. All training instances at least as near as the max_k
+     * nearest neighbour are found.
+     *
+     * @param values        The values of the instance to find the neighbours of.
+     * @param rows          Filled with the indices of the training instances.
+     * @param distances     Filled with the distances to the training instances.
+     * @return              The number of training instances found.
+     */
+    private int findCandidates(double[] values, int[] rows, double[] distances)
+    {
+        if (tree == null || !canUseTree(values))
+        {
+            for (int row = 0; row < training_values.length; row++)
+            {
+                rows[row] = row;
+                distances[row] = distance(values, training_values[row]);
+            }
+            return training_values.length;
+        }
+
+        // Search the tree, keeping the max_k smallest distances found in order
+        double[] nearest = new double[max_k];
+        int[] counts = new int[2];
+        searchTree(tree, values, rows, distances, nearest, counts);
+
+        // Keep the training instances that are at least as near as the last of
+        // the max_k nearest, in the order of the training instances
+        double threshold = (counts[1] < max_k) ? Double.POSITIVE_INFINITY : nearest[max_k - 1];
+        int count = 0;
+        for (int i = 0; i < counts[0]; i++)
+        {
+            if (distances[i] <= threshold)
+            {
+                rows[count] = rows[i];
+                distances[count] = distances[i];
+                count++;
+            }
+        }
+        for (int i = 1; i < count; i++)
+        {
+            int row = rows[i];
+            double distance = distances[i];
+            int j = i - 1;
+            for (; j >= 0 && rows[j] > row; j--)
+            {
+                rows[j + 1] = rows[j];
+                distances[j + 1] = distances[j];
+            }
+            rows[j + 1] = row;
+            distances[j + 1] = distance;
+        }
+        return count;
+    }
+
+
+    /**
+     * Measures the distances to the training instances of the given node of the
+     * k-d tree that may be among the max_k nearest neighbours of the given values.
+     *
+     * @param node          The node to search.
+     * @param values        The values of the instance to find the neighbours of.
+     * @param rows          The indices of the training instances measured are
+     *                      added to this.
+     * @param distances     The distances measured are added to this.
+     * @param nearest       The smallest distances measured so far, in order.
+     * @param counts        The number of distances measured so far and the
+     *                      number of entries of nearest that are filled.
+     */
+    private void searchTree(TreeNode node, double[] values, int[] rows, double[] distances,
+            double[] nearest, int[] counts)
+    {
+        double threshold = (counts[1] < max_k) ? Double.POSITIVE_INFINITY : nearest[max_k - 1];
+        if (getLowerBound(node, values) > threshold)
+            return;
+
+        if (node.left == null)
+        {
+            for (int i = node.start; i < node.end; i++)
+            {
+                int row = tree_rows[i];
+                double distance = distance(values, training_values[row]);
+                rows[counts[0]] = row;
+                distances[counts[0]] = distance;
+                counts[0]++;
+
+                // Keep the smallest distances in order
+                if (counts[1] < max_k || distance < nearest[max_k - 1])
+                {
+                    int j = Math.min(counts[1], max_k - 1);
+                    for (; j > 0 && nearest[j - 1] > distance; j--)
+                        nearest[j] = nearest[j - 1];
+                    nearest[j] = distance;
+                    if (counts[1] < max_k)
+                        counts[1]++;
+                }
+            }
+        }
+        else
+        {
+            // Search the nearer child first
+            if (getLowerBound(node.left, values) <= getLowerBound(node.right, values))
+            {
+                searchTree(node.left, values, rows, distances, nearest, counts);
+                searchTree(node.right, values, rows, distances, nearest, counts);
+            }
+            else
+            {
+                searchTree(node.right, values, rows, distances, nearest, counts);
+                searchTree(node.left, values, rows, distances, nearest, counts);
+            }
+        }
+    }
+
+
+    /**
+     * Returns a distance that is no larger than the distance from the given
+     * values to any of the training instances of the given node of the k-d tree.
+     * Only the numeric attributes that the tree divides instances by are
+     * considered, and attributes that have missing values in the node are
+     * ignored.
+     *
+     * @param node      The node of the k-d tree.
+     * @param values    The values of the instance to find the neighbours of.
+     * @return          The smallest possible distance.
+     */
+    private double getLowerBound(TreeNode node, double[] values)
+    {
+        double sum = 0.0;
+        for (int a = 0; a < tree_attributes.length; a++)
+        {
+            int att = tree_attributes[a];
+            double value = values[att];
+            if (node.has_missing[a] || Instance.isMissingValue(value) ||
+                    Double.isNaN(min[att]) || Utils.eq(max[att], min[att]))
+                continue;
+            double gap = 0.0;
+            if (value < node.lower[a])
+                gap = node.lower[a] - value;
+            else if (value > node.upper[a])
+                gap = value - node.upper[a];
+            gap /= (max[att] - min[att]);
+            sum += gap * gap;
+        }
+        return Math.sqrt(sum / number_attributes_used) - BOUND_TOLERANCE;
+    }
+
+
+    /**
+     * Returns whether the k-d tree can be used to find the neighbours of the
+     * given values. This is not the case if they or the range of an attribute
+     * are infinite, since the distances could then not be bounded.
+     *
+     * @param values    The values of the instance to find the neighbours of.
+     * @return          Whether the k-d tree can be used.
+     */
+    private boolean canUseTree(double[] values)
+    {
+        for (int att = 0; att < values.length; att++)
+        {
+            if (attribute_types[att] != Attribute.NUMERIC || att == class_index)
+                continue;
+            if (Double.isInfinite(values[att]) || Double.isInfinite(max[att] - min[att]))
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Builds the k-d tree of the training instances if there are enough of
+     * them for the number of numeric attributes and none of their values are
+     * infinite. Otherwise the tree is left null.
+     */
+    private void buildTree()
+    {
+        tree = null;
+        tree_rows = null;
+
+        // Find the numeric attributes
+        int number_numeric = 0;
+        for (int att = 0; att < attribute_types.length; att++)
+            if (attribute_types[att] == Attribute.NUMERIC && att != class_index)
+                number_numeric++;
+        if (number_numeric == 0 || number_numeric > MAXIMUM_TREE_DIMENSIONS)
+            return;
+        if (training_values.length < ((long) MINIMUM_INSTANCES_PER_CELL << number_numeric))
+            return;
+        tree_attributes = new int[number_numeric];
+        int a = 0;
+        for (int att = 0; att < attribute_types.length; att++)
+            if (attribute_types[att] == Attribute.NUMERIC && att != class_index)
+                tree_attributes[a++] = att;
+
+        // Check that all values are finite
+        for (int row = 0; row < training_values.length; row++)
+            for (a = 0; a < tree_attributes.length; a++)
+                if (Double.isInfinite(training_values[row][tree_attributes[a]]))
+                    return;
+
+        tree_rows = new int[training_values.length];
+        for (int row = 0; row < tree_rows.length; row++)
+            tree_rows[row] = row;
+        tree = buildTreeNode(0, tree_rows.length);
+    }
+
+
+    /**
+     * Builds the node of the k-d tree that holds the given range of tree_rows,
+     * and its children. The range is divided in two at the median of the
+     * attribute whose values are most spread out relative to its range over all
+     * training instances.
+     *
+     * @param start     The first entry of tree_rows in the node.
+     * @param end       One more than the last entry of tree_rows in the node.
+     * @return          The node.
+     */
+    private TreeNode buildTreeNode(int start, int end)
+    {
+        TreeNode node = new TreeNode();
+        node.start = start;
+        node.end = end;
+        node.lower = new double[tree_attributes.length];
+        node.upper = new double[tree_attributes.length];
+        node.has_missing = new boolean[tree_attributes.length];
+        Arrays.fill(node.lower, Double.POSITIVE_INFINITY);
+        Arrays.fill(node.upper, Double.NEGATIVE_INFINITY);
+        for (int i = start; i < end; i++)
+        {
+            double[] values = training_values[tree_rows[i]];
+            for (int a = 0; a < tree_attributes.length; a++)
+            {
+                double value = values[tree_attributes[a]];
+                if (Instance.isMissingValue(value))
+                    node.has_missing[a] = true;
+                else
+                {
+                    node.lower[a] = Math.min(node.lower[a], value);
+                    node.upper[a] = Math.max(node.upper[a], value);
+                }
+            }
+        }
+        if (end - start <= LEAF_SIZE)
+            return node;
+
+        // Find the attribute to divide by
+        int split = -1;
+        double widest = 0.0;
+        for (int a = 0; a < tree_attributes.length; a++)
+        {
+            int att = tree_attributes[a];
+            if (node.upper[a] <= node.lower[a] || Utils.eq(max[att], min[att]))
+                continue;
+            double width = (node.upper[a] - node.lower[a]) / (max[att] - min[att]);
+            if (width > widest)
+            {
+                widest = width;
+                split = a;
+            }
+        }
+        if (split == -1)
+            return node;
+
+        // Divide at the median, with missing values last
+        final int att = tree_attributes[split];
+        Integer[] sorted = new Integer[end - start];
+        for (int i = start; i < end; i++)
+            sorted[i - start] = new Integer(tree_rows[i]);
+        Arrays.sort(sorted, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return Double.compare(training_values[a.intValue()][att], training_values[b.intValue()][att]);
+            }
+        });
+        for (int i = start; i < end; i++)
+            tree_rows[i] = sorted[i - start].intValue();
+        int middle = (start + end) / 2;
+        node.left = buildTreeNode(start, middle);
+        node.right = buildTreeNode(middle, end);
+        return node;
+    }
+
+
+    /**
+     * Updates the smallest and largest value seen of each attribute with the
+     * given values, as IBk does.
+     *
+     * @param values    The values of an instance.
+     */
+    private void updateMinMax(double[] values)
+    {
+        for (int att = 0; att < values.length; att++)
+        {
+            double value = values[att];
+            if (Instance.isMissingValue(value))
+                continue;
+            if (Double.isNaN(min[att]))
+            {
+                min[att] = value;
+                max[att] = value;
+            }
+            else if (value < min[att])
+                min[att] = value;
+            else if (value > max[att])
+                max[att] = value;
+        }
+    }
+
+
+    /**
+     * Returns the distance between two instances, calculated as by IBk.
+     *
+     * @param first     The values of the instance being classified.
+     * @param second    The values of a training instance.
+     * @return          The distance.
+     */
+    private double distance(double[] first, double[] second)
+    {
+        double distance = 0.0;
+        for (int att = 0; att < first.length; att++)
+        {
+            if (att == class_index)
+                continue;
+            double diff = difference(att, first[att], second[att]);
+            distance += diff * diff;
+        }
+        return Math.sqrt(distance / number_attributes_used);
+    }
+
+
+    /**
+     * Returns the difference between two values of the given attribute,
+     * calculated as by IBk.
+     *
+     * @param att       The index of the attribute.
+     * @param val1      The first value.
+     * @param val2      The second value.
+     * @return          The difference.
+     */
+    private double difference(int att, double val1, double val2)
+    {
+        switch (attribute_types[att])
+        {
+            case Attribute.NOMINAL:
+                if (Instance.isMissingValue(val1) || Instance.isMissingValue(val2) ||
+                        ((int) val1 != (int) val2))
+                    return 1.0;
+                else
+                    return 0.0;
+            case Attribute.NUMERIC:
+                if (Instance.isMissingValue(val1) || Instance.isMissingValue(val2))
+                {
+                    if (Instance.isMissingValue(val1) && Instance.isMissingValue(val2))
+                        return 1.0;
+                    double diff;
+                    if (Instance.isMissingValue(val2))
+                        diff = norm(val1, att);
+                    else
+                        diff = norm(val2, att);
+                    if (diff < 0.5)
+                        diff = 1.0 - diff;
+                    return diff;
+                }
+                return norm(val1, att) - norm(val2, att);
+            default:
+                return 0.0;
+        }
+    }
+
+
+    /**
+     * Returns the given value of the given attribute scaled to the range of
+     * values seen, as by IBk.
+     *
+     * @param x     The value.
+     * @param att   The index of the attribute.
+     * @return      The scaled value.
+     */
+    private double norm(double x, int att)
+    {
+        if (Double.isNaN(min[att]) || Utils.eq(max[att], min[att]))
+            return 0.0;
+        return (x - min[att]) / (max[att] - min[att]);
+    }
+
+
+    /**
+     * Returns the k nearest neighbours of an instance, as IBk's findNeighbors
+     * method does, from the given training instances.
+     *
+     * @param k             The number of neighbours.
+     * @param rows          The indices of the training instances that may be
+     *                      neighbours, in the order of the training instances.
+     * @param distances     The distance to each of these training instances.
+     * @param count         The number of these training instances.
+     * @return              The neighbours.
+     */
+    private static NeighbourList findNeighbours(int k, int[] rows, double[] distances, int count)
+    {
+        NeighbourList neighbours = new NeighbourList(k);
+        for (int i = 0; i < count; i++)
+            if (neighbours.isEmpty() || i < k || distances[i] <= neighbours.last.distance)
+                neighbours.insertSorted(distances[i], rows[i]);
+        return neighbours;
+    }
+
+
+    /**
+     * Returns the class distribution given by the given neighbours, calculated
+     * as by IBk with the given distance weighting.
+     *
+     * @param neighbours    The neighbours.
+     * @param weighting     The IBk distance weighting.
+     * @return              The class distribution.
+     */
+    private double[] makeDistribution(NeighbourList neighbours, int weighting)
+    {
+        double total = 0.0;
+        double[] distribution = new double[number_classes];
+
+        // Set up a correction to the estimator
+        if (class_type == Attribute.NOMINAL)
+        {
+            for (int i = 0; i < number_classes; i++)
+                distribution[i] = 1.0 / Math.max(1, training_values.length);
+            total = (double) number_classes / Math.max(1, training_values.length);
+        }
+
+        // Collect class counts
+        for (NeighbourNode current = neighbours.first; current != null; current = current.next)
+        {
+            double weight;
+            switch (weighting)
+            {
+                case IBk.WEIGHT_INVERSE:
+                    weight = 1.0 / (current.distance + 0.001);
+                    break;
+                case IBk.WEIGHT_SIMILARITY:
+                    weight = 1.0 - current.distance;
+                    break;
+                default:
+                    weight = 1.0;
+                    break;
+            }
+            weight *= training_weights[current.row];
+            double class_value = training_values[current.row][class_index];
+            if (class_type == Attribute.NOMINAL)
+                distribution[(int) class_value] += weight;
+            else if (class_type == Attribute.NUMERIC)
+                distribution[0] += class_value * weight;
+            total += weight;
+        }
+
+        // Normalise distribution
+        if (total > 0)
+            Utils.normalize(distribution, total);
+        return distribution;
+    }
+
+
+    /**
+     * Returns the classification given by the given class distribution, as by
+     * the classifyInstance method of Weka Classifiers.
+     *
+     * @param distribution      The class distribution.
+     * @param class_attribute   The class attribute of the instance classified.
+     * @return                  The classification.
+     */
+    private static double getClassification(double[] distribution, Attribute class_attribute)
+    {
+        switch (class_attribute.type())
+        {
+            case Attribute.NOMINAL:
+                double max = 0.0;
+                int max_index = 0;
+                for (int i = 0; i < distribution.length; i++)
+                {
+                    if (distribution[i] > max)
+                    {
+                        max_index = i;
+                        max = distribution[i];
+                    }
+                }
+                if (max > 0.0)
+                    return max_index;
+                return Instance.missingValue();
+            case Attribute.NUMERIC:
+                return distribution[0];
+            default:
+                return Instance.missingValue();
+        }
+    }
+
+
+    /* INTERNAL CLASSES ******************************************************/
+
+
+    /**
+     * A node of the k-d tree of the training instances.
+     */
+    private static class TreeNode
+    {
+        /**
+         * The first entry of tree_rows in this node.
+         */
+        int start;
+
+        /**
+         * One more than the last entry of tree_rows in this node.
+         */
+        int end;
+
+        /**
+         * The smallest value of each attribute of tree_attributes in this node.
+         */
+        double[] lower;
+
+        /**
+         * The largest value of each attribute of tree_attributes in this node.
+         */
+        double[] upper;
+
+        /**
+         * Whether each attribute of tree_attributes has missing values in this
+         * node.
+         */
+        boolean[] has_missing;
+
+        /**
+         * The child holding the training instances with the smaller values, or
+         * null if this is a leaf.
+         */
+        TreeNode left;
+
+        /**
+         * The child holding the training instances with the larger values, or
+         * null if this is a leaf.
+         */
+        TreeNode right;
+    }
+
+
+    /**
+     * A neighbour in a NeighbourList.
+     */
+    private static class NeighbourNode
+    {
+        /**
+         * The distance to the neighbour.
+         */
+        double distance;
+
+        /**
+         * The index of the training instance.
+         */
+        int row;
+
+        /**
+         * The next neighbour, or null if this is the last.
+         */
+        NeighbourNode next;
+
+        NeighbourNode(double distance, int row, NeighbourNode next)
+        {
+            this.distance = distance;
+            this.row = row;
+            this.next = next;
+        }
+    }
+
+
+    /**
+     * A list of neighbours ordered by distance that keeps at least k neighbours,
+     * and any more that are as distant as the kth. Neighbours are inserted and
+     * dropped exactly as in IBk, so that neighbours at the same distance are in
+     * the same order.
+     */
+    private static class NeighbourList
+    {
+        /**
+         * The number of neighbours to keep.
+         */
+        int length;
+
+        /**
+         * The nearest neighbour.
+         */
+        NeighbourNode first;
+
+        /**
+         * The most distant neighbour.
+         */
+        NeighbourNode last;
+
+        NeighbourList(int length)
+        {
+            this.length = length;
+        }
+
+        boolean isEmpty()
+        {
+            return first == null;
+        }
+
+        void insertSorted(double distance, int row)
+        {
+            if (isEmpty())
+            {
+                first = last = new NeighbourNode(distance, row, null);
+                return;
+            }
+
+            NeighbourNode current = first;
+            if (distance < first.distance)
+                first = new NeighbourNode(distance, row, first);
+            else
+            {
+                for (; current.next != null && current.next.distance < distance; current = current.next);
+                current.next = new NeighbourNode(distance, row, current.next);
+                if (current == last)
+                    last = current.next;
+            }
+
+            // Drop the neighbours after the kth that are more distant than it
+            int count = 0;
+            for (current = first; current.next != null; current = current.next)
+            {
+                count++;
+                if (count >= length && current.distance != current.next.distance)
+                {
+                    last = current;
+                    current.next = null;
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@
 package ace.datatypes;
 
 import java.io.*;
+import java.util.HashMap;
 import java.util.LinkedList;
 import weka.core.*;
 import weka.core.converters.ArffLoader;
@@ -78,6 +79,21 @@ public class DataBoard
       */
      public    SegmentedClassification[]     model_classifications;
 
+     /**
+      * The model_classifications keyed by identifier, so that the model
+      * classification of each DataSet can be found without searching through
+      * all of them. Built when first needed and rebuilt whenever the
+      * model_classifications field is given a new array. Null if two model
+      * classifications have the same identifier.
+      */
+     private   transient HashMap<String, SegmentedClassification> model_classification_index;
+
+     /**
+      * The model_classifications array that model_classification_index was
+      * built from.
+      */
+     private   transient SegmentedClassification[] indexed_model_classifications;
+
      /**
       * An identifier for use in serialization.
       */
@@ -191,6 +207,42 @@ public class DataBoard
           String[] feature_vector_files,
           String classifications_file )
           throws Exception
+     {
+          this(taxonomy_file, feature_key_file, feature_vector_files, classifications_file, null);
+     }
+
+
+     /**
+      * Generates a DataBoard based on the contents of the given XML files in
+      * the same way as the constructor above. If a feature_matrix_file is
+      * given, the feature values of the feature_vector_files are written to a
+      * memory-mapped FeatureMatrix saved in it as they are parsed, and the
+      * DataSets read their values from the matrix when they are needed. The
+      * values are then never held on the heap, which allows larger corpora to
+      * be loaded, as only the Instances built from this DataBoard need then be
+      * held in memory.
+      *
+      * @param	taxonomy_file		See the constructor above.
+      * @param	feature_key_file	See the constructor above.
+      * @param	feature_vector_files	See the constructor above.
+      * @param	classifications_file    See the constructor above.
+      * @param	feature_matrix_file	The file to save the feature values
+      *					in. It is overwritten if it already
+      *					exists. May be null if the values are
+      *					to be held on the heap.
+      * @throws	Exception		An informative exception is thrown
+      *					if any of the file paths provided are
+      *					invalid, if the data contained in the
+      *					files is incompatible with one another
+      *					or if the feature_matrix_file cannot be
+      *					written.
+      */
+     public DataBoard( String taxonomy_file,
+          String feature_key_file,
+          String[] feature_vector_files,
+          String classifications_file,
+          File feature_matrix_file )
+          throws Exception
      {
           // Parse the provided classifications_file and store its contents
           taxonomy = null;
@@ -210,7 +262,7 @@ public class DataBoard
           feature_vectors = null;
           if (feature_vector_files != null)
                if (!feature_vector_files[0].equals(""))
-                    feature_vectors = DataSet.parseDataSetFiles(feature_vector_files, feature_definitions);
+                    feature_vectors = DataSet.parseDataSetFiles(feature_vector_files, feature_definitions, feature_matrix_file);
 
           // Parse the provided model_classifications and store its contents
           model_classifications = null;
@@ -417,6 +469,9 @@ public class DataBoard
      {
           if (model_classifications == null)
                return null;
+          HashMap<String, SegmentedClassification> index = getModelClassificationIndex();
+          if (index != null)
+               return index.get(data_set.identifier);
           for (int i = 0; i < model_classifications.length; i++)
                if (model_classifications[i].identifier.equals(data_set.identifier))
                     return model_classifications[i];
@@ -424,6 +479,30 @@ public class DataBoard
      }
 
 
+     /**
+      * Returns the model_classifications stored in this DataBoard keyed by
+      * identifier, for use with the getOverallLabelsOfDataSets and
+      * getSubSectionLabelsOfDataSets methods of SegmentedClassification. The
+      * index is only built once for a given model_classifications array.
+      *
+      * @return          The model classifications keyed by identifier, or
+      *                  null if there are no model classifications.
+      * @throws	Exception An exception is thrown if the model classifications
+      *                  contain multiple data sets with the same identifier.
+      */
+     public HashMap<String, SegmentedClassification> getCheckedModelClassificationIndex()
+          throws Exception
+     {
+          if (model_classifications == null)
+               return null;
+          HashMap<String, SegmentedClassification> index = getModelClassificationIndex();
+          if (index == null)
+               throw new Exception( "Given classifications contain multiple references\n" +
+                    "to instances with the same identifier." );
+          return index;
+     }
+
+
      /**
       * Uses the feature definitions and taxonomy stored in this DataBoard to
       * return an empty set of Weka Instances. If no taxonomy is available in
@@ -547,112 +626,53 @@ public class DataBoard
           String[][][] model_classifications_sections = null;
           if (model_classifications != null)
           {
+               HashMap<String, SegmentedClassification> classification_index =
+                    getCheckedModelClassificationIndex();
                if (use_top_level_features)
                     model_classifications_overall =
                          SegmentedClassification.getOverallLabelsOfDataSets( feature_vectors,
-                         model_classifications );
+                         classification_index );
                if (use_sub_section_features)
                     model_classifications_sections =
                          SegmentedClassification.getSubSectionLabelsOfDataSets( feature_vectors,
-                         model_classifications );
+                         classification_index );
           }
 
           // Store the feature vectors and the model classifications, if any
+          double[] feat_vals = new double[set_of_instances.numAttributes()];
           for (int i = 0; i < feature_vectors.length; i++)
           {
                // Process top-level overall features
                if (use_top_level_features)
                {
-                    // Find the top-level overall feature values
-                    String[][] top_feat_vals = feature_vectors[i].getFeatureValuesOfTopLevel(feature_definitions);
-
-                    // Write the top-level overall feature values and model classifications
-                    if (top_feat_vals != null)
+                    // Find the top-level overall feature values and write
+                    // them with the model classifications
+                    if (feature_vectors[i].getFeatureValuesOfTopLevel(feature_definitions, feat_vals))
                     {
-                         // May need to repeat a given instance multiple times
-                         // if it has multiple classes
-                         int classes = 1;
+                         String[] classifications = null;
                          if (model_classifications_overall != null)
-                              if (model_classifications_overall[i] != null)
-                                   classes = model_classifications_overall[i].length;
-
-                         // Store the feature values and model classifications
-                         for (int cla = 0; cla < classes; cla++)
-                         {
-                              Instance this_instance = new Instance(set_of_instances.numAttributes());
-                              this_instance.setDataset(set_of_instances);
-                              int current_attribute = 0;
-
-                              for (int j = 0; j < top_feat_vals.length; j++)
-                                   for (int k = 0; k < top_feat_vals[j].length; k++)
-                                   {
-                                   // Store feature values in instance
-                                   if (!top_feat_vals[j][k].equals("?"))
-                                        this_instance.setValue(current_attribute, (new Double(top_feat_vals[j][k])).doubleValue());
-                                   current_attribute++;
-
-                                   // Store model classification in instance
-                                   if ( j == top_feat_vals.length - 1 && k == top_feat_vals[j].length - 1 )
-                                        if (model_classifications_overall != null)
-                                             if (model_classifications_overall[i] != null)
-                                                  this_instance.setClassValue(model_classifications_overall[i][cla]);
-
-                                   }
-
-                              // Add this instance to the list
-                              set_of_instances.add(this_instance);
-                         }
+                              classifications = model_classifications_overall[i];
+                         storeInstance(set_of_instances, feat_vals, classifications);
                     }
                }
 
                // Process features of sub-sections
                if (use_sub_section_features)
                {
-                    // Find the sub-section feature values
-                    String[][][] sec_feat_vals = feature_vectors[i].getFeatureValuesOfSubSections(feature_definitions);
-
                     // Write the sub-section feature values and model classifications
                     // for each sub-section
-                    if (sec_feat_vals != null)
+                    DataSet[] sub_sets = feature_vectors[i].sub_sets;
+                    if (sub_sets != null)
                     {
-                         for (int sec = 0 ; sec < sec_feat_vals.length; sec++)
+                         for (int sec = 0 ; sec < sub_sets.length; sec++)
                          {
-                              if (sec_feat_vals[sec] != null)
+                              if (sub_sets[sec].getFeatureValuesOfTopLevel(feature_definitions, feat_vals))
                               {
-                                   // May need to repeat a given instance multiple times
-                                   // if it has multiple classes
-                                   int classes = 1;
+                                   String[] classifications = null;
                                    if (model_classifications_sections != null)
                                         if (model_classifications_sections[i] != null)
-                                             if (model_classifications_sections[i][sec] != null)
-                                                  classes = model_classifications_sections[i][sec].length;
-
-                                   // Write the feature values and model classifications
-                                   for (int cla = 0; cla < classes; cla++)
-                                   {
-                                        Instance this_instance = new Instance(set_of_instances.numAttributes());
-                                        this_instance.setDataset(set_of_instances);
-                                        int current_attribute = 0;
-
-                                        for (int j = 0; j < sec_feat_vals[sec].length; j++)
-                                             for (int k = 0; k < sec_feat_vals[sec][j].length; k++)
-                                             {
-                                             // Store feature values in instance
-                                             if (!sec_feat_vals[sec][j][k].equals("?"))
-                                                  this_instance.setValue(current_attribute, (new Double(sec_feat_vals[sec][j][k])).doubleValue());
-                                             current_attribute++;
-
-                                             // Write the model classification if features done
-                                             if ( j == sec_feat_vals[sec].length - 1 && k == sec_feat_vals[sec][j].length - 1 )
-                                                  if (model_classifications_sections != null)
-                                                       if (model_classifications_sections[i] != null)
-                                                            if (model_classifications_sections[i][sec] != null)
-                                                                 this_instance.setClassValue(model_classifications_sections[i][sec][cla]);
-                                             }
-
-                                        // Add this instance to the list
-                                        set_of_instances.add(this_instance);
-                                   }
+                                             classifications = model_classifications_sections[i][sec];
+                                   storeInstance(set_of_instances, feat_vals, classifications);
                               }
                          }
                     }
@@ -661,6 +681,60 @@ public class DataBoard
      }
 
 
+     /**
+      * Adds an instance with the given feature values to the given set of
+      * Instances once for each of the given model classifications, or once
+      * without a model classification if there are none.
+      *
+      * <p>The values are copied into a new array for each instance, which
+      * Weka then uses directly rather than setting the values one at a
+      * time.
+      *
+      * @param	set_of_instances   The Weka Instances object to add the
+      *                            instances to.
+      * @param	feat_vals          The feature values of the instance. There
+      *                            is an entry for each attribute. The entry
+      *                            of the class attribute, if any, is
+      *                            replaced by the model classification.
+      * @param	classifications    The model classifications of the instance.
+      *                            May be null.
+      * @throws	Exception          An exception is thrown if a model
+      *                            classification is not one of the values of
+      *                            the class attribute.
+      */
+     private static void storeInstance( Instances set_of_instances,
+          double[] feat_vals,
+          String[] classifications )
+          throws Exception
+     {
+          // May need to repeat a given instance multiple times
+          // if it has multiple classes
+          int classes = 1;
+          if (classifications != null)
+               classes = classifications.length;
+
+          // Store the feature values and model classifications
+          for (int cla = 0; cla < classes; cla++)
+          {
+               double[] values = new double[feat_vals.length];
+               System.arraycopy(feat_vals, 0, values, 0, values.length);
+               if (classifications != null)
+               {
+                    int class_index = set_of_instances.classIndex();
+                    int class_value = set_of_instances.classAttribute().indexOfValue(classifications[cla]);
+                    if (class_value == -1)
+                         throw new Exception( "Model classification " + classifications[cla] +
+                              " is not one of the class names." );
+                    values[class_index] = class_value;
+               }
+
+               // Add this instance to the list
+               Instance this_instance = new Instance(1.0, values);
+               set_of_instances.add(this_instance);
+          }
+     }
+
+
      /**
       * Classify the given set of Instances using the given AttributeSelection
       * and the given Classifier. Return the results in a new
@@ -727,7 +801,7 @@ public class DataBoard
 
                // Process top-level overall features
                if (use_top_level_features)
-                    if (feature_vectors[set].feature_values != null)
+                    if (feature_vectors[set].hasFeatureValues())
                     {
                     double predicted = trained.classifier.classifyInstance(instances.instance(current_instance));
                     current_instance++;
@@ -756,7 +830,7 @@ public class DataBoard
                     {
                          DataSet this_sub_section = feature_vectors[set].sub_sets[sec];
 
-                         if (this_sub_section.feature_values != null)
+                         if (this_sub_section.hasFeatureValues())
                          {
                               double predicted = trained.classifier.classifyInstance(instances.instance(current_instance));
                               current_instance++;
@@ -884,14 +958,16 @@ public class DataBoard
           String[][][] model_classifications_sections = null;
           if (model_classifications != null)
           {
+               HashMap<String, SegmentedClassification> classification_index =
+                    getCheckedModelClassificationIndex();
                if (use_top_level_features)
                     model_classifications_overall =
                          SegmentedClassification.getOverallLabelsOfDataSets( feature_vectors,
-                         model_classifications );
+                         classification_index );
                if (use_sub_section_features)
                     model_classifications_sections =
                          SegmentedClassification.getSubSectionLabelsOfDataSets( feature_vectors,
-                         model_classifications );
+                         classification_index );
           }
 
           // Write the feature vectors and the model classifications, if any
@@ -1158,6 +1234,26 @@ public class DataBoard
      /* PRIVATE METHODS *******************************************************/
 
 
+     /**
+      * Returns the model_classifications keyed by identifier, building the
+      * index if the model_classifications field has been changed since it was
+      * last built. Null is returned if there are no model classifications or
+      * if two of them have the same identifier.
+      */
+     private synchronized HashMap<String, SegmentedClassification> getModelClassificationIndex()
+     {
+          if (model_classifications != indexed_model_classifications)
+          {
+               if (model_classifications == null)
+                    model_classification_index = null;
+               else
+                    model_classification_index = SegmentedClassification.getIdentifierIndex(model_classifications);
+               indexed_model_classifications = model_classifications;
+          }
+          return model_classification_index;
+     }
+
+
      /**
       * Verifies the compatibility of the fields of this class. Throws an
       * Exception if there is a problem.
@@ -1171,7 +1267,7 @@ public class DataBoard
      throws Exception
      {
           if (model_classifications != null)
-               if (!SegmentedClassification.verifyUniquenessOfIdentifiers(model_classifications))
+               if (getModelClassificationIndex() == null)
                     throw new Exception( "The provided model classifications are invalid\n" +
                          "because two instances have the same identifier." );
 
@@ -1268,4 +1364,4 @@ public class DataBoard
          return num_total;
      }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -9,6 +9,8 @@
 package ace.datatypes;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import ace.xmlparsers.XMLDocumentParser;
 import weka.core.Instance;
@@ -21,6 +23,10 @@ import weka.core.Instance;
  * for reconciling these objects with FeatureDefinition objects. Methods are
  * also available for extracting feature values in String form.
  *
+ * <p>The feature values may also be held in a memory-mapped FeatureMatrix
+ * rather than in the feature_values field, in which case the getFeatureValues
+ * method should be used to access them.
+ *
  * @author Cory McKay (ACE 1.x) and Jessica Thompson (ACE 2.x)
  */
 public class DataSet
@@ -94,6 +100,20 @@ public class DataSet
      public	DataSet				parent;
 
 
+     /**
+      * The FeatureMatrix holding the feature values of this DataSet, or null if
+      * they are held in the feature_values field. The feature_values and
+      * feature_names fields are null if this is not null.
+      */
+     private	transient FeatureMatrix		feature_matrix;
+
+
+     /**
+      * The row of feature_matrix holding the feature values of this DataSet.
+      */
+     private	int				feature_matrix_row;
+
+
      /**
       * An identifier for use in serialization.
       */
@@ -172,6 +192,56 @@ public class DataSet
      /* PUBLIC METHODS ********************************************************/
 
 
+     /**
+      * Returns the feature values of this DataSet, in the same form as the
+      * feature_values field. If they are held in a FeatureMatrix, they are
+      * read from it and new arrays are returned.
+      *
+      * @return		The feature values, or null if no features have
+      *			been extracted.
+      */
+     public double[][] getFeatureValues()
+     {
+          if (feature_matrix != null)
+               return feature_matrix.getFeatureValues(feature_matrix_row);
+          return feature_values;
+     }
+
+
+     /**
+      * Returns whether any features have been extracted for this DataSet,
+      * whether their values are held in the feature_values field or in a
+      * FeatureMatrix.
+      *
+      * @return		Whether this DataSet has feature values.
+      */
+     public boolean hasFeatureValues()
+     {
+          if (feature_matrix != null)
+               return feature_matrix.hasFeatureValues(feature_matrix_row);
+          return feature_values != null;
+     }
+
+
+     /**
+      * Changes this DataSet to read its feature values from the given row of
+      * the given FeatureMatrix. The feature_values and feature_names fields are
+      * set to null. This is normally done by the moveFeatureValues method of
+      * FeatureMatrix.
+      *
+      * @param	matrix	The FeatureMatrix holding the feature values of this
+      *			DataSet.
+      * @param	row	The row of matrix holding them.
+      */
+     public void setFeatureMatrix(FeatureMatrix matrix, int row)
+     {
+          feature_matrix = matrix;
+          feature_matrix_row = row;
+          feature_values = null;
+          feature_names = null;
+     }
+
+
      /**
       * EDIT August 7th 2009: This method is no longer used as ACE has been modified to
       * automatically generate feature definitions if feature values are present but
@@ -282,6 +352,7 @@ public class DataSet
       */
      public String[][] getFeatureValuesOfTopLevel(FeatureDefinition[] definitions)
      {
+          double[][] feature_values = getFeatureValues();
           if (feature_values == null)
                return null;
           String[][] feature_values_str = new String[feature_values.length][];
@@ -303,6 +374,52 @@ public class DataSet
      }
 
 
+     /**
+      * Stores the feature values stored in the feature_values field of this
+      * object in the given array, beginning at its first entry. The values of
+      * each feature are stored one after the other, one entry per dimension,
+      * in the same order as by the getFeatureValuesOfTopLevel method that
+      * returns strings, but without converting each value to a string.
+      *
+      * <p>Nothing is stored if no features have been extracted. If a
+      * particular feature value is not available, then NaN, which Weka uses
+      * to denote missing values, is stored in the appropriate entries. NaN is
+      * also stored in any entries of the array after the last value.
+      *
+      * @param	definitions	Feature definitions that are used to get the
+      *				dimensions of unknown features.
+      * @param	values		The array to store the values in. It must have
+      *				room for all of the values.
+      * @return			Whether or not any features have been
+      *				extracted.
+      */
+     public boolean getFeatureValuesOfTopLevel(FeatureDefinition[] definitions,
+          double[] values)
+     {
+          if (feature_matrix != null)
+               return feature_matrix.getFeatureValues(feature_matrix_row, definitions, values);
+          if (feature_values == null)
+               return false;
+          int current = 0;
+          for (int i = 0; i < feature_values.length; i++)
+          {
+               if (feature_values[i] == null)
+               {
+                    for (int j = 0; j < definitions[i].dimensions; j++)
+                         values[current++] = Double.NaN;
+               }
+               else
+               {
+                    System.arraycopy(feature_values[i], 0, values, current, feature_values[i].length);
+                    current += feature_values[i].length;
+               }
+          }
+          for (; current < values.length; current++)
+               values[current] = Double.NaN;
+          return true;
+     }
+
+
      /**
       * Returns the feature values stored in the DataSets in the sub_sets field
       * of this object. The first indice of the returned array denotes the
@@ -346,6 +463,8 @@ public class DataSet
           for (int i = 0; i < depth; i++)
                indent += "   ";
 
+          double[][] feature_values = getFeatureValues();
+
           // Prepare the name of the string identifying the dataset
           String id_string = new String("");
           if (identifier != null)
@@ -548,6 +667,69 @@ public class DataSet
      public static DataSet[] parseDataSetFiles( String[] data_set_file_paths,
           FeatureDefinition[] definitions )
           throws Exception
+     {
+          return parseDataSetFiles(data_set_file_paths, definitions, null);
+     }
+
+
+     /**
+      * Parses several feature_vector_file XML files in the same way as the
+      * parseDataSetFiles method above. If a matrix_file is given, the feature
+      * values are written to a FeatureMatrix saved in it as they are parsed,
+      * and the returned DataSets read their values from this FeatureMatrix, so
+      * that the values are never held on the heap.
+      *
+      * @param	data_set_file_paths	The paths of the XML files to parse.
+      * @param	definitions		FeatureDefinitions to use for formatting
+      *					and validating the contents of the files
+      *					to be parsed.
+      * @param	matrix_file		The file to save the FeatureMatrix
+      *					holding the feature values in. It is
+      *					overwritten if it already exists. The
+      *					values are held in the DataSets if this
+      *					is null.
+      * @return                         An array of DataSet objects holding the
+      *                                 combined contents of all of the given ACE
+      *                                 XML feature vectors files.
+      * @throws	Exception		Informative exceptions is thrown if an
+      *					invalid file or file path is specified,
+      *					or if the matrix_file cannot be written.
+      */
+     public static DataSet[] parseDataSetFiles( String[] data_set_file_paths,
+          FeatureDefinition[] definitions,
+          File matrix_file )
+          throws Exception
+     {
+          FeatureMatrix.Writer matrix_writer = null;
+          if (matrix_file != null)
+               matrix_writer = new FeatureMatrix.Writer(matrix_file);
+          try
+          {
+               DataSet[] data_sets = parseAndCombineDataSetFiles(data_set_file_paths, matrix_writer);
+               if (matrix_writer != null)
+               {
+                    matrix_writer.close();
+                    new FeatureMatrix(matrix_file).setRowsOf(data_sets);
+               }
+               return data_sets;
+          }
+          catch (Exception e)
+          {
+               if (matrix_writer != null)
+                    matrix_writer.abort();
+               throw e;
+          }
+     }
+
+
+     /**
+      * Parses the given feature_vector_file XML files and returns the combined
+      * DataSets that they hold, writing their feature values to the given
+      * FeatureMatrix.Writer if it is not null.
+      */
+     private static DataSet[] parseAndCombineDataSetFiles( String[] data_set_file_paths,
+          FeatureMatrix.Writer matrix_writer )
+          throws Exception
      {
           // Parse and process each of the files separately
           DataSet[][] segmented_data_sets = new DataSet[data_set_file_paths.length][];
@@ -555,7 +737,7 @@ public class DataSet
           for (int file = 0; file < segmented_data_sets.length; file++)
           {
                // Parse a file
-               Object[] results = (Object[]) XMLDocumentParser.parseXMLDocument(data_set_file_paths[file], "feature_vector_file");
+               Object[] results = (Object[]) XMLDocumentParser.parseXMLDocument(data_set_file_paths[file], "feature_vector_file", matrix_writer);
                DataSet[] parse_results = new DataSet[results.length];
                for (int i = 0; i < parse_results.length; i++)
                     parse_results[i] = (DataSet) results[i];
@@ -692,6 +874,18 @@ public class DataSet
           // To store indices across sets in datasets_to_combine
           int[][] mapping = new int[number_instances][number_sets];
 
+          // Index the instances in each set by identifier. Only the first
+          // instance with a given identifier is indexed.
+          ArrayList<HashMap<String, Integer>> indices = new ArrayList<HashMap<String, Integer>>(number_sets);
+          for (int set = 0; set < number_sets; set++)
+          {
+               HashMap<String, Integer> index = new HashMap<String, Integer>(datasets_to_combine[set].length * 2);
+               for (int vect_inst = 0; vect_inst < datasets_to_combine[set].length; vect_inst++)
+                    if (!index.containsKey(datasets_to_combine[set][vect_inst].identifier))
+                         index.put(datasets_to_combine[set][vect_inst].identifier, new Integer(vect_inst));
+               indices.add(index);
+          }
+
           // Find mappings between the datasets
           for (int key_inst = 0; key_inst < number_instances; key_inst++)
           {
@@ -699,24 +893,21 @@ public class DataSet
                for (int set = 0; set < number_sets; set++)
                {
                     boolean found_one = false;
-                    for (int vect_inst = 0; vect_inst < datasets_to_combine[set].length; vect_inst++)
+                    Integer match = indices.get(set).get(matching_identifier_keys[key_inst][set]);
+                    if (match != null)
                     {
-                         if (datasets_to_combine[set][vect_inst].identifier.equals(matching_identifier_keys[key_inst][set]))
-                         {
-                              // Note if this identifier has already been noted
-                              if (used[set][vect_inst])
-                                   throw new Exception("More than one occurence of the key " + datasets_to_combine[set][vect_inst].identifier + " in the same set of instances.");
+                         int vect_inst = match.intValue();
 
-                              // Note the mapping
-                              mapping[key_inst][set] = vect_inst;
+                         // Note if this identifier has already been noted
+                         if (used[set][vect_inst])
+                              throw new Exception("More than one occurence of the key " + datasets_to_combine[set][vect_inst].identifier + " in the same set of instances.");
 
-                              // Note that this identifier has been noted
-                              used[set][vect_inst] = true;
-                              found_one = true;
+                         // Note the mapping
+                         mapping[key_inst][set] = vect_inst;
 
-                              // Exit the loop
-                              vect_inst = datasets_to_combine[set].length;
-                         }
+                         // Note that this identifier has been noted
+                         used[set][vect_inst] = true;
+                         found_one = true;
                     }
 
                     // Throw an excpetion if the instance was not found
@@ -855,9 +1046,10 @@ public class DataSet
                          {
                               DataSet section_set = data_sets[set].sub_sets[sec];
                               writer.writeBytes("      <section start=\"" + section_set.start + "\" stop=\"" + section_set.stop +"\">\n");
-                              for (int feat = 0; feat < section_set.feature_values.length; feat++)
+                              double[][] section_values = section_set.getFeatureValues();
+                              for (int feat = 0; feat < section_values.length; feat++)
                               {
-                                   double[] values = section_set.feature_values[feat];
+                                   double[] values = section_values[feat];
                                    if (values != null)
                                    {
                                         writer.writeBytes("         <feature>\n");
@@ -875,11 +1067,12 @@ public class DataSet
                          }
                     }
 
-                    if (data_sets[set].feature_values != null)
+                    double[][] set_values = data_sets[set].getFeatureValues();
+                    if (set_values != null)
                     {
-                         for (int feat = 0; feat < data_sets[set].feature_values.length; feat++)
+                         for (int feat = 0; feat < set_values.length; feat++)
                          {
-                              double[] values = data_sets[set].feature_values[feat];
+                              double[] values = set_values[feat];
                               if (values != null)
                               {
                                    writer.writeBytes("      <feature>\n");
@@ -907,4 +1100,22 @@ public class DataSet
                throw new Exception("Unable to write file " + to_save_to.getName() + ".");
           }
      }
-}
\ No newline at end of file
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Serializes this DataSet, including its feature values if they are held
+      * in a FeatureMatrix, since the matrix itself is not serialized.
+      */
+     private void writeObject(ObjectOutputStream out)
+          throws IOException
+     {
+          double[][] held_values = feature_values;
+          if (feature_matrix != null)
+               feature_values = getFeatureValues();
+          out.defaultWriteObject();
+          feature_values = held_values;
+     }
+}
\ No newline at end of file
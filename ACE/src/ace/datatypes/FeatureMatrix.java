@@ -0,0 +1,638 @@
+/*
+ * FeatureMatrix.java
+ * Version 2.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package ace.datatypes;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * The feature values of a group of DataSets and of their sub-sets, stored one
+ * after another in a single file that is memory-mapped rather than read onto
+ * the heap. Each DataSet and each sub-set is a row of the matrix. The rows of
+ * a top-level DataSet are its own row followed by the rows of its sub-sets, in
+ * order.
+ *
+ * <p>DataSets whose values are held in a FeatureMatrix keep only a reference
+ * to the matrix and their row, and their getFeatureValues method reads the
+ * values from the file when they are needed. The operating system keeps as
+ * much of the file in memory as it can, so corpora with more feature values
+ * than fit on the heap can be processed. The values of DataSets that are
+ * already loaded can be moved into a FeatureMatrix with the moveFeatureValues
+ * method, and feature vector files can be parsed straight into a
+ * FeatureMatrix with a FeatureMatrix.Writer, so that their values are never
+ * held on the heap.
+ *
+ * <p>The file begins with a header of four ints: a magic number, the format
+ * version, the number of rows and 0. This is followed by the data of each
+ * row, in the order in which the rows were written: the dimensions of its
+ * features (int, -1 for features whose values are missing), padded to a
+ * multiple of 8 bytes, and then its feature values (double). The file ends
+ * with an index with three entries for each row, in the order of the rows:
+ * the position in the file of the values of the row (long), the position in
+ * the file of the dimensions of its features (long) and its number of
+ * features (int, -1 if the row has no feature values), followed by an int of
+ * 0. All numbers are big-endian.
+ *
+ * <p>The methods of this class may be called from several threads at once.
+ *
+ * @author Cory McKay (ACE 1.x) and Jessica Thompson (ACE 2.x)
+ */
+public class FeatureMatrix
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The file holding the matrix.
+      */
+     private	File				file;
+
+
+     /**
+      * The number of rows of the matrix.
+      */
+     private	int				number_rows;
+
+
+     /**
+      * The position in the file of the index.
+      */
+     private	long				index_position;
+
+
+     /**
+      * The mapped file, in consecutive chunks of CHUNK_SIZE bytes (the last may
+      * be shorter).
+      */
+     private	MappedByteBuffer[]		chunks;
+
+
+     /**
+      * The number of bytes mapped by each entry of chunks. Since this is a
+      * multiple of 8, no number in the file spans two chunks.
+      */
+     private	static final int		CHUNK_SIZE = 1 << 30;
+
+
+     /**
+      * Identifies files holding a FeatureMatrix.
+      */
+     private	static final int		MAGIC_NUMBER = 0x4143464d;
+
+
+     /**
+      * The version of the file format.
+      */
+     private	static final int		VERSION = 2;
+
+
+     /**
+      * The number of bytes in the header of the file.
+      */
+     private	static final int		HEADER_SIZE = 16;
+
+
+     /**
+      * The number of bytes in the entry of each row in the index.
+      */
+     private	static final int		INDEX_ENTRY_SIZE = 24;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Maps a FeatureMatrix that was saved with the write method or with a
+      * FeatureMatrix.Writer.
+      *
+      * @param	file		The file holding the matrix.
+      * @throws	Exception	An informative exception is thrown if the file
+      *				cannot be mapped or does not hold a
+      *				FeatureMatrix.
+      */
+     public FeatureMatrix(File file)
+          throws Exception
+     {
+          this.file = file;
+          long size;
+          RandomAccessFile random_access = new RandomAccessFile(file, "r");
+          try
+          {
+               FileChannel channel = random_access.getChannel();
+               size = channel.size();
+               int number_chunks = (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+               chunks = new MappedByteBuffer[number_chunks];
+               for (int i = 0; i < number_chunks; i++)
+               {
+                    long position = (long) i * CHUNK_SIZE;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                         Math.min(CHUNK_SIZE, size - position));
+               }
+          }
+          finally
+          {
+               random_access.close();
+          }
+
+          if (size < HEADER_SIZE || getInt(0) != MAGIC_NUMBER)
+               throw new Exception(file + " is not a feature matrix file.");
+          if (getInt(4) != VERSION)
+               throw new Exception( file + " is a version " + getInt(4) + " feature matrix file,\n" +
+                    "but only version " + VERSION + " files can be read." );
+          number_rows = getInt(8);
+          index_position = size - (long) INDEX_ENTRY_SIZE * number_rows;
+          if (number_rows < 0 || index_position < HEADER_SIZE)
+               throw new Exception("The feature matrix file " + file + " is truncated.");
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Saves the feature values of the given DataSets and of their sub-sets in
+      * the given file, in the format described above. The DataSets themselves
+      * are not changed.
+      *
+      * @param	data_sets	The top-level DataSets whose values are to be
+      *				saved.
+      * @param	file		The file to save the values in. It is
+      *				overwritten if it already exists.
+      * @throws	Exception	An informative exception is thrown if the file
+      *				cannot be written.
+      */
+     public static void write(DataSet[] data_sets, File file)
+          throws Exception
+     {
+          DataSet[] rows = getRows(data_sets);
+          Writer writer = new Writer(file);
+          try
+          {
+               for (int row = 0; row < rows.length; row++)
+               {
+                    double[][] values = rows[row].getFeatureValues();
+                    writer.writeRow(writer.addRow(), values, values == null ? 0 : values.length);
+               }
+               writer.close();
+          }
+          catch (Exception e)
+          {
+               writer.abort();
+               throw e;
+          }
+     }
+
+
+     /**
+      * Saves the feature values of the given DataSets and of their sub-sets in
+      * the given file and maps it as a FeatureMatrix. The DataSets are then
+      * changed to read their values from the matrix, and their feature_values
+      * and feature_names fields are set to null so that the memory that they
+      * took up may be reclaimed.
+      *
+      * @param	data_sets	The top-level DataSets whose values are to be
+      *				moved.
+      * @param	file		The file to save the values in. It is
+      *				overwritten if it already exists.
+      * @return			The FeatureMatrix holding the values.
+      * @throws	Exception	An informative exception is thrown if the file
+      *				cannot be written or mapped.
+      */
+     public static FeatureMatrix moveFeatureValues(DataSet[] data_sets, File file)
+          throws Exception
+     {
+          write(data_sets, file);
+          FeatureMatrix matrix = new FeatureMatrix(file);
+          matrix.setRowsOf(data_sets);
+          return matrix;
+     }
+
+
+     /**
+      * Changes the given DataSets and their sub-sets to read their values from
+      * the rows of this matrix, in the order described above. Their
+      * feature_values and feature_names fields are set to null.
+      *
+      * @param	data_sets	The top-level DataSets whose values are held in
+      *				this matrix.
+      * @throws	Exception	An informative exception is thrown if the
+      *				DataSets and their sub-sets do not have one
+      *				row each in this matrix.
+      */
+     public void setRowsOf(DataSet[] data_sets)
+          throws Exception
+     {
+          DataSet[] rows = getRows(data_sets);
+          if (rows.length != number_rows)
+               throw new Exception("The feature matrix in " + file + " does not match its DataSets.");
+          for (int row = 0; row < rows.length; row++)
+               rows[row].setFeatureMatrix(this, row);
+     }
+
+
+     /**
+      * Returns the file holding this matrix.
+      */
+     public File getFile()
+     {
+          return file;
+     }
+
+
+     /**
+      * Returns the number of rows of this matrix.
+      */
+     public int getNumberRows()
+     {
+          return number_rows;
+     }
+
+
+     /**
+      * Returns whether the given row has feature values.
+      *
+      * @param	row	The row.
+      */
+     public boolean hasFeatureValues(int row)
+     {
+          return getInt(index_position + (long) INDEX_ENTRY_SIZE * row + 16) != -1;
+     }
+
+
+     /**
+      * Returns the feature values of the given row, in the same form as the
+      * feature_values field of DataSet. The returned arrays are new copies.
+      *
+      * @param	row	The row.
+      * @return		The feature values, or null if the row has none.
+      */
+     public double[][] getFeatureValues(int row)
+     {
+          long entry = index_position + (long) INDEX_ENTRY_SIZE * row;
+          long value = getLong(entry);
+          long shape = getLong(entry + 8);
+          int number_features = getInt(entry + 16);
+          if (number_features == -1)
+               return null;
+
+          double[][] values = new double[number_features][];
+          for (int feat = 0; feat < number_features; feat++)
+          {
+               int dimensions = getInt(shape + 4L * feat);
+               if (dimensions != -1)
+               {
+                    values[feat] = new double[dimensions];
+                    for (int dim = 0; dim < dimensions; dim++)
+                    {
+                         values[feat][dim] = getDouble(value);
+                         value += 8;
+                    }
+               }
+          }
+          return values;
+     }
+
+
+     /**
+      * Stores the feature values of the given row in the given array, in the
+      * same way as the getFeatureValuesOfTopLevel method of DataSet that
+      * fills an array of doubles.
+      *
+      * @param	row		The row.
+      * @param	definitions	Feature definitions that are used to get the
+      *				dimensions of unknown features.
+      * @param	values		The array to store the values in. It must have
+      *				room for all of the values.
+      * @return			Whether or not the row has feature values.
+      */
+     public boolean getFeatureValues(int row, FeatureDefinition[] definitions, double[] values)
+     {
+          long entry = index_position + (long) INDEX_ENTRY_SIZE * row;
+          long value = getLong(entry);
+          long shape = getLong(entry + 8);
+          int number_features = getInt(entry + 16);
+          if (number_features == -1)
+               return false;
+
+          int current = 0;
+          for (int feat = 0; feat < number_features; feat++)
+          {
+               int dimensions = getInt(shape + 4L * feat);
+               if (dimensions == -1)
+               {
+                    for (int dim = 0; dim < definitions[feat].dimensions; dim++)
+                         values[current++] = Double.NaN;
+               }
+               else
+               {
+                    for (int dim = 0; dim < dimensions; dim++)
+                    {
+                         values[current++] = getDouble(value);
+                         value += 8;
+                    }
+               }
+          }
+          for (; current < values.length; current++)
+               values[current] = Double.NaN;
+          return true;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns the given top-level DataSets and their sub-sets in the order of
+      * the rows of a FeatureMatrix.
+      */
+     private static DataSet[] getRows(DataSet[] data_sets)
+     {
+          int number_rows = 0;
+          for (int set = 0; set < data_sets.length; set++)
+          {
+               number_rows++;
+               if (data_sets[set].sub_sets != null)
+                    number_rows += data_sets[set].sub_sets.length;
+          }
+          DataSet[] rows = new DataSet[number_rows];
+          int row = 0;
+          for (int set = 0; set < data_sets.length; set++)
+          {
+               rows[row++] = data_sets[set];
+               if (data_sets[set].sub_sets != null)
+                    for (int sub = 0; sub < data_sets[set].sub_sets.length; sub++)
+                         rows[row++] = data_sets[set].sub_sets[sub];
+          }
+          return rows;
+     }
+
+
+     /**
+      * Returns the int at the given position in the file.
+      */
+     private int getInt(long position)
+     {
+          return chunks[(int) (position / CHUNK_SIZE)].getInt((int) (position % CHUNK_SIZE));
+     }
+
+
+     /**
+      * Returns the long at the given position in the file.
+      */
+     private long getLong(long position)
+     {
+          return chunks[(int) (position / CHUNK_SIZE)].getLong((int) (position % CHUNK_SIZE));
+     }
+
+
+     /**
+      * Returns the double at the given position in the file.
+      */
+     private double getDouble(long position)
+     {
+          return chunks[(int) (position / CHUNK_SIZE)].getDouble((int) (position % CHUNK_SIZE));
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * Writes a FeatureMatrix file one row at a time, so that feature values
+      * can be stored in the file as they are parsed instead of first being
+      * collected on the heap.
+      *
+      * <p>Rows are first added with the addRow method, which numbers them in
+      * the order of the rows of the matrix, and their values may then be
+      * written in any order with the writeRow method. Rows whose values are
+      * never written have no feature values. The file can be mapped as a
+      * FeatureMatrix once the close method has been called.
+      */
+     public static class Writer
+     {
+          /**
+           * The file being written.
+           */
+          private	File			file;
+
+
+          /**
+           * The stream that the file is written through.
+           */
+          private	FileOutputStream	file_stream;
+
+
+          /**
+           * The buffered stream that rows are written to.
+           */
+          private	DataOutputStream	out;
+
+
+          /**
+           * The number of bytes written to the file so far.
+           */
+          private	long			position;
+
+
+          /**
+           * The number of rows added so far.
+           */
+          private	int			number_rows;
+
+
+          /**
+           * The index entries of the rows added so far: the positions of
+           * their values and of their dimensions and their number of
+           * features (-1 if no values have been written for them). Only the
+           * first number_rows entries are used.
+           */
+          private	long[]			value_positions;
+          private	long[]			shape_positions;
+          private	int[]			feature_counts;
+
+
+          /**
+           * Creates the given file and prepares to write rows to it.
+           *
+           * @param	file		The file to write the matrix to. It is
+           *				overwritten if it already exists.
+           * @throws	Exception	An informative exception is thrown if
+           *				the file cannot be created.
+           */
+          public Writer(File file)
+               throws Exception
+          {
+               this.file = file;
+               file_stream = new FileOutputStream(file);
+               out = new DataOutputStream(new BufferedOutputStream(file_stream, 1 << 16));
+               for (int i = 0; i < HEADER_SIZE; i++)
+                    out.writeByte(0);
+               position = HEADER_SIZE;
+               number_rows = 0;
+               value_positions = new long[64];
+               shape_positions = new long[64];
+               feature_counts = new int[64];
+          }
+
+
+          /**
+           * Adds a row without feature values to the matrix.
+           *
+           * @return	The row that was added.
+           */
+          public int addRow()
+          {
+               if (number_rows == feature_counts.length)
+               {
+                    long[] larger_values = new long[2 * number_rows];
+                    System.arraycopy(value_positions, 0, larger_values, 0, number_rows);
+                    value_positions = larger_values;
+                    long[] larger_shapes = new long[2 * number_rows];
+                    System.arraycopy(shape_positions, 0, larger_shapes, 0, number_rows);
+                    shape_positions = larger_shapes;
+                    int[] larger_counts = new int[2 * number_rows];
+                    System.arraycopy(feature_counts, 0, larger_counts, 0, number_rows);
+                    feature_counts = larger_counts;
+               }
+               value_positions[number_rows] = 0;
+               shape_positions[number_rows] = 0;
+               feature_counts[number_rows] = -1;
+               return number_rows++;
+          }
+
+
+          /**
+           * Returns the number of rows added so far.
+           */
+          public int getNumberRows()
+          {
+               return number_rows;
+          }
+
+
+          /**
+           * Removes the rows added after the first given number of rows, so
+           * that they can be added again. This is used when parsing of a file
+           * is started again from the beginning. The values already written
+           * for the removed rows are left unused in the file.
+           *
+           * @param	number_rows_kept	The number of rows to keep.
+           */
+          public void removeRowsAfter(int number_rows_kept)
+          {
+               if (number_rows_kept < number_rows)
+                    number_rows = number_rows_kept;
+          }
+
+
+          /**
+           * Writes the feature values of the given row, in the same form as
+           * the feature_values field of DataSet.
+           *
+           * @param	row			A row returned by addRow.
+           * @param	values			The values of the row's
+           *					features, or null if it has no
+           *					feature values. Only the first
+           *					number_features entries are
+           *					used.
+           * @param	number_features		The number of features.
+           * @throws	Exception		An informative exception is
+           *					thrown if the row has not been
+           *					added or already has values, or
+           *					if the file cannot be written.
+           */
+          public void writeRow(int row, double[][] values, int number_features)
+               throws Exception
+          {
+               if (row < 0 || row >= number_rows)
+                    throw new Exception("Row " + row + " has not been added to the feature matrix in " + file + ".");
+               if (feature_counts[row] != -1)
+                    throw new Exception("The values of row " + row + " have already been written to " + file + ".");
+               if (values == null)
+                    return;
+
+               // Write the dimensions of the features
+               shape_positions[row] = position;
+               for (int feat = 0; feat < number_features; feat++)
+                    out.writeInt(values[feat] == null ? -1 : values[feat].length);
+               position += 4L * number_features;
+               for (; position % 8 != 0; position++)
+                    out.writeByte(0);
+
+               // Write the feature values
+               value_positions[row] = position;
+               for (int feat = 0; feat < number_features; feat++)
+                    if (values[feat] != null)
+                    {
+                         for (int dim = 0; dim < values[feat].length; dim++)
+                              out.writeDouble(values[feat][dim]);
+                         position += 8L * values[feat].length;
+                    }
+               feature_counts[row] = number_features;
+          }
+
+
+          /**
+           * Writes the index and header of the matrix and closes the file.
+           * The file may then be mapped as a FeatureMatrix.
+           *
+           * @throws	Exception	An informative exception is thrown if
+           *				the file cannot be written.
+           */
+          public void close()
+               throws Exception
+          {
+               try
+               {
+                    // Write the index
+                    for (int row = 0; row < number_rows; row++)
+                    {
+                         out.writeLong(value_positions[row]);
+                         out.writeLong(shape_positions[row]);
+                         out.writeInt(feature_counts[row]);
+                         out.writeInt(0);
+                    }
+                    position += (long) INDEX_ENTRY_SIZE * number_rows;
+                    out.flush();
+
+                    // Write the header, now that the number of rows is known
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    header.putInt(MAGIC_NUMBER);
+                    header.putInt(VERSION);
+                    header.putInt(number_rows);
+                    header.putInt(0);
+                    header.flip();
+                    FileChannel channel = file_stream.getChannel();
+                    while (header.hasRemaining())
+                         channel.write(header, header.position());
+               }
+               finally
+               {
+                    out.close();
+               }
+               if (file.length() != position)
+                    throw new Exception("Could not write all of the feature values to " + file + ".");
+          }
+
+
+          /**
+           * Closes and deletes the file without completing it. Used when
+           * writing the matrix fails.
+           */
+          public void abort()
+          {
+               try {out.close();}
+               catch (IOException e) {}
+               file.delete();
+          }
+     }
+}
@@ -10,6 +10,7 @@ package ace.datatypes;
 
 import java.io.*;
 import ace.xmlparsers.XMLDocumentParser;
+import java.util.HashMap;
 import java.util.LinkedList;
 import weka.core.Instance;
 
@@ -385,16 +386,29 @@ public class SegmentedClassification
       */
      public static boolean verifyUniquenessOfIdentifiers(SegmentedClassification[] seg_classes)
      {
-          boolean unique = true;
-          for (int i = 0; i < seg_classes.length - 1; i++)
-               for (int j = i + 1; j < seg_classes.length; j++)
-                    if ( seg_classes[i].identifier.equals(seg_classes[j].identifier) )
-                    {
-               unique = false;
-               i = seg_classes.length;
-               j = seg_classes.length;
-                    }
-          return unique;
+          return getIdentifierIndex(seg_classes) != null;
+     }
+
+
+     /**
+      * Returns a table mapping the identifier of each of the given
+      * SegmentedClassifications to that SegmentedClassification, so that the
+      * SegmentedClassification corresponding to a DataSet can be found without
+      * searching through all of them. This is built once and passed to the
+      * methods below that find the labels of many DataSets.
+      *
+      * @param	seg_classes   The SegmentedClassifications to index.
+      * @return               The SegmentedClassifications keyed by identifier,
+      *                       or null if two of them have the same identifier.
+      */
+     public static HashMap<String, SegmentedClassification> getIdentifierIndex(SegmentedClassification[] seg_classes)
+     {
+          HashMap<String, SegmentedClassification> index =
+               new HashMap<String, SegmentedClassification>(seg_classes.length * 2);
+          for (int i = 0; i < seg_classes.length; i++)
+               if (index.put(seg_classes[i].identifier, seg_classes[i]) != null)
+                    return null;
+          return index;
      }
 
 
@@ -426,22 +440,33 @@ public class SegmentedClassification
           SegmentedClassification[] set_classifications )
           throws Exception
      {
-          if (!SegmentedClassification.verifyUniquenessOfIdentifiers(set_classifications))
-               throw new Exception( "Given classifications contain multiple references\n" +
-                    "to instances with the same identifier." );
+          return getOverallLabelsOfDataSets(data_sets, getCheckedIdentifierIndex(set_classifications));
+     }
+
 
+     /**
+      * Returns a 2-D array describing the top-level label(s) of the given
+      * DataSets, in the same way as the method above, but using
+      * SegmentedClassifications that have already been indexed by the
+      * getIdentifierIndex method.
+      *
+      * @param	data_sets               The DataSets to find top-level labels
+      *                                 for.
+      * @param	classification_index	Model classifications, keyed by
+      *                                 identifier.
+      * @return				The top-level labels for the data_sets
+      *                                 parameter.
+      */
+     public static String[][] getOverallLabelsOfDataSets( DataSet[] data_sets,
+          HashMap<String, SegmentedClassification> classification_index )
+     {
           String[][] data_set_overall_labels = new String[data_sets.length][];
           for (int set = 0; set < data_sets.length; set++)
           {
                data_set_overall_labels[set] = null;
-               for (int clas = 0; clas < set_classifications.length; clas++)
-               {
-                    if (data_sets[set].identifier.equals(set_classifications[clas].identifier))
-                    {
-                         data_set_overall_labels[set] = set_classifications[clas].classifications;
-                         clas = set_classifications.length;
-                    }
-               }
+               SegmentedClassification classification = classification_index.get(data_sets[set].identifier);
+               if (classification != null)
+                    data_set_overall_labels[set] = classification.classifications;
           }
 
           return data_set_overall_labels;
@@ -479,93 +504,107 @@ public class SegmentedClassification
           SegmentedClassification[] set_classifications )
           throws Exception
      {
-          if (!SegmentedClassification.verifyUniquenessOfIdentifiers(set_classifications))
-               throw new Exception( "Given classifications contain multiple references\n" +
-                    "to instances with the same identifier." );
+          return getSubSectionLabelsOfDataSets(data_sets, getCheckedIdentifierIndex(set_classifications));
+     }
+
 
+     /**
+      * Returns a 3-D array describing the sub-section label(s) of the given
+      * DataSets, in the same way as the method above, but using
+      * SegmentedClassifications that have already been indexed by the
+      * getIdentifierIndex method.
+      *
+      * @param	data_sets               The DataSets to find sub-section labels
+      *                                 for.
+      * @param	classification_index	Model classifications, keyed by
+      *                                 identifier.
+      * @return				The labels of all sub-sections.
+      */
+     public static String[][][] getSubSectionLabelsOfDataSets( DataSet[] data_sets,
+          HashMap<String, SegmentedClassification> classification_index )
+     {
           String[][][] labels = new String[data_sets.length][][];
           for (int set = 0; set < data_sets.length; set++)
           {
                labels[set] = null;
-               for (int clas = 0; clas < set_classifications.length; clas++)
+
+               // Find the SegmentedClassification that has the same identifier
+               // as the DataSet
+               SegmentedClassification classification = classification_index.get(data_sets[set].identifier);
+               if (classification != null)
                {
-                    // Find the DataSet and the SegmentedClassification that have
-                    // the same identifier
-                    if (data_sets[set].identifier.equals(set_classifications[clas].identifier))
+                    // Refer to the sub-sections of both the DataSet and the
+                    // SegmentedClassification
+                    DataSet[] data_sub_set = data_sets[set].sub_sets;
+                    SegmentedClassification[] classification_sections = classification.sub_classifications;
+
+                    if (data_sub_set != null && classification_sections != null)
                     {
-                         // Refer to the sub-sections of both the DataSet and the
-                         // SegmentedClassification
-                         DataSet[] data_sub_set = data_sets[set].sub_sets;
-                         SegmentedClassification[] classification_sections = set_classifications[clas].sub_classifications;
+                         // Prepare the label holder for this DataSet
+                         labels[set] = new String[data_sub_set.length][];
+
+                         // Find the ranges of influence for each sub-section of
+                         // the DataSet
+                         double[] data_low_bound = new double[data_sub_set.length];
+                         double[] data_high_bound = new double[data_sub_set.length];
+                         for (int sub = 0; sub < data_sub_set.length; sub++)
+                         {
+                              data_low_bound[sub] = data_sub_set[sub].start;
+                              data_high_bound[sub] = data_sub_set[sub].stop;
+                         }
 
-                         if (data_sub_set != null && classification_sections != null)
+                         // Find the ranges of influence for each sub-section of
+                         // the SegmentedClassification
+                         double[] classifications_low_bound = new double[classification_sections.length];
+                         double[] classifications_high_bound = new double[classification_sections.length];
+                         for (int cl_sub = 0; cl_sub < classification_sections.length; cl_sub++)
                          {
-                              // Prepare the label holder for this DataSet
-                              labels[set] = new String[data_sub_set.length][];
-
-                              // Find the ranges of influence for each sub-section of
-                              // the DataSet
-                              double[] data_low_bound = new double[data_sub_set.length];
-                              double[] data_high_bound = new double[data_sub_set.length];
-                              for (int sub = 0; sub < data_sub_set.length; sub++)
-                              {
-                                   data_low_bound[sub] = data_sub_set[sub].start;
-                                   data_high_bound[sub] = data_sub_set[sub].stop;
-                              }
+                              classifications_low_bound[cl_sub] = classification_sections[cl_sub].start;
+                              classifications_high_bound[cl_sub] = classification_sections[cl_sub].stop;
+                         }
 
-                              // Find the ranges of influence for each sub-section of
-                              // the SegmentedClassification
-                              double[] classifications_low_bound = new double[classification_sections.length];
-                              double[] classifications_high_bound = new double[classification_sections.length];
+                         // Go through each sub-section of the DataSet and find
+                         // the appropriate label(s) for it
+                         for (int sub = 0; sub < data_sub_set.length; sub++)
+                         {
+                              labels[set][sub] = null;
+                              double[] fraction_in = new double[classification_sections.length];
+                              double data_set_length = data_high_bound[sub] - data_low_bound[sub];
                               for (int cl_sub = 0; cl_sub < classification_sections.length; cl_sub++)
                               {
-                                   classifications_low_bound[cl_sub] = classification_sections[cl_sub].start;
-                                   classifications_high_bound[cl_sub] = classification_sections[cl_sub].stop;
-                              }
-
-                              // Go through each sub-section of the DataSet and find
-                              // the appropriate label(s) for it
-                              for (int sub = 0; sub < data_sub_set.length; sub++)
-                              {
-                                   labels[set][sub] = null;
-                                   double[] fraction_in = new double[classification_sections.length];
-                                   double data_set_length = data_high_bound[sub] - data_low_bound[sub];
-                                   for (int cl_sub = 0; cl_sub < classification_sections.length; cl_sub++)
-                                   {
-                                        // Case with no intersection
-                                        if ( data_high_bound[sub] < classifications_low_bound[cl_sub] ||
-                                             data_low_bound[sub] > classifications_high_bound[cl_sub] )
-                                             fraction_in[cl_sub] = 0;
-
-                                        // Case where data is fully within classification
-                                        else if ( data_low_bound[sub] >= classifications_low_bound[cl_sub] &&
-                                             data_high_bound[sub] <= classifications_high_bound[cl_sub] )
-                                             fraction_in[cl_sub] = 1.0;
-
-                                        // Case where classification is fully within data
-                                        else if ( data_low_bound[sub] <= classifications_low_bound[cl_sub] &&
-                                             data_high_bound[sub] >= classifications_high_bound[cl_sub] )
-                                             fraction_in[cl_sub] = (classifications_high_bound[cl_sub] - classifications_low_bound[cl_sub]) / data_set_length;
-
-                                        // Case where data is partially outside of the classification
-                                        // (to the left)
-                                        else if ( data_low_bound[sub] <= classifications_low_bound[cl_sub] &&
-                                             data_high_bound[sub] >= classifications_low_bound[cl_sub] &&
-                                             data_high_bound[sub] <= classifications_high_bound[cl_sub] )
-                                             fraction_in[cl_sub] = (data_high_bound[sub] - classifications_low_bound[cl_sub]) / data_set_length;
-
-                                        // Case where data is partially outside of the classification
-                                        // (to the right)
-                                        else if ( data_low_bound[sub] >= classifications_low_bound[cl_sub] &&
-                                             data_high_bound[sub] >= classifications_high_bound[cl_sub] &&
-                                             data_low_bound[sub] <= classifications_high_bound[cl_sub] )
-                                             fraction_in[cl_sub] = (classifications_high_bound[cl_sub] - data_low_bound[sub]) / data_set_length;
-
-                                        else fraction_in[cl_sub] = 0;
-                                   }
-                                   int best_cl_sub = mckay.utilities.staticlibraries.MathAndStatsMethods.getIndexOfLargest(fraction_in);
-                                   labels[set][sub] = classification_sections[best_cl_sub].classifications;
+                                   // Case with no intersection
+                                   if ( data_high_bound[sub] < classifications_low_bound[cl_sub] ||
+                                        data_low_bound[sub] > classifications_high_bound[cl_sub] )
+                                        fraction_in[cl_sub] = 0;
+
+                                   // Case where data is fully within classification
+                                   else if ( data_low_bound[sub] >= classifications_low_bound[cl_sub] &&
+                                        data_high_bound[sub] <= classifications_high_bound[cl_sub] )
+                                        fraction_in[cl_sub] = 1.0;
+
+                                   // Case where classification is fully within data
+                                   else if ( data_low_bound[sub] <= classifications_low_bound[cl_sub] &&
+                                        data_high_bound[sub] >= classifications_high_bound[cl_sub] )
+                                        fraction_in[cl_sub] = (classifications_high_bound[cl_sub] - classifications_low_bound[cl_sub]) / data_set_length;
+
+                                   // Case where data is partially outside of the classification
+                                   // (to the left)
+                                   else if ( data_low_bound[sub] <= classifications_low_bound[cl_sub] &&
+                                        data_high_bound[sub] >= classifications_low_bound[cl_sub] &&
+                                        data_high_bound[sub] <= classifications_high_bound[cl_sub] )
+                                        fraction_in[cl_sub] = (data_high_bound[sub] - classifications_low_bound[cl_sub]) / data_set_length;
+
+                                   // Case where data is partially outside of the classification
+                                   // (to the right)
+                                   else if ( data_low_bound[sub] >= classifications_low_bound[cl_sub] &&
+                                        data_high_bound[sub] >= classifications_high_bound[cl_sub] &&
+                                        data_low_bound[sub] <= classifications_high_bound[cl_sub] )
+                                        fraction_in[cl_sub] = (classifications_high_bound[cl_sub] - data_low_bound[sub]) / data_set_length;
+
+                                   else fraction_in[cl_sub] = 0;
                               }
+                              int best_cl_sub = mckay.utilities.staticlibraries.MathAndStatsMethods.getIndexOfLargest(fraction_in);
+                              labels[set][sub] = classification_sections[best_cl_sub].classifications;
                          }
                     }
                }
@@ -828,4 +867,24 @@ public class SegmentedClassification
                  return classes[i];
          return null;
      }
-}
\ No newline at end of file
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns the given SegmentedClassifications indexed by the
+      * getIdentifierIndex method, throwing an exception if two of them have the
+      * same identifier.
+      */
+     private static HashMap<String, SegmentedClassification> getCheckedIdentifierIndex(SegmentedClassification[] set_classifications)
+          throws Exception
+     {
+          HashMap<String, SegmentedClassification> classification_index =
+               getIdentifierIndex(set_classifications);
+          if (classification_index == null)
+               throw new Exception( "Given classifications contain multiple references\n" +
+                    "to instances with the same identifier." );
+          return classification_index;
+     }
+}
\ No newline at end of file
@@ -11,6 +11,7 @@ package ace.gui;
 import javax.swing.table.*;
 import ace.datatypes.*;
 import java.text.*;
+import java.util.HashMap;
 
 
 /**
@@ -128,13 +129,15 @@ public class InstancesTableModel
                String[][][] model_classifications_sections = null;
                if (data_board.model_classifications != null)
                {
+                    HashMap<String, SegmentedClassification> classification_index =
+                         data_board.getCheckedModelClassificationIndex();
                     model_classifications_overall =
                          SegmentedClassification.getOverallLabelsOfDataSets( data_board.feature_vectors,
-                         data_board.model_classifications );
+                         classification_index );
                     if (identifiers_to_expand != null)
                          model_classifications_sections =
                               SegmentedClassification.getSubSectionLabelsOfDataSets( data_board.feature_vectors,
-                              data_board.model_classifications );
+                              classification_index );
                }
 
                // Add the data for the feature vectors one row at a time
@@ -204,7 +207,7 @@ public class InstancesTableModel
                            // Find matching classification
                            if (data_board.model_classifications != null)
                            {
-                               SegmentedClassification matching = SegmentedClassification.findMatchingClassification(data_board.feature_vectors[i], data_board.model_classifications);
+                               SegmentedClassification matching = data_board.getMatchingModelClassification(data_board.feature_vectors[i]);
 
                                // Get classifications of sections
                                if (matching != null)
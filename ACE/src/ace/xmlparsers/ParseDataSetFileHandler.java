@@ -10,7 +10,9 @@ package ace.xmlparsers;
 
 import org.xml.sax.*;
 import java.util.LinkedList;
+import java.math.BigInteger;
 import ace.datatypes.DataSet;
+import ace.datatypes.FeatureMatrix;
 
 
 /**
@@ -24,6 +26,19 @@ import ace.datatypes.DataSet;
  * the contents of the files elements are stored in the parsed_file_contents
  * field.
  *
+ * <p>Since feature vector files can be very large, this handler avoids
+ * creating objects for each element. The text of elements is collected in
+ * reusable character buffers, feature values are parsed directly from these
+ * buffers into arrays that grow as needed, and each distinct feature name is
+ * only stored as a String once.
+ *
+ * <p>If a FeatureMatrix.Writer is given, the feature values of each DataSet
+ * and sub-set are written to it as soon as they are parsed rather than being
+ * stored in the DataSets, whose feature_values and feature_names fields are
+ * left null. Each DataSet and sub-set is added as a row of the matrix when its
+ * element starts, so the rows are in the order that the setRowsOf method of
+ * FeatureMatrix expects.
+ *
  * @author Cory McKay (ACE 1.x) and Jessica Thompson (ACE 2.x)
  */
 public class ParseDataSetFileHandler
@@ -64,22 +79,85 @@ public class ParseDataSetFileHandler
 
 
      /**
-      * The names of the features in a given DataSet.
+      * Whether a feature element has been encountered since the feature names
+      * and values were last stored in a DataSet.
       */
-     private LinkedList<String>		feature_name_list;
+     private	boolean			features_found;
+
+
+     /**
+      * The names of the features in a given DataSet. Only the first
+      * number_features entries are used.
+      */
+     private	String[]		feature_names;
 
 
      /**
       * The sets of values for each feature in a DataSet. In the same order
-      * as the feature_name_list field.
+      * as the feature_names field. Only the first number_features entries are
+      * used.
+      */
+     private	double[][]		feature_values;
+
+
+     /**
+      * The number of features found in the current DataSet so far.
+      */
+     private	int			number_features;
+
+
+     /**
+      * The text of the value(s) for a particular feature, one after another.
+      * Only the first value_text_length characters are used. The values are
+      * only parsed at the end of the feature, so that problems with the
+      * structure of the feature are reported before badly formatted values.
+      */
+     private	char[]			value_text;
+
+
+     /**
+      * The number of characters in value_text.
+      */
+     private	int			value_text_length;
+
+
+     /**
+      * The indice in value_text just after the text of each value found for
+      * the current feature. Only the first number_values entries are used.
+      */
+     private	int[]			value_ends;
+
+
+     /**
+      * The number of values found for the current feature so far.
       */
-     private LinkedList<double[]>	feature_values_list;
+     private	int			number_values;
 
 
      /**
-      * The value(s) for a particular feature.
+      * The writer that feature values are written to, or null if they are
+      * stored in the DataSets.
       */
-     private	LinkedList<String>	feature_indidual_values_list;
+     private	FeatureMatrix.Writer	matrix_writer;
+
+
+     /**
+      * The number of rows that matrix_writer had before this handler added
+      * any.
+      */
+     private	int			first_row;
+
+
+     /**
+      * The row of matrix_writer of current_root_dataset.
+      */
+     private	int			current_root_row;
+
+
+     /**
+      * The row of matrix_writer of current_subset_dataset.
+      */
+     private	int			current_subset_row;
 
 
      /**
@@ -87,11 +165,123 @@ public class ParseDataSetFileHandler
       */
      private	int			count;
 
-	 
-	 /**
-      * The element text parsed from the current XML element so far.
-     */
-     private StringBuffer				element_text_so_far;
+
+     /**
+      * The element text parsed from the current XML element so far. Only the
+      * first text_length characters are used.
+      */
+     private	char[]			text;
+
+
+     /**
+      * The number of characters of element text parsed from the current XML
+      * element so far.
+      */
+     private	int			text_length;
+
+
+     /**
+      * Each distinct feature name found so far, in a hash table with linear
+      * probing, so that repeated names can be found without creating new
+      * Strings. Null entries are empty.
+      */
+     private	String[]		name_table;
+
+
+     /**
+      * The number of names in name_table.
+      */
+     private	int			number_names;
+
+
+     /**
+      * Powers of 10 that can be represented exactly as doubles.
+      */
+     private	static final double[]	POWERS_OF_TEN =
+     {
+          1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+          1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+     };
+
+
+     /**
+      * The first 64 bits of 128 bit approximations of the powers of 10 from
+      * 10^MINIMUM_EXPONENT to 10^MAXIMUM_EXPONENT. Each approximation is the
+      * power of 10 multiplied by the power of 2 that makes its highest bit
+      * set, rounded down.
+      */
+     private	static final long[]	POWERS_OF_TEN_HIGH;
+
+
+     /**
+      * The last 64 bits of the approximations whose first bits are stored in
+      * POWERS_OF_TEN_HIGH.
+      */
+     private	static final long[]	POWERS_OF_TEN_LOW;
+
+
+     /**
+      * The smallest power of 10 in POWERS_OF_TEN_HIGH and POWERS_OF_TEN_LOW.
+      */
+     private	static final int	MINIMUM_EXPONENT = -348;
+
+
+     /**
+      * The largest power of 10 in POWERS_OF_TEN_HIGH and POWERS_OF_TEN_LOW.
+      */
+     private	static final int	MAXIMUM_EXPONENT = 347;
+
+
+     static
+     {
+          int number_powers = MAXIMUM_EXPONENT - MINIMUM_EXPONENT + 1;
+          POWERS_OF_TEN_HIGH = new long[number_powers];
+          POWERS_OF_TEN_LOW = new long[number_powers];
+          for (int exponent = MINIMUM_EXPONENT; exponent <= MAXIMUM_EXPONENT; exponent++)
+          {
+               BigInteger approximation;
+               if (exponent >= 0)
+               {
+                    approximation = BigInteger.TEN.pow(exponent);
+                    int shift = approximation.bitLength() - 128;
+                    approximation = shift > 0 ? approximation.shiftRight(shift) : approximation.shiftLeft(-shift);
+               }
+               else
+               {
+                    BigInteger divisor = BigInteger.TEN.pow(-exponent);
+                    approximation = BigInteger.ONE.shiftLeft(divisor.bitLength() + 127).divide(divisor);
+               }
+               POWERS_OF_TEN_HIGH[exponent - MINIMUM_EXPONENT] = approximation.shiftRight(64).longValue();
+               POWERS_OF_TEN_LOW[exponent - MINIMUM_EXPONENT] = approximation.longValue();
+          }
+     }
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Prepares to parse a file, storing the feature values in the DataSets.
+      */
+     public ParseDataSetFileHandler()
+     {
+          this(null);
+     }
+
+
+     /**
+      * Prepares to parse a file, writing the feature values to the given
+      * FeatureMatrix.Writer if it is not null.
+      *
+      * @param	matrix_writer	The writer to write feature values to, or
+      *				null if they are to be stored in the DataSets.
+      */
+     public ParseDataSetFileHandler(FeatureMatrix.Writer matrix_writer)
+     {
+          this.matrix_writer = matrix_writer;
+          if (matrix_writer != null)
+               first_row = matrix_writer.getNumberRows();
+     }
 
 
      /* PUBLIC METHODS ********************************************************/
@@ -99,19 +289,31 @@ public class ParseDataSetFileHandler
 
      /**
       * This method is called when the start of the XML file to be parsed is
-      * reached. Instantiates the root_datasets field, sets other fielsds to
-      * null and sets the count to 0.
+      * reached. Instantiates the root_datasets field and the buffers, sets
+      * other fields to null and sets the count to 0. Any rows that an earlier
+      * parse added to the FeatureMatrix.Writer are removed.
       */
      public void startDocument()
      {
+          if (matrix_writer != null)
+               matrix_writer.removeRowsAfter(first_row);
           root_datasets = new LinkedList<DataSet>();
           current_root_dataset = null;
           subset_datasets = null;
           current_subset_dataset = null;
-          feature_name_list = null;
-          feature_values_list = null;
-          feature_indidual_values_list = null;
+          features_found = false;
+          feature_names = new String[16];
+          feature_values = new double[16][];
+          number_features = 0;
+          value_text = new char[256];
+          value_text_length = 0;
+          value_ends = new int[16];
+          number_values = 0;
           count = 0;
+          text = new char[256];
+          text_length = 0;
+          name_table = new String[64];
+          number_names = 0;
      }
 
 
@@ -127,8 +329,8 @@ public class ParseDataSetFileHandler
      public void startElement(String namespace, String name, String qName, Attributes atts)
      throws SAXException
      {
-          // Reset the string buffer
-          element_text_so_far = new StringBuffer();
+          // Reset the text buffer
+          text_length = 0;
 
          // Make sure is correct file type
           if (count == 0)
@@ -137,21 +339,22 @@ public class ParseDataSetFileHandler
           count++;
 
           // Identify the type of tag
-          if (name.equals("feature"))
+          if (name.equals("v"))
+               return;
+          else if (name.equals("feature"))
           {
-               // Prepare the linked lists to store feature values
-               if (feature_name_list == null)
-               {
-                    feature_name_list = new LinkedList<String>();
-                    feature_values_list = new LinkedList<double[]>();
-               }
-               feature_indidual_values_list = new LinkedList<String>();
+               // Prepare to store feature values
+               features_found = true;
+               value_text_length = 0;
+               number_values = 0;
           }
-		  else if (name.equals("data_set"))
+          else if (name.equals("data_set"))
           {
                // Create a new Dataset and add it to root_datasets.
                current_root_dataset = new DataSet();
                root_datasets.add(current_root_dataset);
+               if (matrix_writer != null)
+                    current_root_row = matrix_writer.addRow();
           }
           else if (name.equals("section"))
           {
@@ -165,6 +368,8 @@ public class ParseDataSetFileHandler
                current_subset_dataset = new DataSet();
                current_subset_dataset.parent = current_root_dataset;
                subset_datasets.add(current_subset_dataset);
+               if (matrix_writer != null)
+                    current_subset_row = matrix_writer.addRow();
 
                // Extract the name of the DataSet from the id attribute
                current_subset_dataset.start = Double.parseDouble(atts.getValue(0));
@@ -179,101 +384,95 @@ public class ParseDataSetFileHandler
       */
      public void characters(char[] ch, int start, int length)
      {
-          // The text stored in the element
-          String text = new String(ch, start, length);
-
-          // Store the text
-          element_text_so_far.append(text);
+          // Store the text, enlarging the buffer if necessary
+          if (text_length + length > text.length)
+          {
+               char[] larger = new char[Math.max(2 * text.length, text_length + length)];
+               System.arraycopy(text, 0, larger, 0, text_length);
+               text = larger;
+          }
+          System.arraycopy(ch, start, text, text_length, length);
+          text_length += length;
      }
 
 
      /**
       * This method is called when the end tag of an XML element is encountered.
       *
-      * @param	name	Name of the element that is encountered.
+      * @param	name		Name of the element that is encountered.
+      * @throws	SAXException	Exception thrown if the feature values cannot
+      *				be written to the FeatureMatrix.Writer.
       */
      public void endElement(String namespace, String name, String qName)
+     throws SAXException
      {
-          // Store element text
-          String parsed_text = element_text_so_far.toString();
-
           // Parse the data
-		  if (name.equals("v"))
-               feature_indidual_values_list.add(parsed_text);
+          if (name.equals("v"))
+          {
+               if (number_values == value_ends.length)
+               {
+                    int[] larger = new int[2 * value_ends.length];
+                    System.arraycopy(value_ends, 0, larger, 0, number_values);
+                    value_ends = larger;
+               }
+               if (value_text_length + text_length > value_text.length)
+               {
+                    char[] larger = new char[Math.max(2 * value_text.length, value_text_length + text_length)];
+                    System.arraycopy(value_text, 0, larger, 0, value_text_length);
+                    value_text = larger;
+               }
+               System.arraycopy(text, 0, value_text, value_text_length, text_length);
+               value_text_length += text_length;
+               value_ends[number_values++] = value_text_length;
+          }
           else if (name.equals("name"))
-               feature_name_list.add(parsed_text);
-		  else if (name.equals("data_set_id"))
-               current_root_dataset.identifier = parsed_text;
-          else if (name.equals("feature"))
           {
-               // Convert the feature_indidual_values_list into doubles
-               // and store it in feature_values_list
-               Object[] fvs_obj = (Object[]) feature_indidual_values_list.toArray();
-               double[] fvs_double = new double[fvs_obj.length];
-               for (int i = 0; i < fvs_double.length; i++)
-                    fvs_double[i] = Double.parseDouble( (String) fvs_obj[i] );
-
-               // Reset variables
-               feature_values_list.add(fvs_double);
-               feature_indidual_values_list = null;
+               if (number_features == feature_names.length)
+               {
+                    String[] larger_names = new String[2 * feature_names.length];
+                    System.arraycopy(feature_names, 0, larger_names, 0, number_features);
+                    feature_names = larger_names;
+                    double[][] larger_values = new double[2 * feature_values.length][];
+                    System.arraycopy(feature_values, 0, larger_values, 0, number_features);
+                    feature_values = larger_values;
+               }
+               feature_names[number_features] = getFeatureName(text, text_length);
           }
-		  else if (name.equals("data_set"))
+          else if (name.equals("data_set_id"))
+               current_root_dataset.identifier = new String(text, 0, text_length);
+          else if (name.equals("feature"))
           {
-               // Store feature_name_list and feature_values_list in
-               // current_root_dataset
-               if (feature_name_list != null)
+               // Parse and store the values of the feature
+               double[] fvs_double = new double[number_values];
+               int value_start = 0;
+               for (int i = 0; i < number_values; i++)
                {
-                    Object[] fnl_obj = (Object[]) feature_name_list.toArray();
-                    String[] fnl_string = new String[fnl_obj.length];
-                    for (int i = 0; i < fnl_string.length; i++)
-                         fnl_string[i] = (String) fnl_obj[i];
-                    current_root_dataset.feature_names = fnl_string;
-
-                    Object[] fvl_obj = (Object[]) feature_values_list.toArray();
-                    double[][] fvl_doub = new double[fvl_obj.length][];
-                    for (int i = 0; i < fvl_doub.length; i++)
-                         fvl_doub[i] = (double[]) fvl_obj[i];
-                    current_root_dataset.feature_values = fvl_doub;
+                    fvs_double[i] = parseDouble(value_text, value_start, value_ends[i] - value_start);
+                    value_start = value_ends[i];
                }
+               feature_values[number_features++] = fvs_double;
+          }
+          else if (name.equals("data_set"))
+          {
+               // Store feature names and values in current_root_dataset
+               if (features_found)
+                    storeFeatures(current_root_dataset, current_root_row);
 
                // Store the sub-sets of the data set (null if none)
                if (subset_datasets != null)
-               {
-                    Object[] dsl_obj = (Object[]) subset_datasets.toArray();
-                    DataSet[] dsl_ds = new DataSet[dsl_obj.length];
-                    for (int i = 0; i < dsl_ds.length; i++)
-                         dsl_ds[i] = (DataSet) dsl_obj[i];
-                    current_root_dataset.sub_sets = dsl_ds;
-               }
+                    current_root_dataset.sub_sets = subset_datasets.toArray(new DataSet[subset_datasets.size()]);
 
                // Reset variables
-               feature_name_list = null;
-               feature_values_list = null;
                subset_datasets = null;
                current_root_dataset = null;
           }
           else if (name.equals("section"))
           {
-               // Store feature_name_list and feature_values_list in
-               // current_subset_dataset
-               if (feature_name_list != null)
-               {
-                    Object[] fnl_obj = (Object[]) feature_name_list.toArray();
-                    String[] fnl_string = new String[fnl_obj.length];
-                    for (int i = 0; i < fnl_string.length; i++)
-                         fnl_string[i] = (String) fnl_obj[i];
-                    current_subset_dataset.feature_names = fnl_string;
-
-                    Object[] fvl_obj = (Object[]) feature_values_list.toArray();
-                    double[][] fvl_doub = new double[fvl_obj.length][];
-                    for (int i = 0; i < fvl_doub.length; i++)
-                         fvl_doub[i] = (double[]) fvl_obj[i];
-                    current_subset_dataset.feature_values = fvl_doub;
-               }
+               // Store feature names and values in current_subset_dataset
+               if (features_found)
+                    storeFeatures(current_subset_dataset, current_subset_row);
 
                // Reset variables
-               feature_name_list = null;
-               feature_values_list = null;
                current_subset_dataset = null;
           }
      }
@@ -288,4 +487,294 @@ public class ParseDataSetFileHandler
           // Put contents of tree into parsed_file_contents
           parsed_file_contents = root_datasets.toArray();
      }
-}
\ No newline at end of file
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Stores copies of the feature names and values found since they were
+      * last stored in the given DataSet, or writes the values to the given row
+      * of matrix_writer if there is one, and prepares to find more.
+      */
+     private void storeFeatures(DataSet data_set, int row)
+          throws SAXException
+     {
+          if (matrix_writer != null)
+          {
+               try
+               {matrix_writer.writeRow(row, feature_values, number_features);}
+               catch (Exception e)
+               {throw new SAXException(e.getMessage());}
+          }
+          else
+          {
+               data_set.feature_names = new String[number_features];
+               System.arraycopy(feature_names, 0, data_set.feature_names, 0, number_features);
+               data_set.feature_values = new double[number_features][];
+               System.arraycopy(feature_values, 0, data_set.feature_values, 0, number_features);
+          }
+
+          for (int feat = 0; feat < number_features; feat++)
+               feature_values[feat] = null;
+          number_features = 0;
+          features_found = false;
+     }
+
+
+     /**
+      * Returns a String holding the first length characters of the given
+      * array. The same String is returned each time that the same name is
+      * found.
+      */
+     private String getFeatureName(char[] chars, int length)
+     {
+          int hash = 0;
+          for (int i = 0; i < length; i++)
+               hash = 31 * hash + chars[i];
+
+          // Look for the name in the table
+          int mask = name_table.length - 1;
+          int slot = (hash ^ (hash >>> 16)) & mask;
+          while (name_table[slot] != null)
+          {
+               String candidate = name_table[slot];
+               if (candidate.hashCode() == hash && candidate.length() == length)
+               {
+                    boolean same = true;
+                    for (int i = 0; i < length && same; i++)
+                         if (candidate.charAt(i) != chars[i])
+                              same = false;
+                    if (same)
+                         return candidate;
+               }
+               slot = (slot + 1) & mask;
+          }
+
+          // Add a new name, enlarging the table if it is half full
+          String new_name = new String(chars, 0, length);
+          name_table[slot] = new_name;
+          number_names++;
+          if (2 * number_names > name_table.length)
+          {
+               String[] old_table = name_table;
+               name_table = new String[2 * old_table.length];
+               mask = name_table.length - 1;
+               for (int i = 0; i < old_table.length; i++)
+                    if (old_table[i] != null)
+                    {
+                         int old_hash = old_table[i].hashCode();
+                         int new_slot = (old_hash ^ (old_hash >>> 16)) & mask;
+                         while (name_table[new_slot] != null)
+                              new_slot = (new_slot + 1) & mask;
+                         name_table[new_slot] = old_table[i];
+                    }
+          }
+          return new_name;
+     }
+
+
+     /**
+      * Returns the double represented by the given characters, with exactly
+      * the same result as Double.parseDouble. Plain decimal numbers with at
+      * most 18 significant digits are parsed directly, either with a single
+      * correctly rounded operation when this is exact or otherwise with the
+      * getDoubleBits method. All other text, including text that is not a
+      * valid number, and the rare numbers that getDoubleBits cannot round
+      * with certainty are passed to Double.parseDouble.
+      *
+      * @param	chars			The characters to parse.
+      * @param	start			The indice of the first character.
+      * @param	length			The number of characters.
+      * @return				The parsed value.
+      * @throws	NumberFormatException	Thrown if the text is not a valid
+      *					number.
+      */
+     private static strictfp double parseDouble(char[] chars, int start, int length)
+     {
+          // Ignore leading and trailing whitespace, as Double.parseDouble does
+          int position = start;
+          int end = start + length;
+          while (position < end && chars[position] <= ' ')
+               position++;
+          while (end > position && chars[end - 1] <= ' ')
+               end--;
+
+          // Sign
+          boolean negative = false;
+          if (position < end && (chars[position] == '-' || chars[position] == '+'))
+          {
+               negative = chars[position] == '-';
+               position++;
+          }
+
+          // Digits before and after the decimal point
+          long mantissa = 0;
+          int significant_digits = 0;
+          int number_digits = 0;
+          int exponent = 0;
+          boolean point_found = false;
+          for (; position < end; position++)
+          {
+               char c = chars[position];
+               if (c >= '0' && c <= '9')
+               {
+                    number_digits++;
+                    if (mantissa != 0 || c != '0')
+                    {
+                         if (++significant_digits > 18)
+                              return Double.parseDouble(new String(chars, start, length));
+                         mantissa = 10 * mantissa + (c - '0');
+                    }
+                    if (point_found)
+                         exponent--;
+               }
+               else if (c == '.' && !point_found)
+                    point_found = true;
+               else
+                    break;
+          }
+          if (number_digits == 0)
+               return Double.parseDouble(new String(chars, start, length));
+
+          // Exponent
+          if (position < end && (chars[position] == 'e' || chars[position] == 'E'))
+          {
+               position++;
+               boolean negative_exponent = false;
+               if (position < end && (chars[position] == '-' || chars[position] == '+'))
+               {
+                    negative_exponent = chars[position] == '-';
+                    position++;
+               }
+               int exponent_digits = 0;
+               int explicit_exponent = 0;
+               for (; position < end && chars[position] >= '0' && chars[position] <= '9'; position++)
+               {
+                    if (++exponent_digits > 4)
+                         return Double.parseDouble(new String(chars, start, length));
+                    explicit_exponent = 10 * explicit_exponent + (chars[position] - '0');
+               }
+               if (exponent_digits == 0)
+                    return Double.parseDouble(new String(chars, start, length));
+               exponent += negative_exponent ? -explicit_exponent : explicit_exponent;
+          }
+
+          // Use Double.parseDouble for anything else, such as suffixes
+          if (position != end)
+               return Double.parseDouble(new String(chars, start, length));
+
+          // Find the value exactly if possible
+          if (mantissa == 0 || (mantissa <= (1L << 53) && exponent >= -22 && exponent <= 22))
+          {
+               double value;
+               if (mantissa == 0)
+                    value = 0.0;
+               else if (exponent < 0)
+                    value = (double) mantissa / POWERS_OF_TEN[-exponent];
+               else
+                    value = (double) mantissa * POWERS_OF_TEN[exponent];
+               return negative ? -value : value;
+          }
+
+          // Otherwise find it from the approximation of the power of 10
+          long bits = getDoubleBits(mantissa, exponent);
+          if (bits == -1L)
+               return Double.parseDouble(new String(chars, start, length));
+          if (negative)
+               bits |= Long.MIN_VALUE;
+          return Double.longBitsToDouble(bits);
+     }
+
+
+     /**
+      * Returns the bits of the double nearest to mantissa * 10^exponent, found
+      * by multiplying the mantissa by the 128 bit approximation of the power of
+      * 10 (the Eisel-Lemire algorithm). The approximation is precise enough to
+      * round correctly unless the product is very close to halfway between two
+      * doubles, which is detected.
+      *
+      * @param	mantissa	The decimal mantissa. Must be positive.
+      * @param	exponent	The decimal exponent.
+      * @return			The bits of the double, or -1 if the value
+      *				cannot be rounded with certainty or is too
+      *				small or too large to be a normal double.
+      */
+     private static long getDoubleBits(long mantissa, int exponent)
+     {
+          if (exponent < MINIMUM_EXPONENT || exponent > MAXIMUM_EXPONENT)
+               return -1L;
+
+          // Shift the mantissa so that its highest bit is set
+          int leading_zeros = Long.numberOfLeadingZeros(mantissa);
+          mantissa <<= leading_zeros;
+          long binary_exponent = ((217706 * exponent) >> 16) + 64 + 1023 - leading_zeros;
+
+          // Multiply by the first half of the power of 10, and by the second
+          // half too if the lower bits of the product could be affected
+          int index = exponent - MINIMUM_EXPONENT;
+          long high = multiplyHigh(mantissa, POWERS_OF_TEN_HIGH[index]);
+          long low = mantissa * POWERS_OF_TEN_HIGH[index];
+          if ((high & 0x1FF) == 0x1FF && isLessUnsigned(low + mantissa, mantissa))
+          {
+               long extra_high = multiplyHigh(mantissa, POWERS_OF_TEN_LOW[index]);
+               long extra_low = mantissa * POWERS_OF_TEN_LOW[index];
+               long merged_high = high;
+               long merged_low = low + extra_high;
+               if (isLessUnsigned(merged_low, low))
+                    merged_high++;
+               if ((merged_high & 0x1FF) == 0x1FF && merged_low == -1L && isLessUnsigned(extra_low + mantissa, mantissa))
+                    return -1L;
+               high = merged_high;
+               low = merged_low;
+          }
+
+          // Keep the top 54 bits of the product
+          int top_bit = (int) (high >>> 63);
+          long result = high >>> (top_bit + 9);
+          binary_exponent -= 1 ^ top_bit;
+
+          // Give up if the product may be exactly halfway between two doubles
+          if (low == 0 && (high & 0x1FF) == 0 && (result & 3) == 1)
+               return -1L;
+
+          // Round to 53 bits
+          result += result & 1;
+          result >>>= 1;
+          if ((result >>> 53) > 0)
+          {
+               result >>>= 1;
+               binary_exponent++;
+          }
+
+          if (binary_exponent <= 0 || binary_exponent >= 0x7FF)
+               return -1L;
+          return (binary_exponent << 52) | (result & 0x000FFFFFFFFFFFFFL);
+     }
+
+
+     /**
+      * Returns the upper 64 bits of the 128 bit product of the given numbers,
+      * which are treated as unsigned.
+      */
+     private static long multiplyHigh(long a, long b)
+     {
+          long a_low = a & 0xFFFFFFFFL;
+          long a_high = a >>> 32;
+          long b_low = b & 0xFFFFFFFFL;
+          long b_high = b >>> 32;
+          long low_low = a_low * b_low;
+          long high_low = a_high * b_low;
+          long middle = (low_low >>> 32) + (high_low & 0xFFFFFFFFL) + a_low * b_high;
+          return a_high * b_high + (high_low >>> 32) + (middle >>> 32);
+     }
+
+
+     /**
+      * Returns whether a is less than b when both are treated as unsigned.
+      */
+     private static boolean isLessUnsigned(long a, long b)
+     {
+          return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+     }
+}
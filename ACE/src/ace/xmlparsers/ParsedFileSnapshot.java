@@ -0,0 +1,890 @@
+/*
+ * ParsedFileSnapshot.java
+ * Version 2.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package ace.xmlparsers;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+import ace.datatypes.DataSet;
+import ace.datatypes.FeatureMatrix;
+import ace.datatypes.FeatureDefinition;
+import ace.datatypes.SegmentedClassification;
+
+
+/**
+ * A binary snapshot of the contents of a parsed ACE XML file, saved next to
+ * the XML file so that later parses of the same file can load the snapshot
+ * instead of parsing the XML again. Snapshots are used by the
+ * parseXMLDocument method of XMLDocumentParser for feature_vector_file,
+ * feature_key_file and classifications_file files.
+ *
+ * <p>The snapshot of a file is stored in the same directory, in a hidden file
+ * with the name of the XML file preceded by a period and followed by
+ * SNAPSHOT_EXTENSION. It records the size, modification time and CRC-32
+ * checksum of the XML file it was made from, and is only used if all three
+ * still match the XML file. Snapshots are loaded by memory-mapping them.
+ *
+ * <p>The snapshot file begins with a header of four ints (a magic number, the
+ * format version, a code for the type of XML file and 0) and four longs (the
+ * size, modification time and checksum of the XML file and the number of
+ * doubles stored in the snapshot). This is followed by all of the doubles
+ * stored in the snapshot, then by a table of all of the distinct Strings
+ * (each stored as an int length, or -1 for null, followed by its chars) and
+ * then by the structure of the parsed objects, in which Strings are referred
+ * to by their int indice in the table. All numbers are big-endian.
+ *
+ * <p>The feature values in a snapshot of a feature_vector_file file may be
+ * written to a FeatureMatrix.Writer as they are loaded instead of being
+ * stored in the DataSets, in the same way as by ParseDataSetFileHandler.
+ *
+ * <p>Problems reading or writing snapshots are not reported, as the XML file
+ * can always be parsed instead.
+ *
+ * @author Cory McKay (ACE 1.x) and Jessica Thompson (ACE 2.x)
+ */
+public class ParsedFileSnapshot
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The XML file that this is a snapshot of.
+      */
+     private	File				xml_file;
+
+
+     /**
+      * The file holding the snapshot.
+      */
+     private	File				snapshot_file;
+
+
+     /**
+      * The code of the type of the XML file (one of the FEATURE_VECTOR_FILE,
+      * FEATURE_KEY_FILE or CLASSIFICATIONS_FILE constants).
+      */
+     private	int				document_code;
+
+
+     /**
+      * The size of the XML file when this object was constructed.
+      */
+     private	long				xml_size;
+
+
+     /**
+      * The modification time of the XML file when this object was
+      * constructed.
+      */
+     private	long				xml_modified;
+
+
+     /**
+      * The CRC-32 checksum of the XML file, or -1 if it has not been
+      * calculated yet.
+      */
+     private	long				xml_checksum;
+
+
+     /**
+      * The extension added to the name of an XML file to get the name of its
+      * snapshot.
+      */
+     public	static final String		SNAPSHOT_EXTENSION = ".snapshot";
+
+
+     /**
+      * Identifies files holding a snapshot.
+      */
+     private	static final int		MAGIC_NUMBER = 0x41435853;
+
+
+     /**
+      * The version of the file format.
+      */
+     private	static final int		VERSION = 1;
+
+
+     /**
+      * The number of bytes in the header of the file.
+      */
+     private	static final int		HEADER_SIZE = 48;
+
+
+     /**
+      * The codes identifying the types of XML file that snapshots can be made
+      * of.
+      */
+     private	static final int		FEATURE_VECTOR_FILE = 1;
+     private	static final int		FEATURE_KEY_FILE = 2;
+     private	static final int		CLASSIFICATIONS_FILE = 3;
+
+
+     /**
+      * The maximum number of bytes of a snapshot that are mapped at once.
+      */
+     private	static final int		WINDOW_SIZE = 1 << 28;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Prepares to load or save the snapshot of the given XML file. The size
+      * and modification time of the file are noted.
+      *
+      * @param	xml_file	The XML file.
+      * @param	document_type	The type of XML file, as given to the
+      *				parseXMLDocument method of XMLDocumentParser.
+      * @throws	Exception	An exception is thrown if snapshots cannot be
+      *				made of the given type of file.
+      */
+     public ParsedFileSnapshot(File xml_file, String document_type)
+          throws Exception
+     {
+          document_code = getDocumentCode(document_type);
+          if (document_code == -1)
+               throw new Exception("Snapshots cannot be made of files of type " + document_type + ".");
+          this.xml_file = xml_file;
+          snapshot_file = new File( xml_file.getAbsoluteFile().getParentFile(),
+               "." + xml_file.getName() + SNAPSHOT_EXTENSION );
+          xml_size = xml_file.length();
+          xml_modified = xml_file.lastModified();
+          xml_checksum = -1;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns whether snapshots can be made of the given type of XML file.
+      *
+      * @param	document_type	The type of XML file, as given to the
+      *				parseXMLDocument method of XMLDocumentParser.
+      */
+     public static boolean isSupported(String document_type)
+     {
+          return getDocumentCode(document_type) != -1;
+     }
+
+
+     /**
+      * Returns the file that the snapshot is stored in.
+      */
+     public File getSnapshotFile()
+     {
+          return snapshot_file;
+     }
+
+
+     /**
+      * Loads the snapshot of the XML file, if there is one that was made from
+      * the current contents of the XML file.
+      *
+      * @return	The contents of the XML file, in the same form as the
+      *		parsed_file_contents field of the handler that parses it, or
+      *		null if there is no up to date snapshot.
+      */
+     public Object load()
+     {
+          return load(null);
+     }
+
+
+     /**
+      * Loads the snapshot of the XML file, if there is one that was made from
+      * the current contents of the XML file. The feature values of DataSets
+      * are written to the given FeatureMatrix.Writer, if it is not null, with
+      * one row added for each DataSet and sub-set. No rows are added if null
+      * is returned.
+      *
+      * @param	matrix_writer	The writer to write feature values to, or
+      *				null if they are to be stored in the DataSets.
+      * @return			The contents of the XML file, in the same form
+      *				as the parsed_file_contents field of the handler
+      *				that parses it, or null if there is no up to
+      *				date snapshot.
+      */
+     public Object load(FeatureMatrix.Writer matrix_writer)
+     {
+          if (!snapshot_file.isFile())
+               return null;
+          int first_row = matrix_writer == null ? 0 : matrix_writer.getNumberRows();
+          try
+          {
+               RandomAccessFile random_access = new RandomAccessFile(snapshot_file, "r");
+               try
+               {
+                    FileChannel channel = random_access.getChannel();
+                    MappedInput header = new MappedInput(channel, 0);
+                    if ( header.getInt() != MAGIC_NUMBER ||
+                         header.getInt() != VERSION ||
+                         header.getInt() != document_code )
+                         return null;
+                    header.getInt();
+                    if (header.getLong() != xml_size || header.getLong() != xml_modified)
+                         return null;
+                    long checksum = header.getLong();
+                    long number_doubles = header.getLong();
+                    if (checksum != getChecksum())
+                         return null;
+
+                    MappedInput values = new MappedInput(channel, HEADER_SIZE);
+                    MappedInput structure = new MappedInput(channel, HEADER_SIZE + 8 * number_doubles);
+                    String[] strings = new String[structure.getInt()];
+                    for (int i = 0; i < strings.length; i++)
+                         strings[i] = structure.getString();
+
+                    Object[] contents = new Object[structure.getInt()];
+                    for (int i = 0; i < contents.length; i++)
+                    {
+                         if (document_code == FEATURE_VECTOR_FILE)
+                              contents[i] = readDataSet(structure, values, strings, null, matrix_writer);
+                         else if (document_code == FEATURE_KEY_FILE)
+                              contents[i] = readFeatureDefinition(structure, strings);
+                         else
+                              contents[i] = readClassification(structure, strings);
+                    }
+                    return contents;
+               }
+               finally
+               {
+                    random_access.close();
+               }
+          }
+          catch (Exception e)
+          {
+               if (matrix_writer != null)
+                    matrix_writer.removeRowsAfter(first_row);
+               return null;
+          }
+     }
+
+
+     /**
+      * Saves a snapshot of the given contents of the XML file. Nothing is
+      * saved if the XML file has changed since this object was constructed or
+      * if the snapshot cannot be written.
+      *
+      * @param	contents	The contents of the XML file, in the same form
+      *				as the parsed_file_contents field of the handler
+      *				that parsed it.
+      */
+     public void save(Object contents)
+     {
+          File temporary_file = null;
+          try
+          {
+               long checksum = getChecksum();
+               if (xml_file.length() != xml_size || xml_file.lastModified() != xml_modified)
+                    return;
+               Object[] objects = (Object[]) contents;
+
+               // Find the Strings and the number of doubles to be stored
+               HashMap<String, Integer> string_indices = new HashMap<String, Integer>();
+               LinkedList<String> strings = new LinkedList<String>();
+               long number_doubles = 0;
+               for (int i = 0; i < objects.length; i++)
+               {
+                    if (document_code == FEATURE_VECTOR_FILE)
+                         number_doubles += indexDataSet((DataSet) objects[i], string_indices, strings);
+                    else if (document_code == FEATURE_KEY_FILE)
+                    {
+                         FeatureDefinition definition = (FeatureDefinition) objects[i];
+                         indexString(definition.name, string_indices, strings);
+                         indexString(definition.description, string_indices, strings);
+                    }
+                    else
+                         indexClassification((SegmentedClassification) objects[i], string_indices, strings);
+               }
+
+               // Write the snapshot to a temporary file, so that a partly
+               // written snapshot is never found
+               temporary_file = File.createTempFile(".snapshot", ".tmp", snapshot_file.getParentFile());
+               DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary_file), 1 << 16));
+               try
+               {
+                    out.writeInt(MAGIC_NUMBER);
+                    out.writeInt(VERSION);
+                    out.writeInt(document_code);
+                    out.writeInt(0);
+                    out.writeLong(xml_size);
+                    out.writeLong(xml_modified);
+                    out.writeLong(checksum);
+                    out.writeLong(number_doubles);
+
+                    if (document_code == FEATURE_VECTOR_FILE)
+                         for (int i = 0; i < objects.length; i++)
+                              writeValues((DataSet) objects[i], out);
+
+                    out.writeInt(strings.size());
+                    for (String string : strings)
+                         writeString(string, out);
+
+                    out.writeInt(objects.length);
+                    for (int i = 0; i < objects.length; i++)
+                    {
+                         if (document_code == FEATURE_VECTOR_FILE)
+                              writeDataSet((DataSet) objects[i], string_indices, out);
+                         else if (document_code == FEATURE_KEY_FILE)
+                              writeFeatureDefinition((FeatureDefinition) objects[i], string_indices, out);
+                         else
+                              writeClassification((SegmentedClassification) objects[i], string_indices, out);
+                    }
+               }
+               finally
+               {
+                    out.close();
+               }
+
+               // Replace any earlier snapshot
+               if (snapshot_file.exists())
+                    snapshot_file.delete();
+               if (temporary_file.renameTo(snapshot_file))
+                    temporary_file = null;
+          }
+          catch (Exception e)
+          {
+          }
+          finally
+          {
+               if (temporary_file != null)
+                    temporary_file.delete();
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns the code of the given type of XML file, or -1 if snapshots
+      * cannot be made of it.
+      */
+     private static int getDocumentCode(String document_type)
+     {
+          if (document_type.equals("feature_vector_file"))
+               return FEATURE_VECTOR_FILE;
+          else if (document_type.equals("feature_key_file"))
+               return FEATURE_KEY_FILE;
+          else if (document_type.equals("classifications_file"))
+               return CLASSIFICATIONS_FILE;
+          return -1;
+     }
+
+
+     /**
+      * Returns the CRC-32 checksum of the XML file, calculating it the first
+      * time that this is called.
+      */
+     private long getChecksum()
+          throws IOException
+     {
+          if (xml_checksum == -1)
+          {
+               CRC32 crc = new CRC32();
+               byte[] buffer = new byte[1 << 20];
+               FileInputStream in = new FileInputStream(xml_file);
+               try
+               {
+                    int read;
+                    while ((read = in.read(buffer)) != -1)
+                         crc.update(buffer, 0, read);
+               }
+               finally
+               {
+                    in.close();
+               }
+               xml_checksum = crc.getValue();
+          }
+          return xml_checksum;
+     }
+
+
+     /**
+      * Adds the given String to the table of Strings to be stored, if it is
+      * not null and is not there already.
+      */
+     private static void indexString( String string,
+          HashMap<String, Integer> string_indices,
+          LinkedList<String> strings )
+     {
+          if (string != null && !string_indices.containsKey(string))
+          {
+               string_indices.put(string, new Integer(strings.size()));
+               strings.add(string);
+          }
+     }
+
+
+     /**
+      * Adds the given Strings to the table of Strings to be stored.
+      */
+     private static void indexStrings( String[] array,
+          HashMap<String, Integer> string_indices,
+          LinkedList<String> strings )
+     {
+          if (array != null)
+               for (int i = 0; i < array.length; i++)
+                    indexString(array[i], string_indices, strings);
+     }
+
+
+     /**
+      * Adds the Strings of the given DataSet and its sub-sets to the table of
+      * Strings to be stored, and returns the number of feature values that
+      * they hold.
+      */
+     private static long indexDataSet( DataSet data_set,
+          HashMap<String, Integer> string_indices,
+          LinkedList<String> strings )
+     {
+          long number_doubles = 0;
+          indexString(data_set.identifier, string_indices, strings);
+          indexStrings(data_set.feature_names, string_indices, strings);
+          if (data_set.feature_values != null)
+               for (int feat = 0; feat < data_set.feature_values.length; feat++)
+                    if (data_set.feature_values[feat] != null)
+                         number_doubles += data_set.feature_values[feat].length;
+          if (data_set.sub_sets != null)
+               for (int sub = 0; sub < data_set.sub_sets.length; sub++)
+                    number_doubles += indexDataSet(data_set.sub_sets[sub], string_indices, strings);
+          return number_doubles;
+     }
+
+
+     /**
+      * Adds the Strings of the given SegmentedClassification and its
+      * sub-classifications to the table of Strings to be stored.
+      */
+     private static void indexClassification( SegmentedClassification classification,
+          HashMap<String, Integer> string_indices,
+          LinkedList<String> strings )
+     {
+          indexString(classification.identifier, string_indices, strings);
+          indexString(classification.role, string_indices, strings);
+          indexStrings(classification.classifications, string_indices, strings);
+          indexStrings(classification.misc_info_info, string_indices, strings);
+          indexStrings(classification.misc_info_key, string_indices, strings);
+          if (classification.sub_classifications != null)
+               for (int sub = 0; sub < classification.sub_classifications.length; sub++)
+                    indexClassification(classification.sub_classifications[sub], string_indices, strings);
+     }
+
+
+     /**
+      * Writes the given String, preceded by its length (-1 if it is null).
+      */
+     private static void writeString(String string, DataOutputStream out)
+          throws IOException
+     {
+          if (string == null)
+               out.writeInt(-1);
+          else
+          {
+               out.writeInt(string.length());
+               out.writeChars(string);
+          }
+     }
+
+
+     /**
+      * Writes the indice of the given String in the table of Strings, or -1 if
+      * it is null.
+      */
+     private static void writeStringIndex( String string,
+          HashMap<String, Integer> string_indices,
+          DataOutputStream out )
+          throws IOException
+     {
+          if (string == null)
+               out.writeInt(-1);
+          else
+               out.writeInt(string_indices.get(string).intValue());
+     }
+
+
+     /**
+      * Writes the length of the given array of Strings (-1 if it is null),
+      * followed by the indice of each of its entries in the table of Strings.
+      */
+     private static void writeStringIndices( String[] array,
+          HashMap<String, Integer> string_indices,
+          DataOutputStream out )
+          throws IOException
+     {
+          if (array == null)
+               out.writeInt(-1);
+          else
+          {
+               out.writeInt(array.length);
+               for (int i = 0; i < array.length; i++)
+                    writeStringIndex(array[i], string_indices, out);
+          }
+     }
+
+
+     /**
+      * Writes the feature values of the given DataSet and of its sub-sets.
+      */
+     private static void writeValues(DataSet data_set, DataOutputStream out)
+          throws IOException
+     {
+          if (data_set.feature_values != null)
+               for (int feat = 0; feat < data_set.feature_values.length; feat++)
+                    if (data_set.feature_values[feat] != null)
+                         for (int val = 0; val < data_set.feature_values[feat].length; val++)
+                              out.writeDouble(data_set.feature_values[feat][val]);
+          if (data_set.sub_sets != null)
+               for (int sub = 0; sub < data_set.sub_sets.length; sub++)
+                    writeValues(data_set.sub_sets[sub], out);
+     }
+
+
+     /**
+      * Writes the structure of the given DataSet and of its sub-sets, in the
+      * same order as the writeValues method writes their values.
+      */
+     private static void writeDataSet( DataSet data_set,
+          HashMap<String, Integer> string_indices,
+          DataOutputStream out )
+          throws IOException
+     {
+          writeStringIndex(data_set.identifier, string_indices, out);
+          out.writeDouble(data_set.start);
+          out.writeDouble(data_set.stop);
+          writeStringIndices(data_set.feature_names, string_indices, out);
+          if (data_set.feature_values == null)
+               out.writeInt(-1);
+          else
+          {
+               out.writeInt(data_set.feature_values.length);
+               for (int feat = 0; feat < data_set.feature_values.length; feat++)
+                    out.writeInt(data_set.feature_values[feat] == null ? -1 : data_set.feature_values[feat].length);
+          }
+          if (data_set.sub_sets == null)
+               out.writeInt(-1);
+          else
+          {
+               out.writeInt(data_set.sub_sets.length);
+               for (int sub = 0; sub < data_set.sub_sets.length; sub++)
+                    writeDataSet(data_set.sub_sets[sub], string_indices, out);
+          }
+     }
+
+
+     /**
+      * Writes the given FeatureDefinition.
+      */
+     private static void writeFeatureDefinition( FeatureDefinition definition,
+          HashMap<String, Integer> string_indices,
+          DataOutputStream out )
+          throws IOException
+     {
+          writeStringIndex(definition.name, string_indices, out);
+          writeStringIndex(definition.description, string_indices, out);
+          out.writeInt(definition.is_sequential ? 1 : 0);
+          out.writeInt(definition.dimensions);
+     }
+
+
+     /**
+      * Writes the given SegmentedClassification and its sub-classifications.
+      */
+     private static void writeClassification( SegmentedClassification classification,
+          HashMap<String, Integer> string_indices,
+          DataOutputStream out )
+          throws IOException
+     {
+          writeStringIndex(classification.identifier, string_indices, out);
+          writeStringIndex(classification.role, string_indices, out);
+          out.writeDouble(classification.start);
+          out.writeDouble(classification.stop);
+          writeStringIndices(classification.classifications, string_indices, out);
+          writeStringIndices(classification.misc_info_info, string_indices, out);
+          writeStringIndices(classification.misc_info_key, string_indices, out);
+          if (classification.sub_classifications == null)
+               out.writeInt(-1);
+          else
+          {
+               out.writeInt(classification.sub_classifications.length);
+               for (int sub = 0; sub < classification.sub_classifications.length; sub++)
+                    writeClassification(classification.sub_classifications[sub], string_indices, out);
+          }
+     }
+
+
+     /**
+      * Reads the String with the indice that is read from the given input, or
+      * null if the indice is -1.
+      */
+     private static String readStringIndex(MappedInput in, String[] strings)
+     {
+          int index = in.getInt();
+          return index == -1 ? null : strings[index];
+     }
+
+
+     /**
+      * Reads an array of Strings written by the writeStringIndices method.
+      */
+     private static String[] readStringIndices(MappedInput in, String[] strings)
+     {
+          int length = in.getInt();
+          if (length == -1)
+               return null;
+          String[] array = new String[length];
+          for (int i = 0; i < length; i++)
+               array[i] = readStringIndex(in, strings);
+          return array;
+     }
+
+
+     /**
+      * Reads a DataSet and its sub-sets written by the writeDataSet and
+      * writeValues methods. If matrix_writer is not null, a row is added to it
+      * for the DataSet and for each sub-set, the feature values are written
+      * to these rows and the feature_values and feature_names fields are left
+      * null.
+      */
+     private static DataSet readDataSet( MappedInput structure,
+          MappedInput values,
+          String[] strings,
+          DataSet parent,
+          FeatureMatrix.Writer matrix_writer )
+          throws Exception
+     {
+          DataSet data_set = new DataSet();
+          data_set.parent = parent;
+          data_set.identifier = readStringIndex(structure, strings);
+          data_set.start = structure.getDouble();
+          data_set.stop = structure.getDouble();
+          String[] feature_names = readStringIndices(structure, strings);
+          double[][] feature_values = null;
+          int number_features = structure.getInt();
+          if (number_features != -1)
+          {
+               feature_values = new double[number_features][];
+               for (int feat = 0; feat < number_features; feat++)
+               {
+                    int dimensions = structure.getInt();
+                    if (dimensions != -1)
+                    {
+                         feature_values[feat] = new double[dimensions];
+                         values.getDoubles(feature_values[feat]);
+                    }
+               }
+          }
+          if (matrix_writer != null)
+          {
+               int row = matrix_writer.addRow();
+               matrix_writer.writeRow(row, feature_values, number_features);
+          }
+          else
+          {
+               data_set.feature_names = feature_names;
+               data_set.feature_values = feature_values;
+          }
+          int number_sub_sets = structure.getInt();
+          if (number_sub_sets != -1)
+          {
+               data_set.sub_sets = new DataSet[number_sub_sets];
+               for (int sub = 0; sub < number_sub_sets; sub++)
+                    data_set.sub_sets[sub] = readDataSet(structure, values, strings, data_set, matrix_writer);
+          }
+          return data_set;
+     }
+
+
+     /**
+      * Reads a FeatureDefinition written by the writeFeatureDefinition method.
+      */
+     private static FeatureDefinition readFeatureDefinition(MappedInput in, String[] strings)
+     {
+          FeatureDefinition definition = new FeatureDefinition();
+          definition.name = readStringIndex(in, strings);
+          definition.description = readStringIndex(in, strings);
+          definition.is_sequential = in.getInt() == 1;
+          definition.dimensions = in.getInt();
+          return definition;
+     }
+
+
+     /**
+      * Reads a SegmentedClassification and its sub-classifications written by
+      * the writeClassification method.
+      */
+     private static SegmentedClassification readClassification(MappedInput in, String[] strings)
+     {
+          SegmentedClassification classification = new SegmentedClassification();
+          classification.identifier = readStringIndex(in, strings);
+          classification.role = readStringIndex(in, strings);
+          classification.start = in.getDouble();
+          classification.stop = in.getDouble();
+          classification.classifications = readStringIndices(in, strings);
+          classification.misc_info_info = readStringIndices(in, strings);
+          classification.misc_info_key = readStringIndices(in, strings);
+          int number_sub_classifications = in.getInt();
+          if (number_sub_classifications != -1)
+          {
+               classification.sub_classifications = new SegmentedClassification[number_sub_classifications];
+               for (int sub = 0; sub < number_sub_classifications; sub++)
+                    classification.sub_classifications[sub] = readClassification(in, strings);
+          }
+          return classification;
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * Reads a snapshot file sequentially from a given position, mapping at
+      * most WINDOW_SIZE bytes of it at a time so that snapshots of any size can
+      * be read.
+      */
+     private static class MappedInput
+     {
+          /**
+           * The channel of the snapshot file.
+           */
+          private	FileChannel		channel;
+
+
+          /**
+           * The position in the file of the start of window.
+           */
+          private	long			window_position;
+
+
+          /**
+           * The currently mapped part of the file.
+           */
+          private	MappedByteBuffer	window;
+
+
+          /**
+           * Prepares to read the given file from the given position.
+           */
+          MappedInput(FileChannel channel, long position)
+               throws IOException
+          {
+               this.channel = channel;
+               map(position);
+          }
+
+
+          /**
+           * Reads an int.
+           */
+          int getInt()
+          {
+               ensure(4);
+               return window.getInt();
+          }
+
+
+          /**
+           * Reads a long.
+           */
+          long getLong()
+          {
+               ensure(8);
+               return window.getLong();
+          }
+
+
+          /**
+           * Reads a double.
+           */
+          double getDouble()
+          {
+               ensure(8);
+               return window.getDouble();
+          }
+
+
+          /**
+           * Fills the given array with doubles.
+           */
+          void getDoubles(double[] array)
+          {
+               int done = 0;
+               while (done < array.length)
+               {
+                    ensure(8);
+                    int count = Math.min(array.length - done, window.remaining() / 8);
+                    window.asDoubleBuffer().get(array, done, count);
+                    window.position(window.position() + 8 * count);
+                    done += count;
+               }
+          }
+
+
+          /**
+           * Reads a String written by the writeString method.
+           */
+          String getString()
+          {
+               int length = getInt();
+               if (length == -1)
+                    return null;
+               char[] chars = new char[length];
+               int done = 0;
+               while (done < length)
+               {
+                    ensure(2);
+                    int count = Math.min(length - done, window.remaining() / 2);
+                    window.asCharBuffer().get(chars, done, count);
+                    window.position(window.position() + 2 * count);
+                    done += count;
+               }
+               return new String(chars);
+          }
+
+
+          /**
+           * Maps the part of the file starting at the given position.
+           */
+          private void map(long position)
+               throws IOException
+          {
+               long size = Math.min(WINDOW_SIZE, channel.size() - position);
+               if (size < 0)
+                    throw new IOException("The snapshot is truncated.");
+               window_position = position;
+               window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+          }
+
+
+          /**
+           * Maps the part of the file starting at the current position if
+           * fewer than the given number of bytes remain in the current window.
+           */
+          private void ensure(int bytes)
+          {
+               if (window.remaining() >= bytes)
+                    return;
+               try
+               {
+                    map(window_position + window.position());
+               }
+               catch (IOException e)
+               {
+                    throw new RuntimeException(e.getMessage());
+               }
+               if (window.remaining() < bytes)
+                    throw new RuntimeException("The snapshot is truncated.");
+          }
+     }
+}
@@ -0,0 +1,960 @@
+/*
+ * StreamingDataSetFileParser.java
+ * Version 2.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package ace.xmlparsers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.util.regex.Pattern;
+import org.xml.sax.helpers.AttributesImpl;
+
+
+/**
+ * A fast reader for XML files of the feature_vector_file type used by the ACE
+ * classification system. The contents of a file are passed to a
+ * ParseDataSetFileHandler in the same way that a validating XML parser passes
+ * them, but without the overhead of a general purpose validating parser, which
+ * is considerable for large feature vector files.
+ *
+ * <p>Only files in the form that ACE, jAudio and jSymbolic write are read:
+ * files encoded in UTF-8 whose document type declaration holds the standard
+ * feature_vector_file DTD, which contain only the elements and attributes of
+ * this DTD in the order that it requires, and which contain no entity
+ * references other than character references and references to the predefined
+ * entities, no CDATA sections and no processing instructions. The parse method
+ * stops and returns false as soon as it finds anything else, including
+ * anything that would make the file invalid, so that the file can be parsed by
+ * a validating XML parser instead. The validating parser then reports any
+ * problems in the usual way.
+ *
+ * @author Cory McKay (ACE 1.x) and Jessica Thompson (ACE 2.x)
+ */
+public class StreamingDataSetFileParser
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The handler that the contents of the file are passed to.
+      */
+     private	ParseDataSetFileHandler	handler;
+
+
+     /**
+      * The channel that the file is read from.
+      */
+     private	FileChannel		channel;
+
+
+     /**
+      * Decodes the bytes of the file from UTF-8, reporting malformed input.
+      */
+     private	CharsetDecoder		decoder;
+
+
+     /**
+      * Bytes that have been read from the file but not yet decoded.
+      */
+     private	ByteBuffer		bytes;
+
+
+     /**
+      * Whether all of the bytes of the file have been read.
+      */
+     private	boolean			end_of_file;
+
+
+     /**
+      * Characters decoded from the file. The characters from position to limit
+      * have not been parsed yet.
+      */
+     private	char[]			buffer;
+
+
+     /**
+      * A CharBuffer that the decoder stores characters in buffer through.
+      */
+     private	CharBuffer		buffer_wrapper;
+
+
+     /**
+      * The indice in buffer of the next character to parse.
+      */
+     private	int			position;
+
+
+     /**
+      * The number of characters in buffer.
+      */
+     private	int			limit;
+
+
+     /**
+      * The name of the element or attribute currently being read. Only the
+      * first name_length characters are used.
+      */
+     private	char[]			name;
+
+
+     /**
+      * The number of characters in name.
+      */
+     private	int			name_length;
+
+
+     /**
+      * The attribute value or document type definition currently being read.
+      * Only the first value_length characters are used.
+      */
+     private	char[]			value;
+
+
+     /**
+      * The number of characters in value.
+      */
+     private	int			value_length;
+
+
+     /**
+      * The attributes of the element currently being read.
+      */
+     private	AttributesImpl		attributes;
+
+
+     /**
+      * Holds the character of a character or entity reference so that it can
+      * be passed to the handler.
+      */
+     private	char[]			reference;
+
+
+     /**
+      * The names of the elements of feature_vector_file files. The elements are
+      * identified by their indices in this array.
+      */
+     private	static final String[]	ELEMENT_NAMES =
+     {"feature_vector_file", "comments", "data_set", "data_set_id", "section", "feature", "name", "v"};
+
+
+     /**
+      * The indices of the elements in ELEMENT_NAMES.
+      */
+     private	static final int	FEATURE_VECTOR_FILE = 0;
+     private	static final int	COMMENTS = 1;
+     private	static final int	DATA_SET = 2;
+     private	static final int	DATA_SET_ID = 3;
+     private	static final int	SECTION = 4;
+     private	static final int	FEATURE = 5;
+     private	static final int	NAME = 6;
+     private	static final int	V = 7;
+
+
+     /**
+      * Returned by nextElement when the end tag of the enclosing element is
+      * reached instead of the start tag of another element.
+      */
+     private	static final int	NO_ELEMENT = -1;
+
+
+     /**
+      * The kinds of markup returned by the nextMarkup method.
+      */
+     private	static final int	START_TAG = 0;
+     private	static final int	END_TAG = 1;
+     private	static final int	DECLARATION = 2;
+     private	static final int	END_OF_FILE = 3;
+
+
+     /**
+      * The standard feature_vector_file DTD, as written by ACE, jAudio and
+      * jSymbolic, with each sequence of white space replaced by a single
+      * space.
+      */
+     private	static final String	DOCUMENT_TYPE_DEFINITION =
+          "<!ELEMENT feature_vector_file (comments, data_set+)> " +
+          "<!ELEMENT comments (#PCDATA)> " +
+          "<!ELEMENT data_set (data_set_id, section*, feature*)> " +
+          "<!ELEMENT data_set_id (#PCDATA)> " +
+          "<!ELEMENT section (feature+)> " +
+          "<!ATTLIST section start CDATA \"\" stop CDATA \"\"> " +
+          "<!ELEMENT feature (name, v+)> " +
+          "<!ELEMENT name (#PCDATA)> " +
+          "<!ELEMENT v (#PCDATA)>";
+
+
+     /**
+      * The XML declarations that are accepted, without the initial <?xml and
+      * the final ?>.
+      */
+     private	static final Pattern	XML_DECLARATION = Pattern.compile(
+          "[ \t\r\n]+version[ \t\r\n]*=[ \t\r\n]*(\"1\\.0\"|'1\\.0')" +
+          "([ \t\r\n]+encoding[ \t\r\n]*=[ \t\r\n]*(\"(?i:utf-8)\"|'(?i:utf-8)'))?" +
+          "([ \t\r\n]+standalone[ \t\r\n]*=[ \t\r\n]*(\"(yes|no)\"|'(yes|no)'))?" +
+          "[ \t\r\n]*");
+
+
+     /**
+      * The number of bytes read from the file at a time.
+      */
+     private	static final int	BUFFER_SIZE = 1 << 16;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Prepares to pass the contents of a file to the given handler.
+      */
+     private StreamingDataSetFileParser(ParseDataSetFileHandler handler)
+     {
+          this.handler = handler;
+          decoder = Charset.forName("UTF-8").newDecoder();
+          decoder.onMalformedInput(CodingErrorAction.REPORT);
+          decoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+          bytes = ByteBuffer.allocate(BUFFER_SIZE);
+          bytes.flip();
+          end_of_file = false;
+          buffer = new char[BUFFER_SIZE];
+          buffer_wrapper = CharBuffer.wrap(buffer);
+          position = 0;
+          limit = 0;
+          name = new char[32];
+          name_length = 0;
+          value = new char[1024];
+          value_length = 0;
+          attributes = new AttributesImpl();
+          reference = new char[1];
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Passes the contents of the given feature_vector_file file to the given
+      * handler, if the file has the form described above. The
+      * parsed_file_contents field of the handler then holds the DataSets
+      * stored in the file.
+      *
+      * <p>If false is returned, the handler may have been passed part of the
+      * file. Since its startDocument method resets it, it may still be used to
+      * parse the file with a validating XML parser.
+      *
+      * @param	file	The file to parse.
+      * @param	handler	The handler to pass the contents of the file to.
+      * @return		True if the file was parsed, false if it does not
+      *			have the form described above or if an error occurred,
+      *			in which case it must be parsed by a validating XML
+      *			parser instead.
+      */
+     public static boolean parse(File file, ParseDataSetFileHandler handler)
+     {
+          StreamingDataSetFileParser parser = new StreamingDataSetFileParser(handler);
+          FileInputStream stream = null;
+          try
+          {
+               stream = new FileInputStream(file);
+               parser.channel = stream.getChannel();
+               parser.parseDocument();
+               return true;
+          }
+          catch (Exception e)
+          {
+               return false;
+          }
+          finally
+          {
+               if (stream != null)
+               {
+                    try {stream.close();}
+                    catch (IOException e) {}
+               }
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Parses the whole file.
+      *
+      * @throws	Exception	Thrown if the file does not have the form
+      *				described above or cannot be read, or by the
+      *				handler.
+      */
+     private void parseDocument()
+          throws Exception
+     {
+          handler.startDocument();
+
+          // The optional XML declaration
+          if (!fill())
+               throw new UnsupportedContentException();
+          if (limit > 5 && new String(buffer, 0, 5).equals("<?xml") && isSpace(buffer[5]))
+          {
+               position = 5;
+               value_length = 0;
+               int c = read();
+               while (c != '?' || peek() != '>')
+               {
+                    if (c == -1 || value_length == value.length)
+                         throw new UnsupportedContentException();
+                    value[value_length++] = (char) c;
+                    c = read();
+               }
+               position++;
+               if (!XML_DECLARATION.matcher(new String(value, 0, value_length)).matches())
+                    throw new UnsupportedContentException();
+          }
+
+          // The document type declaration and the root element, with only
+          // white space and comments before, between and after them
+          if (nextMarkup() != DECLARATION)
+               throw new UnsupportedContentException();
+          readDocumentTypeDeclaration();
+          if (nextMarkup() != START_TAG || readStartTag() != FEATURE_VECTOR_FILE)
+               throw new UnsupportedContentException();
+          parseFeatureVectorFile();
+          if (nextMarkup() != END_OF_FILE)
+               throw new UnsupportedContentException();
+
+          handler.endDocument();
+     }
+
+
+     /**
+      * Parses the contents of the feature_vector_file element, whose start tag
+      * has just been read, and its end tag.
+      */
+     private void parseFeatureVectorFile()
+          throws Exception
+     {
+          if (nextElement(FEATURE_VECTOR_FILE) != COMMENTS)
+               throw new UnsupportedContentException();
+          parseText(COMMENTS);
+
+          int number_data_sets = 0;
+          int element;
+          while ((element = nextElement(FEATURE_VECTOR_FILE)) == DATA_SET)
+          {
+               parseDataSet();
+               number_data_sets++;
+          }
+          if (element != NO_ELEMENT || number_data_sets == 0)
+               throw new UnsupportedContentException();
+     }
+
+
+     /**
+      * Parses the contents of a data_set element, whose start tag has just been
+      * read, and its end tag.
+      */
+     private void parseDataSet()
+          throws Exception
+     {
+          if (nextElement(DATA_SET) != DATA_SET_ID)
+               throw new UnsupportedContentException();
+          parseText(DATA_SET_ID);
+
+          int element = nextElement(DATA_SET);
+          while (element == SECTION)
+          {
+               parseSection();
+               element = nextElement(DATA_SET);
+          }
+          while (element == FEATURE)
+          {
+               parseFeature();
+               element = nextElement(DATA_SET);
+          }
+          if (element != NO_ELEMENT)
+               throw new UnsupportedContentException();
+     }
+
+
+     /**
+      * Parses the contents of a section element, whose start tag has just been
+      * read, and its end tag.
+      */
+     private void parseSection()
+          throws Exception
+     {
+          int number_features = 0;
+          int element;
+          while ((element = nextElement(SECTION)) == FEATURE)
+          {
+               parseFeature();
+               number_features++;
+          }
+          if (element != NO_ELEMENT || number_features == 0)
+               throw new UnsupportedContentException();
+     }
+
+
+     /**
+      * Parses the contents of a feature element, whose start tag has just been
+      * read, and its end tag.
+      */
+     private void parseFeature()
+          throws Exception
+     {
+          if (nextElement(FEATURE) != NAME)
+               throw new UnsupportedContentException();
+          parseText(NAME);
+
+          int number_values = 0;
+          int element;
+          while ((element = nextElement(FEATURE)) == V)
+          {
+               parseText(V);
+               number_values++;
+          }
+          if (element != NO_ELEMENT || number_values == 0)
+               throw new UnsupportedContentException();
+     }
+
+
+     /**
+      * Parses the text of the given element, whose start tag has just been
+      * read, and its end tag. The text is passed to the handler, with line
+      * breaks normalized and references replaced by the characters that they
+      * refer to, as an XML parser would. Comments are skipped.
+      *
+      * @param	element	The element whose text is parsed.
+      */
+     private void parseText(int element)
+          throws Exception
+     {
+          int segment_start = position;
+          int brackets = 0;
+          boolean after_carriage_return = false;
+          while (true)
+          {
+               // Pass the text read so far to the handler before reading more
+               if (position == limit)
+               {
+                    if (position > segment_start)
+                         handler.characters(buffer, segment_start, position - segment_start);
+                    if (!fill())
+                         throw new UnsupportedContentException();
+                    segment_start = position;
+               }
+
+               char c = buffer[position];
+               if (after_carriage_return)
+               {
+                    // Skip the line feed of a carriage return and line feed
+                    after_carriage_return = false;
+                    if (c == '\n')
+                    {
+                         position++;
+                         segment_start = position;
+                         continue;
+                    }
+               }
+               if (c == '<' || c == '&' || c == '\r')
+               {
+                    if (position > segment_start)
+                         handler.characters(buffer, segment_start, position - segment_start);
+                    position++;
+                    if (c == '<')
+                    {
+                         // The end tag of the element or a comment
+                         c = (char) read();
+                         if (c == '/')
+                         {
+                              readEndTag(element);
+                              return;
+                         }
+                         if (c != '!' || read() != '-' || read() != '-')
+                              throw new UnsupportedContentException();
+                         skipComment();
+                    }
+                    else if (c == '&')
+                    {
+                         reference[0] = readReference();
+                         handler.characters(reference, 0, 1);
+                    }
+                    else
+                    {
+                         reference[0] = '\n';
+                         handler.characters(reference, 0, 1);
+                         after_carriage_return = true;
+                    }
+                    segment_start = position;
+                    brackets = 0;
+               }
+               else
+               {
+                    if (!isCharacter(c) || (c == '>' && brackets >= 2))
+                         throw new UnsupportedContentException();
+                    brackets = c == ']' ? brackets + 1 : 0;
+                    position++;
+               }
+          }
+     }
+
+
+     /**
+      * Skips white space and comments and then reads the start tag of an
+      * element that is contained in the given element, or the end tag of the
+      * given element.
+      *
+      * @param	parent	The element whose contents are being parsed.
+      * @return		The element whose start tag was read, or NO_ELEMENT
+      *			if the end tag of parent was read.
+      */
+     private int nextElement(int parent)
+          throws Exception
+     {
+          int markup = nextMarkup();
+          if (markup == START_TAG)
+               return readStartTag();
+          if (markup != END_TAG)
+               throw new UnsupportedContentException();
+          readEndTag(parent);
+          return NO_ELEMENT;
+     }
+
+
+     /**
+      * Skips white space and comments, and then reads the start of the next
+      * markup.
+      *
+      * @return	START_TAG if a start tag follows, in which case its name is
+      *		the next character to be read, END_TAG if &lt;/ was read,
+      *		DECLARATION if &lt;! was read but not followed by a comment,
+      *		or END_OF_FILE.
+      */
+     private int nextMarkup()
+          throws Exception
+     {
+          while (true)
+          {
+               int c = read();
+               if (c == -1)
+                    return END_OF_FILE;
+               if (c == '<')
+               {
+                    c = read();
+                    if (c == '/')
+                         return END_TAG;
+                    if (c == '!')
+                    {
+                         if (peek() != '-')
+                              return DECLARATION;
+                         position++;
+                         if (read() != '-')
+                              throw new UnsupportedContentException();
+                         skipComment();
+                    }
+                    else if (c == -1 || c == '?')
+                         throw new UnsupportedContentException();
+                    else
+                    {
+                         position--;
+                         return START_TAG;
+                    }
+               }
+               else if (!isSpace(c))
+                    throw new UnsupportedContentException();
+          }
+     }
+
+
+     /**
+      * Reads the name and attributes of a start tag, whose initial &lt; has
+      * already been read, and passes them to the handler. Only section
+      * elements may have attributes, and they must have a start and a stop
+      * attribute, in this order.
+      *
+      * @return	The element whose start tag was read.
+      */
+     private int readStartTag()
+          throws Exception
+     {
+          int element = readElementName();
+
+          attributes.clear();
+          while (true)
+          {
+               int c = read();
+               boolean space = false;
+               while (isSpace(c))
+               {
+                    space = true;
+                    c = read();
+               }
+               if (c == '>')
+                    break;
+               if (c == -1 || !space)
+                    throw new UnsupportedContentException();
+               position--;
+               readAttribute();
+          }
+          if (element == SECTION)
+          {
+               if (attributes.getLength() != 2 ||
+                   !attributes.getQName(0).equals("start") ||
+                   !attributes.getQName(1).equals("stop"))
+                    throw new UnsupportedContentException();
+          }
+          else if (attributes.getLength() != 0)
+               throw new UnsupportedContentException();
+
+          handler.startElement("", ELEMENT_NAMES[element], ELEMENT_NAMES[element], attributes);
+          return element;
+     }
+
+
+     /**
+      * Reads the rest of an end tag, whose initial &lt;/ has already been read,
+      * and passes it to the handler.
+      *
+      * @param	element	The element that the end tag must close.
+      */
+     private void readEndTag(int element)
+          throws Exception
+     {
+          if (readElementName() != element)
+               throw new UnsupportedContentException();
+          int c = read();
+          while (isSpace(c))
+               c = read();
+          if (c != '>')
+               throw new UnsupportedContentException();
+
+          handler.endElement("", ELEMENT_NAMES[element], ELEMENT_NAMES[element]);
+     }
+
+
+     /**
+      * Reads an element name.
+      *
+      * @return	The element with the name that was read.
+      */
+     private int readElementName()
+          throws Exception
+     {
+          readName();
+          for (int element = 0; element < ELEMENT_NAMES.length; element++)
+               if (isName(ELEMENT_NAMES[element]))
+                    return element;
+          throw new UnsupportedContentException();
+     }
+
+
+     /**
+      * Reads a start or stop attribute and adds it to the attributes field.
+      */
+     private void readAttribute()
+          throws Exception
+     {
+          readName();
+          String attribute;
+          if (isName("start"))
+               attribute = "start";
+          else if (isName("stop"))
+               attribute = "stop";
+          else
+               throw new UnsupportedContentException();
+
+          int c = read();
+          while (isSpace(c))
+               c = read();
+          if (c != '=')
+               throw new UnsupportedContentException();
+          int quote = read();
+          while (isSpace(quote))
+               quote = read();
+          if (quote != '"' && quote != '\'')
+               throw new UnsupportedContentException();
+
+          // The value may not contain references or characters that would be
+          // normalized
+          value_length = 0;
+          while ((c = read()) != quote)
+          {
+               if (c < ' ' || c == '<' || c == '&' || !isCharacter(c) || value_length == value.length)
+                    throw new UnsupportedContentException();
+               value[value_length++] = (char) c;
+          }
+
+          attributes.addAttribute("", attribute, attribute, "CDATA", new String(value, 0, value_length));
+     }
+
+
+     /**
+      * Reads the rest of the document type declaration, whose initial &lt;!
+      * has already been read. It must declare the standard DTD in its internal
+      * subset.
+      */
+     private void readDocumentTypeDeclaration()
+          throws Exception
+     {
+          readName();
+          if (!isName("DOCTYPE") || !isSpace(read()))
+               throw new UnsupportedContentException();
+          int c = read();
+          while (isSpace(c))
+               c = read();
+          if (c == -1)
+               throw new UnsupportedContentException();
+          position--;
+          if (readElementName() != FEATURE_VECTOR_FILE)
+               throw new UnsupportedContentException();
+          c = read();
+          while (isSpace(c))
+               c = read();
+          if (c != '[')
+               throw new UnsupportedContentException();
+
+          // Read the internal subset, replacing each sequence of white space
+          // with a single space
+          value_length = 0;
+          boolean space = false;
+          while ((c = read()) != ']')
+          {
+               if (c == -1 || value_length + 2 > value.length)
+                    throw new UnsupportedContentException();
+               if (isSpace(c))
+                    space = true;
+               else
+               {
+                    if (space && value_length > 0)
+                         value[value_length++] = ' ';
+                    space = false;
+                    value[value_length++] = (char) c;
+               }
+          }
+          if (!new String(value, 0, value_length).equals(DOCUMENT_TYPE_DEFINITION))
+               throw new UnsupportedContentException();
+
+          c = read();
+          while (isSpace(c))
+               c = read();
+          if (c != '>')
+               throw new UnsupportedContentException();
+     }
+
+
+     /**
+      * Reads the rest of a comment, whose initial &lt;!-- has already been
+      * read.
+      */
+     private void skipComment()
+          throws Exception
+     {
+          while (true)
+          {
+               int c = read();
+               if (c == '-')
+               {
+                    if (peek() == '-')
+                    {
+                         position++;
+                         if (read() != '>')
+                              throw new UnsupportedContentException();
+                         return;
+                    }
+               }
+               else if (c == -1 || !isCharacter(c))
+                    throw new UnsupportedContentException();
+          }
+     }
+
+
+     /**
+      * Reads the rest of a character reference or a reference to a predefined
+      * entity, whose initial &amp; has already been read.
+      *
+      * @return	The character that is referred to.
+      */
+     private char readReference()
+          throws Exception
+     {
+          int c = read();
+          if (c == '#')
+          {
+               int radix = 10;
+               c = read();
+               if (c == 'x')
+               {
+                    radix = 16;
+                    c = read();
+               }
+               int code = 0;
+               int number_digits = 0;
+               while (c != ';')
+               {
+                    int digit = c >= '0' && c <= '9' ? c - '0' :
+                         c >= 'a' && c <= 'f' ? c - 'a' + 10 :
+                         c >= 'A' && c <= 'F' ? c - 'A' + 10 : radix;
+                    if (digit >= radix || ++number_digits > 6)
+                         throw new UnsupportedContentException();
+                    code = radix * code + digit;
+                    c = read();
+               }
+               if (number_digits == 0 || !isCharacter(code))
+                    throw new UnsupportedContentException();
+               return (char) code;
+          }
+
+          if (c == -1)
+               throw new UnsupportedContentException();
+          position--;
+          readName();
+          if (read() != ';')
+               throw new UnsupportedContentException();
+          if (isName("lt"))
+               return '<';
+          if (isName("gt"))
+               return '>';
+          if (isName("amp"))
+               return '&';
+          if (isName("quot"))
+               return '"';
+          if (isName("apos"))
+               return '\'';
+          throw new UnsupportedContentException();
+     }
+
+
+     /**
+      * Reads the letters, digits, underscores, hyphens and periods that follow
+      * into the name field.
+      */
+     private void readName()
+          throws Exception
+     {
+          name_length = 0;
+          int c = peek();
+          while ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                 c == '_' || c == '-' || c == '.')
+          {
+               if (name_length == name.length)
+                    throw new UnsupportedContentException();
+               name[name_length++] = (char) c;
+               position++;
+               c = peek();
+          }
+     }
+
+
+     /**
+      * Returns whether the name field holds the given name.
+      */
+     private boolean isName(String candidate)
+     {
+          if (candidate.length() != name_length)
+               return false;
+          for (int i = 0; i < name_length; i++)
+               if (candidate.charAt(i) != name[i])
+                    return false;
+          return true;
+     }
+
+
+     /**
+      * Returns the next character and moves past it.
+      *
+      * @return	The character, or -1 at the end of the file.
+      */
+     private int read()
+          throws IOException
+     {
+          if (position == limit && !fill())
+               return -1;
+          return buffer[position++];
+     }
+
+
+     /**
+      * Returns the next character without moving past it.
+      *
+      * @return	The character, or -1 at the end of the file.
+      */
+     private int peek()
+          throws IOException
+     {
+          if (position == limit && !fill())
+               return -1;
+          return buffer[position];
+     }
+
+
+     /**
+      * Replaces the contents of buffer with the next characters of the file.
+      * Characters that have not been parsed yet are discarded.
+      *
+      * @return			False if the end of the file was reached
+      *				before any characters could be read.
+      * @throws	IOException	Thrown if the file cannot be read or is not
+      *				valid UTF-8.
+      */
+     private boolean fill()
+          throws IOException
+     {
+          position = 0;
+          limit = 0;
+          buffer_wrapper.clear();
+          while (true)
+          {
+               CoderResult result = decoder.decode(bytes, buffer_wrapper, end_of_file);
+               if (result.isError())
+                    result.throwException();
+               if (buffer_wrapper.position() > 0)
+                    break;
+               if (end_of_file)
+                    return false;
+               bytes.compact();
+               if (channel.read(bytes) == -1)
+                    end_of_file = true;
+               bytes.flip();
+          }
+          limit = buffer_wrapper.position();
+          return true;
+     }
+
+
+     /**
+      * Returns whether the given character is XML white space.
+      */
+     private static boolean isSpace(int c)
+     {
+          return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+     }
+
+
+     /**
+      * Returns whether the given character may appear in an XML document.
+      * Characters outside of the Basic Multilingual Plane are not accepted.
+      */
+     private static boolean isCharacter(int c)
+     {
+          if (c < ' ')
+               return c == '\t' || c == '\n' || c == '\r';
+          return c < 0xD800 || (c >= 0xE000 && c <= 0xFFFD);
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * Thrown when the file does not have the form that this class can read.
+      */
+     private static class UnsupportedContentException
+          extends Exception
+     {
+     }
+}
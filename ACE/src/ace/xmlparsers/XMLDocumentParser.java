@@ -13,6 +13,7 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import java.io.File;
+import ace.datatypes.FeatureMatrix;
 
 
 /**
@@ -28,6 +29,15 @@ import java.io.File;
  * classifications_file. See the file handlers for each of these file types for
  * more information on the kind of data returned.
  *
+ * <p>The contents of feature_vector_file, feature_key_file and
+ * classifications_file files are also saved in binary snapshots next to the
+ * files, which are loaded instead of parsing the files again if the files have
+ * not changed. See the ParsedFileSnapshot class for details.
+ *
+ * <p>Feature_vector_file files, which can be very large, are read by the faster
+ * StreamingDataSetFileParser when they have the standard form, and only by the
+ * validating parser otherwise.
+ *
  * @author Cory McKay (ACE 1.x) and Jessica Thompson (ACE 2.x)
  */
 public class XMLDocumentParser
@@ -47,6 +57,11 @@ public class XMLDocumentParser
       * each of these file types for more information on the kind of data
       * returned.
       *
+      * <p>If an up to date ParsedFileSnapshot of the file is available, its
+      * contents are returned instead of parsing the file. Otherwise, a
+      * snapshot is saved after parsing the file, if possible, for the file
+      * types that snapshots can be made of.
+      *
       * @param	file_path	The path of an XML file that will be parsed.
       * @param	document_type	The type of XML file. Defined by the name
       *				of the first element in the file.
@@ -59,6 +74,42 @@ public class XMLDocumentParser
      public static Object parseXMLDocument(String file_path, String document_type)
      throws Exception
      {
+          return parseXMLDocument(file_path, document_type, null);
+     }
+
+
+     /**
+      * Parses the given XML file in the same way as the parseXMLDocument
+      * method above, except that the feature values of feature_vector_file
+      * files are written to the given FeatureMatrix.Writer as they are parsed
+      * or loaded from a snapshot, instead of being stored in the returned
+      * DataSets. A row is added to the writer for each DataSet and each
+      * sub-set, in the order that the setRowsOf method of FeatureMatrix
+      * expects. No snapshot is saved in this case, as the DataSets do not hold
+      * their values.
+      *
+      * @param	file_path	The path of an XML file that will be parsed.
+      * @param	document_type	The type of XML file. Defined by the name
+      *				of the first element in the file.
+      * @param	matrix_writer	The writer to write the feature values of
+      *				feature_vector_file files to. Values are stored
+      *				in the DataSets if this is null.
+      * @return			An array of objects containing information
+      *				extracted from the XML file. Object types
+      *				depend on type of document parsed.
+      * @throws	Exception	Informative exceptions are thrown if an
+      *				invalid file path is specified, or if a
+      *				matrix_writer is given for a file that is not
+      *				a feature_vector_file.
+      */
+     public static Object parseXMLDocument( String file_path,
+          String document_type,
+          FeatureMatrix.Writer matrix_writer )
+     throws Exception
+     {
+          if (matrix_writer != null && !document_type.equals("feature_vector_file"))
+               throw new Exception("Only the feature values of feature_vector_file files can be written to a feature matrix.");
+
           // Verify that the file referred to in file_path exists and is not a
           // directory
 
@@ -68,6 +119,16 @@ public class XMLDocumentParser
           if (test_file.isDirectory())
                throw new Exception("The specified path " + file_path + " refers to a directory, not to a file.");
 
+          // Use the snapshot of an earlier parse of the file if it is up to date
+          ParsedFileSnapshot snapshot = null;
+          if (ParsedFileSnapshot.isSupported(document_type))
+          {
+               snapshot = new ParsedFileSnapshot(test_file, document_type);
+               Object snapshot_contents = snapshot.load(matrix_writer);
+               if (snapshot_contents != null)
+                    return snapshot_contents;
+          }
+
           // Prepare the XML parser with the validation feature on and the error
           // handler set to throw exceptions on all warnings and errors
           XMLReader reader = new SAXParser();
@@ -77,7 +138,7 @@ public class XMLDocumentParser
 
           // Choose the correct type handler based on the type of XML file
           if (document_type.equals("feature_vector_file"))
-               handler = new ParseDataSetFileHandler();
+               handler = new ParseDataSetFileHandler(matrix_writer);
           else if (document_type.equals("feature_key_file"))
                handler = new ParseFeatureDefinitionsFileHandler();
           else if (document_type.equals("taxonomy_file"))
@@ -90,25 +151,38 @@ public class XMLDocumentParser
           // Throw an exception if an unknown type of XML file is specified
           else throw new Exception(new String("Invalid type of XML file specified. The XML file type " + document_type + " is not known."));
 
+          // Read feature vector files with the StreamingDataSetFileParser if
+          // they have the standard form
+          boolean parsed = false;
+          if (handler instanceof ParseDataSetFileHandler)
+               parsed = StreamingDataSetFileParser.parse(test_file, (ParseDataSetFileHandler) handler);
+
           // Parse the file so that the contents are available in the
           // parsed_file_contents field of the handler
           reader.setContentHandler(handler);
-          try
-          {reader.parse(file_path);}
-          catch (SAXParseException e) // throw an exception if the file is not a valid XML file
-          {
-               throw new Exception("The " + file_path + " file is not a valid XML file.\n\nDetails of the problem: " + e.getMessage() +
-                    "\n\nThis error is likely in the region of line " + e.getLineNumber() + ".");
-          }
-          catch (SAXException e) // throw an exception if the file is not an XML file of the correct type
+          if (!parsed)
           {
-               throw new Exception("The " + file_path + " file must be of type " + document_type + "." + e.getMessage());
-          }
-          catch (Exception e) // throw an exception if the file is not formatted properly
-          {
-               throw new Exception("The " + file_path + " file is not formatted properly.\n\nDetails of the problem: " + e.getMessage());
+               try
+               {reader.parse(file_path);}
+               catch (SAXParseException e) // throw an exception if the file is not a valid XML file
+               {
+                    throw new Exception("The " + file_path + " file is not a valid XML file.\n\nDetails of the problem: " + e.getMessage() +
+                         "\n\nThis error is likely in the region of line " + e.getLineNumber() + ".");
+               }
+               catch (SAXException e) // throw an exception if the file is not an XML file of the correct type
+               {
+                    throw new Exception("The " + file_path + " file must be of type " + document_type + "." + e.getMessage());
+               }
+               catch (Exception e) // throw an exception if the file is not formatted properly
+               {
+                    throw new Exception("The " + file_path + " file is not formatted properly.\n\nDetails of the problem: " + e.getMessage());
+               }
           }
 
+          // Save a snapshot of the contents for later parses of the file
+          if (snapshot != null && matrix_writer == null)
+               snapshot.save(handler.parsed_file_contents);
+
           // Return the contents of the parsed file
           return handler.parsed_file_contents;
      }
@@ -10,6 +10,8 @@ package mckay.utilities.sound.midi;
 
 import javax.sound.midi.*;
 import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedList;
 
 
@@ -207,15 +209,27 @@ public class MIDIMethods
      
      
      /**
-      * <B>IMPORTANT: THIS METHOD IS NOT YET FINISHED. IT CURRENTLY ONLY OUTPUTS EMPTY
-      * WINDOWS OF MIDI DATA.</b>
-      *
       * Breaks the given MIDI Sequence into windows of equal duration. These
       * windows may or may not be overlapping. The original Sequence is not
       * changed. Tempo change messages ARE taken into account, so different
       * windows will have the same time duration, but not necessarily the same
       * number of MIDI ticks.
       *
+      * <p>Each window is a Sequence with the same timing resolution and number
+      * of tracks as the original, with its events shifted so that the window
+      * begins on tick 0. Each track of each window begins with the last tempo,
+      * time signature, key signature, track name and similar meta-data
+      * messages, and the last program change, controller and pitch bend
+      * messages of each channel, that occurred in that track before the
+      * window began. Notes that begin in a window and end after it are ended
+      * on the last tick of the window. Notes that begin before a window are
+      * not struck again in it, so each note onset only occurs in the windows
+      * that contain it.
+      *
+      * <p>Each track is processed in a single pass through its events, and no
+      * per-tick data is stored, so the processing time is proportional to the
+      * number of events in the windows produced plus the number of windows.
+      *
       * @param	original_sequence	The MIDI Sequence to break into windows.
       * @param	window_duration		The duration in seconds of each window.
       * @param	window_overlap_offset   The number of seconds that windows are
@@ -226,86 +240,415 @@ public class MIDIMethods
       *					consecutive order.
       * @throws	Exception		Throws an informative exception if the
       *					MIDI file uses SMTPE timing instead of
-      *					PPQ timing or if it is too large.
+      *					PPQ timing, if it is too large or if
+      *                                 the window parameters are invalid.
       */
      public static Sequence[] breakSequenceIntoWindows( Sequence original_sequence,
           double window_duration,
           double window_overlap_offset )
           throws Exception
+     {
+          // Find the first and last ticks of each window
+          long[][] window_ticks = getWindowTicks(original_sequence, window_duration, window_overlap_offset);
+          long[] window_start_ticks = window_ticks[0];
+          long[] window_end_ticks = window_ticks[1];
+          int number_windows = window_start_ticks.length;
+          Track[] original_tracks = original_sequence.getTracks();
+          
+          // Prepare the sequences representing each window of MIDI data and the tracks in
+          // each sequence
+          Sequence[] windowed_sequences = new Sequence[number_windows];
+          Track[][] windowed_tracks = new Track[number_windows][];
+          for (int win = 0; win < windowed_sequences.length; win++)
+          {
+               windowed_sequences[win] = new Sequence( original_sequence.getDivisionType(),
+                    original_sequence.getResolution(),
+                    original_tracks.length );
+               windowed_tracks[win] = windowed_sequences[win].getTracks();
+          }
+          
+          // Fill the windows one track at a time
+          for (int n_track = 0; n_track < original_tracks.length; n_track++)
+               fillWindowedTrack( original_tracks[n_track],
+                    n_track,
+                    windowed_tracks,
+                    window_start_ticks,
+                    window_end_ticks );
+          
+          // Return the windows of MIDI data
+          return windowed_sequences;
+     }
+     
+     
+     /**
+      * Finds the MIDI ticks at which each of the windows produced by
+      * breakSequenceIntoWindows with the same parameters begins and ends.
+      * The first and last ticks of the windows both increase monotonically.
+      *
+      * @param	original_sequence	The MIDI Sequence to break into windows.
+      * @param	window_duration		The duration in seconds of each window.
+      * @param	window_overlap_offset   The number of seconds that windows are
+      *                                 offset by. A value of zero means that
+      *                                 there is no window overlap.
+      * @return				The first tick (inclusive) of each window
+      *                                 in the first entry and the last tick
+      *                                 (exclusive) of each window in the
+      *                                 second entry, both in ticks of the
+      *                                 original sequence.
+      * @throws	Exception		Throws an informative exception if the
+      *					MIDI file uses SMTPE timing instead of
+      *					PPQ timing, if it is too large or if
+      *                                 the window parameters are invalid.
+      */
+     public static long[][] getWindowTicks( Sequence original_sequence,
+          double window_duration,
+          double window_overlap_offset )
+          throws Exception
      {
           if (original_sequence.getDivisionType() != Sequence.PPQ)
                throw new Exception("The specified MIDI sequence uses SMPTE time encoding." +
                     "\nOnly PPQ time encoding is accepted here.");
           if ( ((double) original_sequence.getTickLength()) > ((double) Integer.MAX_VALUE) - 1.0)
                throw new Exception("The MIDI sequence could not be processed because it is too long.");
+          double window_spacing = window_duration - window_overlap_offset;
+          if (window_duration <= 0.0 || window_spacing <= 0.0)
+               throw new Exception( "Windows of " + window_duration + " seconds offset by " +
+                    window_overlap_offset + " seconds are not valid." );
+          
+          // Find the tempo changes of the whole sequence, in tick order
+          long[][] tempo_map = getTempoMap(original_sequence);
+          long[] tempo_ticks = tempo_map[0];
+          long[] tempo_microseconds_per_beat = tempo_map[1];
           
-          // Get an array with a value at each indice that gives the duration of a tick in
-          // seconds at that particular point in the recording.
-          double[] seconds_per_tick = getSecondsPerTick(original_sequence);
+          // Find the time in seconds at which each tempo change occurs
+          double ticks_per_beat = (double) original_sequence.getResolution();
+          double[] tempo_seconds = new double[tempo_ticks.length];
+          for (int i = 1; i < tempo_ticks.length; i++)
+               tempo_seconds[i] = tempo_seconds[i - 1] +
+                    (tempo_ticks[i] - tempo_ticks[i - 1]) * tempo_microseconds_per_beat[i - 1] / ticks_per_beat / 1000000.0;
           
-          // Calculate the window start and end tick indices
-          LinkedList<Integer> window_start_ticks_list = new LinkedList<Integer>();
-          LinkedList<Integer> window_end_ticks_list = new LinkedList<Integer>();
+          // Calculate the window start ticks (inclusive) and end ticks
+          // (exclusive). Window starts and ends both increase monotonically,
+          // so the tempo map is only swept once for each.
           double total_duration = original_sequence.getMicrosecondLength() / 1000000.0;
-          double time_interval_to_next_tick = window_duration - window_overlap_offset;
-          boolean found_next_tick = false;
-          int tick_of_next_beginning = 0;
-          int this_tick = 0;
-          double total_seconds_accumulated_so_far = 0.0;
-          while (total_seconds_accumulated_so_far < total_duration && this_tick < seconds_per_tick.length)
+          long last_tick = original_sequence.getTickLength() + 1;
+          int number_windows = Math.max(1, (int) Math.ceil(total_duration / window_spacing - 0.000001));
+          long[] window_start_ticks = new long[number_windows];
+          long[] window_end_ticks = new long[number_windows];
+          int start_tempo = 0;
+          int end_tempo = 0;
+          for (int win = 0; win < number_windows; win++)
           {
-               window_start_ticks_list.add(new Integer(this_tick));
-               double seconds_accumulated_so_far = 0.0;
-               while (seconds_accumulated_so_far < window_duration && this_tick < seconds_per_tick.length)
+               double start_time = win * window_spacing;
+               double end_time = start_time + window_duration;
+               while (start_tempo + 1 < tempo_seconds.length && tempo_seconds[start_tempo + 1] <= start_time)
+                    start_tempo++;
+               while (end_tempo + 1 < tempo_seconds.length && tempo_seconds[end_tempo + 1] <= end_time)
+                    end_tempo++;
+               window_start_ticks[win] = Math.min( last_tick, getTickAtTime( start_time, start_tempo, tempo_ticks,
+                    tempo_seconds, tempo_microseconds_per_beat, ticks_per_beat ) );
+               window_end_ticks[win] = Math.min( last_tick, getTickAtTime( end_time, end_tempo, tempo_ticks,
+                    tempo_seconds, tempo_microseconds_per_beat, ticks_per_beat ) );
+               if (window_end_ticks[win] <= window_start_ticks[win])
+                    window_end_ticks[win] = window_start_ticks[win] + 1;
+          }
+          
+          return new long[][] {window_start_ticks, window_end_ticks};
+     }
+     
+     
+     /**
+      * Returns the tempo changes of the given sequence, from all of its
+      * tracks, in tick order. The first entry of the returned array holds the
+      * tick of each tempo change and the second holds the corresponding number
+      * of microseconds per beat. The first tempo is always at tick 0, and is
+      * the MIDI default of 120 beats per minute unless a tempo change message
+      * occurs on tick 0.
+      *
+      * @param	sequence	The MIDI Sequence to find the tempo changes of.
+      * @return			The tick and microseconds per beat of each tempo
+      *                         change.
+      */
+     public static long[][] getTempoMap(Sequence sequence)
+     {
+          // Collect the tempo change events of all tracks
+          LinkedList<MidiEvent> tempo_events = new LinkedList<MidiEvent>();
+          Track[] tracks = sequence.getTracks();
+          for (int n_track = 0; n_track < tracks.length; n_track++)
+               for (int n_event = 0; n_event < tracks[n_track].size(); n_event++)
                {
-                    seconds_accumulated_so_far += seconds_per_tick[this_tick];
-                    this_tick++;
-                    if (!found_next_tick)
-                         if (seconds_accumulated_so_far > time_interval_to_next_tick)
-                         {
-                         tick_of_next_beginning = this_tick;
-                         found_next_tick = true;
-                         }
+                    MidiEvent event = tracks[n_track].get(n_event);
+                    if (isTempoChange(event.getMessage()))
+                         tempo_events.add(event);
                }
-               window_end_ticks_list.add(new Integer(this_tick - 1));
-               if (found_next_tick)
-                    this_tick = tick_of_next_beginning;
-               found_next_tick = false;
-               total_seconds_accumulated_so_far += seconds_accumulated_so_far - window_overlap_offset;
-          }
           
-          // Store the window start and end tick indices
-          Integer[] window_start_ticks_I = window_start_ticks_list.toArray(new Integer[1]);
-          int[] window_start_ticks = new int[window_start_ticks_I.length];
-          for (int i = 0; i < window_start_ticks.length; i++)
-               window_start_ticks[i] = window_start_ticks_I[i].intValue();
-          Integer[] window_end_ticks_I = window_end_ticks_list.toArray(new Integer[1]);
-          int[] window_end_ticks = new int[window_end_ticks_I.length];
-          for (int i = 0; i < window_end_ticks.length; i++)
-               window_end_ticks[i] = window_end_ticks_I[i].intValue();
+          // Sort them by tick, keeping the order of changes on the same tick
+          MidiEvent[] sorted_events = tempo_events.toArray(new MidiEvent[tempo_events.size()]);
+          Arrays.sort(sorted_events, new Comparator<MidiEvent>()
+          {
+               public int compare(MidiEvent a, MidiEvent b)
+               {
+                    return a.getTick() < b.getTick() ? -1 : (a.getTick() == b.getTick() ? 0 : 1);
+               }
+          });
           
-          // Prepare the sequences representing each window of MIDI data and the tracks in
-          // each sequence
-          Sequence[] windowed_sequences = new Sequence[window_start_ticks.length];
-          Track[][] windowed_tracks = new Track[window_start_ticks.length][];
-          for (int win = 0; win < windowed_sequences.length; win++)
+          // Keep only the last change on each tick
+          long[] ticks = new long[sorted_events.length + 1];
+          long[] microseconds_per_beat = new long[sorted_events.length + 1];
+          microseconds_per_beat[0] = 500000;
+          int number_changes = 1;
+          for (int i = 0; i < sorted_events.length; i++)
           {
-               windowed_sequences[win] = new Sequence( original_sequence.getDivisionType(),
-                    original_sequence.getResolution(),
-                    original_sequence.getTracks().length );
-               windowed_tracks[win] = windowed_sequences[win].getTracks();
+               long tick = sorted_events[i].getTick();
+               if (tick != ticks[number_changes - 1])
+                    number_changes++;
+               ticks[number_changes - 1] = tick;
+               microseconds_per_beat[number_changes - 1] = getMicrosecondsPerBeat((MetaMessage) sorted_events[i].getMessage());
           }
+          long[][] tempo_map = new long[2][number_changes];
+          System.arraycopy(ticks, 0, tempo_map[0], 0, number_changes);
+          System.arraycopy(microseconds_per_beat, 0, tempo_map[1], 0, number_changes);
+          return tempo_map;
+     }
+     
+     
+     /* PRIVATE METHODS *******************************************************/
+     
+     
+     // The meta-message types whose last value is copied to the beginning of
+     // each window: copyright, track name, instrument name, channel prefix,
+     // port, tempo, time signature and key signature
+     private static final int[] CARRIED_META_TYPES = {0x02, 0x03, 0x04, 0x20, 0x21, 0x51, 0x58, 0x59};
+     
+     
+     /**
+      * Returns whether the given message is a tempo change meta-message.
+      */
+     private static boolean isTempoChange(MidiMessage message)
+     {
+          return message instanceof MetaMessage &&
+               ((MetaMessage) message).getType() == 0x51 &&
+               ((MetaMessage) message).getData().length >= 3;
+     }
+     
+     
+     /**
+      * Returns the number of microseconds per beat set by the given tempo
+      * change meta-message.
+      */
+     private static long getMicrosecondsPerBeat(MetaMessage tempo_change)
+     {
+          byte[] meta_data = tempo_change.getData();
+          return ((meta_data[0] & 0xFF) << 16) |
+               ((meta_data[1] & 0xFF) << 8) |
+               (meta_data[2] & 0xFF);
+     }
+     
+     
+     /**
+      * Returns the first tick that occurs at or after the given time, given
+      * that the tempo change with the given indice is the last one at or
+      * before that time.
+      */
+     private static long getTickAtTime( double time,
+          int tempo,
+          long[] tempo_ticks,
+          double[] tempo_seconds,
+          long[] tempo_microseconds_per_beat,
+          double ticks_per_beat )
+     {
+          double ticks_per_second = ticks_per_beat * 1000000.0 / tempo_microseconds_per_beat[tempo];
+          double tick = tempo_ticks[tempo] + (time - tempo_seconds[tempo]) * ticks_per_second;
+          return (long) Math.ceil(tick - 0.000001);
+     }
+     
+     
+     /**
+      * Copies the events of the given original track into the corresponding
+      * track of each window that contains them, in a single pass. Also copies
+      * the state in effect at the start of each window and ends notes that
+      * continue past the end of a window.
+      *
+      * @param	original_track		The track to break into windows.
+      * @param	n_track                 The indice of the track.
+      * @param	windowed_tracks         The tracks of each window. The first
+      *                                 indice identifies the window and the
+      *                                 second the track.
+      * @param	window_start_ticks      The first tick of each window.
+      * @param	window_end_ticks        The tick after the last tick of each
+      *                                 window.
+      */
+     private static void fillWindowedTrack( Track original_track,
+          int n_track,
+          Track[][] windowed_tracks,
+          long[] window_start_ticks,
+          long[] window_end_ticks )
+     {
+          int number_windows = window_start_ticks.length;
           
-          // Prepare the original tracks of MIDI data
-          Track[] original_tracks = original_sequence.getTracks();
+          // The last carried meta-message of each type, the last program
+          // change and pitch bend of each channel and the last value of each
+          // controller of each channel, in the order they were first set
+          MetaMessage[] meta_state = new MetaMessage[128];
+          ShortMessage[] program_state = new ShortMessage[16];
+          ShortMessage[] pitch_bend_state = new ShortMessage[16];
+          ShortMessage[][] controller_state = new ShortMessage[16][128];
+          int[] controllers_set = new int[16 * 128];
+          int number_controllers_set = 0;
           
-// FILL IN THE WINDOWS HERE. REMEMBER THAT EACH WINDOW MUST CONTAIN COMPLETE META-DATA
-// AS WELL AS THE LAST RELEVANT PROGRAM CHANGE, PITCH BEND, ETC. MESSAGES.
+          // The windows containing each sounding note, by channel and pitch.
+          // Each entry holds the first and last windows containing the note's
+          // onset. Notes on the same channel and pitch are ended in the order
+          // they were begun.
+          LinkedList<int[]>[] sounding_notes = new LinkedList[16 * 128];
           
-// Starts and ends are in window_start_ticks and window_end_ticks
-// Should start on tick 1 rather than tick 0?
+          // The windows that contain the current tick are those from
+          // first_window to last_window
+          int first_window = 0;
+          int last_window = -1;
           
-          // Return the windows of MIDI data
-          return windowed_sequences;
+          for (int n_event = 0; n_event <= original_track.size(); n_event++)
+          {
+               // Process every window after the last event
+               MidiEvent event = null;
+               long tick = Long.MAX_VALUE;
+               if (n_event < original_track.size())
+               {
+                    event = original_track.get(n_event);
+                    tick = event.getTick();
+                    MidiMessage message = event.getMessage();
+                    if (message instanceof MetaMessage && ((MetaMessage) message).getType() == 0x2F)
+                         continue;
+               }
+               
+               // Begin the windows that start at or before this tick with the
+               // state in effect before it
+               while (last_window + 1 < number_windows && window_start_ticks[last_window + 1] <= tick)
+               {
+                    last_window++;
+                    Track track = windowed_tracks[last_window][n_track];
+                    for (int i = 0; i < CARRIED_META_TYPES.length; i++)
+                         if (meta_state[CARRIED_META_TYPES[i]] != null)
+                              track.add(new MidiEvent(meta_state[CARRIED_META_TYPES[i]], 0));
+                    for (int channel = 0; channel < 16; channel++)
+                         if (program_state[channel] != null)
+                              track.add(new MidiEvent(program_state[channel], 0));
+                    for (int i = 0; i < number_controllers_set; i++)
+                         track.add(new MidiEvent(controller_state[controllers_set[i] / 128][controllers_set[i] % 128], 0));
+                    for (int channel = 0; channel < 16; channel++)
+                         if (pitch_bend_state[channel] != null)
+                              track.add(new MidiEvent(pitch_bend_state[channel], 0));
+               }
+               
+               // Pass the windows that end at or before this tick
+               while (first_window <= last_window && window_end_ticks[first_window] <= tick)
+                    first_window++;
+               
+               if (event == null)
+                    break;
+               MidiMessage message = event.getMessage();
+               
+               // Find the windows to add the event to
+               int first_target = first_window;
+               int last_target = last_window;
+               if (message instanceof ShortMessage)
+               {
+                    ShortMessage short_message = (ShortMessage) message;
+                    int command = short_message.getCommand();
+                    int key = short_message.getChannel() * 128 + short_message.getData1();
+                    if (command == ShortMessage.NOTE_ON && short_message.getData2() != 0)
+                    {
+                         // Remember the windows the note begins in
+                         if (first_window <= last_window)
+                         {
+                              if (sounding_notes[key] == null)
+                                   sounding_notes[key] = new LinkedList<int[]>();
+                              sounding_notes[key].add(new int[] {first_window, last_window});
+                         }
+                    }
+                    else if (command == ShortMessage.NOTE_OFF || command == ShortMessage.NOTE_ON)
+                    {
+                         // End the note in the windows it began in but that end
+                         // before this tick, and only end it in the windows it
+                         // began in
+                         if (sounding_notes[key] != null && !sounding_notes[key].isEmpty())
+                         {
+                              int[] note_windows = sounding_notes[key].removeFirst();
+                              endNote(message, n_track, windowed_tracks, window_start_ticks, window_end_ticks,
+                                   note_windows[0], Math.min(note_windows[1], first_window - 1));
+                              last_target = Math.min(last_target, note_windows[1]);
+                         }
+                    }
+                    else if (command == ShortMessage.PROGRAM_CHANGE)
+                         program_state[short_message.getChannel()] = short_message;
+                    else if (command == ShortMessage.PITCH_BEND)
+                         pitch_bend_state[short_message.getChannel()] = short_message;
+                    else if (command == ShortMessage.CONTROL_CHANGE && short_message.getData1() < 120)
+                    {
+                         // Channel mode messages (controllers 120 to 127) are
+                         // not carried
+                         int channel = short_message.getChannel();
+                         if (controller_state[channel][short_message.getData1()] == null)
+                              controllers_set[number_controllers_set++] = key;
+                         controller_state[channel][short_message.getData1()] = short_message;
+                    }
+               }
+               else if (message instanceof MetaMessage)
+               {
+                    int type = ((MetaMessage) message).getType();
+                    if (type >= 0 && type < meta_state.length)
+                         meta_state[type] = (MetaMessage) message;
+               }
+               
+               // Add the event to each window containing it, shifted so that
+               // the window begins on tick 0
+               for (int win = first_target; win <= last_target; win++)
+                    windowed_tracks[win][n_track].add(new MidiEvent(message, tick - window_start_ticks[win]));
+          }
+          
+          // End the notes that were never ended in the windows they began in
+          for (int key = 0; key < sounding_notes.length; key++)
+               if (sounding_notes[key] != null)
+                    while (!sounding_notes[key].isEmpty())
+                    {
+                         int[] note_windows = sounding_notes[key].removeFirst();
+                         ShortMessage note_off = new ShortMessage();
+                         try
+                         {
+                              note_off.setMessage(ShortMessage.NOTE_OFF, key / 128, key % 128, 0);
+                         }
+                         catch (InvalidMidiDataException e) {}
+                         endNote(note_off, n_track, windowed_tracks, window_start_ticks, window_end_ticks,
+                              note_windows[0], note_windows[1]);
+                    }
+          
+          // Make each window of this track last as long as the window
+          for (int win = 0; win < number_windows; win++)
+          {
+               try
+               {
+                    MetaMessage end_of_track = new MetaMessage();
+                    end_of_track.setMessage(0x2F, new byte[0], 0);
+                    windowed_tracks[win][n_track].add(new MidiEvent(end_of_track, window_end_ticks[win] - window_start_ticks[win]));
+               }
+               catch (InvalidMidiDataException e) {}
+          }
+     }
+     
+     
+     /**
+      * Adds the given note off message on the last tick of each of the
+      * windows from first_window to last_window.
+      */
+     private static void endNote( MidiMessage note_off,
+          int n_track,
+          Track[][] windowed_tracks,
+          long[] window_start_ticks,
+          long[] window_end_ticks,
+          int first_window,
+          int last_window )
+     {
+          for (int win = first_window; win <= last_window; win++)
+               windowed_tracks[win][n_track].add(new MidiEvent(note_off, window_end_ticks[win] - window_start_ticks[win] - 1));
      }
 }
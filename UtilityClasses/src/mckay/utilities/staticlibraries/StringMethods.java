@@ -10,6 +10,7 @@ package mckay.utilities.staticlibraries;
 
 import java.io.File;
 import java.text.DecimalFormat;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.StringTokenizer;
 import java.net.URLDecoder;
@@ -317,22 +318,14 @@ public class StringMethods
       */
      public static String[] removeDoubles(String[] strings)
      {
-          String[] editable_strings = new String[strings.length];
-          for (int i = 0; i < editable_strings.length; i++)
-               editable_strings[i] = strings[i];
+          // Keep the first occurence of each string, in order
+          HashSet<String> found = new HashSet<String>(strings.length * 2);
+          LinkedList<String> cleaned = new LinkedList<String>();
+          for (int i = 0; i < strings.length; i++)
+               if (strings[i] != null && found.add(strings[i]))
+                    cleaned.add(strings[i]);
           
-          for (int i = 0; i < editable_strings.length - 1; i++)
-               for (int j = i + 1; j < editable_strings.length; j++)
-                    if (editable_strings[i] != null && editable_strings[j] != null)
-                         if (editable_strings[i].equals(editable_strings[j]))
-                              editable_strings[j] = null;
-          
-          Object[] cleaned_obj = ArrayMethods.removeNullEntriesFromArray(editable_strings);
-          String[] cleaned_strings = new String[cleaned_obj.length];
-          for (int i = 0; i < cleaned_strings.length; i++)
-               cleaned_strings[i] = (String) cleaned_obj[i];
-          
-          return cleaned_strings;
+          return cleaned.toArray(new String[cleaned.size()]);
      }
 
 
@@ -1052,4 +1045,4 @@ public class StringMethods
 		// Decrypt the ciphertext
 		return new String(pbe_cipher.doFinal(encrypted_text));
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
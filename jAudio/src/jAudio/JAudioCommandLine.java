@@ -17,14 +17,27 @@ public class JAudioCommandLine {
 
 	private static final String usage = "USAGE: "
 			+ System.getProperty("line.separator")
-			+ "JAudio -s <settings.xml> <destination xml file> <audiofiles>+"
+			+ "JAudio [-excerpt <start seconds> <duration seconds>]* -s <settings.xml> <destination xml file> <audiofiles>+"
 			+ System.getProperty("line.separator")
-			+ "JAudio -b <batchfile.xml>";
+			+ "JAudio [-excerpt <start seconds> <duration seconds>]* -b <batchfile.xml>"
+			+ System.getProperty("line.separator")
+			+ "A duration of 0 extracts to the end of each file. Excerpts given on the"
+			+ System.getProperty("line.separator")
+			+ "command line replace those in the batch file.";
+
+	private static double[] excerptStarts = new double[0];
+
+	private static double[] excerptDurations = new double[0];
 
 	/**
 	 * @param args
 	 */
 	public static void execute(String[] args) {
+		args = parseExcerpts(args);
+		if (args.length < 2) {
+			System.out.println(usage);
+			System.exit(1);
+		}
 		if (args[0].equals("-b")) {
 			File batch = new File(args[1]);
 			if (!batch.exists()) {
@@ -49,6 +62,9 @@ public class JAudioCommandLine {
 						dm.featureKey = new FileOutputStream(new File(b.getDestinationFK()));
 						dm.featureValue = new FileOutputStream(new File(b.getDestinationFV()));
 						b.setDataModel(dm);
+						if (excerptStarts.length > 0) {
+							b.setExcerpts(excerptStarts, excerptDurations);
+						}
 						CommandLineThread clt = new CommandLineThread(b);
 						clt.start();
 						while(clt.isAlive()){
@@ -102,6 +118,47 @@ public class JAudioCommandLine {
 		}
 	}
 
+	/**
+	 * Removes any leading -excerpt options from the given arguments and
+	 * stores the excerpts they specify.
+	 *
+	 * @param args
+	 *            the command line arguments
+	 * @return the arguments following the excerpt options
+	 */
+	private static String[] parseExcerpts(String[] args) {
+		LinkedList<Double> starts = new LinkedList<Double>();
+		LinkedList<Double> durations = new LinkedList<Double>();
+		int i = 0;
+		while ((i < args.length) && args[i].equals("-excerpt")) {
+			if (i + 2 >= args.length) {
+				System.out.println(usage);
+				System.exit(1);
+			}
+			try {
+				starts.add(Double.parseDouble(args[i + 1]));
+				durations.add(Double.parseDouble(args[i + 2]));
+			} catch (NumberFormatException e) {
+				System.out.println("Excerpt start and duration must be numbers of seconds");
+				System.exit(1);
+			}
+			if (starts.getLast() < 0.0) {
+				System.out.println("Excerpt start must be at least zero");
+				System.exit(1);
+			}
+			i += 3;
+		}
+		excerptStarts = new double[starts.size()];
+		excerptDurations = new double[durations.size()];
+		for (int j = 0; j < excerptStarts.length; ++j) {
+			excerptStarts[j] = starts.get(j);
+			excerptDurations[j] = durations.get(j);
+		}
+		String[] remaining = new String[args.length - i];
+		System.arraycopy(args, i, remaining, 0, remaining.length);
+		return remaining;
+	}
+
 	public static void executeSettings(String[] args) throws Exception{
 		Object[] data = null;
 		try {
@@ -222,6 +279,7 @@ public class JAudioCommandLine {
 			b.setOutputType(outputType);
 			b.setFeatures(active,attribute);
 			b.setAggregators(aggNames,aggFeatures,aggParameters);
+			b.setExcerpts(excerptStarts, excerptDurations);
 
 			CommandLineThread clt = new CommandLineThread(b);
 			clt.start();
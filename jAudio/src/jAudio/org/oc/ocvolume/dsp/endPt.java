@@ -59,7 +59,7 @@ public class endPt{
     /**
      * the number of samples for 5ms frame
      */
-    final static int frameSize = 80;
+    public final static int frameSize = 80;
 
     /**
      * a method to use this class<br>
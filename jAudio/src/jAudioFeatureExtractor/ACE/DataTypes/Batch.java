@@ -1,6 +1,8 @@
 package jAudioFeatureExtractor.ACE.DataTypes;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -14,6 +16,7 @@ import jAudioFeatureExtractor.DataModel;
 import jAudioFeatureExtractor.Aggregators.Aggregator;
 import jAudioFeatureExtractor.DataTypes.RecordingInfo;
 import jAudioFeatureExtractor.jAudioTools.AudioSamples;
+import jAudioFeatureExtractor.jAudioTools.FeatureProcessor;
 
 /**
  * Data type used to represent a batch file.
@@ -32,10 +35,24 @@ public class Batch implements Serializable {
 
 	double windowOverlap;
 
+	int[] additionalWindowSizes = new int[0];
+
+	double[] additionalWindowOverlaps = new double[0];
+
 	double samplingRate;
 
 	boolean normalise;
 
+	int silenceDetection = FeatureProcessor.SILENCE_DETECTION_NONE;
+
+	double silenceThreshold = 0.0;
+
+	int silenceFill = FeatureProcessor.SILENCE_FILL_MISSING;
+
+	double[] excerptStarts = new double[0];
+
+	double[] excerptDurations = new double[0];
+
 	boolean perWindow;
 
 	boolean overall;
@@ -76,8 +93,79 @@ public class Batch implements Serializable {
 	 */
 	public void execute() throws Exception {
 		applyAttributes();
-		dm_.extract(windowSize, windowOverlap, samplingRate, normalise,
-				perWindow, overall, recording, outputType);
+		if ((additionalWindowSizes == null)
+				|| (additionalWindowSizes.length == 0)) {
+			dm_.extract(windowSize, windowOverlap, samplingRate, normalise,
+					perWindow, overall, recording, outputType);
+		} else {
+			executeMultipleResolutions();
+		}
+	}
+
+	/**
+	 * Execute this batch once for the primary window settings and once for
+	 * each additional window resolution, decoding each recording only once.
+	 * The output of each additional resolution is saved next to the primary
+	 * destinations, with the window size and overlap appended to the file
+	 * names.
+	 *
+	 * @throws Exception
+	 */
+	private void executeMultipleResolutions() throws Exception {
+		if ((destinationFK == null) || (destinationFV == null))
+			throw new Exception(
+					"Destination files must be specified when extracting at multiple window resolutions");
+		int[] sizes = new int[additionalWindowSizes.length + 1];
+		double[] overlaps = new double[sizes.length];
+		sizes[0] = windowSize;
+		overlaps[0] = windowOverlap;
+		OutputStream[] keys = new OutputStream[additionalWindowSizes.length];
+		OutputStream[] values = new OutputStream[additionalWindowSizes.length];
+		try {
+			for (int i = 0; i < additionalWindowSizes.length; ++i) {
+				sizes[i + 1] = additionalWindowSizes[i];
+				overlaps[i + 1] = additionalWindowOverlaps[i];
+				keys[i] = new FileOutputStream(new File(getResolutionDestination(
+						destinationFK, sizes[i + 1], overlaps[i + 1])));
+				values[i] = new FileOutputStream(new File(getResolutionDestination(
+						destinationFV, sizes[i + 1], overlaps[i + 1])));
+			}
+			dm_.extract(sizes, overlaps, samplingRate, normalise, perWindow,
+					overall, recording, outputType, keys, values);
+		} finally {
+			for (int i = 0; i < keys.length; ++i) {
+				if (keys[i] != null)
+					keys[i].close();
+				if (values[i] != null)
+					values[i].close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the path that features extracted with the given window settings
+	 * are saved to. The window size and overlap are inserted before the
+	 * extension of the given path.
+	 *
+	 * @param destination
+	 *            Path of the primary output file.
+	 * @param windowSize
+	 *            Size of the analysis window in samples.
+	 * @param windowOverlap
+	 *            Fraction of overlap of the windows.
+	 * @return Path for the output of the given resolution.
+	 */
+	public static String getResolutionDestination(String destination,
+			int windowSize, double windowOverlap) {
+		String suffix = "_" + windowSize + "_" + windowOverlap;
+		int dot = destination.lastIndexOf('.');
+		int separator = destination.lastIndexOf(File.separatorChar);
+		if (dot > separator + 1) {
+			return destination.substring(0, dot) + suffix
+					+ destination.substring(dot);
+		} else {
+			return destination + suffix;
+		}
 	}
 
 	/**
@@ -141,6 +229,99 @@ public class Batch implements Serializable {
 		this.outputType = outputType;
 	}
 
+	/**
+	 * Sets window configurations that features are to be extracted with in
+	 * addition to the primary windowSize and windowOverlap. Each recording is
+	 * only decoded once regardless of how many configurations are given.
+	 *
+	 * @param windowSizes
+	 *            Size of each additional analysis window in samples.
+	 * @param windowOverlaps
+	 *            Percent overlap of each additional window. Must be greater
+	 *            than or equal to 0 and less than 1.
+	 * @throws Exception
+	 *             Thrown if the two arrays are not of the same length.
+	 */
+	public void setAdditionalWindows(int[] windowSizes, double[] windowOverlaps)
+			throws Exception {
+		if (windowSizes.length != windowOverlaps.length)
+			throw new Exception("There are " + windowSizes.length
+					+ " additional window sizes but " + windowOverlaps.length
+					+ " additional window overlaps");
+		additionalWindowSizes = windowSizes;
+		additionalWindowOverlaps = windowOverlaps;
+	}
+
+	/**
+	 * Sets whether windows that are silent are to be skipped rather than
+	 * having their features extracted, and what they are filled with.
+	 *
+	 * @param detection
+	 *            How silent windows are detected. One of the
+	 *            FeatureProcessor.SILENCE_DETECTION constants.
+	 * @param threshold
+	 *            RMS below which a window is silent when using RMS detection.
+	 * @param fill
+	 *            What skipped windows are filled with. One of the
+	 *            FeatureProcessor.SILENCE_FILL constants.
+	 */
+	public void setSilenceSkipping(int detection, double threshold, int fill) {
+		silenceDetection = detection;
+		silenceThreshold = threshold;
+		silenceFill = fill;
+	}
+
+	/**
+	 * Sets the excerpts of each recording that features are to be extracted
+	 * from. Only the audio needed for the excerpts is decoded.
+	 *
+	 * @param starts
+	 *            The time in seconds at which each excerpt starts. An empty
+	 *            array means whole recordings are extracted.
+	 * @param durations
+	 *            The duration in seconds of each excerpt. Values of zero or
+	 *            less mean that an excerpt runs to the end of the recording.
+	 * @throws Exception
+	 *             Thrown if the two arrays are not of the same length.
+	 */
+	public void setExcerpts(double[] starts, double[] durations)
+			throws Exception {
+		if (starts.length != durations.length)
+			throw new Exception("There are " + starts.length
+					+ " excerpt starts but " + durations.length
+					+ " excerpt durations");
+		excerptStarts = starts;
+		excerptDurations = durations;
+	}
+
+	public double[] getExcerptStarts() {
+		return excerptStarts;
+	}
+
+	public double[] getExcerptDurations() {
+		return excerptDurations;
+	}
+
+	public int getSilenceDetection() {
+		return silenceDetection;
+	}
+
+	public double getSilenceThreshold() {
+		return silenceThreshold;
+	}
+
+	public int getSilenceFill() {
+		return silenceFill;
+	}
+
+	public int[] getAdditionalWindowSizes() {
+		return additionalWindowSizes;
+	}
+
+	public double[] getAdditionalWindowOverlaps() {
+		return additionalWindowOverlaps;
+	}
+
 	/**
 	 * Sets where the extracted features should be stored.
 	 *
@@ -218,6 +399,16 @@ public class Batch implements Serializable {
 			throw new Exception("Attempting to get overall stats without specifying any aggregators to create it");
 		}
 		dm_.aggregators = aggregatorList.toArray(new Aggregator[]{});
+		dm_.silenceDetection = silenceDetection;
+		dm_.silenceThreshold = silenceThreshold;
+		dm_.silenceFill = silenceFill;
+		if ((excerptStarts != null) && (excerptStarts.length > 0)) {
+			dm_.excerptStarts = excerptStarts;
+			dm_.excerptDurations = excerptDurations;
+		} else {
+			dm_.excerptStarts = null;
+			dm_.excerptDurations = null;
+		}
 	}
 
 	public Aggregator[] getAggregator() throws Exception{
@@ -258,6 +449,15 @@ public class Batch implements Serializable {
 				"</windowSize>").append(sep);
 		ret.append("\t\t\t<windowOverlap>").append(windowOverlap).append(
 				"</windowOverlap>").append(sep);
+		for (int i = 0; i < additionalWindowSizes.length; ++i) {
+			ret.append("\t\t\t<additionalWindow>").append(sep);
+			ret.append("\t\t\t\t<windowSize>").append(
+					additionalWindowSizes[i]).append("</windowSize>").append(sep);
+			ret.append("\t\t\t\t<windowOverlap>").append(
+					additionalWindowOverlaps[i]).append("</windowOverlap>")
+					.append(sep);
+			ret.append("\t\t\t</additionalWindow>").append(sep);
+		}
 		ret.append("\t\t\t<samplingRate>").append(samplingRate).append(
 				"</samplingRate>").append(sep);
 		ret.append("\t\t\t<normalise>").append(normalise)
@@ -266,6 +466,32 @@ public class Batch implements Serializable {
 				"</perWindowStats>").append(sep);
 		ret.append("\t\t\t<overallStats>").append(overall).append(
 				"</overallStats>").append(sep);
+		for (int i = 0; i < excerptStarts.length; ++i) {
+			ret.append("\t\t\t<excerpt>").append(sep);
+			ret.append("\t\t\t\t<excerptStart>").append(excerptStarts[i])
+					.append("</excerptStart>").append(sep);
+			ret.append("\t\t\t\t<excerptDuration>").append(
+					excerptDurations[i]).append("</excerptDuration>").append(sep);
+			ret.append("\t\t\t</excerpt>").append(sep);
+		}
+		if (silenceDetection != FeatureProcessor.SILENCE_DETECTION_NONE) {
+			if (silenceDetection == FeatureProcessor.SILENCE_DETECTION_RMS) {
+				ret.append("\t\t\t<silenceDetection>RMS</silenceDetection>")
+						.append(sep);
+			} else {
+				ret.append("\t\t\t<silenceDetection>endPoint</silenceDetection>")
+						.append(sep);
+			}
+			ret.append("\t\t\t<silenceThreshold>").append(silenceThreshold)
+					.append("</silenceThreshold>").append(sep);
+			if (silenceFill == FeatureProcessor.SILENCE_FILL_ZERO) {
+				ret.append("\t\t\t<silenceFill>zero</silenceFill>").append(sep);
+			} else if (silenceFill == FeatureProcessor.SILENCE_FILL_LAST) {
+				ret.append("\t\t\t<silenceFill>last</silenceFill>").append(sep);
+			} else {
+				ret.append("\t\t\t<silenceFill>missing</silenceFill>").append(sep);
+			}
+		}
 		if (outputType == 0) {
 			ret.append("\t\t\t<outputType>ACE</outputType>").append(sep);
 		} else {
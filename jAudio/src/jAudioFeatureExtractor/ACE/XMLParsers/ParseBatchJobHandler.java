@@ -1,6 +1,7 @@
 package jAudioFeatureExtractor.ACE.XMLParsers;
 
 import jAudioFeatureExtractor.ACE.DataTypes.Batch;
+import jAudioFeatureExtractor.jAudioTools.FeatureProcessor;
 
 import java.io.File;
 import java.util.HashMap;
@@ -59,6 +60,20 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 
 	public static final int AGGREGATOR_PARAMETER = 20;
 
+	public static final int ADDITIONAL_WINDOW = 21;
+
+	public static final int SILENCE_DETECTION = 22;
+
+	public static final int SILENCE_THRESHOLD = 23;
+
+	public static final int SILENCE_FILL = 24;
+
+	public static final int EXCERPT = 25;
+
+	public static final int EXCERPT_START = 26;
+
+	public static final int EXCERPT_DURATION = 27;
+
 	LinkedList<File> fileSet = new LinkedList<File>();
 
 	LinkedList<Batch> batchSet = new LinkedList<Batch>();
@@ -79,6 +94,30 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 
 	LinkedList<String> tmpAggregatorParameters = new LinkedList<String>();
 
+	LinkedList<Integer> additionalWindowSizes = new LinkedList<Integer>();
+
+	LinkedList<Double> additionalWindowOverlaps = new LinkedList<Double>();
+
+	boolean inAdditionalWindow = false;
+
+	int additionalWindowSize;
+
+	double additionalWindowOverlap;
+
+	int silenceDetection;
+
+	double silenceThreshold;
+
+	int silenceFill;
+
+	LinkedList<Double> excerptStarts = new LinkedList<Double>();
+
+	LinkedList<Double> excerptDurations = new LinkedList<Double>();
+
+	double excerptStart;
+
+	double excerptDuration;
+
 	String name;
 
 	String featureName;
@@ -123,9 +162,15 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 				break;
 			case SETTINGS:
 				break;
+			case ADDITIONAL_WINDOW:
+				break;
 			case WINDOW_SIZE:
 				try {
-					windowSize = Integer.parseInt(data);
+					if (inAdditionalWindow) {
+						additionalWindowSize = Integer.parseInt(data);
+					} else {
+						windowSize = Integer.parseInt(data);
+					}
 				} catch (NumberFormatException e) {
 					throw new SAXException("windowSize data must be an integer");
 				}
@@ -137,6 +182,8 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 							|| (d >= 1.0)) {
 						throw new SAXException(
 								"windowOverlap must be at least zero and less than the window size");
+					} else if (inAdditionalWindow) {
+						additionalWindowOverlap = d;
 					} else {
 						windowOverlap = d;
 					}
@@ -172,6 +219,54 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 					overall = false;
 				}
 				break;
+			case SILENCE_DETECTION:
+				if (data.equals("RMS")) {
+					silenceDetection = FeatureProcessor.SILENCE_DETECTION_RMS;
+				} else if (data.equals("endPoint")) {
+					silenceDetection = FeatureProcessor.SILENCE_DETECTION_END_POINT;
+				} else if (data.equals("none")) {
+					silenceDetection = FeatureProcessor.SILENCE_DETECTION_NONE;
+				} else {
+					throw new SAXException("silenceDetection must be none, RMS or endPoint");
+				}
+				break;
+			case SILENCE_THRESHOLD:
+				try {
+					silenceThreshold = Double.parseDouble(data);
+				} catch (NumberFormatException e) {
+					throw new SAXException("silenceThreshold must be a double");
+				}
+				break;
+			case SILENCE_FILL:
+				if (data.equals("missing")) {
+					silenceFill = FeatureProcessor.SILENCE_FILL_MISSING;
+				} else if (data.equals("zero")) {
+					silenceFill = FeatureProcessor.SILENCE_FILL_ZERO;
+				} else if (data.equals("last")) {
+					silenceFill = FeatureProcessor.SILENCE_FILL_LAST;
+				} else {
+					throw new SAXException("silenceFill must be missing, zero or last");
+				}
+				break;
+			case EXCERPT:
+				break;
+			case EXCERPT_START:
+				try {
+					excerptStart = Double.parseDouble(data);
+				} catch (NumberFormatException e) {
+					throw new SAXException("excerptStart must be a double");
+				}
+				if (excerptStart < 0.0) {
+					throw new SAXException("excerptStart must be at least zero");
+				}
+				break;
+			case EXCERPT_DURATION:
+				try {
+					excerptDuration = Double.parseDouble(data);
+				} catch (NumberFormatException e) {
+					throw new SAXException("excerptDuration must be a double");
+				}
+				break;
 			case OUTPUT_TYPE:
 				if (data.equals("ACE")) {
 					outputType = 0;
@@ -240,6 +335,33 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 				batch.setSettings(windowSize, windowOverlap, sampleRate, normalise,
 						saveWindows, overall, outputType);
 				batch.setDestination(destinationFK,destinationFV);
+				batch.setSilenceSkipping(silenceDetection, silenceThreshold, silenceFill);
+
+				// set the excerpts to extract from each file
+				double[] starts = new double[excerptStarts.size()];
+				double[] durations = new double[excerptDurations.size()];
+				for (int i = 0; i < starts.length; ++i) {
+					starts[i] = excerptStarts.get(i);
+					durations[i] = excerptDurations.get(i);
+				}
+				try {
+					batch.setExcerpts(starts, durations);
+				} catch (Exception e) {
+					throw new SAXException(e.getMessage());
+				}
+
+				// set the additional window resolutions of this batch
+				int[] sizes = new int[additionalWindowSizes.size()];
+				double[] overlaps = new double[additionalWindowOverlaps.size()];
+				for (int i = 0; i < sizes.length; ++i) {
+					sizes[i] = additionalWindowSizes.get(i);
+					overlaps[i] = additionalWindowOverlaps.get(i);
+				}
+				try {
+					batch.setAdditionalWindows(sizes, overlaps);
+				} catch (Exception e) {
+					throw new SAXException(e.getMessage());
+				}
 
 				// set the features attributes
 				batch.setFeatures(activeFeatureSet,featureAttributeSet);
@@ -256,6 +378,13 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 				aggregatorList = new LinkedList<String>();
 				aggregatorFeatures = new LinkedList<String[]>();
 				aggregatorParameters = new LinkedList<String[]>();
+				additionalWindowSizes.clear();
+				additionalWindowOverlaps.clear();
+				silenceDetection = FeatureProcessor.SILENCE_DETECTION_NONE;
+				silenceThreshold = 0.0;
+				silenceFill = FeatureProcessor.SILENCE_FILL_MISSING;
+				excerptStarts.clear();
+				excerptDurations.clear();
 				tmpAttributeSet.clear();
 				tmpAggregatorFeatures.clear();
 				tmpAggregatorParameters.clear();
@@ -274,11 +403,17 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 			case SETTINGS:
 				tagType = BATCH;
 				break;
+			case ADDITIONAL_WINDOW:
+				additionalWindowSizes.add(additionalWindowSize);
+				additionalWindowOverlaps.add(additionalWindowOverlap);
+				inAdditionalWindow = false;
+				tagType = SETTINGS;
+				break;
 			case WINDOW_SIZE:
-				tagType=SETTINGS;
+				tagType = inAdditionalWindow ? ADDITIONAL_WINDOW : SETTINGS;
 				break;
 			case WINDOW_OVERLAP:
-				tagType=SETTINGS;
+				tagType = inAdditionalWindow ? ADDITIONAL_WINDOW : SETTINGS;
 				break;
 			case SAMPLING_RATE:
 				tagType=SETTINGS;
@@ -292,6 +427,26 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 			case OVERALL_STATS:
 				tagType = SETTINGS;
 				break;
+			case SILENCE_DETECTION:
+				tagType = SETTINGS;
+				break;
+			case SILENCE_THRESHOLD:
+				tagType = SETTINGS;
+				break;
+			case SILENCE_FILL:
+				tagType = SETTINGS;
+				break;
+			case EXCERPT:
+				excerptStarts.add(excerptStart);
+				excerptDurations.add(excerptDuration);
+				tagType = SETTINGS;
+				break;
+			case EXCERPT_START:
+				tagType = EXCERPT;
+				break;
+			case EXCERPT_DURATION:
+				tagType = EXCERPT;
+				break;
 			case OUTPUT_TYPE:
 				tagType = SETTINGS;
 				break;
@@ -347,6 +502,14 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 		tmpAggregatorFeatures.clear();
 		tmpAggregatorParameters.clear();
 		aggregatorParameters.clear();
+		additionalWindowSizes.clear();
+		additionalWindowOverlaps.clear();
+		inAdditionalWindow = false;
+		silenceDetection = FeatureProcessor.SILENCE_DETECTION_NONE;
+		silenceThreshold = 0.0;
+		silenceFill = FeatureProcessor.SILENCE_FILL_MISSING;
+		excerptStarts.clear();
+		excerptDurations.clear();
 		tagType = -1;
 	}
 
@@ -371,6 +534,11 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 			fileName = "";
 		} else if (localName.equals("settings")) {
 			tagType = SETTINGS;
+		} else if (localName.equals("additionalWindow")) {
+			tagType = ADDITIONAL_WINDOW;
+			inAdditionalWindow = true;
+			additionalWindowSize = 0;
+			additionalWindowOverlap = 0.0;
 		} else if (localName.equals("windowSize")) {
 			tagType = WINDOW_SIZE;
 		} else if (localName.equals("windowOverlap")) {
@@ -383,6 +551,20 @@ public class ParseBatchJobHandler extends ParseFileHandler {
 			tagType = PER_WINDOW_STATS;
 		} else if (localName.equals("overallStats")) {
 			tagType = OVERALL_STATS;
+		} else if (localName.equals("silenceDetection")) {
+			tagType = SILENCE_DETECTION;
+		} else if (localName.equals("silenceThreshold")) {
+			tagType = SILENCE_THRESHOLD;
+		} else if (localName.equals("silenceFill")) {
+			tagType = SILENCE_FILL;
+		} else if (localName.equals("excerpt")) {
+			tagType = EXCERPT;
+			excerptStart = 0.0;
+			excerptDuration = 0.0;
+		} else if (localName.equals("excerptStart")) {
+			tagType = EXCERPT_START;
+		} else if (localName.equals("excerptDuration")) {
+			tagType = EXCERPT_DURATION;
 		} else if (localName.equals("outputType")) {
 			tagType = OUTPUT_TYPE;
 		} else if (localName.equals("feature")) {
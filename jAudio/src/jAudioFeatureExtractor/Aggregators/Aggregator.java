@@ -186,11 +186,24 @@ public abstract class Aggregator {
 
 	}
 
+	/**
+	 * Finds the first window from which all of the given features have values.
+	 * Windows may still be missing values after this window, for example when
+	 * silent windows have been skipped.
+	 *
+	 * @param values
+	 *            array holding output of all features
+	 * @param featureList
+	 *            which features in the values array to check
+	 * @return the first such window, or values.length if one of the features
+	 *         has no values at all
+	 */
 	protected int calculateOffset(double[][][] values, int[] featureList) {
 		int ret = 0;
 		for (int i = 0; i < featureList.length; ++i) {
 			int offset = 0;
-			while (values[offset][featureList[i]] == null) {
+			while ((offset < values.length)
+					&& (values[offset][featureList[i]] == null)) {
 				offset++;
 			}
 			if (offset > ret) {
@@ -200,18 +213,32 @@ public abstract class Aggregator {
 		return ret;
 	}
 
+	/**
+	 * Lists every dimension of the given features as a pair of feature and
+	 * dimension. The number of dimensions of each feature is taken from the
+	 * last window that has values for it. Features without values in any
+	 * window are left out.
+	 *
+	 * @param values
+	 *            array holding output of all features
+	 * @param indecis
+	 *            which features in the values array to list
+	 * @return the feature and dimension of each entry
+	 */
 	protected int[][] collapseFeatures(double[][][] values, int[] indecis) {
 		int count = 0;
 		for (int i = 0; i < indecis.length; ++i) {
-			if (values[values.length - 1][indecis[i]] != null) {
-				count += values[values.length - 1][indecis[i]].length;
+			int last = lastWindowWithValues(values, indecis[i]);
+			if (last >= 0) {
+				count += values[last][indecis[i]].length;
 			}
 		}
 		int[][] ret = new int[count][2];
 		count = 0;
 		for (int i = 0; i < indecis.length; ++i) {
-			if (values[values.length - 1][indecis[i]] != null) {
-				for (int j = 0; j < values[values.length - 1][indecis[i]].length; ++j) {
+			int last = lastWindowWithValues(values, indecis[i]);
+			if (last >= 0) {
+				for (int j = 0; j < values[last][indecis[i]].length; ++j) {
 					ret[count][0] = indecis[i];
 					ret[count][1] = j;
 					count++;
@@ -221,4 +248,46 @@ public abstract class Aggregator {
 		return ret;
 	}
 
+	/**
+	 * Finds the last window that has values for the given feature.
+	 *
+	 * @param values
+	 *            array holding output of all features
+	 * @param feature
+	 *            which feature in the values array to check
+	 * @return the window, or -1 if no window has values for the feature
+	 */
+	protected int lastWindowWithValues(double[][][] values, int feature) {
+		for (int i = values.length - 1; i >= 0; --i) {
+			if (values[i][feature] != null) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether a window has values for every entry returned by
+	 * collapseFeatures.
+	 *
+	 * @param values
+	 *            array holding output of all features
+	 * @param window
+	 *            which window to check
+	 * @param featureIndecis
+	 *            the entries returned by collapseFeatures
+	 * @return whether every entry has a value in this window
+	 */
+	protected boolean hasValues(double[][][] values, int window,
+			int[][] featureIndecis) {
+		for (int i = 0; i < featureIndecis.length; ++i) {
+			double[] windowValues = values[window][featureIndecis[i][0]];
+			if ((windowValues == null)
+					|| (windowValues.length <= featureIndecis[i][1])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 }
@@ -28,6 +28,10 @@ public class AreaMoments extends Aggregator {
 		int[][] featureIndecis = super.collapseFeatures(values,featureNameIndecis);
 		result[0] = 0.0;
 		for (int i=offset;i<values.length;++i){
+			// skip windows without values, such as skipped silent windows
+			if(!super.hasValues(values,i,featureIndecis)){
+				continue;
+			}
 			for(int j=0;j<featureIndecis.length;++j){
 				result[0] += values[i][featureIndecis[j][0]][featureIndecis[j][1]];
 			}
@@ -36,6 +40,9 @@ public class AreaMoments extends Aggregator {
 			java.util.Arrays.fill(result,0.0);
 		}else{
 			for (int i = offset; i < values.length; ++i) {
+				if (!super.hasValues(values, i, featureIndecis)) {
+					continue;
+				}
 				for (int j = 0; j < featureIndecis.length; ++j) {
 					int feature = featureIndecis[j][0];
 					int dimension = featureIndecis[j][1];
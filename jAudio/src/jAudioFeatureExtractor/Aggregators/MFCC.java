@@ -31,29 +31,37 @@ public class MFCC extends Aggregator {
 	@Override
 	public void aggregate(double[][][] values) {
 		fe.numCepstra = 4;
-		int valuesOffset = 0;
-		while((valuesOffset<values.length)&&(values[valuesOffset][index]==null)){
-			valuesOffset++;
-		}
+		int last = super.lastWindowWithValues(values,index);
 
 		//Handle Degenerate case here
-		if(valuesOffset >= values.length){
+		if(last < 0){
 			result = new double[definition.dimensions*4];
 			for(int i=0;i<result.length;++i){
 				result[i] = 0.0;
 			}
 		}else{
-			result = new double[values[values.length-1][index].length*4];
+			// windows without values (e.g. skipped silent windows) are left
+			// out of the signal
+			int windowsWithValues = 0;
+			for(int i=0;i<values.length;++i){
+				if(values[i][index]!=null){
+					windowsWithValues++;
+				}
+			}
+			result = new double[values[last][index].length*4];
 			definition.dimensions = result.length;
 			// get needed power of two array length for FFT.
-			int size = Statistics.ensureIsPowerOfN(values.length-valuesOffset,2);
+			int size = Statistics.ensureIsPowerOfN(windowsWithValues,2);
 			double[] fftArray = new double[size];
 			java.util.Arrays.fill(fftArray,0.0);
-			for(int i=0;i<values[values.length-1][index].length;++i){
+			for(int i=0;i<values[last][index].length;++i){
 				// build the next fft array
 				java.util.Arrays.fill(fftArray,0.0);
-				for(int fftArrayIndex = 0; fftArrayIndex+valuesOffset < values.length;++fftArrayIndex){
-					fftArray[fftArrayIndex]=values[fftArrayIndex+valuesOffset][index][i];
+				int fftArrayIndex = 0;
+				for(int j=0;j<values.length;++j){
+					if((values[j][index]!=null)&&(values[j][index].length>i)){
+						fftArray[fftArrayIndex++]=values[j][index][i];
+					}
 				}
 
 				fft data = new fft();
@@ -209,21 +209,36 @@ public class MultipleFeatureHistogram extends Aggregator {
 	double[] combineBins(Integer[][] bins, int offset) {
 		int numDimensions = (int) Math.pow(binsPerDimension, bins.length);
 		double[] ret = new double[numDimensions];
+		if (bins.length == 0) {
+			return ret;
+		}
 
-		// for every bin combiniation, increment the histogram
+		// for every bin combiniation, increment the histogram. Windows with a
+		// missing value (e.g. skipped silent windows) are left out.
+		int count = 0;
 		for (int i = offset; i < bins[0].length; ++i) {
 			int index = 0;
 			int factor = 1;
+			boolean complete = true;
 			for (int j = 0; j < bins.length; ++j) {
+				if (bins[j][i] == null) {
+					complete = false;
+					break;
+				}
 				index += (bins[j][i].intValue()) * factor;
 				factor *= binsPerDimension;
 			}
-			ret[index] += 1.0;
+			if (complete) {
+				ret[index] += 1.0;
+				count++;
+			}
 		}
 
 		// Normalize the histogram
-		for (int i = 0; i < ret.length; ++i) {
-			ret[i] /= (bins[0].length - offset);
+		if (count > 0) {
+			for (int i = 0; i < ret.length; ++i) {
+				ret[i] /= count;
+			}
 		}
 		return ret;
 	}
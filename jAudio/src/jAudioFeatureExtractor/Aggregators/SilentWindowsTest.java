@@ -0,0 +1,157 @@
+/**
+ *
+ */
+package jAudioFeatureExtractor.Aggregators;
+
+import jAudioFeatureExtractor.AudioFeatures.MagnitudeSpectrum;
+import jAudioFeatureExtractor.AudioFeatures.RMS;
+import junit.framework.TestCase;
+
+/**
+ * Checks that the aggregators handle windows without values, as produced when
+ * silent windows are skipped with missing values, at the start, in the middle
+ * and at the end of a recording, and for recordings that are entirely silent.
+ */
+public class SilentWindowsTest extends TestCase {
+
+	static final int WINDOWS = 10;
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(SilentWindowsTest.class);
+	}
+
+	/*
+	 * @see TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	public void testSilentStart() throws Exception {
+		checkAggregators(new int[] { 0, 1 });
+	}
+
+	public void testSilentMiddle() throws Exception {
+		checkAggregators(new int[] { 4, 5 });
+	}
+
+	public void testSilentEnd() throws Exception {
+		checkAggregators(new int[] { WINDOWS - 1 });
+	}
+
+	public void testSilentStartMiddleAndEnd() throws Exception {
+		checkAggregators(new int[] { 0, 4, WINDOWS - 1 });
+	}
+
+	public void testAllSilent() throws Exception {
+		int[] all = new int[WINDOWS];
+		for (int i = 0; i < all.length; ++i) {
+			all[i] = i;
+		}
+		double[][][] values = getValues(all, false);
+
+		assertAllZero(aggregate(new Mean(), values));
+		assertAllZero(aggregate(new StandardDeviation(), values));
+		assertAllZero(aggregate(new MFCC(), values));
+		assertAllZero(aggregate(getAreaMoments(), values));
+		assertAllZero(aggregate(getHistogram(), values));
+	}
+
+	/**
+	 * Compares the results of each aggregator on values whose given windows
+	 * are silent with the results on the same values without those windows.
+	 * Area moments depend on the position of each window, so they are instead
+	 * compared with the results on the same values with zeros in the silent
+	 * windows, which add nothing to the moments.
+	 */
+	void checkAggregators(int[] silent) throws Exception {
+		double[][][] values = getValues(silent, false);
+		double[][][] without = removeWindows(values, silent);
+
+		assertValuesEqual(aggregate(new Mean(), without), aggregate(new Mean(),
+				values));
+		assertValuesEqual(aggregate(new StandardDeviation(), without), aggregate(
+				new StandardDeviation(), values));
+		assertValuesEqual(aggregate(new MFCC(), without), aggregate(new MFCC(),
+				values));
+		assertValuesEqual(aggregate(getHistogram(), without), aggregate(
+				getHistogram(), values));
+		double[] moments = aggregate(getAreaMoments(), values);
+		assertValuesEqual(aggregate(getAreaMoments(), getValues(silent, true)),
+				moments);
+		assertTrue(moments[0] > 0.0);
+	}
+
+	/**
+	 * Makes values for three features: feature 0 never has values, feature 1
+	 * has one dimension and feature 2 has three. Silent windows have no values
+	 * for any feature, or zeros if zeroFill is set.
+	 */
+	double[][][] getValues(int[] silent, boolean zeroFill) {
+		double[][][] values = new double[WINDOWS][3][];
+		for (int i = 0; i < WINDOWS; ++i) {
+			values[i][1] = new double[] { 1.0 + i };
+			values[i][2] = new double[] { i, 2.0 * i * i, 5.0 - i };
+		}
+		for (int i = 0; i < silent.length; ++i) {
+			values[silent[i]][1] = zeroFill ? new double[1] : null;
+			values[silent[i]][2] = zeroFill ? new double[3] : null;
+		}
+		return values;
+	}
+
+	double[][][] removeWindows(double[][][] values, int[] silent) {
+		double[][][] ret = new double[values.length - silent.length][][];
+		int count = 0;
+		for (int i = 0; i < values.length; ++i) {
+			boolean skip = false;
+			for (int j = 0; j < silent.length; ++j) {
+				if (silent[j] == i) {
+					skip = true;
+				}
+			}
+			if (!skip) {
+				ret[count++] = values[i];
+			}
+		}
+		return ret;
+	}
+
+	double[] aggregate(Aggregator aggregator, double[][][] values)
+			throws Exception {
+		if (aggregator.getFeaturesToApply() == null) {
+			aggregator.setSource(new MagnitudeSpectrum());
+			aggregator.init(new int[] { 2 });
+		}
+		aggregator.aggregate(values);
+		return aggregator.result;
+	}
+
+	Aggregator getAreaMoments() throws Exception {
+		AreaMoments ret = new AreaMoments();
+		ret.setParameters(new String[] { "RMS", "Spectrum" }, new String[0]);
+		ret.init(new int[] { 1, 2 });
+		return ret;
+	}
+
+	Aggregator getHistogram() throws Exception {
+		MultipleFeatureHistogram ret = new MultipleFeatureHistogram(
+				new String[] { new RMS().getFeatureDefinition().name }, 4);
+		ret.init(new int[] { 1 });
+		return ret;
+	}
+
+	void assertValuesEqual(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; ++i) {
+			assertEquals(expected[i], actual[i], 0.000001);
+		}
+	}
+
+	void assertAllZero(double[] result) {
+		for (int i = 0; i < result.length; ++i) {
+			assertEquals(0.0, result[i], 0.0);
+		}
+	}
+
+}
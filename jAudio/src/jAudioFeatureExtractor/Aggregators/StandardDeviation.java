@@ -24,11 +24,14 @@ public class StandardDeviation extends Aggregator {
 
 	@Override
 	public void aggregate(double[][][] values) {
-		if (values[values.length-1][feature] == null) {
+		// size the result from the last window with values, since windows
+		// may be missing values (e.g. skipped silent windows)
+		int last = super.lastWindowWithValues(values, feature);
+		if (last < 0) {
 			definition.dimensions = 1;
 			result = new double[] { 0.0 };
 		} else {
-			int max = values[values.length - 1][feature].length;
+			int max = values[last][feature].length;
 			definition.dimensions = max;
 			result = new double[max];
 			for (int i = 0; i < max; ++i) {
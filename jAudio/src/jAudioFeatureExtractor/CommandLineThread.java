@@ -4,6 +4,7 @@
 package jAudioFeatureExtractor;
 
 import jAudioFeatureExtractor.ACE.DataTypes.Batch;
+import jAudioFeatureExtractor.jAudioTools.FeatureProcessor;
 
 /**
  * @author mcennis
@@ -63,6 +64,11 @@ public class CommandLineThread extends Thread implements Updater {
 		try {
 			batch.execute();
 			System.out.println("Execution completed sucessfully");
+			DataModel dm = batch.getDataModel();
+			if (dm.silenceDetection != FeatureProcessor.SILENCE_DETECTION_NONE) {
+				System.out.println("Skipped " + dm.skippedWindows + " of "
+						+ dm.totalWindows + " windows as silent");
+			}
 		} catch (ExplicitCancel e){
 			e.printStackTrace();
 		}catch (Exception e) {
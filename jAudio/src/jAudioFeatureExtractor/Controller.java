@@ -251,7 +251,8 @@ public class Controller implements ModelListener {
 				new String("Dimensions"), new String("IsPrimary") },
 				dm_.features.length);
 		rtm_ = new RecordingsTableModel(new Object[] { new String("Name"),
-				new String("Path") }, 0);
+				new String("Path"), new String("Duration (s)"),
+				new String("Sampling Rate"), new String("Channels") }, 0);
 		aggList_ = new AggListTableModel();
 		activeAgg_ = new ActiveAggTableModel();
 		saveAction = new SaveAction(this, fstm_);
@@ -83,6 +83,47 @@ public class DataModel {
 
 	public OutputStream featureValue = null;
 
+	/**
+	 * How silent windows are detected so that their extraction can be
+	 * skipped. One of the FeatureProcessor.SILENCE_DETECTION constants.
+	 */
+	public int silenceDetection = FeatureProcessor.SILENCE_DETECTION_NONE;
+
+	/**
+	 * RMS below which a window is considered silent when silenceDetection is
+	 * FeatureProcessor.SILENCE_DETECTION_RMS.
+	 */
+	public double silenceThreshold = 0.0;
+
+	/**
+	 * What skipped windows are filled with. One of the
+	 * FeatureProcessor.SILENCE_FILL constants.
+	 */
+	public int silenceFill = FeatureProcessor.SILENCE_FILL_MISSING;
+
+	/**
+	 * Start times in seconds of the excerpts to extract from each recording.
+	 * Null if whole recordings are to be extracted.
+	 */
+	public double[] excerptStarts = null;
+
+	/**
+	 * Durations in seconds of the excerpts to extract from each recording.
+	 * Values of zero or less mean an excerpt runs to the end of the recording.
+	 */
+	public double[] excerptDurations = null;
+
+	/**
+	 * Number of windows skipped as silent during the last call to extract.
+	 */
+	public int skippedWindows = 0;
+
+	/**
+	 * Number of windows processed during the last call to extract, including
+	 * skipped windows.
+	 */
+	public int totalWindows = 0;
+
 	/**
 	 * Initializes each of the arrays with all available efeatures. Place to add
 	 * new features.
@@ -294,6 +335,9 @@ public class DataModel {
 				this.defaults, save_features_for_each_window,
 				save_overall_recording_features, featureValue, featureKey,
 				outputType, cancel_, container);
+		processor.setSilenceSkipping(silenceDetection, silenceThreshold,
+				silenceFill);
+		processor.setExcerpts(excerptStarts, excerptDurations);
 
 		// Extract features from recordings one by one and save them in XML
 		// files
@@ -309,12 +353,121 @@ public class DataModel {
 		// Finalize saved XML files
 
 		processor.finalize();
+		skippedWindows = processor.getTotalSkippedWindows();
+		totalWindows = processor.getTotalWindows();
 
 		// JOptionPane.showMessageDialog(null,
 		// "Features successfully extracted and saved.", "DONE",
 		// JOptionPane.INFORMATION_MESSAGE);
 	}
 
+	/**
+	 * Function for executing the feature extraction process against a set of
+	 * files at several window resolutions at once. Each recording is decoded,
+	 * resampled and (if requested) normalised only once. The resulting samples
+	 * are then shared by one FeatureProcessor per window configuration, each
+	 * with its own ordering of features, aggregators and output streams.
+	 * <p>
+	 * The first window configuration writes to the featureKey and
+	 * featureValue streams of this model. Configuration i (for i &gt; 0)
+	 * writes to additionalFeatureKeys[i-1] and additionalFeatureValues[i-1].
+	 *
+	 * @param windowSizes
+	 *            Size of the window in samples for each configuration.
+	 * @param windowOverlaps
+	 *            Percent of the window to be overlapped for each configuration
+	 *            - must be between 0 and 1.
+	 * @param samplingRate
+	 *            Sample rate given in samples per second
+	 * @param normalise
+	 *            indicates whether or not the file should be normalised before
+	 *            feature extraction
+	 * @param perWindowStats
+	 *            should features be extracted for every window
+	 * @param overallStats
+	 *            should features be extracted over the entire window
+	 * @param info
+	 *            list of the files that are to be analyzed
+	 * @param arff
+	 *            output format of the data
+	 * @param additionalFeatureKeys
+	 *            feature definition streams for all but the first
+	 *            configuration
+	 * @param additionalFeatureValues
+	 *            feature value streams for all but the first configuration
+	 * @throws Exception
+	 */
+	public void extract(int[] windowSizes, double[] windowOverlaps,
+			double samplingRate, boolean normalise, boolean perWindowStats,
+			boolean overallStats, RecordingInfo[] info, int arff,
+			OutputStream[] additionalFeatureKeys,
+			OutputStream[] additionalFeatureValues) throws Exception {
+		if (windowSizes.length != windowOverlaps.length)
+			throw new Exception("INTERNAL ERROR: " + windowSizes.length
+					+ " window sizes were given but " + windowOverlaps.length
+					+ " window overlaps.");
+		if ((additionalFeatureKeys.length != windowSizes.length - 1)
+				|| (additionalFeatureValues.length != windowSizes.length - 1))
+			throw new Exception(
+					"INTERNAL ERROR: each additional window configuration needs its own output files.");
+		RecordingInfo[] recordings = info;
+		if (recordings == null)
+			throw new Exception(
+					"No recordings available to extract features from.");
+
+		if (updater != null) {
+			updater.setNumberOfFiles(recordings.length);
+		}
+
+		// Prepare one processor per window configuration
+		FeatureProcessor[] processors = new FeatureProcessor[windowSizes.length];
+		for (int i = 0; i < processors.length; ++i) {
+			AggregatorContainer container = new AggregatorContainer();
+			container.add(aggregators);
+			OutputStream values = (i == 0) ? featureValue
+					: additionalFeatureValues[i - 1];
+			OutputStream keys = (i == 0) ? featureKey
+					: additionalFeatureKeys[i - 1];
+			processors[i] = new FeatureProcessor(windowSizes[i],
+					windowOverlaps[i], samplingRate, normalise, this.features,
+					this.defaults, perWindowStats, overallStats, values, keys,
+					arff, cancel_, container);
+			processors[i].setSilenceSkipping(silenceDetection,
+					silenceThreshold, silenceFill);
+			processors[i].setExcerpts(excerptStarts, excerptDurations);
+		}
+
+		// Decode each recording once and hand the samples to every processor
+		for (int i = 0; i < recordings.length; i++) {
+			File load_file = new File(recordings[i].file_path);
+			if (updater != null) {
+				updater.announceUpdate(i, 0);
+			}
+			for (int e = 0; e < processors[0].getNumberOfExcerpts(); ++e) {
+				double[] samples = processors[0].preProcessExcerpt(load_file, e);
+				if (cancel_.isCancel()) {
+					throw new ExplicitCancel("Killed after loading data");
+				}
+				String identifier = processors[0].getExcerptIdentifier(
+						load_file, e);
+				double start = processors[0].getExcerptStart(e);
+				for (int j = 0; j < processors.length; ++j) {
+					processors[j].extractFeatures(samples, identifier, start,
+							updater);
+				}
+			}
+		}
+
+		// Finalize saved XML files
+		skippedWindows = 0;
+		totalWindows = 0;
+		for (int i = 0; i < processors.length; ++i) {
+			processors[i].finalize();
+			skippedWindows += processors[i].getTotalSkippedWindows();
+			totalWindows += processors[i].getTotalWindows();
+		}
+	}
+
 	/**
 	 * Establish a listener for periodic updates on the feature extraction
 	 * progress.
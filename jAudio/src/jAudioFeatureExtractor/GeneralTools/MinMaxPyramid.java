@@ -0,0 +1,197 @@
+/*
+ * @(#)MinMaxPyramid.java	1.0	October 18, 2026.
+ *
+ * McGill Univarsity
+ */
+
+package jAudioFeatureExtractor.GeneralTools;
+
+
+/**
+ * A multi-resolution summary of a data set that allows long signals to be
+ * plotted at any zoom level without visiting every data point.
+ *
+ * <p>Level 0 is the data itself. Each higher level stores the minimum and
+ * maximum of consecutive blocks of the level below it, with each block
+ * covering BRANCHING times as many data points as the blocks of the level
+ * below. A plot only needs to visit a few blocks per pixel column, drawing a
+ * vertical line between the minimum and maximum of each column, so the cost
+ * of drawing depends on the width of the plot rather than on the length of
+ * the data.
+ *
+ * <p>The pyramid takes up about two thirds as much memory as the data it
+ * summarizes. The data is referenced, not copied, and so should not be
+ * changed after the pyramid is built.
+ */
+public class MinMaxPyramid
+{
+	/* FIELDS ******************************************************************/
+
+
+	/**
+	 * The number of blocks of one level that are summarized by a single block
+	 * of the next level.
+	 */
+	public static final int BRANCHING = 4;
+
+	// The summarized data
+	private double[] data;
+
+	// The block minima and maxima of each level above 0. The first indice
+	// identifies the level minus 1 and the second identifies the block.
+	private double[][] minima;
+	private double[][] maxima;
+
+
+	/* CONSTRUCTOR *************************************************************/
+
+
+	/**
+	 * Build the pyramid for the given data. This visits every data point
+	 * once per level, so it should not be called on the event dispatch thread
+	 * for long data sets.
+	 *
+	 * @param data	The data to summarize.
+	 */
+	public MinMaxPyramid(double[] data)
+	{
+		this.data = data;
+
+		// Count the levels needed to reduce the data to a single block
+		int number_levels = 0;
+		for (long size = data.length; size > 1; size = (size + BRANCHING - 1) / BRANCHING)
+			number_levels++;
+		minima = new double[number_levels][];
+		maxima = new double[number_levels][];
+
+		// Build each level from the one below it
+		double[] lower_min = data;
+		double[] lower_max = data;
+		for (int level = 0; level < number_levels; level++)
+		{
+			int blocks = (lower_min.length + BRANCHING - 1) / BRANCHING;
+			double[] mins = new double[blocks];
+			double[] maxs = new double[blocks];
+			for (int block = 0; block < blocks; block++)
+			{
+				int start = block * BRANCHING;
+				int end = Math.min(start + BRANCHING, lower_min.length);
+				double min = lower_min[start];
+				double max = lower_max[start];
+				for (int i = start + 1; i < end; i++)
+				{
+					if (lower_min[i] < min)
+						min = lower_min[i];
+					if (lower_max[i] > max)
+						max = lower_max[i];
+				}
+				mins[block] = min;
+				maxs[block] = max;
+			}
+			minima[level] = mins;
+			maxima[level] = maxs;
+			lower_min = mins;
+			lower_max = maxs;
+		}
+	}
+
+
+	/* PUBLIC METHODS **********************************************************/
+
+
+	/**
+	 * Returns the number of data points summarized by this pyramid.
+	 */
+	public int getLength()
+	{
+		return data.length;
+	}
+
+
+	/**
+	 * Returns the highest level whose blocks each cover no more than the given
+	 * number of data points.
+	 *
+	 * @param	points_per_block	The maximum number of data points each block
+	 *								may cover.
+	 * @return						The level to use. 0 refers to the data itself.
+	 */
+	public int getLevel(double points_per_block)
+	{
+		int level = 0;
+		long block_size = BRANCHING;
+		while (level < minima.length && block_size <= points_per_block)
+		{
+			level++;
+			block_size *= BRANCHING;
+		}
+		return level;
+	}
+
+
+	/**
+	 * Returns the number of data points covered by each block of the given
+	 * level.
+	 */
+	public int getBlockSize(int level)
+	{
+		int size = 1;
+		for (int i = 0; i < level; i++)
+			size *= BRANCHING;
+		return size;
+	}
+
+
+	/**
+	 * Returns the minimum and maximum of the data points with indices from
+	 * first to last inclusive, using the blocks of the given level. The range
+	 * is widened to the block boundaries of that level.
+	 *
+	 * @param	first		The indice of the first data point.
+	 * @param	last		The indice of the last data point.
+	 * @param	level		The level of the blocks to use.
+	 * @param	min_max		An array of length 2 that is filled with the
+	 *						minimum and the maximum.
+	 */
+	public void getMinMax(int first, int last, int level, double[] min_max)
+	{
+		double[] mins = (level == 0) ? data : minima[level - 1];
+		double[] maxs = (level == 0) ? data : maxima[level - 1];
+		int block_size = getBlockSize(level);
+		int first_block = first / block_size;
+		int last_block = Math.min(last / block_size, mins.length - 1);
+		double min = mins[first_block];
+		double max = maxs[first_block];
+		for (int block = first_block + 1; block <= last_block; block++)
+		{
+			if (mins[block] < min)
+				min = mins[block];
+			if (maxs[block] > max)
+				max = maxs[block];
+		}
+		min_max[0] = min;
+		min_max[1] = max;
+	}
+
+
+	/**
+	 * Returns the minimum of all of the data.
+	 */
+	public double getMinimum()
+	{
+		if (minima.length == 0)
+			return data[0];
+		return minima[minima.length - 1][0];
+	}
+
+
+	/**
+	 * Returns the maximum of all of the data.
+	 */
+	public double getMaximum()
+	{
+		if (maxima.length == 0)
+			return data[0];
+		return maxima[maxima.length - 1][0];
+	}
+}
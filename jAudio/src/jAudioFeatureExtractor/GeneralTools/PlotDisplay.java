@@ -25,6 +25,11 @@ import javax.swing.border.*;
  * by adjusting the values in the X Tic Interval and Y Tic Interval text fields.
  * Any changes made this way will be manifested when the Replot button is pressed.
  *
+ * <p>Long data sets are drawn from a MinMaxPyramid that is built in the
+ * background when the plot is opened. Only the data points within the
+ * current domain are visited, and no more than a few per pixel column, so
+ * plots of hour-long recordings remain responsive at any zoom level.
+ *
  * <p>This code was inspired by the Graph01 class of R. G. Baldwin.
  *
  * @author Cory McKay
@@ -65,8 +70,27 @@ public class PlotDisplay
 
 	// The x-coordinates corresponding to the indices of the data points in the
 	// data_points field. The indices both correspond to those of data_points.
+	// Null if the x-coordinates are evenly spaced, in which case they are
+	// given by x_start and x_interval.
 	private double[][]	data_x_coordinates;
 
+	// The x-coordinate of the first data point of each data set and the
+	// distance between consecutive data points. Only used when
+	// data_x_coordinates is null.
+	private double		x_start;
+	private double		x_interval;
+
+	// Whether the x-coordinates of each data set are in ascending order. The
+	// pyramids can only be used for data sets whose x-coordinates are.
+	private boolean[]	x_ascending;
+
+	// Min/max summaries of each data set, used to draw long data sets
+	// quickly. Null until built in the background.
+	private volatile MinMaxPyramid[]	pyramids;
+
+	// Data sets with fewer points than this are always drawn directly.
+	private static final int PYRAMID_THRESHOLD = 8192;
+
 
 	/* CONSTRUCTOR *************************************************************/
 
@@ -103,10 +127,58 @@ public class PlotDisplay
 	                    String plot_name,
 						boolean quit_on_exit )
 		throws Exception
+	{
+		this(data_points_to_plot, data_x_coordinates_to_plot, 0.0, 1.0, plot_on_one_graph, plot_name, quit_on_exit);
+	}
+
+
+	/**
+	 * Set up the frame and graph data sets whose data points are evenly spaced
+	 * along the x-axis. This avoids storing an x-coordinate for every data
+	 * point, which matters for long recordings.
+	 *
+	 * @param data_points_to_plot			The data points that are to be graphed, as
+	 *										for the other constructor.
+	 * @param first_x_coordinate			The x-coordinate of the first data point of
+	 *										each data set.
+	 * @param x_coordinate_interval			The distance along the x-axis between
+	 *										consecutive data points. Must be above 0.
+	 * @param plot_on_one_graph				Whether to plot all data sets on one graph.
+	 * @param plot_name						The title to give the set of graphs.
+	 * @param quit_on_exit					Whether to close the JRE on exit.
+	 * @throws Exception					Throws an informative exception if the given
+	 *										parameters are invalid.
+	 */
+	public PlotDisplay( double[][] data_points_to_plot,
+	                    double first_x_coordinate,
+	                    double x_coordinate_interval,
+	                    boolean plot_on_one_graph,
+	                    String plot_name,
+						boolean quit_on_exit )
+		throws Exception
+	{
+		this(data_points_to_plot, null, first_x_coordinate, x_coordinate_interval, plot_on_one_graph, plot_name, quit_on_exit);
+	}
+
+
+	/**
+	 * Set up the frame and graph the data. Evenly spaced x-coordinates are
+	 * used if data_x_coordinates_to_plot is null.
+	 */
+	private PlotDisplay( double[][] data_points_to_plot,
+	                     double[][] data_x_coordinates_to_plot,
+	                     double first_x_coordinate,
+	                     double x_coordinate_interval,
+	                     boolean plot_on_one_graph,
+	                     String plot_name,
+	                     boolean quit_on_exit )
+		throws Exception
 	{
 		// Assign data_points_to_plot and data_x_coordinates_to_plot to fields
 		data_points = data_points_to_plot;
 		data_x_coordinates = data_x_coordinates_to_plot;
+		x_start = first_x_coordinate;
+		x_interval = x_coordinate_interval;
 
 		// Check validity of input parameters
 		if (data_points == null)
@@ -126,36 +198,49 @@ public class PlotDisplay
 					throw new Exception( "Data set " + i + " has a different number\n" +
 					                     "of data points and x-coodinate labels." );
 		}
+		else if (x_interval <= 0.0)
+			throw new Exception("The interval between x-coordinates must be above 0.");
+		for (int i = 0; i < data_points.length; i++)
+			if (data_points[i].length == 0)
+				throw new Exception("Data set " + i + " is empty.");
 
-		// Construct data_x_coordinates if it was not provided
-		if (data_x_coordinates == null)
+		// Find which data sets have ascending x-coordinates
+		x_ascending = new boolean[data_points.length];
+		for (int i = 0; i < data_points.length; i++)
 		{
-			data_x_coordinates = new double[data_points.length][];
-			for (int i = 0; i < data_points.length; i++)
-			{
-				data_x_coordinates[i] = new double[data_points[i].length];
-				for (int j = 0; j < data_points[i].length; j++)
-					data_x_coordinates[i][j] = j;
-			}
+			x_ascending[i] = true;
+			if (data_x_coordinates != null)
+				for (int j = 1; j < data_x_coordinates[i].length && x_ascending[i]; j++)
+					if (data_x_coordinates[i][j] < data_x_coordinates[i][j - 1])
+						x_ascending[i] = false;
 		}
 
 		// Find the proper limits in which to plot within
-		x_min = data_x_coordinates[0][0];
-		x_max = data_x_coordinates[0][0];
+		x_min = getXCoordinate(0, 0);
+		x_max = getXCoordinate(0, 0);
 		y_min = data_points[0][0];
 		y_max = data_points[0][0];
 		for (int i = 0; i < data_points.length; i++)
+		{
 			for (int j = 0; j < data_points[i].length; j++)
 			{
 				if (data_points[i][j] < y_min)
 					y_min = data_points[i][j];
 				if (data_points[i][j] > y_max)
 					y_max = data_points[i][j];
-				if (data_x_coordinates[i][j] < x_min)
-					x_min = data_x_coordinates[i][j];
-				if (data_x_coordinates[i][j] > x_max)
-					x_max = data_x_coordinates[i][j];
 			}
+			if (x_ascending[i])
+			{
+				x_min = Math.min(x_min, getXCoordinate(i, 0));
+				x_max = Math.max(x_max, getXCoordinate(i, data_points[i].length - 1));
+			}
+			else
+				for (int j = 0; j < data_points[i].length; j++)
+				{
+					x_min = Math.min(x_min, data_x_coordinates[i][j]);
+					x_max = Math.max(x_max, data_x_coordinates[i][j]);
+				}
+		}
 		if (y_min < 0.0)
 			y_min = y_min - Math.abs(y_min * 0.05);
 		y_max = y_max + Math.abs(y_max * 0.05);
@@ -276,6 +361,9 @@ public class PlotDisplay
 		// Force paint on startup
 		for(int i = 0; i < canvases.length; i++)
 			canvases[i].repaint();
+
+		// Summarize long data sets in the background and replot when done
+		buildPyramids();
 	}
 
 
@@ -312,6 +400,86 @@ public class PlotDisplay
 	/* PRIVATE METHODS *********************************************************/
 
 
+	/**
+	 * Builds the pyramids of all data sets that are long enough to need them
+	 * in a separate thread, then repaints the canvases on the event dispatch
+	 * thread. Data sets are drawn directly until the pyramids are ready.
+	 */
+	private void buildPyramids()
+	{
+		boolean needed = false;
+		for (int i = 0; i < data_points.length; i++)
+			if (data_points[i].length >= PYRAMID_THRESHOLD && x_ascending[i])
+				needed = true;
+		if (!needed)
+			return;
+
+		final double[][] data = data_points;
+		Thread builder = new Thread()
+		{
+			public void run()
+			{
+				MinMaxPyramid[] built = new MinMaxPyramid[data.length];
+				for (int i = 0; i < data.length; i++)
+					if (data[i].length >= PYRAMID_THRESHOLD && x_ascending[i])
+						built[i] = new MinMaxPyramid(data[i]);
+				pyramids = built;
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						if (canvases != null)
+							for (int i = 0; i < canvases.length; i++)
+								canvases[i].repaint();
+					}
+				});
+			}
+		};
+		builder.setDaemon(true);
+		builder.setPriority(Thread.MIN_PRIORITY);
+		builder.start();
+	}
+
+
+	/**
+	 * Returns the x-coordinate of the given data point of the given data set.
+	 */
+	private double getXCoordinate(int data_set, int point)
+	{
+		if (data_x_coordinates == null)
+			return x_start + point * x_interval;
+		return data_x_coordinates[data_set][point];
+	}
+
+
+	/**
+	 * Returns the indice of the last data point of the given data set whose
+	 * x-coordinate is at or below the given x-coordinate, or 0 if there is
+	 * none. The data set must have ascending x-coordinates.
+	 */
+	private int findIndice(int data_set, double x)
+	{
+		int last = data_points[data_set].length - 1;
+		if (data_x_coordinates == null)
+		{
+			double indice = Math.floor((x - x_start) / x_interval);
+			return (int) Math.max(0.0, Math.min(last, indice));
+		}
+		double[] coordinates = data_x_coordinates[data_set];
+		int low = 0;
+		int high = last;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (coordinates[mid] <= x)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+
 	/**
 	 * Effectively erases and hides this window.
 	 */
@@ -320,6 +488,7 @@ public class PlotDisplay
 		this.setVisible(false);
 		data_points = null;
 		data_x_coordinates = null;
+		pyramids = null;
 		dispose();
 		canvases = null;
 		System.gc();
@@ -397,45 +566,86 @@ public class PlotDisplay
 
 			// Plot all points on separate graphs
 			if (! plot_on_one_graph)
+				plotDataSet(g, data_set_index, width);
+
+			// Plot all points on the same graph
+			else
 			{
-				int old_x = scaleX(data_x_coordinates[data_set_index][0]);
-				int old_y = scaleY(data_points[data_set_index][0]);
-				for (int i = 0; i < data_points[data_set_index].length; i++)
-				{
-					// Get the end points for the current line segment
-					int new_x = scaleX(data_x_coordinates[data_set_index][i]);
-					int new_y = scaleY(data_points[data_set_index][i]);
+				for (int j = 0; j < data_points.length; j++)
+					plotDataSet(g, j, width);
+			}
+		}
+
 
-					// Draw a line connecting the start point and the end point
-					g.drawLine(old_x, old_y, new_x, new_y);
+		/**
+		 * Draws the given data set. Only the data points within the current
+		 * domain are drawn. If there are several data points per pixel column
+		 * and the pyramid of the data set is ready, each column is drawn as a
+		 * vertical line between the minimum and maximum of its data points.
+		 */
+		private void plotDataSet(Graphics g, int data_set, int width)
+		{
+			double[] data = data_points[data_set];
 
-					// Set the old end points to the new start points
+			// Find the data points within the domain, plus one on either side
+			// so that lines run to the edges of the plot
+			int first = 0;
+			int last = data.length - 1;
+			if (x_ascending[data_set])
+			{
+				first = Math.max(0, findIndice(data_set, x_min) - 1);
+				last = Math.min(data.length - 1, findIndice(data_set, x_max) + 1);
+			}
+
+			// Draw long ranges from the pyramid if it is available
+			MinMaxPyramid[] current_pyramids = pyramids;
+			double points_per_pixel = (double) (last - first + 1) / Math.max(1, width);
+			if (current_pyramids != null && current_pyramids[data_set] != null && points_per_pixel > 2.0)
+			{
+				MinMaxPyramid pyramid = current_pyramids[data_set];
+				int level = pyramid.getLevel(points_per_pixel);
+				double[] min_max = new double[2];
+				int old_x = scaleX(getXCoordinate(data_set, first));
+				int old_y = scaleY(data[first]);
+				int column_start = first;
+				while (column_start <= last)
+				{
+					int column_end = Math.min(last, (int) (column_start + points_per_pixel) - 1);
+					pyramid.getMinMax(column_start, column_end, level, min_max);
+					int new_x = scaleX(getXCoordinate(data_set, column_start));
+					int top = scaleY(min_max[1]);
+					int bottom = scaleY(min_max[0]);
+
+					// Connect to the previous column, then span this one
+					g.drawLine(old_x, old_y, new_x, top);
+					g.drawLine(new_x, top, new_x, bottom);
 					old_x = new_x;
-					old_y = new_y;
+					old_y = bottom;
+					column_start = column_end + 1;
 				}
+				return;
 			}
 
-			// Plot all points on the same graph
-			else
+			// Draw a sparse preview of long data sets while their pyramids
+			// are being built
+			int step = 1;
+			if (data.length >= PYRAMID_THRESHOLD && points_per_pixel > 2.0)
+				step = (int) points_per_pixel;
+
+			int old_x = scaleX(getXCoordinate(data_set, first));
+			int old_y = scaleY(data[first]);
+			for (int i = first; i <= last; i += step)
 			{
-				for (int j = 0; j < data_points.length; j++)
-				{
-					int old_x = scaleX(data_x_coordinates[j][0]);
-					int old_y = scaleY(data_points[j][0]);
-					for (int i = 0; i < data_points[j].length; i++)
-					{
-						// Get the end points for the current line segment
-						int new_x = scaleX(data_x_coordinates[j][i]);
-						int new_y = scaleY(data_points[j][i]);
+				// Get the end points for the current line segment
+				int new_x = scaleX(getXCoordinate(data_set, i));
+				int new_y = scaleY(data[i]);
 
-						// Draw a line connecting the start point and the end point
-						g.drawLine(old_x, old_y, new_x, new_y);
+				// Draw a line connecting the start point and the end point
+				g.drawLine(old_x, old_y, new_x, new_y);
 
-						// Set the old end points to the new start points
-						old_x = new_x;
-						old_y = new_y;
-					}
-				}
+				// Set the old end points to the new start points
+				old_x = new_x;
+				old_y = new_y;
 			}
 		}
 
@@ -633,22 +633,21 @@ public class ProcessSamplesFrame extends JFrame implements ActionListener {
 			double[][] samples = processed_audio_samples
 					.getSamplesChannelSegregated(start_sample, end_sample);
 
-			// Set up the x-label fields
-			double[][] x_labels = new double[samples.length][samples[0].length];
-			for (int chan = 0; chan < x_labels.length; chan++)
-				for (int samp = 0; samp < x_labels[chan].length; samp++) {
-					int ef_sample = samp + start_sample;
-					if (time_start_end_type_radio_button.isSelected())
-						x_labels[chan][samp] = (double) ef_sample
-								/ processed_audio_samples
-										.getSamplingRateAsDouble();
-					else
-						x_labels[chan][samp] = ef_sample;
-				}
+			// Find the x-coordinates of the samples, which are evenly spaced
+			// and so need not be stored individually
+			double first_x = start_sample;
+			double x_interval = 1.0;
+			if (time_start_end_type_radio_button.isSelected()) {
+				double sampling_rate = processed_audio_samples
+						.getSamplingRateAsDouble();
+				first_x = (double) start_sample / sampling_rate;
+				x_interval = 1.0 / sampling_rate;
+			}
 
 			// Display the plot
-			PlotDisplay plotter = new PlotDisplay(samples, x_labels, false,
-					processed_audio_samples.getUniqueIdentifier(), false);
+			PlotDisplay plotter = new PlotDisplay(samples, first_x,
+					x_interval, false, processed_audio_samples
+							.getUniqueIdentifier(), false);
 
 		} catch (Exception e) {
 			JOptionPane.showMessageDialog(null, e.getMessage(), "ERROR",
@@ -11,6 +11,7 @@ import java.awt.event.*;
 import javax.swing.*;
 
 import java.io.*;
+import java.util.HashSet;
 
 import javax.sound.sampled.*;
 import jAudioFeatureExtractor.jAudioTools.*;
@@ -244,10 +245,10 @@ public class RecordingSelectorPanel extends JPanel implements ActionListener {
 	 * Adds the given files to the table display and stores a reference to them.
 	 * Ignores files that have already been added to the table.
 	 * <p>
-	 * Verifies that the files are valid audio files that can be read if the
-	 * validate_recordings_when_load_them_check_box checkbox is selected. Only
-	 * stores the actual samples if the store_audio_samples_check_box check box
-	 * is selected (otherwise just stores file references).
+	 * Verifies that the headers of the files can be read as audio files of a
+	 * known type if the Validate Recordings menu item is selected. Only stores
+	 * the actual samples if the store_audio_samples_check_box check box is
+	 * selected (otherwise just stores file references).
 	 * <p>
 	 * If a given file path corresponds to a file that does not exist, then an
 	 * error message is displayed.
@@ -270,14 +271,17 @@ public class RecordingSelectorPanel extends JPanel implements ActionListener {
 					// The samples extracted from each file
 					AudioSamples audio_samples = null;
 
-					// Load the samples if the
-					// validate_recordings_when_load_them_check_box
-					// is selected. Throw an exception if the file is not a
-					// valid
-					// audio file of a type that can be read and processed.
+					// Read the header of the file if the Validate Recordings
+					// menu item is selected. Throw an exception if the file is
+					// not an audio file of a type that can be read. Files are
+					// not decoded here just to validate them.
 					if (controller.validate.isSelected()) {
-						audio_samples = new AudioSamples(files_to_add[i],
-								files_to_add[i].getPath(), false);
+						try {
+							AudioSystem.getAudioFileFormat(files_to_add[i]);
+						} catch (UnsupportedAudioFileException e) {
+							throw new Exception("The file " + files_to_add[i].getName()
+									+ " is not an audio file of a type that can be read.");
+						}
 					}
 
 					// Store the samples themselves in memory if the
@@ -326,16 +330,12 @@ public class RecordingSelectorPanel extends JPanel implements ActionListener {
 			temp_recording_list[i + number_old_recordings] = recording_info[i];
 
 		// Remove duplicate entries in the recording_list with the same file
-		// path
-		for (int i = 0; i < temp_recording_list.length - 1; i++)
-			if (temp_recording_list[i] != null) {
-				String current_path = temp_recording_list[i].file_path;
-				for (int j = i + 1; j < temp_recording_list.length; j++)
-					if (temp_recording_list[j] != null)
-						if (current_path
-								.equals(temp_recording_list[j].file_path))
-							temp_recording_list[j] = null;
-			}
+		// path, keeping the first
+		HashSet<String> paths_seen = new HashSet<String>();
+		for (int i = 0; i < temp_recording_list.length; i++)
+			if (temp_recording_list[i] != null
+					&& !paths_seen.add(temp_recording_list[i].file_path))
+				temp_recording_list[i] = null;
 
 		// Remove null entries in recording_list due to invalid files or
 		// duplicate file names
@@ -606,7 +606,9 @@ public class RecordingSelectorPanel extends JPanel implements ActionListener {
 			remove(recordings_table);
 
 		// Initialize recordings_table_model and recordings_table
-		Object[] column_names = { new String("Name"), new String("Path") };
+		Object[] column_names = { new String("Name"), new String("Path"),
+				new String("Duration (s)"), new String("Sampling Rate"),
+				new String("Channels") };
 		int number_recordings = 0;
 		if (controller.dm_.recordingInfo != null)
 			number_recordings = controller.dm_.recordingInfo.length;
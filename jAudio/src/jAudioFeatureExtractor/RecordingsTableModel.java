@@ -6,6 +6,20 @@
 
 package jAudioFeatureExtractor;
 
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.swing.SwingUtilities;
 import javax.swing.table.DefaultTableModel;
 import jAudioFeatureExtractor.DataTypes.RecordingInfo;
 
@@ -14,8 +28,19 @@ import jAudioFeatureExtractor.DataTypes.RecordingInfo;
  * A table model used by the RecordingSelectorPanel to store references to audio
  * recordings.
  *
- * <p>Provides methods to fill a table row by row or delete everything on it. Makes
- * all cells non-editable.
+ * <p>Provides methods to fill a table or delete everything on it. Makes all
+ * cells non-editable.
+ *
+ * <p>The name and path of each recording are displayed as soon as the table is
+ * filled. If the table has more than two columns, the duration, sampling rate
+ * and number of channels of each recording are displayed in the third, fourth
+ * and fifth columns. These are read from the file headers by a small pool of
+ * background threads and merged into the table on the event dispatch thread
+ * as they arrive, so that filling the table with a very large number of
+ * recordings does not block the interface. The format information of a
+ * bounded number of recently displayed files is cached together with their
+ * length and modification time, so a header is only read again if its file
+ * has changed.
  *
  * @author Cory McKay
  */
@@ -25,6 +50,79 @@ public class RecordingsTableModel
 
 	static final long serialVersionUID = 1;
 
+	/* FIELDS ******************************************************************/
+
+
+	/**
+	 * The column holding the duration of each recording in seconds.
+	 */
+	public static final int DURATION_COLUMN = 2;
+
+	/**
+	 * The column holding the sampling rate of each recording.
+	 */
+	public static final int SAMPLING_RATE_COLUMN = 3;
+
+	/**
+	 * The column holding the number of channels of each recording.
+	 */
+	public static final int CHANNELS_COLUMN = 4;
+
+	/**
+	 * The value displayed in the duration column of files whose format could
+	 * not be read.
+	 */
+	public static final String UNREADABLE = "Unreadable";
+
+	// The number of threads reading file headers
+	private static final int PROBE_THREADS = Math.max(1, Math.min(4,
+		Runtime.getRuntime().availableProcessors()));
+
+	// The threads reading file headers, shared by all tables
+	private static final ExecutorService probe_pool = Executors.newFixedThreadPool(PROBE_THREADS,
+		new ThreadFactory()
+		{
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Recording format reader");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+
+	// The maximum number of files whose format information is cached
+	private static final int MAX_CACHED_FORMATS = 65536;
+
+	// The length, modification time, duration, sampling rate and number of
+	// channels of the files whose headers have been read most recently, keyed
+	// by path. Least recently used entries are dropped first.
+	private static final Map<String, Object[]> format_cache = new LinkedHashMap<String, Object[]>(16, 0.75f, true)
+	{
+		static final long serialVersionUID = 1;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Object[]> eldest)
+		{
+			return size() > MAX_CACHED_FORMATS;
+		}
+	};
+
+	// The tables waiting for the format information of each file that is
+	// queued to be checked, keyed by path
+	private static final HashMap<String, Vector<RecordingsTableModel>> queued_paths = new HashMap<String, Vector<RecordingsTableModel>>();
+
+	// The paths of files whose format information has been checked but not
+	// yet merged into this table
+	private ConcurrentLinkedQueue<String> arrived_paths = new ConcurrentLinkedQueue<String>();
+
+	// Whether a merge of arrived_paths is already scheduled on the event
+	// dispatch thread
+	private volatile boolean merge_scheduled = false;
+
+	// The row displaying each path. Only accessed on the event dispatch thread.
+	private HashMap<String, Integer> row_of_path = new HashMap<String, Integer>();
+
+
 	/* CONSTRUCTOR *************************************************************/
 
 
@@ -41,25 +139,45 @@ public class RecordingsTableModel
 
 
 	/**
-	 * Deletes everything in the table and then fills it up one row at a time
-	 * based on the given RecorcdingInfo array.
+	 * Deletes everything in the table and then fills it up based on the given
+	 * RecorcdingInfo array. Listeners are notified once after all rows have
+	 * been added. Cached format information is displayed straight away, and
+	 * is checked in the background against the length and modification time
+	 * of each file. Headers of files that have not been seen before or that
+	 * have changed are read in the background.
 	 *
 	 * @param	recording_list	Data to place in the table.
 	 */
 	public void fillTable(RecordingInfo[] recording_list)
 	{
-		// Remove the contents of the table
-		clearTable();
+		// Remove the contents of the table without notifying listeners
+		dataVector.setSize(0);
+		row_of_path.clear();
 
-		// Populate each row one by one
+		// Populate the rows
+		int number_columns = getColumnCount();
 		if (recording_list != null)
+		{
+			dataVector.ensureCapacity(recording_list.length);
 			for (int i = 0; i < recording_list.length; i++)
 			{
-				Object[] row_contents = new Object[2];
-				row_contents[0] = recording_list[i].identifier;
-				row_contents[1] = recording_list[i].file_path;
-				addRow(row_contents);
+				String path = recording_list[i].file_path;
+				Vector<Object> row_contents = new Vector<Object>(number_columns);
+				row_contents.setSize(number_columns);
+				row_contents.set(0, recording_list[i].identifier);
+				row_contents.set(1, path);
+				if (number_columns > CHANNELS_COLUMN && path != null)
+				{
+					row_of_path.put(path, new Integer(i));
+					Object[] format = getCachedFormat(path);
+					if (format != null)
+						setFormat(row_contents, format);
+					requestFormat(path);
+				}
+				addRawRow(row_contents);
 			}
+		}
+		fireTableDataChanged();
 	}
 
 
@@ -68,10 +186,8 @@ public class RecordingsTableModel
 	 */
 	public void clearTable()
 	{
-		while (getRowCount() != 0)
-		{
-			removeRow(0);
-		}
+		row_of_path.clear();
+		setRowCount(0);
 	}
 
 
@@ -82,4 +198,213 @@ public class RecordingsTableModel
 	{
 		return false;
 	}
-}
\ No newline at end of file
+
+
+	/* PRIVATE METHODS *********************************************************/
+
+
+	/**
+	 * Adds the given row without notifying listeners.
+	 */
+	@SuppressWarnings("unchecked")
+	private void addRawRow(Vector<Object> row_contents)
+	{
+		dataVector.add(row_contents);
+	}
+
+
+	/**
+	 * Returns the cached format information of the given file, or null if it
+	 * is not cached. The information may be out of date if the file has
+	 * changed since it was read.
+	 */
+	private static Object[] getCachedFormat(String path)
+	{
+		synchronized (format_cache)
+		{
+			return format_cache.get(path);
+		}
+	}
+
+
+	/**
+	 * Returns the format information of the given file, reading its header
+	 * only if it is not cached or if the length or modification time of the
+	 * file have changed since it was cached.
+	 */
+	private static Object[] getCurrentFormat(String path)
+	{
+		File file = new File(path);
+		Long length = new Long(file.length());
+		Long last_modified = new Long(file.lastModified());
+		Object[] format = getCachedFormat(path);
+		if (format != null && length.equals(format[3]) && last_modified.equals(format[4]))
+			return format;
+		format = readFormat(path);
+		format[3] = length;
+		format[4] = last_modified;
+		synchronized (format_cache)
+		{
+			format_cache.put(path, format);
+		}
+		return format;
+	}
+
+
+	/**
+	 * Copies the given cached format information into the given row.
+	 */
+	private static void setFormat(Vector<Object> row_contents, Object[] format)
+	{
+		row_contents.set(DURATION_COLUMN, format[0]);
+		row_contents.set(SAMPLING_RATE_COLUMN, format[1]);
+		row_contents.set(CHANNELS_COLUMN, format[2]);
+	}
+
+
+	/**
+	 * Returns whether the given row already displays the given format
+	 * information.
+	 */
+	private static boolean hasFormat(Vector<Object> row_contents, Object[] format)
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			Object displayed = row_contents.get(DURATION_COLUMN + i);
+			if (displayed == null ? format[i] != null : !displayed.equals(format[i]))
+				return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Queues the format information of the given file to be checked, and its
+	 * header to be read if needed, in the background. If it is already
+	 * queued, by this or another table, this table is only added to the
+	 * tables waiting for it. Its information is merged into each waiting
+	 * table when it arrives.
+	 */
+	private void requestFormat(final String path)
+	{
+		synchronized (queued_paths)
+		{
+			Vector<RecordingsTableModel> waiting = queued_paths.get(path);
+			if (waiting != null)
+			{
+				if (!waiting.contains(this))
+					waiting.add(this);
+				return;
+			}
+			waiting = new Vector<RecordingsTableModel>(1);
+			waiting.add(this);
+			queued_paths.put(path, waiting);
+		}
+		probe_pool.execute(new Runnable()
+		{
+			public void run()
+			{
+				Object[] format = getCurrentFormat(path);
+				Vector<RecordingsTableModel> waiting;
+				synchronized (queued_paths)
+				{
+					waiting = queued_paths.remove(path);
+				}
+				for (int i = 0; i < waiting.size(); i++)
+					waiting.get(i).formatArrived(path);
+			}
+		});
+	}
+
+
+	/**
+	 * Records that the information of the given file is available and
+	 * schedules a merge on the event dispatch thread if none is pending.
+	 * Merges are batched so that the table is not redrawn once per file.
+	 */
+	private void formatArrived(String path)
+	{
+		arrived_paths.add(path);
+		if (!merge_scheduled)
+		{
+			merge_scheduled = true;
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				public void run()
+				{
+					mergeArrivedFormats();
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Copies the information of all files checked since the last merge into
+	 * the rows displaying them, and notifies listeners of the range of rows
+	 * that changed. Called on the event dispatch thread.
+	 */
+	private void mergeArrivedFormats()
+	{
+		merge_scheduled = false;
+		int first_row = Integer.MAX_VALUE;
+		int last_row = -1;
+		String path;
+		while ((path = arrived_paths.poll()) != null)
+		{
+			Integer row = row_of_path.get(path);
+			Object[] format = getCachedFormat(path);
+			if (row == null || format == null || row.intValue() >= getRowCount())
+				continue;
+			@SuppressWarnings("unchecked")
+			Vector<Object> row_contents = (Vector<Object>) dataVector.get(row.intValue());
+			if (!path.equals(row_contents.get(1)) || hasFormat(row_contents, format))
+				continue;
+			setFormat(row_contents, format);
+			first_row = Math.min(first_row, row.intValue());
+			last_row = Math.max(last_row, row.intValue());
+		}
+		if (last_row >= 0)
+			fireTableRowsUpdated(first_row, last_row);
+	}
+
+
+	/**
+	 * Reads the duration in seconds, sampling rate and number of channels of
+	 * the given file from its header, without decoding any samples. The
+	 * duration is null if it is not stored in the header. If the file cannot
+	 * be read, the duration is UNREADABLE and the other values are null. The
+	 * last two entries are left for the length and modification time of the
+	 * file.
+	 */
+	private static Object[] readFormat(String path)
+	{
+		Object[] format = new Object[5];
+		try
+		{
+			AudioFileFormat file_format = AudioSystem.getAudioFileFormat(new File(path));
+			AudioFormat audio_format = file_format.getFormat();
+			if (audio_format.getSampleRate() != AudioSystem.NOT_SPECIFIED)
+				format[1] = new Float(audio_format.getSampleRate());
+			if (audio_format.getChannels() != AudioSystem.NOT_SPECIFIED)
+				format[2] = new Integer(audio_format.getChannels());
+			if (file_format.getFrameLength() != AudioSystem.NOT_SPECIFIED
+				&& audio_format.getFrameRate() > 0.0f)
+				format[0] = new Double(Math.round(100.0 * file_format.getFrameLength()
+					/ audio_format.getFrameRate()) / 100.0);
+			else
+			{
+				Object microseconds = file_format.properties().get("duration");
+				if (microseconds instanceof Long)
+					format[0] = new Double(Math.round(((Long) microseconds).longValue() / 10000.0) / 100.0);
+			}
+		}
+		catch (Exception e)
+		{
+			format[0] = UNREADABLE;
+			format[1] = null;
+			format[2] = null;
+		}
+		return format;
+	}
+}
@@ -10,7 +10,10 @@ import jAudioFeatureExtractor.jAudioTools.AudioSamples;
 
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.util.HashSet;
 
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.AbstractAction;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
@@ -54,10 +57,10 @@ public class AddRecordingAction extends AbstractAction {
 	 * Only audio files of known types (i.e. with known extensions) are
 	 * displayed in the file chooser.
 	 * <p>
-	 * Verifies that the files are valid audio files that can be read if the
-	 * validate_recordings_when_load_them_check_box checkbox is selected. Only
-	 * stores the actual samples if the store_audio_samples_check_box check box
-	 * is selected (otherwise just stores file references).
+	 * Verifies that the headers of the files can be read as audio files of a
+	 * known type if the Validate Recordings menu item is selected. Only stores
+	 * the actual samples if the store_audio_samples_check_box check box is
+	 * selected (otherwise just stores file references).
 	 * <p>
 	 * If a selected file path corresponds to a file that does not exist, then
 	 * an error message is displayed.
@@ -93,10 +96,10 @@ public class AddRecordingAction extends AbstractAction {
 	 * Adds the given files to the table display and stores a reference to them.
 	 * Ignores files that have already been added to the table.
 	 * <p>
-	 * Verifies that the files are valid audio files that can be read if the
-	 * validate_recordings_when_load_them_check_box checkbox is selected. Only
-	 * stores the actual samples if the store_audio_samples_check_box check box
-	 * is selected (otherwise just stores file references).
+	 * Verifies that the headers of the files can be read as audio files of a
+	 * known type if the Validate Recordings menu item is selected. Only stores
+	 * the actual samples if the store_audio_samples_check_box check box is
+	 * selected (otherwise just stores file references).
 	 * <p>
 	 * If a given file path corresponds to a file that does not exist, then an
 	 * error message is displayed.
@@ -119,14 +122,17 @@ public class AddRecordingAction extends AbstractAction {
 					// The samples extracted from each file
 					AudioSamples audio_samples = null;
 
-					// Load the samples if the
-					// validate_recordings_when_load_them_check_box
-					// is selected. Throw an exception if the file is not a
-					// valid
-					// audio file of a type that can be read and processed.
+					// Read the header of the file if the Validate Recordings
+					// menu item is selected. Throw an exception if the file is
+					// not an audio file of a type that can be read. Files are
+					// not decoded here just to validate them.
 					if (controller.validate.isSelected()) {
-						audio_samples = new AudioSamples(toBeAdded[i],
-								toBeAdded[i].getPath(), false);
+						try {
+							AudioSystem.getAudioFileFormat(toBeAdded[i]);
+						} catch (UnsupportedAudioFileException e) {
+							throw new Exception("The file " + toBeAdded[i].getName()
+									+ " is not an audio file of a type that can be read.");
+						}
 					}
 
 					// Store the samples themselves in memory if the
@@ -175,16 +181,12 @@ public class AddRecordingAction extends AbstractAction {
 			temp_recording_list[i + number_old_recordings] = recording_info[i];
 
 		// Remove duplicate entries in the recording_list with the same file
-		// path
-		for (int i = 0; i < temp_recording_list.length - 1; i++)
-			if (temp_recording_list[i] != null) {
-				String current_path = temp_recording_list[i].file_path;
-				for (int j = i + 1; j < temp_recording_list.length; j++)
-					if (temp_recording_list[j] != null)
-						if (current_path
-								.equals(temp_recording_list[j].file_path))
-							temp_recording_list[j] = null;
-			}
+		// path, keeping the first
+		HashSet<String> paths_seen = new HashSet<String>();
+		for (int i = 0; i < temp_recording_list.length; i++)
+			if (temp_recording_list[i] != null
+					&& !paths_seen.add(temp_recording_list[i].file_path))
+				temp_recording_list[i] = null;
 
 		// Remove null entries in recording_list due to invalid files or
 		// duplicate file names
@@ -198,7 +200,6 @@ public class AddRecordingAction extends AbstractAction {
 
 		// Update the table to display the new recording_list
 		controller.rtm_.fillTable(controller.dm_.recordingInfo);
-		controller.rtm_.fireTableDataChanged();
 	}
 
 }
@@ -1,6 +1,7 @@
 package jAudioFeatureExtractor.actions;
 
 import jAudioFeatureExtractor.Controller;
+import jAudioFeatureExtractor.ACE.DataTypes.Batch;
 
 import java.awt.Color;
 import java.awt.HeadlessException;
@@ -8,6 +9,7 @@ import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.JFileChooser;
@@ -66,41 +68,9 @@ public class SaveBatchAction extends AbstractAction {
 					} else if (save == true) {
 						path.createNewFile();
 					}
-					FileWriter fw = new FileWriter(path);
-					String sep = System.getProperty("line.separator");
-					fw.write("<?xml version=\"1.0\"?>" + sep);
-					fw.write("<!DOCTYPE batchFile ["+sep);
-					fw.write("\t<!ELEMENT batchFile (batch+)>"+sep);
-					fw.write("\t<!ELEMENT batch (fileSet,settings,destination+)>"+sep);
-					fw.write("\t<!ATTLIST batch ID CDATA \"\" >"+sep);
-					fw.write("\t<!ELEMENT fileSet (file+)>"+sep);
-					fw.write("\t<!ELEMENT file (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT settings (windowSize,windowOverlap,samplingRate,normalise,perWindowStats,overallStats,outputType,feature+,aggregator+)>"+sep);
-					fw.write("\t<!ELEMENT windowSize (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT windowOverlap (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT samplingRate (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT normalise (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT perWindowStats (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT overallStats (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT outputType (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT feature (name,active,attribute*)>"+sep);
-					fw.write("\t<!ELEMENT name (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT active (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT attribute (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT destination (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT aggregator (aggregatorName, aggregatorFeature*, aggregatorAttribute*)>"+sep);
-					fw.write("\t<!ELEMENT aggregatorName (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT aggregatorFeature (#PCDATA)>"+sep);
-					fw.write("\t<!ELEMENT aggregatorAttribute (#PCDATA)>"+sep);
-					fw.write("]>"+sep);
-					fw.write(sep);
-					fw.write("<batchFile>"+sep);
-					for(int i=0;i<controller.batches.size();++i){
-						fw.write(controller.batches.get(i).outputXML());
+					if (save) {
+						saveBatches(controller.batches, path);
 					}
-					fw.write("</batchFile>"+sep);
-					fw.close();
-					fw = null;
 				}
 			} catch (HeadlessException e1) {
 				JOptionPane.showMessageDialog(null, e1.getMessage(), "ERROR",
@@ -113,4 +83,61 @@ public class SaveBatchAction extends AbstractAction {
 
 	}
 
+	/**
+	 * Writes the given batches to an XML batch file, including the DTD that
+	 * the file is validated against when it is loaded.
+	 *
+	 * @param batches
+	 *            batches to save.
+	 * @param path
+	 *            file to save the batches to.
+	 * @throws IOException
+	 *             Thrown if the file cannot be written.
+	 */
+	public static void saveBatches(List<Batch> batches, File path)
+			throws IOException {
+		FileWriter fw = new FileWriter(path);
+		String sep = System.getProperty("line.separator");
+		fw.write("<?xml version=\"1.0\"?>" + sep);
+		fw.write("<!DOCTYPE batchFile ["+sep);
+		fw.write("\t<!ELEMENT batchFile (batch+)>"+sep);
+		fw.write("\t<!ELEMENT batch (fileSet,settings,destination+)>"+sep);
+		fw.write("\t<!ATTLIST batch ID CDATA \"\" >"+sep);
+		fw.write("\t<!ELEMENT fileSet (file+)>"+sep);
+		fw.write("\t<!ELEMENT file (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT settings (windowSize,windowOverlap,additionalWindow*,samplingRate,normalise,perWindowStats,overallStats,excerpt*,(silenceDetection,silenceThreshold,silenceFill)?,outputType,feature+,aggregator+)>"+sep);
+		fw.write("\t<!ELEMENT windowSize (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT windowOverlap (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT additionalWindow (windowSize,windowOverlap)>"+sep);
+		fw.write("\t<!ELEMENT samplingRate (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT normalise (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT perWindowStats (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT overallStats (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT excerpt (excerptStart,excerptDuration)>"+sep);
+		fw.write("\t<!ELEMENT excerptStart (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT excerptDuration (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT silenceDetection (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT silenceThreshold (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT silenceFill (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT outputType (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT feature (name,active,attribute*)>"+sep);
+		fw.write("\t<!ELEMENT name (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT active (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT attribute (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT destination (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT aggregator (aggregatorName, aggregatorFeature*, aggregatorAttribute*)>"+sep);
+		fw.write("\t<!ELEMENT aggregatorName (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT aggregatorFeature (#PCDATA)>"+sep);
+		fw.write("\t<!ELEMENT aggregatorAttribute (#PCDATA)>"+sep);
+		fw.write("]>"+sep);
+		fw.write(sep);
+		fw.write("<batchFile>"+sep);
+		for(int i=0;i<batches.size();++i){
+			fw.write(batches.get(i).outputXML());
+		}
+		fw.write("</batchFile>"+sep);
+		fw.close();
+		fw = null;
+	}
+
 }
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package jAudioFeatureExtractor.actions;
+
+import jAudioFeatureExtractor.ACE.DataTypes.Batch;
+import jAudioFeatureExtractor.ACE.XMLParsers.XMLDocumentParser;
+import jAudioFeatureExtractor.jAudioTools.FeatureProcessor;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that batches saved by SaveBatchAction are valid against the DTD
+ * written with them and load back with the same settings.
+ */
+public class SaveBatchActionTest extends TestCase {
+
+	File recording;
+
+	File batchFile;
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(SaveBatchActionTest.class);
+	}
+
+	/*
+	 * @see TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		recording = File.createTempFile("recording", ".wav");
+		batchFile = File.createTempFile("batch", ".xml");
+	}
+
+	/*
+	 * @see TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		recording.delete();
+		batchFile.delete();
+		super.tearDown();
+	}
+
+	public void testSaveAndLoadAllSettings() throws Exception {
+		Batch batch = getBatch("all");
+		batch.setAdditionalWindows(new int[] { 256, 1024 }, new double[] {
+				0.0, 0.5 });
+		batch.setExcerpts(new double[] { 0.0, 30.0 }, new double[] { 10.0,
+				0.0 });
+		batch.setSilenceSkipping(FeatureProcessor.SILENCE_DETECTION_RMS, 0.01,
+				FeatureProcessor.SILENCE_FILL_LAST);
+
+		Batch loaded = saveAndLoad(batch);
+		assertEquals(batch.outputXML(), loaded.outputXML());
+		assertEquals(2, loaded.getAdditionalWindowSizes().length);
+		assertEquals(1024, loaded.getAdditionalWindowSizes()[1]);
+		assertEquals(0.5, loaded.getAdditionalWindowOverlaps()[1], 0.0);
+		assertEquals(2, loaded.getExcerptStarts().length);
+		assertEquals(30.0, loaded.getExcerptStarts()[1], 0.0);
+		assertEquals(10.0, loaded.getExcerptDurations()[0], 0.0);
+		assertEquals(FeatureProcessor.SILENCE_DETECTION_RMS, loaded
+				.getSilenceDetection());
+		assertEquals(0.01, loaded.getSilenceThreshold(), 0.0);
+		assertEquals(FeatureProcessor.SILENCE_FILL_LAST, loaded
+				.getSilenceFill());
+	}
+
+	public void testSaveAndLoadDefaultSettings() throws Exception {
+		Batch batch = getBatch("default");
+
+		Batch loaded = saveAndLoad(batch);
+		assertEquals(batch.outputXML(), loaded.outputXML());
+		assertEquals(0, loaded.getAdditionalWindowSizes().length);
+		assertEquals(0, loaded.getExcerptStarts().length);
+		assertEquals(FeatureProcessor.SILENCE_DETECTION_NONE, loaded
+				.getSilenceDetection());
+	}
+
+	Batch getBatch(String name) throws Exception {
+		Batch ret = new Batch();
+		ret.setName(name);
+		ret.setRecordings(new File[] { recording });
+		ret.setSettings(512, 0.25, 16000.0, true, true, true, 0);
+		ret.setDestination("features_fk.xml", "features_fv.xml");
+		HashMap<String, Boolean> activated = new HashMap<String, Boolean>();
+		HashMap<String, String[]> attributes = new HashMap<String, String[]>();
+		activated.put("Spectral Centroid", true);
+		attributes.put("Spectral Centroid", new String[0]);
+		activated.put("Beat Histogram", false);
+		attributes.put("Beat Histogram", new String[] { "256" });
+		ret.setFeatures(activated, attributes);
+		ret.setAggregators(new String[] { "Standard Deviation", "Mean" },
+				new String[][] { new String[0], new String[0] },
+				new String[][] { new String[0], new String[0] });
+		return ret;
+	}
+
+	Batch saveAndLoad(Batch batch) throws Exception {
+		Vector<Batch> batches = new Vector<Batch>();
+		batches.add(batch);
+		SaveBatchAction.saveBatches(batches, batchFile);
+		Object[] loaded = (Object[]) XMLDocumentParser.parseXMLDocument(
+				batchFile.getAbsolutePath(), "batchFile");
+		assertEquals(1, loaded.length);
+		return (Batch) loaded[0];
+	}
+
+}
@@ -18,6 +18,7 @@ import jAudioFeatureExtractor.Aggregators.Mean;
 import jAudioFeatureExtractor.Aggregators.MultipleFeatureHistogram;
 import jAudioFeatureExtractor.Aggregators.StandardDeviation;
 import jAudioFeatureExtractor.AudioFeatures.*;
+import jAudio.org.oc.ocvolume.dsp.endPt;
 import javax.sound.sampled.*;
 import java.io.*;
 import java.util.LinkedList;
@@ -41,6 +42,39 @@ import java.util.LinkedList;
  * @author Cory McKay
  */
 public class FeatureProcessor {
+	/* CONSTANTS ************************************************************** */
+
+	/**
+	 * Every window has its features extracted.
+	 */
+	public static final int SILENCE_DETECTION_NONE = 0;
+
+	/**
+	 * Windows whose RMS falls below the silence threshold are skipped.
+	 */
+	public static final int SILENCE_DETECTION_RMS = 1;
+
+	/**
+	 * Windows lying entirely before the start point or after the end point
+	 * found by the OC Volume endpoint detector are skipped.
+	 */
+	public static final int SILENCE_DETECTION_END_POINT = 2;
+
+	/**
+	 * Skipped windows are given no feature values.
+	 */
+	public static final int SILENCE_FILL_MISSING = 0;
+
+	/**
+	 * Skipped windows are given feature values of zero.
+	 */
+	public static final int SILENCE_FILL_ZERO = 1;
+
+	/**
+	 * Skipped windows are given the feature values of the preceding window.
+	 */
+	public static final int SILENCE_FILL_LAST = 2;
+
 	/* FIELDS ***************************************************************** */
 
 	// The window size used for dividing up the recordings to classify.
@@ -112,6 +146,37 @@ public class FeatureProcessor {
 
 	private AggregatorContainer aggregator;
 
+	// How silent windows are detected. One of the SILENCE_DETECTION constants.
+	private int silence_detection = SILENCE_DETECTION_NONE;
+
+	// The RMS below which a window is considered silent when using
+	// SILENCE_DETECTION_RMS.
+	private double silence_threshold = 0.0;
+
+	// What skipped windows are filled with. One of the SILENCE_FILL constants.
+	private int silence_fill = SILENCE_FILL_MISSING;
+
+	// The number of windows skipped as silent in the last recording processed.
+	private int skipped_windows = 0;
+
+	// The number of windows skipped as silent over all recordings processed.
+	private int total_skipped_windows = 0;
+
+	// The number of windows over all recordings processed.
+	private int total_windows = 0;
+
+	// The times in seconds at which each excerpt to extract starts. Null if
+	// whole recordings are to be extracted.
+	private double[] excerpt_starts = null;
+
+	// The duration in seconds of each excerpt to extract. A value of zero or
+	// less means the excerpt runs to the end of the recording.
+	private double[] excerpt_durations = null;
+
+	// The time in seconds of the first sample passed to extractFeatures,
+	// relative to the start of the recording.
+	private double time_offset = 0.0;
+
 	/* CONSTRUCTOR ************************************************************ */
 
 	/**
@@ -252,6 +317,164 @@ public class FeatureProcessor {
 
 	/* PUBLIC METHODS ********************************************************* */
 
+	/**
+	 * Enables or disables the cheap pre-pass that marks silent windows so
+	 * that full feature extraction can be skipped for them. Skipped windows
+	 * are filled as specified by the fill parameter. Features in later
+	 * windows that depend on a skipped window through a dependency offset
+	 * use the fill values, and are themselves left without values if the fill
+	 * is SILENCE_FILL_MISSING.
+	 *
+	 * @param detection
+	 *            How silent windows are detected. One of the
+	 *            SILENCE_DETECTION constants.
+	 * @param threshold
+	 *            The RMS below which a window is silent. Only used with
+	 *            SILENCE_DETECTION_RMS.
+	 * @param fill
+	 *            What skipped windows are filled with. One of the SILENCE_FILL
+	 *            constants.
+	 * @throws Exception
+	 *             Throws an informative exception if the parameters are
+	 *             invalid.
+	 */
+	public void setSilenceSkipping(int detection, double threshold, int fill)
+			throws Exception {
+		if (detection < SILENCE_DETECTION_NONE
+				|| detection > SILENCE_DETECTION_END_POINT)
+			throw new Exception("INTERNAL ERROR - unknown silence detection method "
+					+ detection);
+		if (fill < SILENCE_FILL_MISSING || fill > SILENCE_FILL_LAST)
+			throw new Exception("INTERNAL ERROR - unknown silence fill method "
+					+ fill);
+		if (threshold < 0.0 || Double.isNaN(threshold))
+			throw new Exception("Silence threshold is " + threshold + ".\n"
+					+ "This value must be 0.0 or above.");
+		silence_detection = detection;
+		silence_threshold = threshold;
+		silence_fill = fill;
+	}
+
+	/**
+	 * Restricts extraction to excerpts of each recording rather than the whole
+	 * recording. Only the audio needed for each excerpt is decoded: PCM audio
+	 * is skipped frame-accurately up to the start of each excerpt and
+	 * compressed audio is decoded without being stored up to that point.
+	 * Reading stops at the end of each excerpt. Each excerpt is saved as a
+	 * separate data set when more than one is given.
+	 *
+	 * @param starts
+	 *            The time in seconds at which each excerpt starts. Null to
+	 *            extract whole recordings.
+	 * @param durations
+	 *            The duration in seconds of each excerpt. Values of zero or
+	 *            less mean that an excerpt runs to the end of the recording.
+	 * @throws Exception
+	 *             Throws an informative exception if the parameters are
+	 *             invalid.
+	 */
+	public void setExcerpts(double[] starts, double[] durations)
+			throws Exception {
+		if (starts == null || starts.length == 0) {
+			excerpt_starts = null;
+			excerpt_durations = null;
+			return;
+		}
+		if (durations == null || durations.length != starts.length)
+			throw new Exception("INTERNAL ERROR - each excerpt needs both a start and a duration");
+		for (int i = 0; i < starts.length; i++)
+			if (starts[i] < 0.0 || Double.isNaN(starts[i]))
+				throw new Exception("Excerpt start is " + starts[i] + ".\n"
+						+ "This value must be 0.0 or above.");
+		excerpt_starts = starts;
+		excerpt_durations = durations;
+	}
+
+	/**
+	 * Returns the number of excerpts extracted from each recording. This is 1
+	 * if whole recordings are extracted.
+	 */
+	public int getNumberOfExcerpts() {
+		if (excerpt_starts == null)
+			return 1;
+		return excerpt_starts.length;
+	}
+
+	/**
+	 * Returns the time in seconds at which the given excerpt starts.
+	 *
+	 * @param excerpt
+	 *            The index of the excerpt.
+	 */
+	public double getExcerptStart(int excerpt) {
+		if (excerpt_starts == null)
+			return 0.0;
+		return excerpt_starts[excerpt];
+	}
+
+	/**
+	 * Returns the identifier that the given excerpt of the given recording is
+	 * saved under. This is the path of the recording unless more than one
+	 * excerpt is extracted, in which case the start time of the excerpt is
+	 * appended.
+	 *
+	 * @param recording_file
+	 *            The audio file the excerpt is from.
+	 * @param excerpt
+	 *            The index of the excerpt.
+	 */
+	public String getExcerptIdentifier(File recording_file, int excerpt) {
+		if (getNumberOfExcerpts() == 1)
+			return recording_file.getPath();
+		return recording_file.getPath() + " [" + excerpt_starts[excerpt]
+				+ "s]";
+	}
+
+	/**
+	 * Returns the pre-processed samples of the given excerpt of the given
+	 * audio file, or of the whole file if no excerpts have been set.
+	 *
+	 * @param recording_file
+	 *            The audio file to extract samples from.
+	 * @param excerpt
+	 *            The index of the excerpt.
+	 * @return The processed audio samples, as for preProcessRecording.
+	 * @throws Exception
+	 *             An exception is thrown if a problem occurs during file
+	 *             reading or pre- processing.
+	 */
+	public double[] preProcessExcerpt(File recording_file, int excerpt)
+			throws Exception {
+		if (excerpt_starts == null)
+			return preProcessRecording(recording_file);
+		return preProcessRecording(recording_file, excerpt_starts[excerpt],
+				excerpt_durations[excerpt]);
+	}
+
+	/**
+	 * Returns the number of windows that were skipped as silent in the most
+	 * recently processed recording.
+	 */
+	public int getSkippedWindows() {
+		return skipped_windows;
+	}
+
+	/**
+	 * Returns the number of windows that were skipped as silent over all
+	 * recordings processed so far.
+	 */
+	public int getTotalSkippedWindows() {
+		return total_skipped_windows;
+	}
+
+	/**
+	 * Returns the number of windows over all recordings processed so far,
+	 * including skipped windows.
+	 */
+	public int getTotalWindows() {
+		return total_windows;
+	}
+
 	/**
 	 * Extract the features from the provided audio file. This includes
 	 * pre-processing involving sample rate conversion, windowing and, possibly,
@@ -265,12 +488,57 @@ public class FeatureProcessor {
 	 */
 	public void extractFeatures(File recording_file, Updater updater)
 			throws Exception {
-		// Pre-process the recording and extract the samples from the audio
-		this.updater = updater;
-		double[] samples = preProcessRecording(recording_file);
-		if(cancel.isCancel()){
-			throw new ExplicitCancel("Killed after loading data");
+		for (int excerpt = 0; excerpt < getNumberOfExcerpts(); excerpt++) {
+			// Pre-process the recording and extract the samples from the audio
+			double[] samples = preProcessExcerpt(recording_file, excerpt);
+			if(cancel.isCancel()){
+				throw new ExplicitCancel("Killed after loading data");
+			}
+			extractFeatures(samples, getExcerptIdentifier(recording_file,
+					excerpt), getExcerptStart(excerpt), updater);
 		}
+	}
+
+	/**
+	 * Extract the features from samples that have already been decoded and
+	 * pre-processed by the preProcessRecording method. This allows several
+	 * FeatureProcessors with different window settings (but the same sampling
+	 * rate and normalisation) to share a single decoding of each recording.
+	 * The samples are not modified.
+	 *
+	 * @param samples
+	 *            The pre-processed samples of the recording.
+	 * @param identifier
+	 *            A string to use for identifying this recording. Often a file
+	 *            path.
+	 * @param updater
+	 *            Hook for progress updates. May be null.
+	 */
+	public void extractFeatures(double[] samples, String identifier,
+			Updater updater) throws Exception {
+		extractFeatures(samples, identifier, 0.0, updater);
+	}
+
+	/**
+	 * Extract the features from pre-processed samples that start part way
+	 * into a recording. Window times written to the feature_vector_file are
+	 * relative to the start of the recording rather than to the start of the
+	 * samples.
+	 *
+	 * @param samples
+	 *            The pre-processed samples of the excerpt.
+	 * @param identifier
+	 *            A string to use for identifying this excerpt.
+	 * @param start_time
+	 *            The time in seconds of the first sample, relative to the start
+	 *            of the recording.
+	 * @param updater
+	 *            Hook for progress updates. May be null.
+	 */
+	public void extractFeatures(double[] samples, String identifier,
+			double start_time, Updater updater) throws Exception {
+		this.updater = updater;
+		time_offset = start_time;
 		// Calculate the window start indices
 		LinkedList<Integer> window_start_indices_list = new LinkedList<Integer>();
 		int this_start = 0;
@@ -290,9 +558,13 @@ public class FeatureProcessor {
 		for (int i = 0; i < window_start_indices.length; i++)
 			window_start_indices[i] = window_start_indices_I[i].intValue();
 
+		// Mark the windows that are silent enough to be skipped
+		boolean[] silent_windows = findSilentWindows(samples,
+				window_start_indices);
+
 		// Extract the feature values from the samples
 		double[][][] window_feature_values = getFeatures(samples,
-				window_start_indices);
+				window_start_indices, silent_windows);
 
 		// Find the feature averages and standard deviations if appropriate
 //		AggregatorContainer aggContainer = new AggregatorContainer();
@@ -334,11 +606,11 @@ public class FeatureProcessor {
 		// Save the feature values for this recording
 		if (outputType == 0) {
 			saveACEFeatureVectorsForARecording(window_feature_values,
-					window_start_indices, recording_file.getPath(),
+					window_start_indices, identifier,
 					aggregator);
 		} else if (outputType == 1) {
 			saveARFFFeatureVectorsForARecording(window_feature_values,
-					window_start_indices, recording_file.getPath(),
+					window_start_indices, identifier,
 					aggregator);
 		}
 
@@ -555,6 +827,9 @@ public class FeatureProcessor {
 	 * The samples are re-encoded using the sampling rate in the sampling_rate
 	 * field. All channels are projected into one channel. Samples are
 	 * normalised if the normalise field is true.
+	 * <p>
+	 * The returned samples may be passed to extractFeatures of any
+	 * FeatureProcessor that uses the same sampling rate and normalisation.
 	 *
 	 * @param recording_file
 	 *            The audio file to extract samples from.
@@ -564,12 +839,43 @@ public class FeatureProcessor {
 	 *             An exception is thrown if a problem occurs during file
 	 *             reading or pre- processing.
 	 */
-	private double[] preProcessRecording(File recording_file) throws Exception {
+	public double[] preProcessRecording(File recording_file) throws Exception {
+		return preProcessRecording(recording_file, 0.0, 0.0);
+	}
+
+	/**
+	 * Returns the samples of an excerpt of the given audio file, processed as
+	 * for the single parameter preProcessRecording method. Only the audio
+	 * up to the end of the excerpt is read. PCM audio is skipped up to the
+	 * start of the excerpt without being decoded.
+	 *
+	 * @param recording_file
+	 *            The audio file to extract samples from.
+	 * @param start_time
+	 *            The time in seconds at which the excerpt starts.
+	 * @param duration
+	 *            The duration of the excerpt in seconds. A value of zero or
+	 *            less means the excerpt runs to the end of the file.
+	 * @return The processed audio samples.
+	 * @throws Exception
+	 *             An exception is thrown if a problem occurs during file
+	 *             reading or pre- processing, or if the file ends before the
+	 *             start of the excerpt.
+	 */
+	public double[] preProcessRecording(File recording_file,
+			double start_time, double duration) throws Exception {
 		// Get the original audio and its format
 		AudioInputStream original_stream = AudioSystem
 				.getAudioInputStream(recording_file);
 		AudioFormat original_format = original_stream.getFormat();
 
+		// Seek to the start of the excerpt. PCM frames can be skipped
+		// directly, but compressed audio must be skipped after decoding.
+		boolean is_pcm = original_format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED
+				|| original_format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED;
+		if (start_time > 0.0 && is_pcm)
+			skipToTime(original_stream, start_time, recording_file);
+
 		// Set the bit depth
 		int bit_depth = original_format.getSampleSizeInBits();
 		if (bit_depth != 8 && bit_depth != 16)
@@ -590,6 +896,8 @@ public class FeatureProcessor {
 			second_stream = AudioSystem.getAudioInputStream(new_format,
 					original_stream);
 		}
+		if (start_time > 0.0 && !is_pcm)
+			skipToTime(second_stream, start_time, recording_file);
 
 		// Convert to the set sampling rate, if it is not already at this
 		// sampling rate.
@@ -607,6 +915,11 @@ public class FeatureProcessor {
 					second_stream);
 		}
 
+		// Stop reading at the end of the excerpt
+		if (duration > 0.0)
+			new_stream = new AudioInputStream(new_stream, new_stream
+					.getFormat(), Math.round(duration * sampling_rate));
+
 		// Extract data from the AudioInputStream
 		AudioSamples audio_data = new AudioSamples(new_stream, recording_file
 				.getPath(), false);
@@ -619,6 +932,47 @@ public class FeatureProcessor {
 		return audio_data.getSamplesMixedDown();
 	}
 
+	/**
+	 * Skips the given stream forward to the given time. Only whole frames are
+	 * skipped, so PCM streams are positioned exactly on the frame that starts
+	 * at or just after the given time.
+	 *
+	 * @param stream
+	 *            The stream to skip. Must have a known frame size.
+	 * @param start_time
+	 *            The time in seconds to skip to.
+	 * @param recording_file
+	 *            The file the stream is from. Used for error reporting.
+	 * @throws Exception
+	 *             Throws an exception if the stream ends before the given
+	 *             time.
+	 */
+	private static void skipToTime(AudioInputStream stream, double start_time,
+			File recording_file) throws Exception {
+		AudioFormat format = stream.getFormat();
+		int frame_size = format.getFrameSize();
+		long bytes_to_skip = (long) Math.ceil(start_time
+				* format.getFrameRate())
+				* frame_size;
+		byte[] discard = null;
+		while (bytes_to_skip > 0) {
+			long skipped = stream.skip(bytes_to_skip);
+			if (skipped <= 0) {
+				// Some streams cannot skip, so read and discard instead
+				if (discard == null)
+					discard = new byte[frame_size * 4096];
+				int read = stream.read(discard, 0, (int) Math.min(
+						discard.length, bytes_to_skip));
+				if (read <= 0)
+					throw new Exception(recording_file.getPath()
+							+ " ends before the excerpt start of " + start_time
+							+ " seconds.");
+				skipped = read;
+			}
+			bytes_to_skip -= skipped;
+		}
+	}
+
 	/**
 	 * Breaks the given samples into the appropriate windows and extracts
 	 * features from each window.
@@ -629,6 +983,9 @@ public class FeatureProcessor {
 	 * @param window_start_indices
 	 *            The indices of samples that correspond to where each window
 	 *            should start.
+	 * @param silent_windows
+	 *            Which windows are to be skipped and filled rather than
+	 *            extracted. Null if no windows are to be skipped.
 	 * @return The extracted feature values for this recording. The first indice
 	 *         identifies the window, the second identifies the feature and the
 	 *         third identifies the feature value. The third dimension will be
@@ -638,7 +995,8 @@ public class FeatureProcessor {
 	 *             Throws an exception if a problem occurs.
 	 */
 	private double[][][] getFeatures(double[] samples,
-			int[] window_start_indices) throws Exception {
+			int[] window_start_indices, boolean[] silent_windows)
+			throws Exception {
 		// The extracted feature values for this recording. The first indice
 		// identifies the window, the second identifies the feature and the
 		// third identifies the feature value.
@@ -664,6 +1022,13 @@ public class FeatureProcessor {
 				}
 			}
 
+			// Fill skipped windows instead of extracting features from them
+			if (silent_windows != null && silent_windows[win]) {
+				for (int feat = 0; feat < feature_extractors.length; feat++)
+					results[win][feat] = getSilenceFill(results, win, feat);
+				continue;
+			}
+
 			// Find the samples in this window and zero-pad if necessary
 			double[] window = new double[window_size];
 			int start_sample = window_start_indices[win];
@@ -691,18 +1056,25 @@ public class FeatureProcessor {
 					// feature
 					// needs
 					double[][] other_feature_values = null;
+					boolean dependencies_available = true;
 					if (feature_extractor_dependencies[feat] != null) {
 						other_feature_values = new double[feature_extractor_dependencies[feat].length][];
 						for (int i = 0; i < feature_extractor_dependencies[feat].length; i++) {
 							int feature_indice = feature_extractor_dependencies[feat][i];
 							int offset = feature.getDepenedencyOffsets()[i];
 							other_feature_values[i] = results[win + offset][feature_indice];
+							if (other_feature_values[i] == null)
+								dependencies_available = false;
 						}
 					}
 
-					// Store the extracted feature values
-					results[win][feat] = feature.extractFeature(window,
-							sampling_rate, other_feature_values);
+					// Store the extracted feature values. A dependency can
+					// only be missing if it fell in a skipped window.
+					if (dependencies_available)
+						results[win][feat] = feature.extractFeature(window,
+								sampling_rate, other_feature_values);
+					else
+						results[win][feat] = null;
 				} else
 					results[win][feat] = null;
 			}
@@ -712,6 +1084,105 @@ public class FeatureProcessor {
 		return results;
 	}
 
+	/**
+	 * Marks which windows are silent, using the method set by
+	 * setSilenceSkipping. Also updates the skipped window counts.
+	 *
+	 * @param samples
+	 *            The samples of the recording.
+	 * @param window_start_indices
+	 *            The indices of samples that correspond to where each window
+	 *            should start.
+	 * @return Which windows are silent, or null if silence detection is
+	 *         disabled.
+	 */
+	private boolean[] findSilentWindows(double[] samples,
+			int[] window_start_indices) {
+		skipped_windows = 0;
+		total_windows += window_start_indices.length;
+		if (silence_detection == SILENCE_DETECTION_NONE)
+			return null;
+
+		boolean[] silent = new boolean[window_start_indices.length];
+		if (silence_detection == SILENCE_DETECTION_RMS) {
+			// Windows are zero-padded at the end, so the padding counts
+			// towards the RMS just as it does during extraction
+			for (int win = 0; win < silent.length; win++) {
+				int start = window_start_indices[win];
+				int end = Math.min(start + window_size, samples.length);
+				double sum = 0.0;
+				for (int samp = start; samp < end; samp++)
+					sum += samples[samp] * samples[samp];
+				silent[win] = Math.sqrt(sum / window_size) < silence_threshold;
+			}
+		} else if (silence_detection == SILENCE_DETECTION_END_POINT) {
+			// The endpoint detector needs at least 3200 samples to estimate
+			// the noise floor at each end of the recording
+			if (samples.length > 3200) {
+				short[] short_samples = new short[samples.length];
+				for (int samp = 0; samp < samples.length; samp++) {
+					double value = samples[samp] * 32767.0;
+					if (value > 32767.0)
+						value = 32767.0;
+					else if (value < -32768.0)
+						value = -32768.0;
+					short_samples[samp] = (short) value;
+				}
+				int[] cut = endPt.zeroCrossing(short_samples, endPt
+						.avgEnergy(short_samples), endPt
+						.zeroCrossingBoolean(short_samples));
+				int first_sound = cut[0] * endPt.frameSize;
+				int last_sound = cut[1] * endPt.frameSize;
+				for (int win = 0; win < silent.length; win++) {
+					int start = window_start_indices[win];
+					int end = start + window_size - 1;
+					silent[win] = end < first_sound || start >= last_sound;
+				}
+			}
+		}
+
+		for (int win = 0; win < silent.length; win++)
+			if (silent[win])
+				skipped_windows++;
+		total_skipped_windows += skipped_windows;
+		return silent;
+	}
+
+	/**
+	 * Returns the values that a skipped window is given for the given
+	 * feature, as specified by the silence_fill field.
+	 *
+	 * @param results
+	 *            The feature values extracted so far. Indices are as for the
+	 *            return value of getFeatures.
+	 * @param win
+	 *            The skipped window.
+	 * @param feat
+	 *            The feature to fill.
+	 * @return The fill values. Null if the feature is to have no value.
+	 */
+	private double[] getSilenceFill(double[][][] results, int win, int feat) {
+		if (silence_fill == SILENCE_FILL_MISSING
+				|| win < max_feature_offsets[feat])
+			return null;
+
+		// Find the most recent values for this feature
+		double[] previous = null;
+		for (int i = win - 1; i >= 0 && previous == null; i--)
+			previous = results[i][feat];
+
+		if (silence_fill == SILENCE_FILL_LAST)
+			return previous;
+
+		// Fill with zeros, using the dimensions of earlier values if the
+		// feature has a variable number of dimensions
+		int dimensions = (previous != null) ? previous.length
+				: feature_extractors[feat].getFeatureDefinition().dimensions;
+		if (dimensions <= 0)
+			return null;
+		return new double[dimensions];
+	}
+
 	/**
 	 * Calculates the averages and standard deviations over a whole recording of
 	 * each of the windows-based features. Generates a feature definition for
@@ -743,9 +1214,14 @@ public class FeatureProcessor {
 		LinkedList<double[]> values = new LinkedList<double[]>();
 		LinkedList<FeatureDefinition> definitions = new LinkedList<FeatureDefinition>();
 
-		for (int feat = 0; feat < feature_extractors.length; feat++)
-			if (window_feature_values[window_feature_values.length - 1][feat] != null
-					&& features_to_save[feat]) {
+		for (int feat = 0; feat < feature_extractors.length; feat++) {
+			// The dimensions are those of the last window with values, since
+			// windows may be missing values (e.g. skipped silent windows)
+			double[] last_values = null;
+			for (int win = window_feature_values.length - 1; win >= 0
+					&& last_values == null; win--)
+				last_values = window_feature_values[win][feat];
+			if (last_values != null && features_to_save[feat]) {
 				// Make the definitions
 				FeatureDefinition this_def = feature_extractors[feat]
 						.getFeatureDefinition();
@@ -754,23 +1230,24 @@ public class FeatureProcessor {
 						this_def.description
 								+ "\nThis is the overall average over all windows.",
 						this_def.is_sequential,
-						window_feature_values[window_feature_values.length - 1][feat].length);
+						last_values.length);
 				FeatureDefinition stdv_definition = new FeatureDefinition(
 						this_def.name + " Overall Standard Deviation",
 						this_def.description
 								+ "\nThis is the overall standard deviation over all windows.",
 						this_def.is_sequential,
-						window_feature_values[window_feature_values.length - 1][feat].length);
+						last_values.length);
 
 				// Find the averages and standard deviations
-				double[] averages = new double[window_feature_values[window_feature_values.length - 1][feat].length];
-				double[] stdvs = new double[window_feature_values[window_feature_values.length - 1][feat].length];
-				for (int val = 0; val < window_feature_values[window_feature_values.length - 1][feat].length; val++) {
+				double[] averages = new double[last_values.length];
+				double[] stdvs = new double[last_values.length];
+				for (int val = 0; val < last_values.length; val++) {
 					// Find the number of windows that have values for this
 					// value feature
 					int count = 0;
 					for (int win = 0; win < window_feature_values.length; win++)
-						if (window_feature_values[win][feat] != null)
+						if (window_feature_values[win][feat] != null
+								&& window_feature_values[win][feat].length > val)
 							count++;
 
 					// Find the values to find the average and standard
@@ -778,7 +1255,8 @@ public class FeatureProcessor {
 					double[] values_to_process = new double[count];
 					int current = 0;
 					for (int win = 0; win < window_feature_values.length; win++)
-						if (window_feature_values[win][feat] != null) {
+						if (window_feature_values[win][feat] != null
+								&& window_feature_values[win][feat].length > val) {
 							values_to_process[current] = window_feature_values[win][feat][val];
 							current++;
 						}
@@ -796,6 +1274,7 @@ public class FeatureProcessor {
 				values.add(stdvs);
 				definitions.add(stdv_definition);
 			}
+		}
 
 		// Finalize the values
 		overall_feature_definitions[0] = definitions
@@ -981,10 +1460,10 @@ public class FeatureProcessor {
 		if (save_features_for_each_window)
 			for (int win = 0; win < feature_values.length; win++) {
 				double start_time = ((double) window_start_indices[win])
-						/ sampling_rate;
+						/ sampling_rate + time_offset;
 				double end_time = ((double) (window_start_indices[win]
 						+ window_size - 1))
-						/ sampling_rate;
+						/ sampling_rate + time_offset;
 				values_writer.writeBytes("\t\t<section start=\"" + start_time
 						+ "\" stop=\"" + end_time + "\">\n");
 				for (int feat = 0; feat < feature_values[win].length; feat++) {
@@ -1062,7 +1541,13 @@ public class FeatureProcessor {
 						+ "   <comments></comments>\n\n");
 		definitions_writer.writeBytes(feature_key_header);
 
-		double[][] last_window_features = feature_values[feature_values.length - 1];
+		// Find the most recent values of each feature. The last window may
+		// not have values for all features if it was skipped as silent.
+		double[][] last_window_features = new double[feature_extractors.length][];
+		for (int feat = 0; feat < feature_extractors.length; feat++)
+			for (int win = feature_values.length - 1; win >= 0
+					&& last_window_features[feat] == null; win--)
+				last_window_features[feat] = feature_values[win][feat];
 
 		// Write the window functions
 		if (save_features_for_each_window)
@@ -10,9 +10,17 @@ package jsymbolic;
 
 import jsymbolic.features.MIDIFeatureExtractor;
 import jsymbolic.gui.FeatureSelectorPanel;
+import jsymbolic.processing.MIDIEventTable;
+import jsymbolic.processing.MIDIExtractionProfile;
+import jsymbolic.processing.MIDIFeatureCache;
 import jsymbolic.processing.MIDIFeatureProcessor;
+import mckay.utilities.general.FileFilterImplementation;
 import mckay.utilities.staticlibraries.FileMethods;
 import java.io.File;
+import java.util.LinkedList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.midi.InvalidMidiDataException;
 
 
 /**
@@ -28,27 +36,78 @@ public class CommandLine
 	public CommandLine(String[] args)
 	{
 		// If there are a proper number of command line arguments
-		if (args.length == 3)
+		if (args.length == 3 && !args[0].equals("-batch"))
 		{
 			extractFeatures(args[0], args[1], args[2], true);
 			System.exit(0);
 		}
 
-		// If invalid command line arguments are used
-		else
+		// If batch mode is requested
+		else if (args.length > 0 && args[0].equals("-batch"))
 		{
-			System.err.println("Incorrest usage of jSymbolic. Proper usage requires one of the following:");
-			System.err.println("\t1) No arguments: Runs the GUI");
-			System.err.println("\t2) <SourceMIDIPath> <FeatureValuesOutputPath> <FeatureDescriptionsOutputPath>");
-			System.exit(-1);
+			// Parse the options
+			int number_workers = Runtime.getRuntime().availableProcessors();
+			String cache_path = null;
+			long cache_megabytes = 1024;
+			LinkedList<String> invalidated_features = new LinkedList<String>();
+			String profile_report_path = null;
+			LinkedList<String> list_paths = new LinkedList<String>();
+			LinkedList<String> paths = new LinkedList<String>();
+			boolean valid = true;
+			for (int i = 1; i < args.length && valid; i++)
+			{
+				if (args[i].equals("-workers") && i + 1 < args.length)
+				{
+					try {number_workers = Integer.parseInt(args[++i]);}
+					catch (NumberFormatException e) {valid = false;}
+				}
+				else if (args[i].equals("-list") && i + 1 < args.length)
+					list_paths.add(args[++i]);
+				else if (args[i].equals("-cache") && i + 1 < args.length)
+					cache_path = args[++i];
+				else if (args[i].equals("-cachesize") && i + 1 < args.length)
+				{
+					try {cache_megabytes = Long.parseLong(args[++i]);}
+					catch (NumberFormatException e) {valid = false;}
+				}
+				else if (args[i].equals("-invalidate") && i + 1 < args.length)
+					invalidated_features.add(args[++i]);
+				else if (args[i].equals("-profile") && i + 1 < args.length)
+					profile_report_path = args[++i];
+				else
+					paths.add(args[i]);
+			}
+			if (!valid || number_workers < 1 || cache_megabytes < 1 || paths.size() < 2 || (paths.size() < 3 && list_paths.isEmpty()))
+				printUsage();
+			if (cache_path == null && !invalidated_features.isEmpty())
+				printUsage();
+
+			// Find the MIDI files to extract features from
+			String feature_values_save_path = paths.removeFirst();
+			String feature_descriptions_save_path = paths.removeFirst();
+			File[] input_MIDI_files = findMIDIFiles(paths, list_paths);
+			if (input_MIDI_files == null)
+				System.exit(-1);
+
+			// Open the feature cache and invalidate the requested features
+			MIDIFeatureCache feature_cache = null;
+			if (cache_path != null)
+				feature_cache = openFeatureCache(cache_path, cache_megabytes * 1024 * 1024, invalidated_features);
+
+			extractFeatures(input_MIDI_files, feature_values_save_path, feature_descriptions_save_path, number_workers, feature_cache, profile_report_path, true);
+			System.exit(0);
 		}
+
+		// If invalid command line arguments are used
+		else
+			printUsage();
 	}
 
 
 	/**
 	 * Extracts all available features from a single MIDI file. Any errors
 	 * encountered are printed to standard error.
-	 * 
+	 *
 	 * @param input_MIDI_path					The path of the MIDI file to
 	 *											extract features from.
 	 * @param feature_values_save_path			The path to save the resulting
@@ -69,47 +128,21 @@ public class CommandLine
 			// Note progress
 			if (print_log) System.out.println("jSymbolic is parsing " + input_MIDI_path + "...");
 
-			// Prepare and validate the input file
+			// Prepare and parse the input file
 			File input_MIDI_file = new File(input_MIDI_path);
 			FileMethods.validateFile(input_MIDI_file, true, false);
-			try {javax.sound.midi.MidiSystem.getSequence(input_MIDI_file);}
-			catch (javax.sound.midi.InvalidMidiDataException e)
-			{
-				throw new Exception(input_MIDI_path + " is not a valid MIDI file.");
-			}
-
-			// Get all available features
-			MIDIFeatureExtractor[] feature_extractors = FeatureSelectorPanel.getAllAvailableFeatureExtractors(null);
-
-			// Choose to extract all features
-			// NOTE: could instead get defaults isntead by using non-null argument above for FeatureSelectorPanel.getAllAvailableFeatureExtractors() call
-			boolean[] features_to_save = new boolean[feature_extractors.length];
-			for (int i = 0; i < features_to_save.length; i++)
-				features_to_save[i] = true;
-
-			// Set the default feature extraction parameters
-			boolean extract_overall_only = true;
-			boolean save_features_for_each_window = false;
-			boolean save_overall_recording_features = true;
-			double window_size = 1.0;
-			double window_overlap = 0.0;
+			MIDIEventTable events = parseMIDIFile(input_MIDI_file);
 
 			// Note progress
 			if (print_log) System.out.println("jSymbolic is extracting features from " + input_MIDI_path + "...");
 
 			// Prepare to extract features
-			MIDIFeatureProcessor processor = new MIDIFeatureProcessor(extract_overall_only,
-				window_size,
-				window_overlap,
-				feature_extractors,
-				features_to_save,
-				save_features_for_each_window,
-				save_overall_recording_features,
+			MIDIFeatureProcessor processor = getProcessor(FeatureSelectorPanel.getAllAvailableFeatureExtractors(null),
 				feature_values_save_path,
-				feature_descriptions_save_path );
+				feature_descriptions_save_path);
 
 			// Extract features from the MIDI file and save them in an XML file
-			processor.extractFeatures(input_MIDI_file);
+			processor.extractFeatures(events, input_MIDI_file.getPath());
 
 			// Finalize saved XML files
 			processor.finalize();
@@ -121,22 +154,381 @@ public class CommandLine
 		{
 			// Print a preparatory error message
 			System.err.println("JSYMBOLIC ERROR WHILE PROCESSING " + input_MIDI_path + ":");
+			printError(t);
+
+			// End execution
+			System.exit(-1);
+		}
+	}
+
+
+	/**
+	 * Extracts all available features from each of the given MIDI files,
+	 * saving them all to a single ACE XML Feature Values file in the order
+	 * of the given files. Each file is parsed only once.
+	 *
+	 * <p>Files are processed by the given number of worker threads, each of
+	 * which has its own feature extractors. Results are saved as soon as the
+	 * results of all preceding files have been saved. Workers are kept from
+	 * getting too far ahead of the saving, so that the results waiting to be
+	 * saved do not use up too much memory.
+	 *
+	 * <p>If a feature cache is given, feature values are taken from it for
+	 * files whose contents have been processed before, and newly extracted
+	 * values are added to it.
+	 *
+	 * <p>If a profile report path is given, the time taken by each phase of
+	 * processing, by each group of intermediate representations and by each
+	 * feature is measured for each file and written to it, along with the
+	 * totals over all files.
+	 *
+	 * <p>Files that cannot be parsed or processed are reported on standard
+	 * error and skipped. Errors that prevent any results from being saved are
+	 * printed to standard error and end execution.
+	 *
+	 * @param input_MIDI_files					The MIDI files to extract
+	 *											features from.
+	 * @param feature_values_save_path			The path to save the resulting
+	 *											ACE XML Feature Values file to.
+	 * @param feature_descriptions_save_path	The path to save the resulting
+	 *											ACE XML Feature Description file
+	 *											to.
+	 * @param number_workers					The number of worker threads to
+	 *											use.
+	 * @param feature_cache						The cache to store feature
+	 *											values in, or null if they are
+	 *											not to be cached.
+	 * @param profile_report_path				The path to save the tab
+	 *											separated profile report to, or
+	 *											null if processing is not to be
+	 *											measured.
+	 * @param print_log							Whether or not to print a log
+	 *											of actions to standard out.
+	 */
+	public static void extractFeatures(final File[] input_MIDI_files,
+			String feature_values_save_path,
+			String feature_descriptions_save_path,
+			int number_workers,
+			MIDIFeatureCache feature_cache,
+			String profile_report_path,
+			final boolean print_log)
+	{
+		try
+		{
+			// Prepare to extract features
+			final MIDIFeatureProcessor processor = getProcessor(FeatureSelectorPanel.getAllAvailableFeatureExtractors(null),
+				feature_values_save_path,
+				feature_descriptions_save_path);
+			processor.setFeatureCache(feature_cache);
+			final boolean profile = (profile_report_path != null);
+			if (profile)
+				processor.setProfileReport(profile_report_path);
 
-			// React to the Java Runtime running out of memory
-			if (t.toString().startsWith("java.lang.OutOfMemoryError"))
+			// The results of each file waiting to be saved. Each is either the
+			// extracted feature values or an error message.
+			final Object[] results = new Object[input_MIDI_files.length];
+
+			// The measurements of each file waiting to be saved, if they are
+			// to be reported
+			final MIDIExtractionProfile[] profiles = new MIDIExtractionProfile[input_MIDI_files.length];
+
+			// The indice of the next file to be taken by a worker
+			final AtomicInteger next_file = new AtomicInteger(0);
+
+			// Limits the number of files taken whose results are not yet saved
+			final Semaphore unsaved = new Semaphore(number_workers * 2);
+
+			// Start the workers, each with its own feature extractors
+			Thread[] workers = new Thread[number_workers];
+			for (int w = 0; w < workers.length; w++)
 			{
-				System.err.println("- The Java Runtime ran out of memory.");
-				System.err.println("- Please rerun this program with more more assigned to the runtime heap.");
+				final MIDIFeatureExtractor[] extractors =
+					processor.getFeatureExtractorsInOrder(FeatureSelectorPanel.getAllAvailableFeatureExtractors(null));
+				workers[w] = new Thread("jSymbolic worker " + (w + 1))
+				{
+					public void run()
+					{
+						while (true)
+						{
+							unsaved.acquireUninterruptibly();
+							int file = next_file.getAndIncrement();
+							if (file >= input_MIDI_files.length)
+							{
+								unsaved.release();
+								return;
+							}
+
+							String path = input_MIDI_files[file].getPath();
+							if (print_log) System.out.println("jSymbolic is extracting features from " + path + "...");
+							Object result;
+							MIDIExtractionProfile file_profile = profile ? new MIDIExtractionProfile() : null;
+							try
+							{
+								result = processor.extractWindowFeatures(input_MIDI_files[file], extractors, file_profile);
+							}
+							catch (Throwable t)
+							{
+								result = getErrorMessage(t);
+							}
+
+							synchronized (results)
+							{
+								results[file] = result;
+								profiles[file] = file_profile;
+								results.notifyAll();
+							}
+						}
+					}
+				};
+				workers[w].setDaemon(true);
+				workers[w].start();
 			}
-			else if (t instanceof Exception)
+
+			// Save the results in order as they become available
+			int number_skipped = 0;
+			for (int file = 0; file < input_MIDI_files.length; file++)
 			{
-				Exception e = (Exception) t;
-				System.err.println("- " + e.getMessage());
-				// e.printStackTrace(System.err);
+				Object result;
+				MIDIExtractionProfile file_profile;
+				synchronized (results)
+				{
+					while (results[file] == null)
+						results.wait();
+					result = results[file];
+					file_profile = profiles[file];
+					results[file] = null;
+					profiles[file] = null;
+				}
+				unsaved.release();
+
+				String path = input_MIDI_files[file].getPath();
+				if (result instanceof String)
+				{
+					System.err.println("JSYMBOLIC ERROR WHILE PROCESSING " + path + " (SKIPPED):");
+					System.err.println((String) result);
+					number_skipped++;
+				}
+				else
+				{
+					processor.saveFeatures((double[][][]) result, path, file_profile);
+					if (print_log) System.out.println("jSymbolic succesfully extracted features from " + path + "...");
+				}
 			}
 
+			// Finalize saved XML files
+			processor.finalize();
+
+			// Note progress
+			if (print_log) System.out.println("jSymbolic extracted features from " + (input_MIDI_files.length - number_skipped) +
+				" of " + input_MIDI_files.length + " files.");
+		}
+		catch (Throwable t)
+		{
+			// Print a preparatory error message
+			System.err.println("JSYMBOLIC ERROR WHILE PROCESSING FILES:");
+			printError(t);
+
 			// End execution
 			System.exit(-1);
 		}
 	}
-}
\ No newline at end of file
+
+
+	/**
+	 * Prints the proper usage of jSymbolic to standard error and ends
+	 * execution.
+	 */
+	private static void printUsage()
+	{
+		System.err.println("Incorrest usage of jSymbolic. Proper usage requires one of the following:");
+		System.err.println("\t1) No arguments: Runs the GUI");
+		System.err.println("\t2) <SourceMIDIPath> <FeatureValuesOutputPath> <FeatureDescriptionsOutputPath>");
+		System.err.println("\t3) -batch [-workers <NumberOfWorkers>] [-list <FileListPath>]... [-cache <CacheDirectory> [-cachesize <Megabytes>] [-invalidate <FeatureName>]...] [-profile <ProfileReportPath>] <FeatureValuesOutputPath> <FeatureDescriptionsOutputPath> <SourcePath>...");
+		System.err.println("\t   Each SourcePath is a MIDI file or a directory, which is searched recursively for .mid and .midi files.");
+		System.err.println("\t   Each FileListPath is a text file listing one SourcePath per line.");
+		System.err.println("\t   Feature values are cached in CacheDirectory (1024 MB at most by default) and reused for files with the same contents.");
+		System.err.println("\t   Each FeatureName is a feature whose cached values are no longer to be used, e.g. because it has been changed.");
+		System.err.println("\t   The time taken by each phase, intermediate representation and feature for each file and in total is saved to ProfileReportPath.");
+		System.exit(-1);
+	}
+
+
+	/**
+	 * Finds the MIDI files referred to by the given paths and the paths
+	 * listed in the given text files. Directories are searched recursively
+	 * for files with .mid or .midi extensions. Problems are printed to
+	 * standard error.
+	 *
+	 * @param paths			Paths of MIDI files and directories.
+	 * @param list_paths	Paths of text files listing one path of a MIDI file
+	 *						or directory per line.
+	 * @return				The MIDI files found, in the order given, or null
+	 *						if a path is invalid.
+	 */
+	private static File[] findMIDIFiles(LinkedList<String> paths, LinkedList<String> list_paths)
+	{
+		LinkedList<String> all_paths = new LinkedList<String>(paths);
+		for (String list_path : list_paths)
+		{
+			try
+			{
+				String[] lines = FileMethods.parseTextFileLines(new File(list_path));
+				for (int i = 0; i < lines.length; i++)
+					if (lines[i].trim().length() > 0)
+						all_paths.add(lines[i].trim());
+			}
+			catch (Exception e)
+			{
+				System.err.println("JSYMBOLIC ERROR: could not read the file list " + list_path + ".");
+				return null;
+			}
+		}
+
+		String[] extensions = {"mid", "midi"};
+		FileFilterImplementation filter = new FileFilterImplementation(extensions);
+		LinkedList<File> files = new LinkedList<File>();
+		for (String path : all_paths)
+		{
+			File file = new File(path);
+			if (file.isDirectory())
+			{
+				File[] found = FileMethods.getAllFilesInDirectory(file, true, filter, null);
+				if (found != null)
+				{
+					java.util.Arrays.sort(found);
+					for (int i = 0; i < found.length; i++)
+						files.add(found[i]);
+				}
+			}
+			else if (file.exists())
+				files.add(file);
+			else
+			{
+				System.err.println("JSYMBOLIC ERROR: " + path + " does not exist.");
+				return null;
+			}
+		}
+		return files.toArray(new File[files.size()]);
+	}
+
+
+	/**
+	 * Opens the feature cache in the given directory and invalidates the
+	 * given features in it. Problems are printed to standard error and end
+	 * execution.
+	 *
+	 * @param cache_path			The directory of the cache.
+	 * @param maximum_size			The maximum size of the cache in bytes.
+	 * @param invalidated_features	The names of the features to invalidate.
+	 * @return						The feature cache.
+	 */
+	private static MIDIFeatureCache openFeatureCache(String cache_path,
+			long maximum_size,
+			LinkedList<String> invalidated_features)
+	{
+		try
+		{
+			// Check that the features to invalidate exist
+			MIDIFeatureExtractor[] all_features = FeatureSelectorPanel.getAllAvailableFeatureExtractors(null);
+			for (String name : invalidated_features)
+			{
+				boolean found = false;
+				for (int i = 0; i < all_features.length; i++)
+					if (all_features[i].getFeatureDefinition().name.equals(name))
+						found = true;
+				if (!found)
+					throw new Exception("There is no feature named " + name + ".");
+			}
+
+			MIDIFeatureCache feature_cache = new MIDIFeatureCache(new File(cache_path), maximum_size);
+			for (String name : invalidated_features)
+				feature_cache.invalidate(name);
+			return feature_cache;
+		}
+		catch (Throwable t)
+		{
+			System.err.println("JSYMBOLIC ERROR WHILE OPENING THE FEATURE CACHE " + cache_path + ":");
+			printError(t);
+			System.exit(-1);
+			return null;
+		}
+	}
+
+
+	/**
+	 * Returns a processor that extracts all of the given features from
+	 * recordings as a whole and saves them to the given paths.
+	 */
+	private static MIDIFeatureProcessor getProcessor(MIDIFeatureExtractor[] feature_extractors,
+			String feature_values_save_path,
+			String feature_descriptions_save_path)
+		throws Exception
+	{
+		// Choose to extract all features
+		// NOTE: could instead get defaults isntead by using non-null argument above for FeatureSelectorPanel.getAllAvailableFeatureExtractors() call
+		boolean[] features_to_save = new boolean[feature_extractors.length];
+		for (int i = 0; i < features_to_save.length; i++)
+			features_to_save[i] = true;
+
+		// Set the default feature extraction parameters
+		boolean extract_overall_only = true;
+		boolean save_features_for_each_window = false;
+		boolean save_overall_recording_features = true;
+		double window_size = 1.0;
+		double window_overlap = 0.0;
+
+		return new MIDIFeatureProcessor(extract_overall_only,
+			window_size,
+			window_overlap,
+			feature_extractors,
+			features_to_save,
+			save_features_for_each_window,
+			save_overall_recording_features,
+			feature_values_save_path,
+			feature_descriptions_save_path );
+	}
+
+
+	/**
+	 * Parses the given MIDI file into a table of its events, without building
+	 * a Sequence.
+	 *
+	 * @throws Exception	An informative exception is thrown if the file is
+	 *						not a valid MIDI file or cannot be read.
+	 */
+	private static MIDIEventTable parseMIDIFile(File input_MIDI_file)
+		throws Exception
+	{
+		try {return MIDIEventTable.parse(input_MIDI_file);}
+		catch (InvalidMidiDataException e)
+		{
+			throw new Exception(input_MIDI_file.getPath() + " is not a valid MIDI file.");
+		}
+	}
+
+
+	/**
+	 * Returns a description of the given error suitable for printing to
+	 * standard error.
+	 */
+	private static String getErrorMessage(Throwable t)
+	{
+		// React to the Java Runtime running out of memory
+		if (t.toString().startsWith("java.lang.OutOfMemoryError"))
+			return "- The Java Runtime ran out of memory.\n" +
+				"- Please rerun this program with more more assigned to the runtime heap.";
+		else if (t instanceof Exception && t.getMessage() != null)
+			return "- " + t.getMessage();
+		else
+			return "- " + t;
+	}
+
+
+	/**
+	 * Prints a description of the given error to standard error.
+	 */
+	private static void printError(Throwable t)
+	{
+		System.err.println(getErrorMessage(t));
+	}
+}
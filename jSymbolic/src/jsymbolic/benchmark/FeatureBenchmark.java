@@ -0,0 +1,529 @@
+/*
+ * FeatureBenchmark.java
+ * Version 1.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package jsymbolic.benchmark;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+import jsymbolic.features.MIDIFeatureExtractor;
+import jsymbolic.gui.FeatureSelectorPanel;
+import jsymbolic.processing.MIDIEventTable;
+import jsymbolic.processing.MIDIFeatureProcessor;
+import jsymbolic.processing.MIDIIntermediateRepresentations;
+
+
+/**
+ * Measures how quickly jSymbolic extracts information from synthetic MIDI
+ * recordings produced by a SyntheticMIDIGenerator. Three kinds of
+ * measurements are available:
+ *
+ * <p>- The time taken to generate each group of fields of the
+ * MIDIIntermediateRepresentations from freshly parsed events. This includes
+ * the time taken to generate any other groups that a group is calculated
+ * from. The time taken to construct the MIDIIntermediateRepresentations
+ * itself is measured separately, and is not included in the times of the
+ * groups.
+ *
+ * <p>- The time taken by the extractFeature method of each feature, given
+ * intermediate representations that have already been generated.
+ *
+ * <p>- The number of MIDI files per second that a MIDIFeatureProcessor
+ * parses and extracts all features from, as the command line does, along
+ * with the peak amount of heap memory used.
+ *
+ * <p>Each measurement is repeated for a number of warm up iterations, whose
+ * times are discarded so that the Java virtual machine has a chance to
+ * compile the code being measured, and then for a number of measured
+ * iterations. The recordings are used in turn from one iteration to the
+ * next. Results are printed as tab separated lines.
+ *
+ * <p>This is a development tool rather than a part of jSymbolic's interface.
+ * It is run through its own main method, whose usage is printed if invalid
+ * arguments are given.
+ *
+ * @author Cory McKay
+ */
+public class FeatureBenchmark
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The contents of the MIDI files of the synthetic recordings.
+      */
+     private   byte[][]                 recordings;
+
+     /**
+      * The number of iterations whose times are discarded.
+      */
+     private   int                      warm_up_iterations;
+
+     /**
+      * The number of iterations whose times are measured.
+      */
+     private   int                      measured_iterations;
+
+     /**
+      * Where results are printed.
+      */
+     private   PrintStream              out;
+
+     /**
+      * Accumulates values found during measurement, so that the code that
+      * finds them cannot be optimized away.
+      */
+     private static volatile double     sink;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Generates the synthetic recordings to measure extraction from.
+      *
+      * @param	generator               Generates the recordings.
+      * @param	number_recordings       The number of different recordings to
+      *                                 generate.
+      * @param	warm_up_iterations      The number of iterations of each
+      *                                 measurement whose times are discarded.
+      * @param	measured_iterations     The number of iterations of each
+      *                                 measurement whose times are measured.
+      * @param	out                     Where to print the results.
+      * @throws	Exception               Throws an informative exception if the
+      *                                 parameters are invalid or the
+      *                                 recordings cannot be generated.
+      */
+     public FeatureBenchmark( SyntheticMIDIGenerator generator,
+          int number_recordings,
+          int warm_up_iterations,
+          int measured_iterations,
+          PrintStream out )
+          throws Exception
+     {
+          if (number_recordings < 1)
+               throw new Exception("At least 1 recording must be generated.");
+          if (warm_up_iterations < 0)
+               throw new Exception("The number of warm up iterations cannot be negative.");
+          if (measured_iterations < 1)
+               throw new Exception("There must be at least 1 measured iteration.");
+
+          recordings = new byte[number_recordings][];
+          for (int i = 0; i < recordings.length; i++)
+               recordings[i] = generator.generateFile(i);
+          this.warm_up_iterations = warm_up_iterations;
+          this.measured_iterations = measured_iterations;
+          this.out = out;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Generates synthetic recordings and measures extraction from them, as
+      * specified by the given command line arguments, printing the results to
+      * standard out. All three kinds of measurements are made unless some of
+      * them are specified. Prints the proper usage and exits if the arguments
+      * are invalid.
+      *
+      * @param	args         The command line arguments.
+      */
+     public static void main(String[] args)
+     {
+          // Parse the options
+          int[] settings = {480, 480, 8, 3, 4, 8, 5, 20};
+          String[] setting_names = {"-beats", "-ppq", "-tracks", "-polyphony", "-tempochanges", "-recordings", "-warmup", "-iterations"};
+          boolean pitch_bends = true;
+          LinkedList<String> suites = new LinkedList<String>();
+          boolean valid = true;
+          for (int i = 0; i < args.length && valid; i++)
+          {
+               int setting = -1;
+               for (int j = 0; j < setting_names.length; j++)
+                    if (args[i].equals(setting_names[j]))
+                         setting = j;
+               if (setting != -1 && i + 1 < args.length)
+               {
+                    try {settings[setting] = Integer.parseInt(args[++i]);}
+                    catch (NumberFormatException e) {valid = false;}
+               }
+               else if (args[i].equals("-nobends"))
+                    pitch_bends = false;
+               else if (args[i].equals("representations") || args[i].equals("features") || args[i].equals("processor"))
+                    suites.add(args[i]);
+               else
+                    valid = false;
+          }
+          if (!valid)
+               printUsage();
+          if (suites.isEmpty())
+          {
+               suites.add("representations");
+               suites.add("features");
+               suites.add("processor");
+          }
+
+          // Make the measurements
+          try
+          {
+               SyntheticMIDIGenerator generator = new SyntheticMIDIGenerator(settings[0], settings[1], settings[2], settings[3], settings[4], pitch_bends);
+               FeatureBenchmark benchmark = new FeatureBenchmark(generator, settings[5], settings[6], settings[7], System.out);
+               for (String suite : suites)
+               {
+                    if (suite.equals("representations"))
+                         benchmark.benchmarkIntermediateRepresentations();
+                    else if (suite.equals("features"))
+                         benchmark.benchmarkFeatures();
+                    else
+                         benchmark.benchmarkProcessor();
+               }
+          }
+          catch (Throwable t)
+          {
+               System.err.println("JSYMBOLIC ERROR WHILE BENCHMARKING:");
+               if (t instanceof Exception && t.getMessage() != null)
+                    System.err.println("- " + t.getMessage());
+               else
+                    System.err.println("- " + t);
+               System.exit(-1);
+          }
+          System.exit(0);
+     }
+
+
+     /**
+      * Measures the time taken to construct a MIDIIntermediateRepresentations
+      * without generating anything, and then the time taken to generate each
+      * of its groups of fields. Prints one line per group, holding
+      * "representation", the name of the group and the mean and minimum
+      * times in microseconds.
+      *
+      * @throws	Exception    Throws an exception if a problem occurs.
+      */
+     public void benchmarkIntermediateRepresentations()
+     throws Exception
+     {
+          // Measure construction alone
+          double[] construction_times = new double[measured_iterations];
+          for (int iteration = -warm_up_iterations; iteration < measured_iterations; iteration++)
+          {
+               MIDIEventTable events = parse(iteration);
+               long start = System.nanoTime();
+               MIDIIntermediateRepresentations intermediate = new MIDIIntermediateRepresentations(events, false);
+               long end = System.nanoTime();
+               consume(intermediate.events.number_events);
+               if (iteration >= 0)
+                    construction_times[iteration] = (end - start) / 1000.0;
+          }
+          printResult("representation", "(construction)", construction_times);
+
+          // Measure each group, constructing beforehand
+          for (int representation = 0; representation < MIDIIntermediateRepresentations.NUMBER_OF_REPRESENTATIONS; representation++)
+          {
+               double[] times = new double[measured_iterations];
+               for (int iteration = -warm_up_iterations; iteration < measured_iterations; iteration++)
+               {
+                    MIDIIntermediateRepresentations intermediate =
+                         new MIDIIntermediateRepresentations(parse(iteration), false);
+                    long start = System.nanoTime();
+                    intermediate.generate(representation);
+                    long end = System.nanoTime();
+                    consume(intermediate.number_of_ticks);
+                    if (iteration >= 0)
+                         times[iteration] = (end - start) / 1000.0;
+               }
+               printResult( "representation",
+                    MIDIIntermediateRepresentations.getRepresentationName(representation),
+                    times );
+          }
+     }
+
+
+     /**
+      * Measures the time taken by the extractFeature method of each feature
+      * returned by FeatureSelectorPanel.getAllAvailableFeatureExtractors,
+      * given intermediate representations with all of their groups of fields
+      * generated and the values of the features that it depends on. Prints
+      * one line per feature, holding "feature", the name of the feature and
+      * the mean and minimum times in microseconds. Features that depend on
+      * the values of other windows are not measured, as each recording is a
+      * single window.
+      *
+      * @throws	Exception    Throws an exception if a problem occurs.
+      */
+     public void benchmarkFeatures()
+     throws Exception
+     {
+          MIDIFeatureExtractor[] all_features = FeatureSelectorPanel.getAllAvailableFeatureExtractors(null);
+          MIDIFeatureProcessor processor = getProcessor(all_features);
+          MIDIFeatureExtractor[] features = processor.getFeatureExtractorsInOrder(all_features);
+
+          // Prepare the intermediate representations and the values of all
+          // features of each recording, so that the values of the features
+          // that each feature depends on are available
+          int number_prepared = Math.min(recordings.length, warm_up_iterations + measured_iterations);
+          MIDIIntermediateRepresentations[] intermediates = new MIDIIntermediateRepresentations[number_prepared];
+          double[][][] values = new double[number_prepared][][];
+          for (int i = 0; i < number_prepared; i++)
+          {
+               MIDIEventTable events = parse(i);
+               intermediates[i] = new MIDIIntermediateRepresentations(events, true);
+               MIDIEventTable[] windows = {events};
+               values[i] = processor.getFeatures(windows, features)[0];
+          }
+
+          for (int feat = 0; feat < features.length; feat++)
+          {
+               String name = features[feat].getFeatureDefinition().name;
+
+               // Find the features that this one depends on
+               String[] dependencies = features[feat].getDepenedencies();
+               int[] dependency_indices = null;
+               boolean measurable = true;
+               if (dependencies != null)
+               {
+                    dependency_indices = new int[dependencies.length];
+                    for (int i = 0; i < dependencies.length; i++)
+                    {
+                         if (features[feat].getDepenedencyOffsets()[i] != 0)
+                              measurable = false;
+                         for (int j = 0; j < feat; j++)
+                              if (features[j].getFeatureDefinition().name.equals(dependencies[i]))
+                                   dependency_indices[i] = j;
+                    }
+               }
+               if (!measurable)
+               {
+                    out.println("feature\t" + name + "\tn/a\tn/a");
+                    continue;
+               }
+
+               double[] times = new double[measured_iterations];
+               for (int iteration = -warm_up_iterations; iteration < measured_iterations; iteration++)
+               {
+                    int recording = (iteration + warm_up_iterations) % number_prepared;
+                    double[][] other_feature_values = null;
+                    if (dependency_indices != null)
+                    {
+                         other_feature_values = new double[dependency_indices.length][];
+                         for (int i = 0; i < dependency_indices.length; i++)
+                              other_feature_values[i] = values[recording][ dependency_indices[i] ];
+                    }
+                    MIDIIntermediateRepresentations intermediate = intermediates[recording];
+                    long start = System.nanoTime();
+                    double[] value = features[feat].extractFeature( intermediate.sequence,
+                         intermediate,
+                         other_feature_values );
+                    long end = System.nanoTime();
+                    if (value != null && value.length > 0)
+                         consume(value[0]);
+                    if (iteration >= 0)
+                         times[iteration] = (end - start) / 1000.0;
+               }
+               printResult("feature", name, times);
+          }
+     }
+
+
+     /**
+      * Measures the number of MIDI files per second that a
+      * MIDIFeatureProcessor parses and extracts all features from, saving
+      * them in the same way as the command line does. The recordings are
+      * saved to temporary files, which are processed once for each
+      * iteration. Prints a line holding "processor", "files per second" and
+      * the mean and minimum rates, and a line holding "processor", "peak heap
+      * MB" and the peak amount of heap memory used while the measured
+      * iterations were running. The latter is the sum of the peaks of each
+      * heap memory pool, so it may slightly overestimate the overall peak.
+      *
+      * @throws	Exception    Throws an exception if a problem occurs.
+      */
+     public void benchmarkProcessor()
+     throws Exception
+     {
+          // Save the recordings to temporary files
+          File[] files = new File[recordings.length];
+          for (int i = 0; i < files.length; i++)
+          {
+               files[i] = File.createTempFile("jsymbolic_benchmark_", ".mid");
+               files[i].deleteOnExit();
+               java.io.FileOutputStream file_out = new java.io.FileOutputStream(files[i]);
+               try {file_out.write(recordings[i]);}
+               finally {file_out.close();}
+          }
+          File values_file = File.createTempFile("jsymbolic_benchmark_values_", ".xml");
+          File definitions_file = File.createTempFile("jsymbolic_benchmark_definitions_", ".xml");
+          values_file.deleteOnExit();
+          definitions_file.deleteOnExit();
+
+          // Process all of the files in each iteration
+          double[] rates = new double[measured_iterations];
+          for (int iteration = -warm_up_iterations; iteration < measured_iterations; iteration++)
+          {
+               if (iteration == 0)
+                    resetPeakHeapUsage();
+               MIDIFeatureProcessor processor = getProcessor(FeatureSelectorPanel.getAllAvailableFeatureExtractors(null),
+                    values_file,
+                    definitions_file);
+               long start = System.nanoTime();
+               for (int i = 0; i < files.length; i++)
+                    processor.extractFeatures(files[i]);
+               processor.finalize();
+               long end = System.nanoTime();
+               if (iteration >= 0)
+                    rates[iteration] = files.length / ((end - start) / 1000000000.0);
+          }
+          printResult("processor", "files per second", rates);
+          out.println("processor\tpeak heap MB\t" + format(getPeakHeapUsage() / (1024.0 * 1024.0)));
+
+          for (int i = 0; i < files.length; i++)
+               files[i].delete();
+          values_file.delete();
+          definitions_file.delete();
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Prints the proper usage of the main method to standard error and
+      * exits.
+      */
+     private static void printUsage()
+     {
+          System.err.println("Incorrect usage of FeatureBenchmark. Proper usage:");
+          System.err.println("\t[-beats <Beats>] [-ppq <TicksPerBeat>] [-tracks <Tracks>] [-polyphony <Notes>] [-tempochanges <Changes>] [-nobends]");
+          System.err.println("\t[-recordings <Recordings>] [-warmup <Iterations>] [-iterations <Iterations>] [representations] [features] [processor]");
+          System.err.println("\tMeasures extraction from synthetic MIDI recordings, printing tab separated results. All three kinds of measurements are made by default.");
+          System.exit(-1);
+     }
+
+
+     /**
+      * Parses the recording used in the given iteration, where negative
+      * iterations are warm up iterations.
+      */
+     private MIDIEventTable parse(int iteration)
+     throws Exception
+     {
+          int recording = (iteration + warm_up_iterations) % recordings.length;
+          return MIDIEventTable.parse(ByteBuffer.wrap(recordings[recording]));
+     }
+
+
+     /**
+      * Returns a processor that extracts all of the given features from
+      * recordings as a whole, saving them to temporary files that are deleted
+      * on exit.
+      */
+     private static MIDIFeatureProcessor getProcessor(MIDIFeatureExtractor[] all_features)
+     throws Exception
+     {
+          File values_file = File.createTempFile("jsymbolic_benchmark_values_", ".xml");
+          File definitions_file = File.createTempFile("jsymbolic_benchmark_definitions_", ".xml");
+          values_file.deleteOnExit();
+          definitions_file.deleteOnExit();
+          return getProcessor(all_features, values_file, definitions_file);
+     }
+
+
+     /**
+      * Returns a processor that extracts all of the given features from
+      * recordings as a whole and saves them to the given files, as the
+      * command line does.
+      */
+     private static MIDIFeatureProcessor getProcessor( MIDIFeatureExtractor[] all_features,
+          File values_file,
+          File definitions_file )
+          throws Exception
+     {
+          boolean[] features_to_save = new boolean[all_features.length];
+          for (int i = 0; i < features_to_save.length; i++)
+               features_to_save[i] = true;
+          return new MIDIFeatureProcessor( true,
+               1.0,
+               0.0,
+               all_features,
+               features_to_save,
+               false,
+               true,
+               values_file.getPath(),
+               definitions_file.getPath() );
+     }
+
+
+     /**
+      * Resets the peak usage of the heap memory pools.
+      */
+     private static void resetPeakHeapUsage()
+     {
+          System.gc();
+          List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+          for (MemoryPoolMXBean pool : pools)
+               if (pool.getType() == MemoryType.HEAP)
+                    pool.resetPeakUsage();
+     }
+
+
+     /**
+      * Returns the sum of the peak usage in bytes of the heap memory pools
+      * since they were last reset.
+      */
+     private static long getPeakHeapUsage()
+     {
+          long peak = 0;
+          List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+          for (MemoryPoolMXBean pool : pools)
+               if (pool.getType() == MemoryType.HEAP)
+                    peak += pool.getPeakUsage().getUsed();
+          return peak;
+     }
+
+
+     /**
+      * Prints a line holding the given kind and name of measurement and the
+      * mean and minimum of the given measured values.
+      */
+     private void printResult(String kind, String name, double[] values)
+     {
+          double total = 0.0;
+          double minimum = Double.MAX_VALUE;
+          for (int i = 0; i < values.length; i++)
+          {
+               total += values[i];
+               minimum = Math.min(minimum, values[i]);
+          }
+          out.println(kind + "\t" + name + "\t" + format(total / values.length) + "\t" + format(minimum));
+     }
+
+
+     /**
+      * Formats the given value with three decimal places.
+      */
+     private static String format(double value)
+     {
+          return String.format("%.3f", value);
+     }
+
+
+     /**
+      * Accumulates the given value so that the code that found it cannot be
+      * optimized away.
+      */
+     private static void consume(double value)
+     {
+          sink += value;
+     }
+}
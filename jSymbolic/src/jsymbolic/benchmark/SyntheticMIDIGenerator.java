@@ -0,0 +1,274 @@
+/*
+ * SyntheticMIDIGenerator.java
+ * Version 1.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package jsymbolic.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Random;
+import javax.sound.midi.*;
+
+
+/**
+ * Generates synthetic MIDI recordings with a given size and make up, for use
+ * in measuring how quickly features are extracted. The same recording is
+ * always generated from the same seed, so that measurements can be repeated.
+ *
+ * <p>Each recording has a first track holding its time signature and tempo
+ * changes, followed by the given number of tracks of notes. Each track of
+ * notes uses its own channel (so some use channel 10, percussion) and
+ * consists of a random series of chords and rests, each lasting from a
+ * quarter of a beat to two beats. Pitch bends may optionally be added to the
+ * notes that are not percussion.
+ *
+ * @author Cory McKay
+ */
+public class SyntheticMIDIGenerator
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The length of each recording in beats (quarter notes).
+      */
+     private   int            number_beats;
+
+     /**
+      * The number of MIDI ticks per beat (quarter note).
+      */
+     private   int            ticks_per_beat;
+
+     /**
+      * The number of tracks of notes in each recording.
+      */
+     private   int            number_tracks;
+
+     /**
+      * The number of notes in each chord.
+      */
+     private   int            polyphony;
+
+     /**
+      * The number of times that the tempo changes after the initial tempo.
+      */
+     private   int            number_tempo_changes;
+
+     /**
+      * Whether pitch bends are added to notes.
+      */
+     private   boolean        pitch_bends;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Validates and stores the make up of the recordings to generate.
+      *
+      * @param	number_beats            The length of each recording in beats
+      *                                 (quarter notes).
+      * @param	ticks_per_beat          The number of MIDI ticks per beat
+      *                                 (i.e. the PPQ resolution).
+      * @param	number_tracks           The number of tracks of notes in each
+      *                                 recording, not counting the first
+      *                                 track that holds the tempo changes.
+      * @param	polyphony               The number of notes in each chord.
+      * @param	number_tempo_changes    The number of times that the tempo
+      *                                 changes after the initial tempo.
+      * @param	pitch_bends             Whether pitch bends are to be added to
+      *                                 notes.
+      * @throws	Exception               Throws an informative exception if the
+      *                                 parameters are invalid.
+      */
+     public SyntheticMIDIGenerator( int number_beats,
+          int ticks_per_beat,
+          int number_tracks,
+          int polyphony,
+          int number_tempo_changes,
+          boolean pitch_bends )
+          throws Exception
+     {
+          if (number_beats < 1)
+               throw new Exception("The number of beats must be at least 1.");
+          if (ticks_per_beat < 1 || ticks_per_beat > 32767)
+               throw new Exception("The number of ticks per beat must be from 1 to 32767.");
+          if (number_tracks < 1)
+               throw new Exception("There must be at least 1 track of notes.");
+          if (polyphony < 1 || polyphony > 48)
+               throw new Exception("The polyphony must be from 1 to 48 notes.");
+          if (number_tempo_changes < 0)
+               throw new Exception("The number of tempo changes cannot be negative.");
+
+          this.number_beats = number_beats;
+          this.ticks_per_beat = ticks_per_beat;
+          this.number_tracks = number_tracks;
+          this.polyphony = polyphony;
+          this.number_tempo_changes = number_tempo_changes;
+          this.pitch_bends = pitch_bends;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Generates the recording corresponding to the given seed.
+      *
+      * @param	seed         The seed of the recording.
+      * @return              The generated recording.
+      * @throws	Exception    Throws an exception if the recording cannot be
+      *                      generated.
+      */
+     public Sequence generate(long seed)
+     throws Exception
+     {
+          Random random = new Random(seed);
+          Sequence sequence = new Sequence(Sequence.PPQ, ticks_per_beat);
+          long total_ticks = (long) number_beats * ticks_per_beat;
+
+          // Add the time signature and tempo changes, from 60 to 180 beats per
+          // minute, spread evenly through the recording
+          Track conductor = sequence.createTrack();
+          byte[] time_signature = {4, 2, 24, 8};
+          addMetaMessage(conductor, 0x58, time_signature, 0);
+          for (int change = 0; change <= number_tempo_changes; change++)
+          {
+               int beats_per_minute = 60 + random.nextInt(121);
+               int microseconds_per_beat = 60000000 / beats_per_minute;
+               byte[] tempo = { (byte) (microseconds_per_beat >> 16),
+                    (byte) (microseconds_per_beat >> 8),
+                    (byte) microseconds_per_beat };
+               addMetaMessage(conductor, 0x51, tempo, change * total_ticks / (number_tempo_changes + 1));
+          }
+
+          // Add the notes
+          int[] lengths = { Math.max(1, ticks_per_beat / 4),
+               Math.max(1, ticks_per_beat / 2),
+               ticks_per_beat,
+               2 * ticks_per_beat };
+          for (int track_number = 0; track_number < number_tracks; track_number++)
+          {
+               Track track = sequence.createTrack();
+               int channel = track_number % 16;
+               boolean percussion = (channel == 9);
+               addShortMessage(track, ShortMessage.PROGRAM_CHANGE, channel, random.nextInt(128), 0, 0);
+
+               int root = percussion ? 35 : 36 + random.nextInt(48);
+               long tick = 0;
+               while (tick < total_ticks)
+               {
+                    long length = Math.min(lengths[random.nextInt(lengths.length)], total_ticks - tick);
+
+                    // Leave a rest a tenth of the time
+                    if (random.nextInt(10) != 0)
+                    {
+                         // Find distinct pitches for the chord
+                         int[] pitches = new int[polyphony];
+                         if (percussion)
+                              for (int note = 0; note < polyphony; note++)
+                                   pitches[note] = 35 + (random.nextInt(12) + note * 12) % 47;
+                         else
+                         {
+                              root = Math.max(24, Math.min(96, root + random.nextInt(11) - 5));
+                              int pitch = root;
+                              for (int note = 0; note < polyphony; note++)
+                              {
+                                   pitches[note] = pitch % 128;
+                                   pitch += 1 + random.nextInt(7);
+                              }
+                         }
+
+                         int velocity = 40 + random.nextInt(81);
+                         for (int note = 0; note < polyphony; note++)
+                              addShortMessage(track, ShortMessage.NOTE_ON, channel, pitches[note], velocity, tick);
+
+                         // Bend the pitch partway through the chord and then
+                         // return it to the centre
+                         if (pitch_bends && !percussion && length > 1)
+                         {
+                              int bend = random.nextInt(16384);
+                              addShortMessage(track, ShortMessage.PITCH_BEND, channel, bend & 0x7F, bend >> 7, tick + length / 2);
+                              addShortMessage(track, ShortMessage.PITCH_BEND, channel, 0, 64, tick + length - 1);
+                         }
+
+                         for (int note = 0; note < polyphony; note++)
+                              addShortMessage(track, ShortMessage.NOTE_OFF, channel, pitches[note], 0, tick + length);
+                    }
+                    tick += length;
+               }
+          }
+
+          return sequence;
+     }
+
+
+     /**
+      * Generates the recording corresponding to the given seed and returns
+      * it as the contents of a type 1 MIDI file.
+      *
+      * @param	seed         The seed of the recording.
+      * @return              The contents of the MIDI file.
+      * @throws	Exception    Throws an exception if the recording cannot be
+      *                      generated.
+      */
+     public byte[] generateFile(long seed)
+     throws Exception
+     {
+          ByteArrayOutputStream contents = new ByteArrayOutputStream();
+          MidiSystem.write(generate(seed), 1, contents);
+          return contents.toByteArray();
+     }
+
+
+     /**
+      * Generates the recording corresponding to the given seed and saves it
+      * to the given file as a type 1 MIDI file.
+      *
+      * @param	seed         The seed of the recording.
+      * @param	file         The file to save to.
+      * @throws	Exception    Throws an exception if the recording cannot be
+      *                      generated or saved.
+      */
+     public void write(long seed, File file)
+     throws Exception
+     {
+          MidiSystem.write(generate(seed), 1, file);
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Adds a short message with the given contents to the given track.
+      */
+     private static void addShortMessage( Track track,
+          int command,
+          int channel,
+          int data_1,
+          int data_2,
+          long tick )
+          throws InvalidMidiDataException
+     {
+          ShortMessage message = new ShortMessage();
+          message.setMessage(command, channel, data_1, data_2);
+          track.add(new MidiEvent(message, tick));
+     }
+
+
+     /**
+      * Adds a meta message with the given contents to the given track.
+      */
+     private static void addMetaMessage(Track track, int type, byte[] data, long tick)
+     throws InvalidMidiDataException
+     {
+          MetaMessage message = new MetaMessage();
+          message.setMessage(type, data, data.length);
+          track.add(new MidiEvent(message, tick));
+     }
+}
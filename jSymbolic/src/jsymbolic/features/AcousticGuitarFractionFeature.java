@@ -46,6 +46,8 @@ public class AcousticGuitarFractionFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_COUNTS};
      }
      
      
@@ -48,6 +48,8 @@ public class AmountOfArpeggiationFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.MELODIC};
      }
      
      
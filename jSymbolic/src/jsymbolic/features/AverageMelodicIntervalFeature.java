@@ -44,6 +44,8 @@ public class AverageMelodicIntervalFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.MELODIC};
      }
      
      
@@ -44,6 +44,8 @@ public class AverageNoteDurationFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_DURATIONS};
      }
      
      
@@ -51,6 +51,8 @@ public class AverageRangeOfGlissandosFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCH_BENDS};
      }
      
      
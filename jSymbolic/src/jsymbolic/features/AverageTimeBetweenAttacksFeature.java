@@ -47,6 +47,8 @@ public class AverageTimeBetweenAttacksFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_BEGINNINGS};
      }
      
      
@@ -87,34 +89,13 @@ public class AverageTimeBetweenAttacksFeature
                double total_of_intervals = 0;
                int number_of_intervals = 0;
                
-               double time_so_far = 0.0;
-               int tick_of_last_attack  = -1;
-               for (int tick = 0; tick < sequence_info.note_beginnings_map.length; tick++)
+               // Find the time between each pair of consecutive ticks on which
+               // an attack occured on any channel
+               long[] attacks = sequence_info.note_beginnings[16];
+               for (int i = 1; i < attacks.length; i++)
                {
-                    // Check if an attack occured on this tick
-                    boolean attack = false;
-                    for (int chan = 0; chan < 16; chan++)
-                    {
-                         if (sequence_info.note_beginnings_map[tick][chan])
-                         {
-                              attack = true;
-                              chan = 17; // exit the loop
-                         }
-                    }
-                    
-                    if (!attack)
-                         time_so_far += sequence_info.seconds_per_tick[tick];
-                    else
-                    {
-                         if (tick_of_last_attack != -1)
-                         {
-                              total_of_intervals += time_so_far;
-                              number_of_intervals++;
-                         }
-                         
-                         time_so_far = 0.0;
-                         tick_of_last_attack = tick;
-                    }
+                    total_of_intervals += sequence_info.addSecondsOfTicks(0.0, attacks[i - 1] + 1, attacks[i]);
+                    number_of_intervals++;
                }
                
                value = total_of_intervals / (double) number_of_intervals;
@@ -47,6 +47,8 @@ public class AverageTimeBetweenAttacksForEachVoiceFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE, MIDIIntermediateRepresentations.NOTE_BEGINNINGS};
      }
      
      
@@ -93,41 +95,14 @@ public class AverageTimeBetweenAttacksForEachVoiceFeature
                     if (sequence_info.channel_statistics[chan][0] == 0)
                          intervals[chan] = null;
                     
-                    // If notes are contained in channel
+                    // If notes are contained in channel, find the time between
+                    // each pair of consecutive attacks on it
                     else
                     {
-                         // Find number of intervals
-                         int number_of_intervals = -1;
-                         for (int tick = 0; tick < sequence_info.note_beginnings_map.length; tick++)
-                              if (sequence_info.note_beginnings_map[tick][chan])
-                                   number_of_intervals++;
-                         
-                         // Fill in the array of intervals
-                         intervals[chan] = new double[number_of_intervals];
-                         number_of_intervals = 0;
-                         double time_so_far = 0.0;
-                         int tick_of_last_attack  = -1;
-                         for (int tick = 0; tick < sequence_info.note_beginnings_map.length; tick++)
-                         {
-                              // Check if an attack occured on this tick
-                              boolean attack = false;
-                              if (sequence_info.note_beginnings_map[tick][chan])
-                                   attack = true;
-                              
-                              if (!attack)
-                                   time_so_far += sequence_info.seconds_per_tick[tick];
-                              else
-                              {
-                                   if (tick_of_last_attack != -1)
-                                   {
-                                        intervals[chan][number_of_intervals] = time_so_far;
-                                        number_of_intervals++;
-                                   }
-                                   
-                                   time_so_far = 0.0;
-                                   tick_of_last_attack = tick;
-                              }
-                         }
+                         long[] attacks = sequence_info.note_beginnings[chan];
+                         intervals[chan] = new double[attacks.length - 1];
+                         for (int i = 0; i < intervals[chan].length; i++)
+                              intervals[chan][i] = sequence_info.addSecondsOfTicks(0.0, attacks[i] + 1, attacks[i + 1]);
                     }
                }
                
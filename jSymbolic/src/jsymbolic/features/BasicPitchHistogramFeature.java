@@ -47,6 +47,8 @@ public class BasicPitchHistogramFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCH_HISTOGRAMS};
      }
      
      
@@ -48,6 +48,8 @@ public class BeatHistogramFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.RHYTHMIC_HISTOGRAM};
      }
      
      
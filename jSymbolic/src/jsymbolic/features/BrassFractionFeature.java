@@ -47,6 +47,8 @@ public class BrassFractionFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_COUNTS};
      }
      
      
@@ -47,6 +47,8 @@ public class ChangesOfMeterFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.META_DATA};
      }
      
      
@@ -47,6 +47,8 @@ public class CombinedStrengthOfTwoStrongestRhythmicPulsesFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.RHYTHMIC_HISTOGRAM, MIDIIntermediateRepresentations.RHYTHMIC_HISTOGRAM_TABLE};
      }
      
      
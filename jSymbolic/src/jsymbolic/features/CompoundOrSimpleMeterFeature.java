@@ -50,6 +50,8 @@ public class CompoundOrSimpleMeterFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.META_DATA};
      }
      
      
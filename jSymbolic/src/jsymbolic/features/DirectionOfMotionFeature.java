@@ -46,6 +46,8 @@ public class DirectionOfMotionFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.MELODIC};
      }
      
      
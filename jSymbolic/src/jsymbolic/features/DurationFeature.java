@@ -44,6 +44,8 @@ public class DurationFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[0];
      }
      
      
@@ -79,7 +81,7 @@ public class DurationFeature
           throws Exception
      {
           double[] result = new double[1];
-          result[0] = (double) (sequence.getMicrosecondLength() / 1000000.0);
+          result[0] = (double) (sequence_info.events.microsecond_length / 1000000.0);
           return result;
      }
 }
\ No newline at end of file
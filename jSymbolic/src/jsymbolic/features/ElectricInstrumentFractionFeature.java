@@ -48,6 +48,8 @@ public class ElectricInstrumentFractionFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_COUNTS};
      }
      
      
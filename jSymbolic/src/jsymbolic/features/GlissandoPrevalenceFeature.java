@@ -48,6 +48,8 @@ public class GlissandoPrevalenceFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_COUNTS, MIDIIntermediateRepresentations.PITCH_BENDS};
      }
      
      
@@ -49,6 +49,8 @@ public class HarmonicityOfTwoStrongestRhythmicPulsesFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.RHYTHMIC_HISTOGRAM, MIDIIntermediateRepresentations.RHYTHMIC_HISTOGRAM_TABLE};
      }
      
      
@@ -106,8 +108,11 @@ public class HarmonicityOfTwoStrongestRhythmicPulsesFeature
                     second_hidhest_index = bin;
                     }
                
-               // Calculate the value
-               if (max_index > second_hidhest_index)
+               // Calculate the value. Short windows may not have two
+               // rhythmic pulses.
+               if (max_index == 0 || second_hidhest_index == 0)
+                    value = 0.0;
+               else if (max_index > second_hidhest_index)
                     value = max_index / second_hidhest_index;
                else
                     value = second_hidhest_index / max_index;
@@ -46,6 +46,8 @@ public class ImportanceOfHighRegisterFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCH_HISTOGRAMS};
      }
      
      
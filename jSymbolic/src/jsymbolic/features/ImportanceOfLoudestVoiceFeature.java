@@ -49,6 +49,8 @@ public class ImportanceOfLoudestVoiceFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE};
      }
      
      
@@ -46,6 +46,8 @@ public class InitialTempoFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.META_DATA};
      }
      
      
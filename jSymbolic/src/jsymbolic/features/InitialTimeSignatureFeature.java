@@ -51,6 +51,8 @@ public class InitialTimeSignatureFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.META_DATA};
      }
      
      
@@ -47,6 +47,8 @@ public class IntervalBetweenStrongestPitchesFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCH_HISTOGRAMS};
      }
      
      
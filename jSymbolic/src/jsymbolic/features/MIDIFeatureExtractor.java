@@ -19,7 +19,8 @@ import jsymbolic.processing.MIDIIntermediateRepresentations;
  * classes do not store feature values, only extract them.
  *
  * <p>Classes that extend this class should have a constructor that sets the
- * three protected fields of this class.
+ * first four protected fields of this class. The version field should be
+ * set as well once the way the feature is calculated has been changed.
  *
  * @author Cory McKay
  */
@@ -52,6 +53,23 @@ public abstract class MIDIFeatureExtractor
      protected	int[]              offsets;
      
      
+     /**
+      * The constants identifying the groups of fields of the
+      * MIDIIntermediateRepresentations that are needed in order for a feature
+      * to be calculated. Will be null if all of them may be needed, which is
+      * the case if it is not set.
+      */
+     protected	int[]              intermediate_representations;
+     
+     
+     /**
+      * The version of the way that a feature is calculated. This should be
+      * increased whenever a change is made that alters the values of a
+      * feature, so that values cached from earlier versions are not reused.
+      */
+     protected	int                version = 1;
+     
+     
      
      /* PUBLIC METHODS ********************************************************/
      
@@ -95,12 +113,41 @@ public abstract class MIDIFeatureExtractor
      }
      
      
+     /**
+      * Returns the constants identifying the groups of fields of the
+      * MIDIIntermediateRepresentations passed to this class's extractFeature
+      * method that are needed in order to extract this feature. Only these
+      * need to have been generated. Will return null if all of them may be
+      * needed.
+      */
+     public int[] getIntermediateRepresentations()
+     {
+          return intermediate_representations;
+     }
+     
+     
+     /**
+      * Returns the version of the way that this feature is calculated.
+      */
+     public int getVersion()
+     {
+          return version;
+     }
+     
+     
      /**
       * The prototype function that classes extending this class will
       * override in order to extract their feature from a window of MIDI data.
       *
+      * <p>This may be called for several windows at once from different
+      * threads, so it should not change the fields of this object.
+      *
       * @param sequence			The MIDI data to extract the feature 
-      *                                 from.
+      *                                 from. This may be null unless the
+      *                                 intermediate representations of this
+      *                                 feature are null or include
+      *                                 MIDIIntermediateRepresentations.SEQUENCE,
+      *                                 as it is only built when needed.
       * @param sequence_info		Additional data about the MIDI sequence.
       * @param other_feature_values     The values of other features that are
       *					needed to calculate this value. The
@@ -45,6 +45,8 @@ public class MaximumNoteDurationFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_DURATIONS};
      }
      
      
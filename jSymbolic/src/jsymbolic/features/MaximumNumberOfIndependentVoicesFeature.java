@@ -47,6 +47,8 @@ public class MaximumNumberOfIndependentVoicesFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE};
      }
      
      
@@ -85,16 +87,9 @@ public class MaximumNumberOfIndependentVoicesFeature
           if (sequence_info != null)
           {
                int max_so_far = 0;
-               for (int tick = 0; tick < sequence_info.channel_tick_map.length; tick++)
-               {
-                    int count = 0;
-                    for (int chan = 0; chan < sequence_info.channel_tick_map[tick].length; chan++)
-                         if (sequence_info.channel_tick_map[tick][chan])
-                              count++;
-                    
-                    if (count > max_so_far)
-                         max_so_far = count;
-               }
+               for (int run = 0; run < sequence_info.sounding_channels_run_counts.length; run++)
+                    if (sequence_info.sounding_channels_run_counts[run] > max_so_far)
+                         max_so_far = sequence_info.sounding_channels_run_counts[run];
                
                value = (double) max_so_far;
           }
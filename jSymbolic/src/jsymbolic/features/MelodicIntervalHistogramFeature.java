@@ -47,6 +47,8 @@ public class MelodicIntervalHistogramFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.MELODIC};
      }
      
      
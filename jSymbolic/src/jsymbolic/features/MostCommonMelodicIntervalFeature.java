@@ -45,6 +45,8 @@ public class MostCommonMelodicIntervalFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.MELODIC};
      }
      
      
@@ -45,6 +45,8 @@ public class NoteDensityFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.RECORDING_LENGTH, MIDIIntermediateRepresentations.TEXTURE};
      }
      
      
@@ -51,6 +51,8 @@ public class NotePrevalenceOfPitchedInstrumentsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCHED_INSTRUMENTATION, MIDIIntermediateRepresentations.NOTE_COUNTS};
      }
      
      
@@ -59,6 +59,8 @@ public class NotePrevalenceOfUnpitchedInstrumentsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NON_PITCHED_INSTRUMENTATION, MIDIIntermediateRepresentations.NOTE_COUNTS};
      }
      
      
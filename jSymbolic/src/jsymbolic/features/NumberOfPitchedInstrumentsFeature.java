@@ -47,6 +47,8 @@ public class NumberOfPitchedInstrumentsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCHED_INSTRUMENTATION};
      }
      
      
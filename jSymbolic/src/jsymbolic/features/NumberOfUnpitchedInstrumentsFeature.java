@@ -52,6 +52,8 @@ public class NumberOfUnpitchedInstrumentsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NON_PITCHED_INSTRUMENTATION};
      }
      
      
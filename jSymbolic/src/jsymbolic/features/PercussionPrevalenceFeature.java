@@ -48,6 +48,8 @@ public class PercussionPrevalenceFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE};
      }
      
      
@@ -44,6 +44,8 @@ public class PrimaryRegisterFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_COUNTS, MIDIIntermediateRepresentations.TEXTURE};
      }
      
      
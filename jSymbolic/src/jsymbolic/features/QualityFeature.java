@@ -49,6 +49,8 @@ public class QualityFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.META_DATA};
      }
      
      
@@ -49,6 +49,8 @@ public class RelativeNoteDensityOfHighestLineFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE};
      }
      
      
@@ -50,6 +50,8 @@ public class RelativeRangeOfLoudestVoiceFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE};
      }
      
      
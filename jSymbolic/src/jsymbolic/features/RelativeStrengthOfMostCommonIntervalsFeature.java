@@ -49,6 +49,8 @@ public class RelativeStrengthOfMostCommonIntervalsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.MELODIC};
      }
      
      
@@ -47,6 +47,8 @@ public class RelativeStrengthOfTopPitchClassesFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCH_HISTOGRAMS};
      }
      
      
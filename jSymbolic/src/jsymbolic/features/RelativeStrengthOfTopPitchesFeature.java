@@ -47,6 +47,8 @@ public class RelativeStrengthOfTopPitchesFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCH_HISTOGRAMS};
      }
      
      
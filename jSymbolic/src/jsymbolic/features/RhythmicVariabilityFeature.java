@@ -47,6 +47,8 @@ public class RhythmicVariabilityFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.RHYTHMIC_HISTOGRAM};
      }
      
      
@@ -47,6 +47,8 @@ public class SizeOfMelodicArcsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.MELODIC};
      }
      
      
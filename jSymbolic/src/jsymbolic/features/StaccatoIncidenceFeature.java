@@ -46,6 +46,8 @@ public class StaccatoIncidenceFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE, MIDIIntermediateRepresentations.NOTE_DURATIONS};
      }
      
      
@@ -46,6 +46,8 @@ public class StrengthOfStrongestRhythmicPulseFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.RHYTHMIC_HISTOGRAM};
      }
      
      
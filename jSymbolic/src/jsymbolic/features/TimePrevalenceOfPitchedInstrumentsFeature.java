@@ -53,6 +53,8 @@ public class TimePrevalenceOfPitchedInstrumentsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCHED_INSTRUMENTATION, MIDIIntermediateRepresentations.RECORDING_LENGTH};
      }
      
      
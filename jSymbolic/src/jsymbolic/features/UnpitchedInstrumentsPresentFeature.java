@@ -58,6 +58,8 @@ public class UnpitchedInstrumentsPresentFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NON_PITCHED_INSTRUMENTATION};
      }
      
      
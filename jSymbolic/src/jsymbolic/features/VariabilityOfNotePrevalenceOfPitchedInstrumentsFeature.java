@@ -49,6 +49,8 @@ public class VariabilityOfNotePrevalenceOfPitchedInstrumentsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCHED_INSTRUMENTATION};
      }
      
      
@@ -54,6 +54,8 @@ public class VariabilityOfNotePrevalenceOfUnpitchedInstrumentsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NON_PITCHED_INSTRUMENTATION};
      }
      
      
@@ -48,6 +48,8 @@ public class VariabilityOfNumberOfIndependentVoicesFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE};
      }
      
      
@@ -85,36 +87,37 @@ public class VariabilityOfNumberOfIndependentVoicesFeature
           double value;
           if (sequence_info != null)
           {
-               // Instantiate of the variable holding the number of voices sounding at each tick
-               int[] number_sounding = new int[sequence_info.channel_tick_map.length];
-               for (int i = 0; i < number_sounding.length; i++)
-                    number_sounding[i] = 0;
-               
-               // Find the number of voices sounding at each tick
-               int rest_count = 0;
-               for (int tick = 0; tick < sequence_info.channel_tick_map.length; tick++)
-               {
-                    for (int chan = 0; chan < sequence_info.channel_tick_map[tick].length; chan++)
-                         if (sequence_info.channel_tick_map[tick][chan])
-                              number_sounding[tick]++;
-                    
-                    // Keep track of number of ticks with no notes sounding
-                    if (number_sounding[tick] == 0)
-                         rest_count++;
-               }
-               
-               // Only count the ticks where at least one note was sounding
-               double[] final_number_sounding = new double[number_sounding.length - rest_count];
-               int count = 0;
-               for (int i = 0; i < number_sounding.length; i++)
-                    if (number_sounding[i] > 0.5)
+               // Total the number of voices sounding at each tick, only counting
+               // the ticks where at least one note was sounding
+               long[] run_starts = sequence_info.sounding_channels_run_starts;
+               int[] run_counts = sequence_info.sounding_channels_run_counts;
+               double total = 0.0;
+               long number_sounding_ticks = 0;
+               for (int run = 0; run < run_counts.length; run++)
+                    if (run_counts[run] > 0)
                     {
-                    final_number_sounding[count] = (double) number_sounding[i];
-                    count++;
+                    long run_length = run_starts[run + 1] - run_starts[run];
+                    total += (double) (run_counts[run] * run_length);
+                    number_sounding_ticks += run_length;
                     }
                
-               // Calculate the standard deviation
-               value = mckay.utilities.staticlibraries.MathAndStatsMethods.getStandardDeviation(final_number_sounding);
+               // Calculate the standard deviation, adding the squared
+               // difference of each tick in turn
+               if (number_sounding_ticks < 2)
+                    value = 0.0;
+               else
+               {
+                    double average = total / (double) number_sounding_ticks;
+                    double sum = 0.0;
+                    for (int run = 0; run < run_counts.length; run++)
+                         if (run_counts[run] > 0)
+                         {
+                         double diff = (double) run_counts[run] - average;
+                         for (long tick = run_starts[run]; tick < run_starts[run + 1]; tick++)
+                              sum = sum + diff * diff;
+                         }
+                    value = Math.sqrt(sum / ((double) (number_sounding_ticks - 1)));
+               }
           }
           else value = -1.0;
           
@@ -47,6 +47,8 @@ public class VariabilityOfTimeBetweenAttacksFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_BEGINNINGS};
      }
      
      
@@ -84,57 +86,12 @@ public class VariabilityOfTimeBetweenAttacksFeature
           double value;
           if (sequence_info != null)
           {
-               // Find number of intervals
-               int number_of_intervals = -1;
-               for (int tick = 0; tick < sequence_info.note_beginnings_map.length; tick++)
-               {
-                    // Check if an attack occured on this tick
-                    boolean attack = false;
-                    for (int chan = 0; chan < 16; chan++)
-                    {
-                         if (sequence_info.note_beginnings_map[tick][chan])
-                         {
-                              attack = true;
-                              chan = 17; // exit the loop
-                         }
-                    }
-                    
-                    if (attack)
-                         number_of_intervals++;
-               }
-               
-               // Fill in the array of intervals
-               double[] intervals = new double[number_of_intervals];
-               number_of_intervals = 0;
-               double time_so_far = 0.0;
-               int tick_of_last_attack  = -1;
-               for (int tick = 0; tick < sequence_info.note_beginnings_map.length; tick++)
-               {
-                    // Check if an attack occured on this tick
-                    boolean attack = false;
-                    for (int chan = 0; chan < 16; chan++)
-                    {
-                         if (sequence_info.note_beginnings_map[tick][chan])
-                         {
-                              attack = true;
-                              chan = 17; // exit the loop
-                         }
-                    }
-                    
-                    if (!attack)
-                         time_so_far += sequence_info.seconds_per_tick[tick];
-                    else
-                    {
-                         if (tick_of_last_attack != -1)
-                         {
-                              intervals[number_of_intervals] = time_so_far;
-                              number_of_intervals++;
-                         }
-                         
-                         time_so_far = 0.0;
-                         tick_of_last_attack = tick;
-                    }
-               }
+               // Find the time between each pair of consecutive ticks on which
+               // an attack occured on any channel
+               long[] attacks = sequence_info.note_beginnings[16];
+               double[] intervals = new double[attacks.length - 1];
+               for (int i = 0; i < intervals.length; i++)
+                    intervals[i] = sequence_info.addSecondsOfTicks(0.0, attacks[i] + 1, attacks[i + 1]);
                
                value = mckay.utilities.staticlibraries.MathAndStatsMethods.getStandardDeviation(intervals);
           }
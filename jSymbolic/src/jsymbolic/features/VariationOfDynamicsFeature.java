@@ -46,6 +46,8 @@ public class VariationOfDynamicsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.NOTE_COUNTS, MIDIIntermediateRepresentations.NOTE_LOUDNESSES};
      }
      
      
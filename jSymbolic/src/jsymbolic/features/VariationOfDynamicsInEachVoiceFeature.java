@@ -47,6 +47,8 @@ public class VariationOfDynamicsInEachVoiceFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE, MIDIIntermediateRepresentations.NOTE_LOUDNESSES};
      }
      
      
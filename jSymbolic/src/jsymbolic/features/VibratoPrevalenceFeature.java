@@ -49,6 +49,8 @@ public class VibratoPrevalenceFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.PITCH_BENDS};
      }
      
      
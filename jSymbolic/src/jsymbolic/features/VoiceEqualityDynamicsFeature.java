@@ -47,6 +47,8 @@ public class VoiceEqualityDynamicsFeature
           dependencies = null;
           
           offsets = null;
+          
+          intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE};
      }
      
      
@@ -47,6 +47,8 @@ public class VoiceEqualityMelodicLeapsFeature
 		dependencies = null;
 		
 		offsets = null;
+		
+		intermediate_representations = new int[] {MIDIIntermediateRepresentations.TEXTURE};
 	}
 
 
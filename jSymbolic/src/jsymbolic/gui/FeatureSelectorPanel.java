@@ -163,7 +163,6 @@ public class FeatureSelectorPanel
           // Set up buttons and text area
           JPanel control_panel = new JPanel(new GridLayout(7, 2, horizontal_gap, vertical_gap));
           extract_overall_only_check_box = new JCheckBox("Do Not Use Windows", true);
-          extract_overall_only_check_box.setEnabled(false); // this is currently greyed out because windowing in the breakSequenceIntoWindows method of the MIDIMethods class remains to be finished
           extract_overall_only_check_box.addActionListener(this);
           control_panel.add(extract_overall_only_check_box);
           save_window_features_check_box = new JCheckBox("Save Features For Each Window", false);
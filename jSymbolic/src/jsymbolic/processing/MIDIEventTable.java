@@ -0,0 +1,759 @@
+/*
+ * MIDIEventTable.java
+ * Version 1.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package jsymbolic.processing;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.sound.midi.*;
+
+
+/**
+ * A compact table of all of the MIDI events in a MIDI sequence, stored in
+ * arrays of primitives with one entry per event. Objects of this class can be
+ * filled from a javax.sound.midi Sequence or directly from a Standard MIDI
+ * File, without creating an object for each event.
+ *
+ * <p>Events are stored track by track, in the same order as they appear in
+ * the Tracks of the Sequence that javax.sound.midi.MidiSystem would produce
+ * from the same file, including the End of Track message that ends each
+ * track. The events of each track are therefore in time order. The
+ * getTimeOrder method gives the order of all events by time.
+ *
+ * <p>The status byte, first data byte and second data byte of each channel
+ * message are stored. Meta messages are stored with a status of 0xFF, their
+ * type as the first data byte and their data available through getData. System
+ * exclusive messages are stored with their status and their data available
+ * through getData.
+ *
+ * <p>The microsecond time of each event is calculated in the same way as
+ * javax.sound.midi calculates the microsecond length of a Sequence, which
+ * takes into account only tempo change messages in the first track.
+ *
+ * @author Cory McKay
+ */
+public class MIDIEventTable
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The timing division type, as defined by javax.sound.midi.Sequence.
+      */
+     public    float          division_type;
+
+     /**
+      * The timing resolution, as defined by javax.sound.midi.Sequence.
+      */
+     public    int            resolution;
+
+     /**
+      * The number of tracks.
+      */
+     public    int            number_tracks;
+
+     /**
+      * The indice of the first event of each track, followed by the total
+      * number of events. The events of track n are therefore those from
+      * track_starts[n] to track_starts[n + 1] - 1.
+      */
+     public    int[]          track_starts;
+
+     /**
+      * The total number of events.
+      */
+     public    int            number_events;
+
+     /**
+      * The MIDI tick of each event.
+      */
+     public    long[]         ticks;
+
+     /**
+      * The time of each event in microseconds.
+      */
+     public    long[]         microseconds;
+
+     /**
+      * The length of the sequence in MIDI ticks, which is the tick of the
+      * last End of Track message.
+      */
+     public    long           tick_length;
+
+     /**
+      * The length of the sequence in microseconds.
+      */
+     public    long           microsecond_length;
+
+     /**
+      * The status byte of each event.
+      */
+     private   byte[]         statuses;
+
+     /**
+      * The first data byte of each channel message, or the type of each meta
+      * message.
+      */
+     private   byte[]         data_1;
+
+     /**
+      * The second data byte of each channel message.
+      */
+     private   byte[]         data_2;
+
+     /**
+      * The data of each meta and system exclusive message. Null for channel
+      * messages.
+      */
+     private   byte[][]       data;
+
+     /**
+      * The indices of all events sorted by tick. Events on the same tick are in
+      * the order of their indices. Null until needed.
+      */
+     private   int[]          time_order;
+
+     /**
+      * The Sequence that this table was filled from or built. Null until
+      * needed if the table was filled from a file.
+      */
+     private   Sequence       sequence;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Fills the table with the events of the given MIDI sequence.
+      *
+      * @param	midi_sequence	The MIDI sequence to store the events of.
+      */
+     public MIDIEventTable(Sequence midi_sequence)
+     {
+          sequence = midi_sequence;
+          division_type = midi_sequence.getDivisionType();
+          resolution = midi_sequence.getResolution();
+
+          // Count the events
+          Track[] tracks = midi_sequence.getTracks();
+          number_tracks = tracks.length;
+          track_starts = new int[number_tracks + 1];
+          for (int n_track = 0; n_track < number_tracks; n_track++)
+               track_starts[n_track + 1] = track_starts[n_track] + tracks[n_track].size();
+          allocate(track_starts[number_tracks]);
+
+          // Store the events
+          for (int n_track = 0; n_track < number_tracks; n_track++)
+          {
+               Track track = tracks[n_track];
+               for (int n_event = 0; n_event < track.size(); n_event++)
+               {
+                    MidiEvent event = track.get(n_event);
+                    MidiMessage message = event.getMessage();
+                    if (message instanceof ShortMessage)
+                    {
+                         ShortMessage short_message = (ShortMessage) message;
+                         add(event.getTick(), short_message.getStatus(), short_message.getData1(), short_message.getData2(), null);
+                    }
+                    else if (message instanceof MetaMessage)
+                    {
+                         MetaMessage meta_message = (MetaMessage) message;
+                         add(event.getTick(), 0xFF, meta_message.getType(), 0, meta_message.getData());
+                    }
+                    else if (message instanceof SysexMessage)
+                         add(event.getTick(), message.getStatus(), 0, 0, ((SysexMessage) message).getData());
+                    else
+                         add(event.getTick(), message.getStatus(), 0, 0, null);
+               }
+          }
+
+          tick_length = midi_sequence.getTickLength();
+          findMicroseconds();
+     }
+
+
+     /**
+      * Creates an empty table with room for the given number of events.
+      */
+     private MIDIEventTable(int capacity)
+     {
+          allocate(capacity);
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Parses the given Standard MIDI File and fills a table with its events.
+      * The file is memory-mapped and read directly, without building a
+      * Sequence. The result is the same as filling a table from the Sequence
+      * returned by javax.sound.midi.MidiSystem.getSequence for the same file.
+      *
+      * @param	file                      The MIDI file to parse.
+      * @return                          The events of the file.
+      * @throws	IOException               If the file cannot be read.
+      * @throws	InvalidMidiDataException  If the file is not a valid Standard
+      *                                   MIDI File.
+      */
+     public static MIDIEventTable parse(File file)
+     throws IOException, InvalidMidiDataException
+     {
+          FileInputStream stream = new FileInputStream(file);
+          try
+          {
+               FileChannel channel = stream.getChannel();
+               ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+               return parse(buffer);
+          }
+          finally
+          {
+               stream.close();
+          }
+     }
+
+
+     /**
+      * Parses the Standard MIDI File held between the position and the limit
+      * of the given buffer and fills a table with its events. Files are read
+      * in the same way as by javax.sound.midi, including its leniencies, so
+      * that the same events are found.
+      *
+      * @param	buffer                    The contents of a MIDI file.
+      * @return                          The events of the file.
+      * @throws	IOException               If the buffer ends within an event.
+      * @throws	InvalidMidiDataException  If the buffer does not hold a valid
+      *                                   Standard MIDI File.
+      */
+     public static MIDIEventTable parse(ByteBuffer buffer)
+     throws IOException, InvalidMidiDataException
+     {
+          // Read the header chunk
+          if (buffer.remaining() < 14 || buffer.getInt() != 0x4D546864) // "MThd"
+               throw new InvalidMidiDataException("not a valid MIDI file");
+          int header_remaining = buffer.getInt() - 6;
+          int type = buffer.getShort();
+          int declared_tracks = buffer.getShort();
+          int timing = buffer.getShort();
+          if (type != 0 && type != 1)
+               throw new InvalidMidiDataException("Invalid or unsupported file type: " + type);
+          MIDIEventTable table = new MIDIEventTable(buffer.remaining() / 4 + 16);
+          if (timing > 0)
+          {
+               table.division_type = Sequence.PPQ;
+               table.resolution = timing;
+          }
+          else
+          {
+               int frame_code = -1 * (timing >> 8);
+               if (frame_code == 24)
+                    table.division_type = Sequence.SMPTE_24;
+               else if (frame_code == 25)
+                    table.division_type = Sequence.SMPTE_25;
+               else if (frame_code == 29)
+                    table.division_type = Sequence.SMPTE_30DROP;
+               else if (frame_code == 30)
+                    table.division_type = Sequence.SMPTE_30;
+               else
+                    throw new InvalidMidiDataException("Unknown frame code: " + frame_code);
+               table.resolution = timing & 0xFF;
+          }
+          if (header_remaining > 0)
+               buffer.position(Math.min(buffer.limit(), buffer.position() + header_remaining));
+
+          // Read the track chunks, skipping chunks of other types. Reading stops
+          // at a chunk that is cut short by the end of the file, but the file
+          // is invalid if it ends before the header of a declared track.
+          table.track_starts = new int[Math.max(declared_tracks, 0) + 1];
+          while (table.number_tracks < declared_tracks)
+          {
+               if (buffer.remaining() < 8)
+                    throw new EOFException("invalid MIDI file");
+               int chunk_type = buffer.getInt();
+               int chunk_length = buffer.getInt();
+               if (chunk_length < 0 || chunk_length > buffer.remaining())
+                    break;
+               int chunk_end = buffer.position() + chunk_length;
+               if (chunk_type == 0x4D54726B) // "MTrk"
+               {
+                    int limit = buffer.limit();
+                    buffer.limit(chunk_end);
+                    try
+                    {
+                         table.parseTrack(buffer);
+                    }
+                    catch (BufferUnderflowException e)
+                    {
+                         throw new EOFException("invalid MIDI file");
+                    }
+                    buffer.limit(limit);
+                    table.number_tracks++;
+                    table.track_starts[table.number_tracks] = table.number_events;
+               }
+               buffer.position(chunk_end);
+          }
+          if (table.number_tracks + 1 < table.track_starts.length)
+          {
+               int[] track_starts = new int[table.number_tracks + 1];
+               System.arraycopy(table.track_starts, 0, track_starts, 0, track_starts.length);
+               table.track_starts = track_starts;
+          }
+          if (table.ticks.length != table.number_events)
+               table.allocate(table.number_events);
+
+          // Find the length and timing
+          for (int n_track = 0; n_track < table.number_tracks; n_track++)
+          {
+               long track_ticks = table.ticks[ table.track_starts[n_track + 1] - 1 ];
+               if (track_ticks > table.tick_length)
+                    table.tick_length = track_ticks;
+          }
+          table.findMicroseconds();
+          return table;
+     }
+
+
+     /**
+      * Returns whether the given event is a channel message, which
+      * javax.sound.midi represents as a ShortMessage.
+      */
+     public boolean isShortMessage(int event)
+     {
+          return (statuses[event] & 0xF0) != 0xF0;
+     }
+
+
+     /**
+      * Returns whether the given event is a meta message.
+      */
+     public boolean isMetaMessage(int event)
+     {
+          return (statuses[event] & 0xFF) == 0xFF;
+     }
+
+
+     /**
+      * Returns the status byte of the given event.
+      */
+     public int getStatus(int event)
+     {
+          return statuses[event] & 0xFF;
+     }
+
+
+     /**
+      * Returns the command of the given channel message, in the same way as
+      * ShortMessage.getCommand.
+      */
+     public int getCommand(int event)
+     {
+          return statuses[event] & 0xF0;
+     }
+
+
+     /**
+      * Returns the channel of the given channel message, in the same way as
+      * ShortMessage.getChannel.
+      */
+     public int getChannel(int event)
+     {
+          return statuses[event] & 0x0F;
+     }
+
+
+     /**
+      * Returns the first data byte of the given channel message.
+      */
+     public int getData1(int event)
+     {
+          return data_1[event] & 0xFF;
+     }
+
+
+     /**
+      * Returns the second data byte of the given channel message.
+      */
+     public int getData2(int event)
+     {
+          return data_2[event] & 0xFF;
+     }
+
+
+     /**
+      * Returns the type of the given meta message.
+      */
+     public int getMetaType(int event)
+     {
+          return data_1[event] & 0xFF;
+     }
+
+
+     /**
+      * Returns the data of the given meta or system exclusive message. The
+      * returned array should not be changed.
+      */
+     public byte[] getData(int event)
+     {
+          return data[event];
+     }
+
+
+     /**
+      * Returns the number of events in the given track.
+      */
+     public int getTrackSize(int track)
+     {
+          return track_starts[track + 1] - track_starts[track];
+     }
+
+
+     /**
+      * Returns the indices of all events in order of their ticks. Events on the
+      * same tick are in order of their indices, so that events of earlier
+      * tracks come first. The returned array should not be changed.
+      */
+     public synchronized int[] getTimeOrder()
+     {
+          if (time_order == null)
+          {
+               // Merge the tracks, whose events are already sorted by tick
+               int[] order = new int[number_events];
+               int[] next = new int[number_tracks];
+               for (int n_track = 0; n_track < number_tracks; n_track++)
+                    next[n_track] = track_starts[n_track];
+               for (int i = 0; i < number_events; i++)
+               {
+                    int earliest = -1;
+                    for (int n_track = 0; n_track < number_tracks; n_track++)
+                         if ( next[n_track] < track_starts[n_track + 1] &&
+                              (earliest == -1 || ticks[ next[n_track] ] < ticks[ next[earliest] ]) )
+                              earliest = n_track;
+                    order[i] = next[earliest]++;
+               }
+               time_order = order;
+          }
+          return time_order;
+     }
+
+
+     /**
+      * Returns a javax.sound.midi Sequence holding the events of this table.
+      * The Sequence is only built the first time that this is called, unless
+      * this table was filled from a Sequence, in which case that Sequence is
+      * returned.
+      *
+      * @return	The events as a Sequence.
+      */
+     public synchronized Sequence getSequence()
+     {
+          if (sequence == null)
+          {
+               try
+               {
+                    Sequence built = new Sequence(division_type, resolution);
+                    for (int n_track = 0; n_track < number_tracks; n_track++)
+                    {
+                         Track track = built.createTrack();
+                         for (int event = track_starts[n_track]; event < track_starts[n_track + 1]; event++)
+                         {
+                              MidiMessage message;
+                              int status = getStatus(event);
+                              if (status == 0xFF)
+                              {
+                                   MetaMessage meta_message = new MetaMessage();
+                                   meta_message.setMessage(getMetaType(event), data[event], data[event].length);
+                                   message = meta_message;
+                              }
+                              else if (status == 0xF0 || status == 0xF7)
+                              {
+                                   SysexMessage sysex_message = new SysexMessage();
+                                   sysex_message.setMessage(status, data[event], data[event].length);
+                                   message = sysex_message;
+                              }
+                              else if ((status & 0xF0) == 0xC0 || (status & 0xF0) == 0xD0)
+                                   message = new TableShortMessage(new byte[] {statuses[event], data_1[event]});
+                              else
+                                   message = new TableShortMessage(new byte[] {statuses[event], data_1[event], data_2[event]});
+                              track.add(new MidiEvent(message, ticks[event]));
+                         }
+                    }
+                    sequence = built;
+               }
+               catch (InvalidMidiDataException e)
+               {
+                    // Cannot happen, as the events were read from a valid file
+                    // or sequence
+                    throw new IllegalStateException(e.getMessage());
+               }
+          }
+          return sequence;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Allocates the per-event arrays with room for the given number of
+      * events, keeping any events already stored.
+      */
+     private void allocate(int capacity)
+     {
+          long[] new_ticks = new long[capacity];
+          byte[] new_statuses = new byte[capacity];
+          byte[] new_data_1 = new byte[capacity];
+          byte[] new_data_2 = new byte[capacity];
+          byte[][] new_data = new byte[capacity][];
+          if (number_events > 0)
+          {
+               System.arraycopy(ticks, 0, new_ticks, 0, number_events);
+               System.arraycopy(statuses, 0, new_statuses, 0, number_events);
+               System.arraycopy(data_1, 0, new_data_1, 0, number_events);
+               System.arraycopy(data_2, 0, new_data_2, 0, number_events);
+               System.arraycopy(data, 0, new_data, 0, number_events);
+          }
+          ticks = new_ticks;
+          statuses = new_statuses;
+          data_1 = new_data_1;
+          data_2 = new_data_2;
+          data = new_data;
+     }
+
+
+     /**
+      * Adds an event to the end of the table.
+      */
+     private void add(long tick, int status, int data1, int data2, byte[] message_data)
+     {
+          if (number_events == ticks.length)
+               allocate(ticks.length + ticks.length / 2 + 16);
+          ticks[number_events] = tick;
+          statuses[number_events] = (byte) status;
+          data_1[number_events] = (byte) data1;
+          data_2[number_events] = (byte) data2;
+          data[number_events] = message_data;
+          number_events++;
+     }
+
+
+     /**
+      * Reads the events of the track chunk between the position and the limit
+      * of the buffer, adding them to the table followed by an End of Track
+      * message. Events after an End of Track message are ignored.
+      *
+      * <p>As in javax.sound.midi, any status byte, including those of meta
+      * and system exclusive messages, may be used as a running status.
+      */
+     private void parseTrack(ByteBuffer buffer)
+     throws InvalidMidiDataException
+     {
+          long tick = 0;
+          long end_of_track_tick = 0;
+          int status = 0;
+          boolean end_of_track_found = false;
+          while (buffer.hasRemaining() && !end_of_track_found)
+          {
+               tick += readVariableLength(buffer);
+               int data1 = -1;
+               int byte_value = buffer.get() & 0xFF;
+               if (byte_value >= 0x80)
+                    status = byte_value;
+               else
+                    data1 = byte_value;
+
+               switch (status & 0xF0)
+               {
+                    case 0x80:
+                    case 0x90:
+                    case 0xA0:
+                    case 0xB0:
+                    case 0xE0:
+                         if (data1 == -1)
+                              data1 = buffer.get() & 0xFF;
+                         add(tick, status, data1, buffer.get() & 0xFF, null);
+                         break;
+                    case 0xC0:
+                    case 0xD0:
+                         if (data1 == -1)
+                              data1 = buffer.get() & 0xFF;
+                         add(tick, status, data1, 0, null);
+                         break;
+                    default:
+                         if (status == 0xF0 || status == 0xF7)
+                              add(tick, status, 0, 0, readData(buffer));
+                         else if (status == 0xFF)
+                         {
+                              int meta_type = buffer.get() & 0xFF;
+                              if (meta_type >= 128)
+                                   throw new InvalidMidiDataException("Invalid meta event with type " + meta_type);
+                              byte[] message_data = readData(buffer);
+                              if (meta_type == 0x2F)
+                                   end_of_track_found = true;
+                              if (meta_type == 0x2F && message_data.length == 0)
+                                   end_of_track_tick = tick;
+                              else
+                                   add(tick, status, meta_type, 0, message_data);
+                         }
+                         else
+                              throw new InvalidMidiDataException("Invalid status byte: " + status);
+               }
+          }
+
+          // End the track no earlier than its last event
+          if (number_events > track_starts[number_tracks] && ticks[number_events - 1] > end_of_track_tick)
+               end_of_track_tick = ticks[number_events - 1];
+          add(end_of_track_tick, 0xFF, 0x2F, 0, new byte[0]);
+     }
+
+
+     /**
+      * Reads the length and data of a meta or system exclusive message from
+      * the buffer.
+      */
+     private static byte[] readData(ByteBuffer buffer)
+     throws InvalidMidiDataException
+     {
+          long length = readVariableLength(buffer);
+          if (length < 0 || length > buffer.remaining())
+               throw new InvalidMidiDataException("Message length is out of bounds: " + length);
+          byte[] message_data = new byte[(int) length];
+          buffer.get(message_data);
+          return message_data;
+     }
+
+
+     /**
+      * Reads a variable length quantity from the buffer.
+      */
+     private static long readVariableLength(ByteBuffer buffer)
+     {
+          long value = 0;
+          int current_byte;
+          do
+          {
+               current_byte = buffer.get() & 0xFF;
+               value = (value << 7) + (current_byte & 0x7F);
+          }
+          while ((current_byte & 0x80) != 0);
+          return value;
+     }
+
+
+     /**
+      * Fills the microseconds field in the same way as javax.sound.midi
+      * converts ticks to microseconds. Only the tempo change messages of the
+      * first track are used, and the tempo before the first one is 120 beats
+      * per minute.
+      */
+     private void findMicroseconds()
+     {
+          microseconds = new long[ticks.length];
+          if (division_type != Sequence.PPQ)
+          {
+               // Ticks have a fixed duration
+               double ticks_per_second = (double) (division_type * resolution);
+               for (int event = 0; event < number_events; event++)
+                    microseconds[event] = (long) (1000000 * (ticks[event] / ticks_per_second));
+               microsecond_length = (long) (1000000 * (tick_length / ticks_per_second));
+               return;
+          }
+
+          // Find the tempo changes of the first track. A tempo of 120 beats
+          // per minute is added at the beginning unless the first tempo change
+          // is on tick 0.
+          int number_track_events = (number_tracks > 0) ? getTrackSize(0) : 0;
+          long[] change_ticks = new long[number_track_events + 1];
+          int[] tempos = new int[number_track_events + 1];
+          int number_changes = 0;
+          if (number_tracks > 0)
+               for (int event = track_starts[0]; event < track_starts[1]; event++)
+                    if (isMetaMessage(event) && getMetaType(event) == 0x51 && data[event].length == 3)
+                    {
+                         if (number_changes == 0 && ticks[event] != 0)
+                         {
+                              tempos[0] = 500000;
+                              number_changes++;
+                         }
+                         change_ticks[number_changes] = ticks[event];
+                         tempos[number_changes] = ((data[event][0] & 0xFF) << 16) | ((data[event][1] & 0xFF) << 8) | (data[event][2] & 0xFF);
+                         number_changes++;
+                    }
+          if (number_changes == 0)
+          {
+               tempos[0] = 500000;
+               number_changes++;
+          }
+
+          // Find the time at which each tempo change occurs
+          long[] change_microseconds = new long[number_changes];
+          for (int i = 1; i < number_changes; i++)
+               change_microseconds[i] = change_microseconds[i - 1] +
+                    ticksToMicroseconds(change_ticks[i] - change_ticks[i - 1], tempos[i - 1]);
+
+          // Find the time of each event
+          for (int event = 0; event < number_events; event++)
+               microseconds[event] = tickToMicrosecond(ticks[event], change_ticks, change_microseconds, tempos, number_changes);
+          microsecond_length = tickToMicrosecond(tick_length, change_ticks, change_microseconds, tempos, number_changes);
+     }
+
+
+     /**
+      * Returns the microsecond time of the given tick given the tempo changes.
+      */
+     private long tickToMicrosecond( long tick,
+          long[] change_ticks,
+          long[] change_microseconds,
+          int[] tempos,
+          int number_changes )
+     {
+          int low = 0;
+          int high = number_changes - 1;
+          while (low < high)
+          {
+               int middle = (low + high + 1) >>> 1;
+               if (change_ticks[middle] <= tick)
+                    low = middle;
+               else
+                    high = middle - 1;
+          }
+          return change_microseconds[low] + ticksToMicroseconds(tick - change_ticks[low], tempos[low]);
+     }
+
+
+     /**
+      * Returns the number of microseconds taken by the given number of ticks at
+      * the given tempo in microseconds per beat.
+      */
+     private long ticksToMicroseconds(long number_ticks, int tempo)
+     {
+          return (long) (((double) number_ticks) * tempo / resolution);
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * A ShortMessage holding the given bytes as they are, as
+      * javax.sound.midi does for messages read from a file, rather than
+      * checking that the data bytes are below 128.
+      */
+     private static class TableShortMessage
+          extends ShortMessage
+     {
+          private TableShortMessage(byte[] message)
+          {
+               super(message);
+          }
+     }
+}
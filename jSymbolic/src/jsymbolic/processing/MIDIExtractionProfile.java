@@ -0,0 +1,341 @@
+/*
+ * MIDIExtractionProfile.java
+ * Version 1.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package jsymbolic.processing;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+
+/**
+ * Measurements of where the time goes when features are extracted from a
+ * MIDI recording, or from a batch of recordings. Times are kept for each
+ * phase of processing (e.g. parsing and windowing), for the generation of
+ * each group of fields of the MIDIIntermediateRepresentations and for each
+ * feature. The sizes of the recording (e.g. the number of MIDI events and
+ * ticks) and the largest sizes of the arrays and lists of the
+ * MIDIIntermediateRepresentations are also kept.
+ *
+ * <p>Each measurement is identified by a category and a name, and holds the
+ * number of times that it was made, its total and its maximum. Times are in
+ * milliseconds. When several windows are processed, times are added up over
+ * all of them, even if they are processed in parallel.
+ *
+ * <p>Measurements are written as tab separated lines with the following
+ * columns: the identifier of the recording, the category, the name, the
+ * number of times the measurement was made, the total and the maximum. The
+ * categories are "phase", "representation" and "feature" for times, "count"
+ * for sizes of the recording, "array" for the largest array and list sizes
+ * and "failure" for features that could not be extracted from a window.
+ *
+ * <p>The methods of this class may be called from several threads at once.
+ *
+ * @author Cory McKay
+ */
+public class MIDIExtractionProfile
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The measurements, stored under their categories and names separated
+      * by a tab, in the order in which they were first made.
+      */
+     private   LinkedHashMap<String, Measurement>    measurements;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Creates a profile without any measurements.
+      */
+     public MIDIExtractionProfile()
+     {
+          measurements = new LinkedHashMap<String, Measurement>();
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Adds the given time to the measurement with the given category and
+      * name.
+      *
+      * @param	category     The category of the measurement, such as "phase",
+      *                      "representation" or "feature".
+      * @param	name         The name of the measurement.
+      * @param	nanoseconds  The time to add, in nanoseconds.
+      */
+     public void addTime(String category, String name, long nanoseconds)
+     {
+          add(category, name, 1, nanoseconds / 1000000.0);
+     }
+
+
+     /**
+      * Adds the given value to the count with the given name.
+      *
+      * @param	name         The name of the count.
+      * @param	value        The value to add.
+      */
+     public void addCount(String name, long value)
+     {
+          add("count", name, 1, value);
+     }
+
+
+     /**
+      * Records that the given feature could not be extracted from the given
+      * window because of the given exception. The name of the measurement
+      * holds the feature, the window and the exception.
+      *
+      * @param	feature      The name of the feature.
+      * @param	window       The indice of the window.
+      * @param	exception    The exception thrown by the feature.
+      */
+     public void addFailure(String feature, int window, Exception exception)
+     {
+          String description = exception.toString().replaceAll("\\s+", " ");
+          add("failure", feature + " in window " + window + ": " + description, 1, 1);
+     }
+
+
+     /**
+      * Records the sizes of the arrays and lists of the given intermediate
+      * representations that have been generated, keeping the largest size of
+      * each. The sizes of two dimensional arrays are the total number of
+      * entries that they hold.
+      *
+      * @param	intermediate The intermediate representations.
+      */
+     public void recordArraySizes(MIDIIntermediateRepresentations intermediate)
+     {
+          if (intermediate.events != null)
+               recordArraySize("events", intermediate.events.number_events);
+          recordArraySize("meta_data", intermediate.meta_data);
+          recordArraySize("pitched_instrumentation_frequencies", intermediate.pitched_instrumentation_frequencies);
+          recordArraySize("pitched_instrumentation_intervals", intermediate.pitched_instrumentation_intervals);
+          recordArraySize("non_pitched_instrumentation_frequencies", intermediate.non_pitched_instrumentation_frequencies);
+          recordArraySize("channel_intervals", intermediate.channel_intervals);
+          recordArraySize("sounding_channels_run_starts", intermediate.sounding_channels_run_starts);
+          recordArraySize("channel_statistics", intermediate.channel_statistics);
+          recordArraySize("rhythmic_histogram", intermediate.rhythmic_histogram);
+          recordArraySize("rhythmic_histogram_table", intermediate.rhythmic_histogram_table);
+          if (intermediate.note_durations != null)
+               recordArraySize("note_durations", intermediate.note_durations.size());
+          recordArraySize("note_beginnings", intermediate.note_beginnings);
+          recordArraySize("note_loudnesses", intermediate.note_loudnesses);
+          recordArraySize("basic_pitch_histogram", intermediate.basic_pitch_histogram);
+          if (intermediate.pitch_bends_list != null)
+               recordArraySize("pitch_bends_list", intermediate.pitch_bends_list.size());
+          recordArraySize("melodic_histogram", intermediate.melodic_histogram);
+          if (intermediate.melody_list != null)
+          {
+               long size = 0;
+               for (int i = 0; i < intermediate.melody_list.length; i++)
+                    if (intermediate.melody_list[i] != null)
+                         size += intermediate.melody_list[i].size();
+               recordArraySize("melody_list", size);
+          }
+     }
+
+
+     /**
+      * Adds all of the measurements of the given profile to those of this
+      * profile, so that the measurements of a batch of recordings can be
+      * found.
+      *
+      * @param	other        The profile to add.
+      */
+     public void addAll(MIDIExtractionProfile other)
+     {
+          LinkedList<String> keys;
+          LinkedList<Measurement> values;
+          synchronized (other)
+          {
+               keys = new LinkedList<String>(other.measurements.keySet());
+               values = new LinkedList<Measurement>(other.measurements.values());
+          }
+          synchronized (this)
+          {
+               while (!keys.isEmpty())
+               {
+                    String key = keys.removeFirst();
+                    Measurement value = values.removeFirst();
+                    Measurement measurement = getMeasurement(key, value.is_size);
+                    measurement.add(value);
+               }
+          }
+     }
+
+
+     /**
+      * Writes the column headings of the lines written by the write method.
+      *
+      * @param	out          Where to write the headings.
+      */
+     public static void writeHeadings(PrintWriter out)
+     {
+          out.println("recording\tcategory\tname\tcalls\ttotal\tmaximum");
+     }
+
+
+     /**
+      * Writes all of the measurements as tab separated lines.
+      *
+      * @param	out          Where to write the measurements.
+      * @param	identifier   The identifier of the recording or batch that the
+      *                      measurements were made on.
+      */
+     public synchronized void write(PrintWriter out, String identifier)
+     {
+          for (String key : measurements.keySet())
+          {
+               Measurement measurement = measurements.get(key);
+               out.println( identifier + "\t" + key + "\t" + measurement.calls + "\t" +
+                    format(measurement.total) + "\t" + format(measurement.maximum) );
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Adds the given value to the measurement with the given category and
+      * name, counting it as the given number of calls.
+      */
+     private synchronized void add(String category, String name, long calls, double value)
+     {
+          Measurement measurement = getMeasurement(category + "\t" + name, false);
+          measurement.calls += calls;
+          measurement.total += value;
+          measurement.maximum = Math.max(measurement.maximum, value);
+     }
+
+
+     /**
+      * Keeps the given size as the size of the array or list with the given
+      * name if it is the largest so far.
+      */
+     private synchronized void recordArraySize(String name, long size)
+     {
+          Measurement measurement = getMeasurement("array\t" + name, true);
+          measurement.calls++;
+          measurement.total = Math.max(measurement.total, size);
+          measurement.maximum = measurement.total;
+     }
+
+
+     /**
+      * Records the size of the given array, which may be null, one
+      * dimensional or two dimensional.
+      */
+     private void recordArraySize(String name, Object array)
+     {
+          if (array == null)
+               return;
+          long size;
+          if (array instanceof Object[])
+          {
+               Object[] rows = (Object[]) array;
+               size = 0;
+               for (int i = 0; i < rows.length; i++)
+               {
+                    if (rows[i] == null)
+                         continue;
+                    else if (rows[i] instanceof int[])
+                         size += ((int[]) rows[i]).length;
+                    else if (rows[i] instanceof long[])
+                         size += ((long[]) rows[i]).length;
+                    else if (rows[i] instanceof double[])
+                         size += ((double[]) rows[i]).length;
+                    else
+                         size++;
+               }
+          }
+          else
+               size = java.lang.reflect.Array.getLength(array);
+          recordArraySize(name, size);
+     }
+
+
+     /**
+      * Returns the measurement with the given key, adding it if it does not
+      * exist yet.
+      */
+     private Measurement getMeasurement(String key, boolean is_size)
+     {
+          Measurement measurement = measurements.get(key);
+          if (measurement == null)
+          {
+               measurement = new Measurement();
+               measurement.is_size = is_size;
+               measurements.put(key, measurement);
+          }
+          return measurement;
+     }
+
+
+     /**
+      * Formats the given value with three decimal places.
+      */
+     private static String format(double value)
+     {
+          return String.format("%.3f", value);
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * A single measurement.
+      */
+     private static class Measurement
+     {
+          /**
+           * The number of times the measurement was made.
+           */
+          long           calls;
+
+          /**
+           * The total of the measurement, or the largest size if it is an
+           * array size.
+           */
+          double         total;
+
+          /**
+           * The largest single value of the measurement.
+           */
+          double         maximum;
+
+          /**
+           * Whether the measurement is an array size, whose total is the
+           * largest size rather than the sum of the sizes.
+           */
+          boolean        is_size;
+
+
+          /**
+           * Adds the given measurement to this one.
+           */
+          void add(Measurement other)
+          {
+               calls += other.calls;
+               if (is_size)
+                    total = Math.max(total, other.total);
+               else
+                    total += other.total;
+               maximum = Math.max(maximum, other.maximum);
+          }
+     }
+}
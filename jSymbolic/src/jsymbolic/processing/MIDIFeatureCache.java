@@ -0,0 +1,507 @@
+/*
+ * MIDIFeatureCache.java
+ * Version 1.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package jsymbolic.processing;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Properties;
+
+
+/**
+ * A persistent cache of the feature values extracted from MIDI recordings,
+ * stored in a directory so that it can be reused by later runs.
+ *
+ * <p>The values extracted from a recording are stored under a key found from
+ * the contents of its MIDI file and the windowing settings used, so renamed
+ * or copied files share their cached values and edited files do not. Each
+ * feature is in turn stored under a key that identifies its name, version
+ * and the keys of the features it depends on. Values are therefore only
+ * reused if they were extracted by the same version of a feature from the
+ * same data.
+ *
+ * <p>Each recording's values are stored in a file of their own, which holds
+ * the values of all of the features that have been extracted from it. When
+ * the total size of these files exceeds the maximum size of the cache, the
+ * files that have gone unused for longest are deleted.
+ *
+ * <p>A feature can be invalidated, so that none of its previously cached
+ * values (nor those of features that depend on it) are reused. Rather than
+ * rewriting every file, this changes the keys of the feature. Values stored
+ * under the old keys are dropped when their files are next rewritten or
+ * deleted.
+ *
+ * <p>The methods of this class may be called from several threads at once.
+ *
+ * @author Cory McKay
+ */
+public class MIDIFeatureCache
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The directory that the cache is stored in.
+      */
+     private   File                     directory;
+
+     /**
+      * The file in the directory that stores the number of times that each
+      * feature has been invalidated.
+      */
+     private   File                     invalidations_file;
+
+     /**
+      * The number of times that each feature has been invalidated, stored
+      * under the feature names.
+      */
+     private   Properties               invalidations;
+
+     /**
+      * The maximum total size in bytes of the files of cached values.
+      */
+     private   long                     maximum_size;
+
+     /**
+      * The current total size in bytes of the files of cached values.
+      */
+     private   long                     size;
+
+
+     /**
+      * Identifies the format of the files of cached values. Files with other
+      * values are ignored.
+      */
+     private static final int           FORMAT_VERSION = 1;
+
+     /**
+      * The extension of the files of cached values.
+      */
+     private static final String        EXTENSION = ".jsc";
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Opens the cache stored in the given directory, creating the directory
+      * if it does not already exist. Files of cached values are deleted if
+      * they exceed the given maximum size.
+      *
+      * @param	directory       The directory to store the cache in.
+      * @param	maximum_size    The maximum total size in bytes of the files
+      *                         of cached values.
+      * @throws	Exception       Throws an informative exception if the
+      *                         directory cannot be used.
+      */
+     public MIDIFeatureCache(File directory, long maximum_size)
+     throws Exception
+     {
+          if (maximum_size <= 0)
+               throw new Exception("The maximum size of the feature cache must be above 0.");
+          if (!directory.isDirectory() && !directory.mkdirs())
+               throw new Exception("Could not create the feature cache directory " + directory + ".");
+          if (!directory.canWrite())
+               throw new Exception("Cannot write to the feature cache directory " + directory + ".");
+          this.directory = directory;
+          this.maximum_size = maximum_size;
+
+          // Load the invalidated features
+          invalidations_file = new File(directory, "invalidated_features.properties");
+          invalidations = new Properties();
+          if (invalidations_file.exists())
+          {
+               FileInputStream in = new FileInputStream(invalidations_file);
+               try {invalidations.load(in);}
+               finally {in.close();}
+          }
+
+          // Find the size of the cached values, deleting the least recently
+          // used ones if there are too many
+          File[] files = getCacheFiles();
+          size = 0;
+          for (int i = 0; i < files.length; i++)
+               size += files[i].length();
+          if (size > maximum_size)
+               deleteLeastRecentlyUsed();
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns the key to store the values extracted from the given MIDI file
+      * under. This is found from the contents of the file and the given
+      * description of the settings used to extract the values.
+      *
+      * @param	recording_file  The MIDI file.
+      * @param	settings        A description of the settings used to
+      *                         extract feature values from the file, such as
+      *                         the window size and overlap.
+      * @return                 The key, made up of hexadecimal digits.
+      * @throws	Exception       Throws an exception if the file cannot be
+      *                         read.
+      */
+     public static String getRecordingKey(File recording_file, String settings)
+     throws Exception
+     {
+          MessageDigest digest = MessageDigest.getInstance("SHA-1");
+          FileInputStream in = new FileInputStream(recording_file);
+          try
+          {
+               FileChannel channel = in.getChannel();
+               MappedByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+               digest.update(contents);
+          }
+          finally
+          {
+               in.close();
+          }
+          digest.update(settings.getBytes("UTF-8"));
+
+          byte[] hash = digest.digest();
+          StringBuffer key = new StringBuffer(hash.length * 2);
+          for (int i = 0; i < hash.length; i++)
+          {
+               key.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+               key.append(Character.forDigit(hash[i] & 0xF, 16));
+          }
+          return key.toString();
+     }
+
+
+     /**
+      * Returns the key to store the values of the feature with the given
+      * name and version under. The key changes whenever the feature is
+      * invalidated or the key of one of its dependencies changes.
+      *
+      * @param	feature_name        The name of the feature.
+      * @param	version             The version of the feature.
+      * @param	dependency_keys     The keys of the features that this feature
+      *                             depends on, or null if there are none.
+      * @return                     The key of the feature.
+      */
+     public synchronized String getFeatureKey( String feature_name,
+          int version,
+          String[] dependency_keys )
+     {
+          StringBuffer key = new StringBuffer(feature_name);
+          key.append("\tv").append(version);
+          String count = invalidations.getProperty(feature_name);
+          if (count != null)
+               key.append(".").append(count);
+          if (dependency_keys != null)
+          {
+               key.append(" (");
+               for (int i = 0; i < dependency_keys.length; i++)
+               {
+                    if (i > 0)
+                         key.append(", ");
+                    key.append(dependency_keys[i].replace('\t', ' '));
+               }
+               key.append(")");
+          }
+          return key.toString();
+     }
+
+
+     /**
+      * Invalidates the feature with the given name, so that its values are
+      * no longer taken from the cache under keys returned by getFeatureKey
+      * after this is called.
+      *
+      * @param	feature_name    The name of the feature to invalidate.
+      * @throws	Exception       Throws an exception if the change cannot be
+      *                         saved.
+      */
+     public synchronized void invalidate(String feature_name)
+     throws Exception
+     {
+          String count = invalidations.getProperty(feature_name);
+          int number_invalidations = (count == null) ? 0 : Integer.parseInt(count);
+          invalidations.setProperty(feature_name, String.valueOf(number_invalidations + 1));
+          File temporary_file = new File(directory, invalidations_file.getName() + ".tmp");
+          FileOutputStream out = new FileOutputStream(temporary_file);
+          try {invalidations.store(out, "Number of times each jSymbolic feature has been invalidated");}
+          finally {out.close();}
+          replace(temporary_file, invalidations_file);
+     }
+
+
+     /**
+      * Returns the cached values of the given features for the recording
+      * with the given key.
+      *
+      * @param	recording_key   The key of the recording, as returned by
+      *                         getRecordingKey.
+      * @param	feature_keys    The keys of the features to find.
+      * @return                 The cached values. The first indice
+      *                         corresponds to feature_keys, the second
+      *                         identifies the window and the third the
+      *                         feature value. The first dimension is null
+      *                         for features that are not cached, and the
+      *                         third is null for windows that the feature
+      *                         could not be extracted from.
+      */
+     public double[][][] get(String recording_key, String[] feature_keys)
+     {
+          double[][][] values = new double[feature_keys.length][][];
+          HashMap<String, double[][]> cached = read(getFile(recording_key));
+          if (cached == null)
+               return values;
+          for (int feat = 0; feat < feature_keys.length; feat++)
+               values[feat] = cached.get(feature_keys[feat]);
+          return values;
+     }
+
+
+     /**
+      * Stores the given values of the given features for the recording with
+      * the given key, along with the previously cached values of any other
+      * features of the recording. Previously cached values of the given
+      * features that were stored under other keys (e.g. those of earlier
+      * versions) are dropped.
+      *
+      * @param	recording_key   The key of the recording, as returned by
+      *                         getRecordingKey.
+      * @param	feature_keys    The keys of the features to store, as
+      *                         returned by getFeatureKey.
+      * @param	values          The values to store. The first indice
+      *                         identifies the window, the second corresponds
+      *                         to feature_keys and the third identifies the
+      *                         feature value.
+      * @throws	Exception       Throws an exception if the values cannot be
+      *                         saved.
+      */
+     public void put( String recording_key,
+          String[] feature_keys,
+          double[][][] values )
+          throws Exception
+     {
+          File file = getFile(recording_key);
+          HashMap<String, double[][]> cached = read(file);
+          if (cached == null)
+               cached = new HashMap<String, double[][]>();
+          HashMap<String, String> feature_names = new HashMap<String, String>();
+          for (int feat = 0; feat < feature_keys.length; feat++)
+               feature_names.put(getFeatureName(feature_keys[feat]), feature_keys[feat]);
+          for (Iterator<String> keys = cached.keySet().iterator(); keys.hasNext();)
+               if (feature_names.containsKey(getFeatureName(keys.next())))
+                    keys.remove();
+          for (int feat = 0; feat < feature_keys.length; feat++)
+          {
+               double[][] feature_values = new double[values.length][];
+               for (int win = 0; win < values.length; win++)
+                    feature_values[win] = values[win][feat];
+               cached.put(feature_keys[feat], feature_values);
+          }
+
+          // Write the values to a temporary file first, so that other threads
+          // and programs never read a partially written file
+          File temporary_file = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+          file.getParentFile().mkdirs();
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary_file)));
+          try
+          {
+               out.writeInt(FORMAT_VERSION);
+               out.writeInt(cached.size());
+               for (String feature_key : cached.keySet())
+               {
+                    double[][] feature_values = cached.get(feature_key);
+                    out.writeUTF(feature_key);
+                    out.writeInt(feature_values.length);
+                    for (int win = 0; win < feature_values.length; win++)
+                    {
+                         if (feature_values[win] == null)
+                              out.writeInt(-1);
+                         else
+                         {
+                              out.writeInt(feature_values[win].length);
+                              for (int i = 0; i < feature_values[win].length; i++)
+                                   out.writeDouble(feature_values[win][i]);
+                         }
+                    }
+               }
+          }
+          finally
+          {
+               out.close();
+          }
+
+          // Replace the old file and keep the cache within its maximum size
+          synchronized (this)
+          {
+               long old_length = file.length();
+               long new_length = temporary_file.length();
+               replace(temporary_file, file);
+               size += new_length - old_length;
+               if (size > maximum_size)
+                    deleteLeastRecentlyUsed();
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns the file that the values of the recording with the given key
+      * are stored in. Files are spread among subdirectories named after the
+      * first two characters of their keys, so that no directory holds too
+      * many files.
+      */
+     private File getFile(String recording_key)
+     {
+          File subdirectory = new File(directory, recording_key.substring(0, 2));
+          return new File(subdirectory, recording_key.substring(2) + EXTENSION);
+     }
+
+
+     /**
+      * Returns the name of the feature with the given key.
+      */
+     private static String getFeatureName(String feature_key)
+     {
+          return feature_key.substring(0, feature_key.indexOf('\t'));
+     }
+
+
+     /**
+      * Returns all files of cached values.
+      */
+     private File[] getCacheFiles()
+     {
+          LinkedList<File> files = new LinkedList<File>();
+          File[] subdirectories = directory.listFiles();
+          if (subdirectories != null)
+               for (int i = 0; i < subdirectories.length; i++)
+               {
+                    File[] contents = subdirectories[i].listFiles();
+                    if (contents != null)
+                         for (int j = 0; j < contents.length; j++)
+                              if (contents[j].getName().endsWith(EXTENSION))
+                                   files.add(contents[j]);
+               }
+          return files.toArray(new File[files.size()]);
+     }
+
+
+     /**
+      * Reads the cached values stored in the given file, storing them under
+      * the keys of their features. Marks the file as recently used. Returns
+      * null if the file does not exist or cannot be read, in which case it
+      * is ignored.
+      */
+     private HashMap<String, double[][]> read(File file)
+     {
+          if (!file.exists())
+               return null;
+          try
+          {
+               DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+               try
+               {
+                    if (in.readInt() != FORMAT_VERSION)
+                         return null;
+                    int number_features = in.readInt();
+                    HashMap<String, double[][]> cached = new HashMap<String, double[][]>(number_features * 2);
+                    for (int feat = 0; feat < number_features; feat++)
+                    {
+                         String feature_key = in.readUTF();
+                         double[][] feature_values = new double[in.readInt()][];
+                         for (int win = 0; win < feature_values.length; win++)
+                         {
+                              int length = in.readInt();
+                              if (length >= 0)
+                              {
+                                   feature_values[win] = new double[length];
+                                   for (int i = 0; i < length; i++)
+                                        feature_values[win][i] = in.readDouble();
+                              }
+                         }
+                         cached.put(feature_key, feature_values);
+                    }
+                    file.setLastModified(System.currentTimeMillis());
+                    return cached;
+               }
+               finally
+               {
+                    in.close();
+               }
+          }
+          catch (IOException e)
+          {
+               return null;
+          }
+     }
+
+
+     /**
+      * Replaces the given file with the given temporary file.
+      */
+     private static void replace(File temporary_file, File file)
+     throws Exception
+     {
+          if (!temporary_file.renameTo(file))
+          {
+               file.delete();
+               if (!temporary_file.renameTo(file))
+               {
+                    temporary_file.delete();
+                    throw new Exception("Could not write to the feature cache file " + file + ".");
+               }
+          }
+     }
+
+
+     /**
+      * Deletes the least recently used files of cached values until the
+      * cache takes up no more than nine tenths of its maximum size, so that
+      * this does not need to be done again for every file that is added.
+      */
+     private void deleteLeastRecentlyUsed()
+     {
+          File[] files = getCacheFiles();
+          final long[] last_used = new long[files.length];
+          Integer[] order = new Integer[files.length];
+          size = 0;
+          for (int i = 0; i < files.length; i++)
+          {
+               last_used[i] = files[i].lastModified();
+               order[i] = new Integer(i);
+               size += files[i].length();
+          }
+          Arrays.sort(order, new Comparator<Integer>()
+          {
+               public int compare(Integer a, Integer b)
+               {
+                    if (last_used[a.intValue()] < last_used[b.intValue()])
+                         return -1;
+                    if (last_used[a.intValue()] > last_used[b.intValue()])
+                         return 1;
+                    return 0;
+               }
+          });
+          long target_size = maximum_size - maximum_size / 10;
+          for (int i = 0; i < order.length && size > target_size; i++)
+          {
+               File file = files[order[i].intValue()];
+               long length = file.length();
+               if (file.delete())
+                    size -= length;
+          }
+     }
+}
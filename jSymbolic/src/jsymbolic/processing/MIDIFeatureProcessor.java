@@ -10,6 +10,7 @@ package jsymbolic.processing;
 
 import java.io.*;
 import java.util.LinkedList;
+import java.util.concurrent.*;
 import javax.sound.midi.*;
 import mckay.utilities.sound.midi.MIDIMethods;
 import ace.datatypes.FeatureDefinition;
@@ -33,6 +34,33 @@ import jsymbolic.features.MIDIFeatureExtractor;
  * and standard deviation of each of these features is extracted for each
  * recording.
  *
+ * <p>When a recording is broken into several windows, the windows are
+ * processed in parallel by a pool of threads shared by all objects of this
+ * class. Features that depend on the values of features in earlier windows
+ * are then extracted window by window in a single thread. Results are
+ * always stored in window order, so they do not depend on the order in which
+ * the threads finish.
+ *
+ * <p>The extractFeatures methods save the feature values of each window as
+ * soon as they have been extracted from a block of windows, and accumulate
+ * the overall averages and standard deviations as they go, so the values of
+ * only a limited number of windows are held in memory at once, however long
+ * the recording. Output is buffered.
+ *
+ * <p>If a MIDIFeatureCache is set with the setFeatureCache method, the
+ * feature values of MIDI files are stored in it, and only the features whose
+ * values are not already cached are extracted from files that have been
+ * processed before.
+ *
+ * <p>If a profile report is set with the setProfileReport method, the time
+ * taken by each phase of processing, by the generation of each group of
+ * intermediate representations and by each feature is measured for each MIDI
+ * file processed by the extractFeatures(File) method, or by the
+ * extractWindowFeatures(File, MIDIFeatureExtractor[], MIDIExtractionProfile)
+ * and saveFeatures(double[][][], String, MIDIExtractionProfile) methods. The
+ * measurements of each file, and of all of them together, are written to the
+ * report.
+ *
  * @author Cory McKay
  */
 public class MIDIFeatureProcessor
@@ -79,6 +107,14 @@ public class MIDIFeatureProcessor
       */
      private	int[]			max_feature_offsets;
      
+     /**
+      * Whether each feature can be extracted from a window using only that
+      * window, i.e. whether neither it nor any feature it depends on, directly
+      * or indirectly, needs feature values from other windows. The indice
+      * corresponds to that of feature_extractors.
+      */
+     private	boolean[]		window_local_features;
+     
      /**
       * Which features are to be saved after processing. Entries correspond to
       * the feature_extractors field.
@@ -113,6 +149,54 @@ public class MIDIFeatureProcessor
       */
      private	boolean			definitions_written;
      
+     /**
+      * The cache that the feature values of MIDI files are stored in and
+      * taken from. Null if feature values are not to be cached.
+      */
+     private	MIDIFeatureCache	feature_cache;
+     
+     /**
+      * The keys that the values of each feature are cached under. The indice
+      * corresponds to that of feature_extractors. Null if feature values are
+      * not to be cached.
+      */
+     private	String[]		feature_cache_keys;
+     
+     /**
+      * Used to write the measurements of each recording to the profile
+      * report. Null if there is no profile report.
+      */
+     private	PrintWriter		profile_writer;
+     
+     /**
+      * The measurements of all recordings written to the profile report so
+      * far. Null if there is no profile report.
+      */
+     private	MIDIExtractionProfile	batch_profile;
+     
+     /**
+      * The number of windows whose features are extracted at once when the
+      * values of each window are saved as soon as they are extracted. This
+      * limits the number of windows whose values are held in memory.
+      */
+     private static final int WINDOWS_PER_BLOCK = 8 * Runtime.getRuntime().availableProcessors();
+     
+     /**
+      * The threads that extract features from the windows of recordings,
+      * shared by all objects of this class.
+      */
+     private static final ExecutorService window_pool = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory()
+     {
+          public Thread newThread(Runnable runnable)
+          {
+               Thread thread = new Thread(runnable, "jSymbolic window feature extractor");
+               thread.setDaemon(true);
+               return thread;
+          }
+     });
+     
      
      /* CONSTRUCTORS **********************************************************/
      
@@ -211,8 +295,8 @@ public class MIDIFeatureProcessor
           // Prepare stream writers
           FileOutputStream values_to = new FileOutputStream(feature_values_save_file);
           FileOutputStream definitions_to = new FileOutputStream(feature_definitions_save_file);
-          values_writer = new DataOutputStream(values_to);
-          definitions_writer = new DataOutputStream(definitions_to);
+          values_writer = new DataOutputStream(new BufferedOutputStream(values_to));
+          definitions_writer = new DataOutputStream(new BufferedOutputStream(definitions_to));
           definitions_written = false;
           
           // Save parameters as fields
@@ -222,7 +306,7 @@ public class MIDIFeatureProcessor
           this.save_overall_recording_features = save_overall_recording_features;
           
           // Calculate the window offset
-          window_overlap_offset = (int) (window_overlap * (double) window_size);
+          window_overlap_offset = window_overlap * window_size;
           
           // Find which features need to be extracted and in what order. Also find
           // the indices of dependencies and the maximum offsets for each feature.
@@ -236,6 +320,65 @@ public class MIDIFeatureProcessor
      /* PUBLIC METHODS ********************************************************/
      
      
+     /**
+      * Sets the cache that the feature values of MIDI files are to be stored
+      * in and taken from by the extractFeatures(File) and
+      * extractWindowFeatures(File, MIDIFeatureExtractor[], MIDIExtractionProfile)
+      * methods. Features are cached under keys made up of their names and
+      * versions and the keys of the features that they depend on.
+      *
+      * @param	cache	The cache to use, or null if feature values are not to
+      *			be cached.
+      */
+     public void setFeatureCache(MIDIFeatureCache cache)
+     {
+          feature_cache = cache;
+          if (cache == null)
+          {
+               feature_cache_keys = null;
+               return;
+          }
+          
+          // Dependencies always come earlier in feature_extractors
+          String[] keys = new String[feature_extractors.length];
+          for (int feat = 0; feat < feature_extractors.length; feat++)
+          {
+               String[] dependency_keys = null;
+               if (feature_extractor_dependencies[feat] != null)
+               {
+                    int[] offsets = feature_extractors[feat].getDepenedencyOffsets();
+                    dependency_keys = new String[feature_extractor_dependencies[feat].length];
+                    for (int i = 0; i < dependency_keys.length; i++)
+                         dependency_keys[i] = keys[ feature_extractor_dependencies[feat][i] ] + " at " + offsets[i];
+               }
+               keys[feat] = cache.getFeatureKey( feature_extractors[feat].getFeatureDefinition().name,
+                    feature_extractors[feat].getVersion(),
+                    dependency_keys );
+          }
+          feature_cache_keys = keys;
+     }
+     
+     
+     /**
+      * Sets the path of the profile report that the measurements of the
+      * processing of each MIDI file are to be written to as they are saved,
+      * in the form written by MIDIExtractionProfile. The measurements of all
+      * files together are written under the identifier "(all recordings)"
+      * when the finalize method is called.
+      *
+      * @param	report_path	The path of the tab separated text file to write
+      *			the measurements to.
+      * @throws	Exception	Throws an exception if the file cannot be written.
+      */
+     public void setProfileReport(String report_path)
+     throws Exception
+     {
+          profile_writer = new PrintWriter(new BufferedWriter(new FileWriter(report_path)));
+          MIDIExtractionProfile.writeHeadings(profile_writer);
+          batch_profile = new MIDIExtractionProfile();
+     }
+     
+     
      /**
       * Extract the features from the provided MIDI file. This may involve
       * windowing, dependig on the instantiation parameters of this object. The
@@ -244,65 +387,298 @@ public class MIDIFeatureProcessor
       * features that are saved are also saved to the feature_key_file XML file
       * referred to by the definitions_writer field.
       *
+      * <p>The values of each window are saved as soon as they have been
+      * extracted, unless a feature cache has been set, in which case the
+      * values of all windows are needed in order to cache them.
+      *
       * @param recording_file	The MIDI file to extract features from.
       */
-     public void extractFeatures(File recording_file)
+     public synchronized void extractFeatures(File recording_file)
      throws Exception
      {
-          // Extract the MIDI data from the file
-          Sequence full_sequence = null;
-          try
+          MIDIExtractionProfile profile = null;
+          if (profile_writer != null)
+               profile = new MIDIExtractionProfile();
+          if (feature_cache != null)
           {
-               full_sequence = MidiSystem.getSequence(recording_file);
+               double[][][] window_feature_values = extractWindowFeatures( recording_file,
+                    feature_extractors,
+                    profile );
+               saveFeatures(window_feature_values, recording_file.getPath(), profile);
           }
-          catch (IOException e)
+          else
           {
-               throw new Exception("The specified path, " + recording_file + ", does not refer to a valid file.");
+               MIDIEventTable full_events = parseMIDIFile(recording_file, profile);
+               extractAndSaveFeatures(full_events, recording_file.getPath(), profile);
           }
-          catch (InvalidMidiDataException e)
+     }
+     
+     
+     /**
+      * Extract the features from the provided MIDI sequence and save them in
+      * the same way as the extractFeatures(File) method. This allows a
+      * sequence that has already been parsed to be processed without parsing
+      * it again.
+      *
+      * @param full_sequence	The MIDI sequence to extract features from.
+      * @param identifier		The identifier to save the feature values
+      *				under, normally the path of the MIDI file.
+      */
+     public void extractFeatures(Sequence full_sequence, String identifier)
+     throws Exception
+     {
+          extractFeatures(new MIDIEventTable(full_sequence), identifier);
+     }
+     
+     
+     /**
+      * Extract the features from the provided MIDI events and save them in
+      * the same way as the extractFeatures(File) method.
+      *
+      * @param full_events	The MIDI events to extract features from.
+      * @param identifier		The identifier to save the feature values
+      *				under, normally the path of the MIDI file.
+      */
+     public synchronized void extractFeatures(MIDIEventTable full_events, String identifier)
+     throws Exception
+     {
+          extractAndSaveFeatures(full_events, identifier, null);
+     }
+     
+     
+     /**
+      * Returns feature extractors of the same classes as those used by this
+      * object, in the order in which this object extracts them. They are
+      * taken from the given array, which may hold different instances of the
+      * feature extractors than the ones passed to the constructor. This
+      * allows each of several threads to extract features with its own
+      * instances by calling extractWindowFeatures.
+      *
+      * @param	all_feature_extractors   All features that can be extracted.
+      * @return                         The feature extractors in the order
+      *                                 that they are extracted by this object.
+      * @throws	Exception                Throws an informative exception if
+      *                                 one of the features extracted by this
+      *                                 object is missing.
+      */
+     public MIDIFeatureExtractor[] getFeatureExtractorsInOrder(MIDIFeatureExtractor[] all_feature_extractors)
+     throws Exception
+     {
+          MIDIFeatureExtractor[] in_order = new MIDIFeatureExtractor[feature_extractors.length];
+          for (int feat = 0; feat < feature_extractors.length; feat++)
           {
-               throw new Exception("The specified file, " + recording_file + ", is not a valid MIDI file.");
+               String name = feature_extractors[feat].getFeatureDefinition().name;
+               for (int i = 0; i < all_feature_extractors.length; i++)
+                    if (all_feature_extractors[i].getFeatureDefinition().name.equals(name))
+                    {
+                    in_order[feat] = all_feature_extractors[i];
+                    i = all_feature_extractors.length;
+                    }
+               if (in_order[feat] == null)
+                    throw new Exception("The " + name + " feature is not available.");
           }
-          
-          // Prepare the windows for feature extraction
-          Sequence[] windows;
-          try
+          return in_order;
+     }
+     
+     
+     /**
+      * Parses the given MIDI file, breaks it into windows if appropriate and
+      * extracts features from each of them, without saving anything, in the
+      * same way as extractWindowFeatures(Sequence, String,
+      * MIDIFeatureExtractor[]).
+      *
+      * <p>If a feature cache has been set, the values of features that are
+      * already cached for the contents of the file are taken from it, and
+      * the file is not parsed at all if all of them are. The values of any
+      * other features are extracted and added to the cache.
+      *
+      * @param	recording_file       The MIDI file to extract features from.
+      * @param	extractors           The feature extractors to use, as
+      *                              returned by getFeatureExtractorsInOrder.
+      * @param	profile              The profile to add the measurements of
+      *                              the processing of the file to, or null
+      *                              if it is not to be measured.
+      * @return                     The extracted feature values, in the same
+      *                              form as those returned by getFeatures.
+      * @throws	Exception            Throws an informative exception if the
+      *                              file cannot be parsed or a problem occurs.
+      */
+     public double[][][] extractWindowFeatures( File recording_file,
+          MIDIFeatureExtractor[] extractors,
+          MIDIExtractionProfile profile )
+          throws Exception
+     {
+          // Find the cached feature values
+          String recording_key = null;
+          double[][][] cached_values = null;
+          boolean all_cached = false;
+          long start = System.nanoTime();
+          if (feature_cache != null)
           {
-               if (do_not_use_windows)
+               try
                {
-                    windows = new Sequence[1];
-                    windows[0] = full_sequence;
+                    recording_key = MIDIFeatureCache.getRecordingKey(recording_file, getWindowSettings());
+               }
+               catch (IOException e)
+               {
+                    throw new Exception("The specified path, " + recording_file + ", does not refer to a valid file.");
+               }
+               cached_values = feature_cache.get(recording_key, feature_cache_keys);
+               all_cached = true;
+               for (int feat = 0; feat < cached_values.length && all_cached; feat++)
+                    if (cached_values[feat] == null || cached_values[feat].length != cached_values[0].length)
+                         all_cached = false;
+               if (profile != null)
+               {
+                    profile.addTime("phase", "cache lookup", System.nanoTime() - start);
+                    int number_cached = 0;
+                    for (int feat = 0; feat < cached_values.length; feat++)
+                         if (cached_values[feat] != null)
+                              number_cached++;
+                    profile.addCount("cached features", number_cached);
                }
-               else
-                    windows = MIDIMethods.breakSequenceIntoWindows( full_sequence,
-                         window_size,
-                         window_overlap_offset );
           }
-          catch (Exception e)
+          
+          // Return the cached values if there are no others to extract
+          if (all_cached)
           {
-               throw new Exception("An error occured while processing the following file: " + recording_file + ".\n");
+               double[][][] results = new double[cached_values[0].length][extractors.length][];
+               for (int win = 0; win < results.length; win++)
+                    for (int feat = 0; feat < extractors.length; feat++)
+                         results[win][feat] = cached_values[feat][win];
+               return results;
           }
           
-          // Extract the feature values from the samples
-          double[][][] window_feature_values = getFeatures(windows);
-          
-          // Find the feature averages and standard deviations if appropriate
-          FeatureDefinition[][] overall_feature_definitions = new FeatureDefinition[1][];
-          overall_feature_definitions[0] = null;
-          double[][] overall_feature_values = null;
-          if (save_overall_recording_features)
-               overall_feature_values = getOverallRecordingFeatures( window_feature_values,
-                    overall_feature_definitions );
+          // Extract the MIDI data from the file
+          MIDIEventTable full_events = parseMIDIFile(recording_file, profile);
           
-          // Save the feature values for this recording
-          saveFeatureVectorsForARecording( window_feature_values,
+          // Extract the features that are not cached
+          double[][][] results = extractWindowFeatures( full_events,
                recording_file.getPath(),
-               overall_feature_values,
-               overall_feature_definitions[0] );
+               extractors,
+               cached_values,
+               profile,
+               null );
           
-          // Save the feature definitions
-          if (!definitions_written)
-               saveFeatureDefinitions(window_feature_values, overall_feature_definitions[0]);
+          // Cache the newly extracted feature values
+          if (feature_cache != null)
+          {
+               start = System.nanoTime();
+               int number_new = 0;
+               for (int feat = 0; feat < cached_values.length; feat++)
+                    if (cached_values[feat] == null)
+                         number_new++;
+               String[] new_keys = new String[number_new];
+               double[][][] new_values = new double[results.length][number_new][];
+               int new_feat = 0;
+               for (int feat = 0; feat < cached_values.length; feat++)
+                    if (cached_values[feat] == null)
+                    {
+                    new_keys[new_feat] = feature_cache_keys[feat];
+                    for (int win = 0; win < results.length; win++)
+                         new_values[win][new_feat] = results[win][feat];
+                    new_feat++;
+                    }
+               feature_cache.put(recording_key, new_keys, new_values);
+               if (profile != null)
+                    profile.addTime("phase", "cache storage", System.nanoTime() - start);
+          }
+          
+          return results;
+     }
+     
+     
+     /**
+      * Breaks the given MIDI sequence into windows if appropriate and extracts
+      * features from each of them, without saving anything. This does not
+      * change this object, so it may be called from several threads at once
+      * as long as each passes its own feature extractors.
+      *
+      * @param	full_sequence        The MIDI sequence to extract features
+      *                              from.
+      * @param	identifier           The identifier of the sequence, used in
+      *                              error messages.
+      * @param	extractors           The feature extractors to use, as
+      *                              returned by getFeatureExtractorsInOrder.
+      * @return                     The extracted feature values, in the same
+      *                              form as those returned by getFeatures.
+      * @throws	Exception            Throws an exception if a problem occurs.
+      */
+     public double[][][] extractWindowFeatures( Sequence full_sequence,
+          String identifier,
+          MIDIFeatureExtractor[] extractors )
+          throws Exception
+     {
+          return extractWindowFeatures(new MIDIEventTable(full_sequence), identifier, extractors);
+     }
+     
+     
+     /**
+      * Breaks the given MIDI events into windows if appropriate and extracts
+      * features from each of them, without saving anything, in the same way
+      * as extractWindowFeatures(Sequence, String, MIDIFeatureExtractor[]).
+      * A Sequence is only built from the events if they must be windowed.
+      *
+      * @param	full_events          The MIDI events to extract features
+      *                              from.
+      * @param	identifier           The identifier of the events, used in
+      *                              error messages.
+      * @param	extractors           The feature extractors to use, as
+      *                              returned by getFeatureExtractorsInOrder.
+      * @return                     The extracted feature values, in the same
+      *                              form as those returned by getFeatures.
+      * @throws	Exception            Throws an exception if a problem occurs.
+      */
+     public double[][][] extractWindowFeatures( MIDIEventTable full_events,
+          String identifier,
+          MIDIFeatureExtractor[] extractors )
+          throws Exception
+     {
+          return extractWindowFeatures(full_events, identifier, extractors, null, null, null);
+     }
+     
+     
+     /**
+      * Saves the given feature values, as returned by extractWindowFeatures,
+      * along with their averages and standard deviations if appropriate. The
+      * feature definitions are also saved if they have not been already.
+      * Recordings are saved in the order in which this method is called.
+      *
+      * @param	window_feature_values   The extracted feature values.
+      * @param	identifier              The identifier to save the feature
+      *                                 values under.
+      * @throws	Exception               Throws an exception if cannot write.
+      */
+     public void saveFeatures(double[][][] window_feature_values, String identifier)
+     throws Exception
+     {
+          saveFeatures(window_feature_values, identifier, null);
+     }
+     
+     
+     /**
+      * Saves the given feature values in the same way as
+      * saveFeatures(double[][][], String), and then writes the given
+      * measurements of their extraction to the profile report, if there is
+      * one, along with the time taken to save them.
+      *
+      * @param	window_feature_values   The extracted feature values.
+      * @param	identifier              The identifier to save the feature
+      *                                 values under.
+      * @param	profile                 The measurements of the extraction of
+      *                                 the feature values, or null if there
+      *                                 are none.
+      * @throws	Exception               Throws an exception if cannot write.
+      */
+     public synchronized void saveFeatures( double[][][] window_feature_values,
+          String identifier,
+          MIDIExtractionProfile profile )
+          throws Exception
+     {
+          MIDIOverallFeatureValues overall_values = new MIDIOverallFeatureValues(feature_extractors.length);
+          for (int win = 0; win < window_feature_values.length; win++)
+               saveWindowFeatures(win, window_feature_values[win], identifier, overall_values, profile);
+          finishSavingRecording(overall_values, identifier, profile);
      }
      
      
@@ -320,12 +696,228 @@ public class MIDIFeatureProcessor
      {
           values_writer.writeBytes("</feature_vector_file>");
           values_writer.close();
+          
+          // Report the measurements of all recordings
+          if (profile_writer != null)
+          {
+               batch_profile.write(profile_writer, "(all recordings)");
+               profile_writer.close();
+               if (profile_writer.checkError())
+                    throw new Exception("Could not write the profile report.");
+          }
      }
      
      
      /* PRIVATE METHODS *******************************************************/
      
      
+     /**
+      * Extracts the features from the given MIDI events and saves them in the
+      * same way as the extractFeatures(File) method. The values of each window
+      * are saved as soon as they have been extracted, and only the values of
+      * the windows still needed by features that depend on earlier windows
+      * are kept after that.
+      *
+      * @param	full_events          The MIDI events to extract features
+      *                              from.
+      * @param	identifier           The identifier to save the feature values
+      *                              under, normally the path of the MIDI file.
+      * @param	profile              The profile to add measurements to and to
+      *                              write to the profile report, or null if
+      *                              extraction is not to be measured.
+      * @throws	Exception            Throws an exception if a problem occurs
+      *                              or cannot write.
+      */
+     private void extractAndSaveFeatures( MIDIEventTable full_events,
+          String identifier,
+          MIDIExtractionProfile profile )
+          throws Exception
+     {
+          MIDIOverallFeatureValues overall_values = new MIDIOverallFeatureValues(feature_extractors.length);
+          extractWindowFeatures(full_events, identifier, feature_extractors, null, profile, overall_values);
+          finishSavingRecording(overall_values, identifier, profile);
+     }
+     
+     
+     /**
+      * Parses the given MIDI file.
+      *
+      * @param	recording_file       The MIDI file to parse.
+      * @param	profile              The profile to add the time taken to parse
+      *                              the file to, or null if it is not to be
+      *                              measured.
+      * @return                     The MIDI events of the file.
+      * @throws	Exception            Throws an informative exception if the
+      *                              file cannot be read or is not a valid
+      *                              MIDI file.
+      */
+     private MIDIEventTable parseMIDIFile(File recording_file, MIDIExtractionProfile profile)
+     throws Exception
+     {
+          MIDIEventTable full_events = null;
+          long start = System.nanoTime();
+          try
+          {
+               full_events = MIDIEventTable.parse(recording_file);
+          }
+          catch (IOException e)
+          {
+               throw new Exception("The specified path, " + recording_file + ", does not refer to a valid file.");
+          }
+          catch (InvalidMidiDataException e)
+          {
+               throw new Exception("The specified file, " + recording_file + ", is not a valid MIDI file.");
+          }
+          if (profile != null)
+               profile.addTime("phase", "parsing", System.nanoTime() - start);
+          return full_events;
+     }
+     
+     
+     /**
+      * Breaks the given MIDI events into windows if appropriate and extracts
+      * the features that are not cached from each of them, in the same way
+      * as extractWindowFeatures(MIDIEventTable, String,
+      * MIDIFeatureExtractor[]).
+      *
+      * @param	full_events          The MIDI events to extract features
+      *                              from.
+      * @param	identifier           The identifier of the events, used in
+      *                              error messages.
+      * @param	extractors           The feature extractors to use, as
+      *                              returned by getFeatureExtractorsInOrder.
+      * @param	cached_values        The cached values of each feature, in
+      *                              the form returned by
+      *                              MIDIFeatureCache.get, or null if none
+      *                              are cached. Values that do not match
+      *                              the windows are set to null.
+      * @param	profile              The profile to add measurements to, or
+      *                              null if extraction is not to be
+      *                              measured.
+      * @param	overall_values       If not null, the feature values of each
+      *                              window are saved under the identifier as
+      *                              soon as they have been extracted and
+      *                              added to overall_values, rather than
+      *                              returned.
+      * @return                     The cached and extracted feature values,
+      *                              in the same form as those returned by
+      *                              getFeatures, or null if they have been
+      *                              saved.
+      * @throws	Exception            Throws an exception if a problem occurs.
+      */
+     private double[][][] extractWindowFeatures( MIDIEventTable full_events,
+          String identifier,
+          MIDIFeatureExtractor[] extractors,
+          double[][][] cached_values,
+          MIDIExtractionProfile profile,
+          MIDIOverallFeatureValues overall_values )
+          throws Exception
+     {
+          // Prepare the windows for feature extraction. The notes of the
+          // windows are counted in a single pass, so that the fields that only
+          // depend on them are not recalculated from the events of each
+          // overlapping window. The events are only broken into windows if a
+          // feature that is not cached needs other fields.
+          MIDIEventTable[] windows = null;
+          MIDIWindowCounts window_counts = null;
+          int number_windows = 1;
+          long start = System.nanoTime();
+          try
+          {
+               if (do_not_use_windows)
+               {
+                    windows = new MIDIEventTable[1];
+                    windows[0] = full_events;
+               }
+               else
+               {
+                    Sequence full_sequence = full_events.getSequence();
+                    long[][] window_ticks = MIDIMethods.getWindowTicks( full_sequence,
+                         window_size,
+                         window_overlap_offset );
+                    window_counts = new MIDIWindowCounts(full_events, window_ticks[0], window_ticks[1]);
+                    number_windows = window_counts.getNumberWindows();
+                    if (needsWindowEvents(extractors, cached_values, number_windows))
+                    {
+                         Sequence[] window_sequences = MIDIMethods.breakSequenceIntoWindows( full_sequence,
+                              window_size,
+                              window_overlap_offset );
+                         windows = new MIDIEventTable[window_sequences.length];
+                         for (int win = 0; win < windows.length; win++)
+                              windows[win] = new MIDIEventTable(window_sequences[win]);
+                    }
+               }
+          }
+          catch (Exception e)
+          {
+               throw new Exception("An error occured while processing the following file: " + identifier + ".\n" + e.getMessage());
+          }
+          if (profile != null)
+          {
+               if (!do_not_use_windows)
+                    profile.addTime("phase", "windowing", System.nanoTime() - start);
+               profile.addCount("events", full_events.number_events);
+               profile.addCount("tracks", full_events.number_tracks);
+               profile.addCount("ticks", full_events.tick_length);
+               profile.addCount("windows", number_windows);
+          }
+          
+          // Ignore any cached values that do not match the windows, so that
+          // they are extracted again
+          if (cached_values != null)
+               for (int feat = 0; feat < cached_values.length; feat++)
+                    if (cached_values[feat] != null && cached_values[feat].length != number_windows)
+                         cached_values[feat] = null;
+          
+          // Extract the feature values from the samples
+          return getFeatures(windows, window_counts, extractors, cached_values, profile, identifier, overall_values);
+     }
+     
+     
+     /**
+      * Returns a description of the settings used to break recordings into
+      * windows, which is part of the keys that feature values are cached
+      * under.
+      */
+     private String getWindowSettings()
+     {
+          if (do_not_use_windows)
+               return "whole recordings";
+          return "windows of " + window_size + " seconds offset by " + window_overlap_offset + " seconds";
+     }
+     
+     
+     /**
+      * Returns whether any of the given features whose values are not cached
+      * need groups of intermediate representations that cannot be filled in
+      * from a MIDIWindowCounts, and therefore need the events of each window.
+      *
+      * @param	extractors       The feature extractors to use.
+      * @param	cached_values    The cached values of each feature, or null
+      *                          if none are cached. Values that do not
+      *                          match the windows are ignored.
+      * @param	number_windows   The number of windows.
+      * @return                  Whether the events of each window are needed.
+      */
+     private static boolean needsWindowEvents( MIDIFeatureExtractor[] extractors,
+          double[][][] cached_values,
+          int number_windows )
+     {
+          for (int feat = 0; feat < extractors.length; feat++)
+          {
+               if (cached_values != null && cached_values[feat] != null && cached_values[feat].length == number_windows)
+                    continue;
+               int[] representations = extractors[feat].getIntermediateRepresentations();
+               if (representations == null || representations.length == 0)
+                    return true;
+               for (int i = 0; i < representations.length; i++)
+                    if (!MIDIIntermediateRepresentations.canGenerateFromWindowCounts(representations[i]))
+                         return true;
+          }
+          return false;
+     }
+     
+     
      /**
       * Fills the feature_extractors, feature_extractor_dependencies,
       * max_feature_offsets and features_to_save fields. This involves finding
@@ -499,6 +1091,18 @@ public class MIDIFeatureProcessor
                               max_feature_offsets[i] = Math.abs(these_offsets[k]);
                }
           }
+          
+          // Find which features only need their own window. Dependencies
+          // always come earlier in feature_extractors.
+          window_local_features = new boolean[feature_extractors.length];
+          for (int i = 0; i < window_local_features.length; i++)
+          {
+               window_local_features[i] = (max_feature_offsets[i] == 0);
+               if (feature_extractor_dependencies[i] != null)
+                    for (int j = 0; j < feature_extractor_dependencies[i].length; j++)
+                         if (!window_local_features[ feature_extractor_dependencies[i][j] ])
+                              window_local_features[i] = false;
+          }
      }
      
      
@@ -518,74 +1122,466 @@ public class MIDIFeatureProcessor
       */
      public double[][][] getFeatures(Sequence[] windows)
      throws Exception
+     {
+          return getFeatures(windows, feature_extractors);
+     }
+     
+     
+     /**
+      * Extracts features from each window of the given MIDI sequences using the
+      * given feature extractors, which must be in the order returned by
+      * getFeatureExtractorsInOrder.
+      *
+      * @param	windows       The ordered MIDI windows to extract features from.
+      * @param	extractors    The feature extractors to use.
+      * @return               The extracted feature values for this recording,
+      *                       in the same form as those returned by
+      *                       getFeatures(Sequence[]).
+      * @throws	Exception     Throws an exception if a problem occurs.
+      */
+     public double[][][] getFeatures(Sequence[] windows, MIDIFeatureExtractor[] extractors)
+     throws Exception
+     {
+          MIDIEventTable[] window_events = new MIDIEventTable[windows.length];
+          for (int win = 0; win < windows.length; win++)
+               window_events[win] = new MIDIEventTable(windows[win]);
+          return getFeatures(window_events, extractors);
+     }
+     
+     
+     /**
+      * Extracts features from each window of the given MIDI events using the
+      * given feature extractors, which must be in the order returned by
+      * getFeatureExtractorsInOrder.
+      *
+      * @param	windows       The ordered MIDI windows to extract features from.
+      * @param	extractors    The feature extractors to use.
+      * @return               The extracted feature values for this recording,
+      *                       in the same form as those returned by
+      *                       getFeatures(Sequence[]).
+      * @throws	Exception     Throws an exception if a problem occurs.
+      */
+     public double[][][] getFeatures(MIDIEventTable[] windows, MIDIFeatureExtractor[] extractors)
+     throws Exception
+     {
+          return getFeatures(windows, null, extractors, null, null);
+     }
+     
+     
+     /**
+      * Extracts features from each window of the given MIDI events in the same
+      * way as getFeatures(MIDIEventTable[], MIDIFeatureExtractor[]), using
+      * the given counts of the windows to fill in the intermediate
+      * representations that depend only on them. Features whose values are
+      * already known are not extracted again.
+      *
+      * @param	windows       The ordered MIDI windows to extract features from,
+      *                       or null if window_counts is not null and all of
+      *                       the features that are not known only need
+      *                       intermediate representations for which
+      *                       MIDIIntermediateRepresentations.canGenerateFromWindowCounts
+      *                       is true.
+      * @param	window_counts The counts of the windows, or null to find
+      *                       everything from the events of each window.
+      * @param	extractors    The feature extractors to use.
+      * @param	cached_values The already known values of each feature, in the
+      *                       form returned by MIDIFeatureCache.get, or null
+      *                       if none are known.
+      * @param	profile       The profile to add the time taken to construct
+      *                       and generate the intermediate representations
+      *                       and to extract each feature to, along with the
+      *                       sizes of the intermediate representations. Null
+      *                       if extraction is not to be measured.
+      * @return               The extracted feature values for this recording,
+      *                       in the same form as those returned by
+      *                       getFeatures(Sequence[]).
+      * @throws	Exception     Throws an exception if a problem occurs.
+      */
+     public double[][][] getFeatures( MIDIEventTable[] windows,
+          MIDIWindowCounts window_counts,
+          MIDIFeatureExtractor[] extractors,
+          double[][][] cached_values,
+          MIDIExtractionProfile profile )
+          throws Exception
+     {
+          return getFeatures(windows, window_counts, extractors, cached_values, profile, null, null);
+     }
+     
+     
+     /**
+      * Extracts features from each window of the given MIDI events in the same
+      * way as getFeatures(MIDIEventTable[], MIDIWindowCounts,
+      * MIDIFeatureExtractor[], double[][][], MIDIExtractionProfile), and
+      * optionally saves them as it goes.
+      *
+      * <p>When saving, windows are processed a block at a time. The values of
+      * each window of a block are saved once all of the features have been
+      * extracted from it, and are then discarded as soon as no later window
+      * can depend on them.
+      *
+      * @param	windows         The ordered MIDI windows to extract features
+      *                         from, or null if they are not needed.
+      * @param	window_counts   The counts of the windows, or null.
+      * @param	extractors      The feature extractors to use.
+      * @param	cached_values   The already known values of each feature, or
+      *                         null if none are known.
+      * @param	profile         The profile to add measurements to, or null.
+      * @param	identifier      The identifier to save the feature values
+      *                         under. Only used when saving.
+      * @param	overall_values  If not null, the values of each window are
+      *                         saved and added to overall_values rather than
+      *                         returned.
+      * @return                 The extracted feature values for this
+      *                         recording, in the same form as those returned
+      *                         by getFeatures(Sequence[]), or null if they
+      *                         have been saved.
+      * @throws	Exception       Throws an exception if a problem occurs or
+      *                         cannot write.
+      */
+     private double[][][] getFeatures( MIDIEventTable[] windows,
+          MIDIWindowCounts window_counts,
+          MIDIFeatureExtractor[] extractors,
+          double[][][] cached_values,
+          MIDIExtractionProfile profile,
+          String identifier,
+          MIDIOverallFeatureValues overall_values )
+          throws Exception
      {
           // The extracted feature values for this recording. The first indice
           // identifies the window, the second identifies the feature and the
-          // third identifies the feature value.
-          double[][][] results = new double[windows.length][feature_extractors.length][];
+          // third identifies the feature value. Already known values are
+          // filled in.
+          int number_windows = (windows != null) ? windows.length : window_counts.getNumberWindows();
+          double[][][] results = new double[number_windows][extractors.length][];
+          if (cached_values != null)
+               for (int feat = 0; feat < extractors.length; feat++)
+                    if (cached_values[feat] != null)
+                         for (int win = 0; win < number_windows; win++)
+                              results[win][feat] = cached_values[feat][win];
           
-          // Extract features from each window one by one and add save the results.
-          // The last window is zero-padded at the end if it falls off the edge of the
-          // provided samples.
-          for (int win = 0; win < windows.length; win++)
+          // Whether any features that are not known need values from other
+          // windows
+          boolean cross_window_features = false;
+          for (int feat = 0; feat < extractors.length; feat++)
+               if (!window_local_features[feat] && (cached_values == null || cached_values[feat] == null))
+                    cross_window_features = true;
+          
+          // A whole recording is processed in this thread
+          if (number_windows == 1)
           {
-               // Extract information from sequence that is needed to extract features
-               MIDIIntermediateRepresentations intermediate = new MIDIIntermediateRepresentations(windows[win]);
+               MIDIIntermediateRepresentations intermediate =
+                    getIntermediateRepresentations(windows, 0, window_counts, profile);
+               extractFeaturesFromWindow(number_windows, 0, intermediate, extractors, cached_values, true, results);
+               if (cross_window_features)
+                    extractFeaturesFromWindow(number_windows, 0, intermediate, extractors, cached_values, false, results);
+               if (overall_values == null)
+                    return results;
+               saveWindowFeatures(0, results[0], identifier, overall_values, profile);
+               return null;
+          }
+          
+          // The number of windows processed at once, and the number of earlier
+          // windows whose values may be needed by a later window
+          int block_size = number_windows;
+          if (overall_values != null)
+               block_size = WINDOWS_PER_BLOCK;
+          int max_offset = 0;
+          for (int feat = 0; feat < extractors.length; feat++)
+               max_offset = Math.max(max_offset, max_feature_offsets[feat]);
+          
+          final MIDIIntermediateRepresentations[] intermediates = new MIDIIntermediateRepresentations[number_windows];
+          for (int first_win = 0; first_win < number_windows; first_win += block_size)
+          {
+               int end_win = Math.min(first_win + block_size, number_windows);
                
-               // Extract the features one by one
-               for (int feat = 0; feat < feature_extractors.length; feat++)
+               // Extract the features that only need their own window from
+               // each window of the block in parallel. The intermediate
+               // representations of each window are kept only if they are
+               // needed again below.
+               LinkedList<Future<Object>> tasks = new LinkedList<Future<Object>>();
+               for (int win = first_win; win < end_win; win++)
                {
-                    // Only extract this feature if enough previous information
-                    // is available to extract this feature
-                    if (win >= max_feature_offsets[feat])
+                    final MIDIEventTable[] these_windows = windows;
+                    final int these_number_windows = number_windows;
+                    final int this_window = win;
+                    final MIDIFeatureExtractor[] these_extractors = extractors;
+                    final double[][][] these_results = results;
+                    final boolean keep_intermediate = cross_window_features;
+                    final MIDIWindowCounts these_counts = window_counts;
+                    final double[][][] these_cached_values = cached_values;
+                    final MIDIExtractionProfile this_profile = profile;
+                    tasks.add(window_pool.submit(new Callable<Object>()
                     {
-                         // Find the correct feature
-                         MIDIFeatureExtractor feature = feature_extractors[feat];
-                         
-                         // Find previously extracted feature values that this feature
-                         // needs
-                         double[][] other_feature_values = null;
-                         if (feature_extractor_dependencies[feat] != null)
+                         public Object call() throws Exception
                          {
-                              other_feature_values = new double[feature_extractor_dependencies[feat].length][];
-                              for (int i = 0; i < feature_extractor_dependencies[feat].length; i++)
+                              MIDIIntermediateRepresentations intermediate =
+                                   getIntermediateRepresentations(these_windows, this_window, these_counts, this_profile);
+                              extractFeaturesFromWindow(these_number_windows, this_window, intermediate, these_extractors, these_cached_values, true, these_results);
+                              if (keep_intermediate)
+                                   intermediates[this_window] = intermediate;
+                              return null;
+                         }
+                    }));
+               }
+               
+               // Wait for all of the windows of the block, reporting the first
+               // problem
+               Exception problem = null;
+               for (Future<Object> task : tasks)
+               {
+                    try
+                    {
+                         task.get();
+                    }
+                    catch (ExecutionException e)
+                    {
+                         if (problem == null)
+                         {
+                              if (e.getCause() instanceof Exception)
+                                   problem = (Exception) e.getCause();
+                              else if (e.getCause() instanceof Error)
+                                   throw (Error) e.getCause();
+                              else
+                                   problem = e;
+                         }
+                    }
+               }
+               if (problem != null)
+                    throw problem;
+               
+               // Extract the features that need values from other windows one
+               // window at a time, in order
+               if (cross_window_features)
+                    for (int win = first_win; win < end_win; win++)
+                    {
+                    extractFeaturesFromWindow(number_windows, win, intermediates[win], extractors, cached_values, false, results);
+                    intermediates[win] = null;
+                    }
+               
+               // Save the values of the windows of the block, discarding those
+               // that no later window can need
+               if (overall_values != null)
+                    for (int win = first_win; win < end_win; win++)
+                    {
+                    saveWindowFeatures(win, results[win], identifier, overall_values, profile);
+                    if (win - max_offset >= 0)
+                         results[win - max_offset] = null;
+                    }
+          }
+          
+          // Return the results
+          if (overall_values != null)
+               return null;
+          return results;
+     }
+     
+     
+     /**
+      * Returns the intermediate representations of the given window, without
+      * generating any of their groups of fields. The groups that can be
+      * filled in from the given counts are filled in from them when they are
+      * generated.
+      *
+      * @param	windows         All of the windows of the recording, or null
+      *                         if only the counts are to be used.
+      * @param	win             The indice of the window.
+      * @param	window_counts   The counts of the windows, or null.
+      * @param	profile         The profile to add the time taken to construct
+      *                         the intermediate representations to, and that
+      *                         the time taken to generate their groups of
+      *                         fields is added to. Null if extraction is not
+      *                         to be measured.
+      * @return                 The intermediate representations.
+      * @throws	Exception       Throws an exception if a problem occurs.
+      */
+     private MIDIIntermediateRepresentations getIntermediateRepresentations( MIDIEventTable[] windows,
+          int win,
+          MIDIWindowCounts window_counts,
+          MIDIExtractionProfile profile )
+          throws Exception
+     {
+          long start = System.nanoTime();
+          MIDIIntermediateRepresentations intermediate;
+          if (windows == null)
+               intermediate = new MIDIIntermediateRepresentations(window_counts, win);
+          else
+          {
+               intermediate = new MIDIIntermediateRepresentations(windows[win], false);
+               if (window_counts != null)
+                    intermediate.setWindowCounts(window_counts, win);
+          }
+          if (profile != null)
+          {
+               profile.addTime("phase", "construction", System.nanoTime() - start);
+               intermediate.setProfile(profile);
+          }
+          return intermediate;
+     }
+     
+     
+     /**
+      * Extracts either the features that only need the given window or the
+      * features that need feature values from other windows from the given
+      * window, storing them in results. Features whose dependencies have not
+      * been extracted are stored as null. Features whose values are already
+      * known are skipped.
+      *
+      * <p>If there is more than one window, features that throw a
+      * RuntimeException when extracted from the window are also stored as
+      * null. This is expected of some features when the window holds no notes
+      * at all. Features that fail on windows holding notes are reported on
+      * standard error.
+      *
+      * <p>If the intermediate representations have a profile, the time taken
+      * by each feature and the sizes of the intermediate representations are
+      * added to it, as are the features that failed on windows holding notes.
+      *
+      * @param	number_windows  The number of windows of the recording.
+      * @param	win             The indice of the window to extract features
+      *                         from.
+      * @param	intermediate    The intermediate representations of the window.
+      * @param	extractors      The feature extractors to use.
+      * @param	cached_values   The already known values of each feature, in
+      *                         the form returned by MIDIFeatureCache.get, or
+      *                         null if none are known.
+      * @param	window_local    True to extract the features that only need
+      *                         the given window, false to extract the others.
+      * @param	results         The feature values of all windows, in the form
+      *                         returned by getFeatures.
+      * @throws	Exception       Throws an exception if a problem occurs.
+      */
+     private void extractFeaturesFromWindow( int number_windows,
+          int win,
+          MIDIIntermediateRepresentations intermediate,
+          MIDIFeatureExtractor[] extractors,
+          double[][][] cached_values,
+          boolean window_local,
+          double[][][] results )
+          throws Exception
+     {
+          MIDIExtractionProfile profile = intermediate.getProfile();
+          
+          // Extract the features one by one
+          for (int feat = 0; feat < extractors.length; feat++)
+          {
+               if (window_local_features[feat] != window_local)
+                    continue;
+               if (cached_values != null && cached_values[feat] != null)
+                    continue;
+               
+               // Only extract this feature if enough previous information
+               // is available to extract this feature
+               if (win >= max_feature_offsets[feat])
+               {
+                    // Find the correct feature
+                    MIDIFeatureExtractor feature = extractors[feat];
+                    
+                    // Find previously extracted feature values that this feature
+                    // needs
+                    double[][] other_feature_values = null;
+                    boolean dependencies_missing = false;
+                    if (feature_extractor_dependencies[feat] != null)
+                    {
+                         other_feature_values = new double[feature_extractor_dependencies[feat].length][];
+                         for (int i = 0; i < feature_extractor_dependencies[feat].length; i++)
+                         {
+                              int feature_indice = feature_extractor_dependencies[feat][i];
+                              int offset = feature.getDepenedencyOffsets()[i];
+                              other_feature_values[i] = results[win + offset][feature_indice];
+                              if (other_feature_values[i] == null)
+                                   dependencies_missing = true;
+                         }
+                    }
+                    
+                    // Store the extracted feature values. A feature
+                    // cannot be extracted from a window if one of its
+                    // dependencies could not be, or if the window holds
+                    // too little music for it (e.g. no notes at all).
+                    if (dependencies_missing)
+                         results[win][feat] = null;
+                    else
+                    {
+                         long start = System.nanoTime();
+                         long generation_time = intermediate.getGenerationTime();
+                         intermediate.generate(feature.getIntermediateRepresentations());
+                         if (number_windows == 1)
+                              results[win][feat] = feature.extractFeature( intermediate.sequence,
+                                   intermediate,
+                                   other_feature_values );
+                         else
+                         {
+                              try
+                              {
+                                   results[win][feat] = feature.extractFeature( intermediate.sequence,
+                                        intermediate,
+                                        other_feature_values );
+                              }
+                              catch (RuntimeException e)
                               {
-                                   int feature_indice = feature_extractor_dependencies[feat][i];
-                                   int offset = feature.getDepenedencyOffsets()[i];
-                                   other_feature_values[i] = results[win + offset][feature_indice];
+                                   results[win][feat] = null;
+                                   reportWindowFailure(feature, win, intermediate, e);
                               }
                          }
                          
-                         // Store the extracted feature values
-                         results[win][feat] = feature.extractFeature( windows[win],
-                              intermediate,
-                              other_feature_values );
+                         // Time the feature, leaving out the time taken to
+                         // generate intermediate representations for it
+                         if (profile != null)
+                         {
+                              long time = System.nanoTime() - start;
+                              time -= intermediate.getGenerationTime() - generation_time;
+                              profile.addTime("feature", feature.getFeatureDefinition().name, time);
+                         }
                     }
-                    else
-                         results[win][feat] = null;
                }
+               else
+                    results[win][feat] = null;
           }
           
-          // Return the results
-          return results;
+          // Note the sizes of the intermediate representations
+          if (profile != null)
+               profile.recordArraySizes(intermediate);
      }
      
      
      /**
-      * Calculates the averages and standard deviations over a whole recording
+      * Reports that the given feature could not be extracted from the given
+      * window because of the given exception. Nothing is reported if the
+      * window holds no notes, as some features are expected to fail on such
+      * windows. Otherwise the feature, the window and the exception are
+      * printed to standard error and added to the profile of the intermediate
+      * representations if they have one.
+      *
+      * @param	feature         The feature that could not be extracted.
+      * @param	win             The indice of the window.
+      * @param	intermediate    The intermediate representations of the window.
+      * @param	exception       The exception thrown by the feature.
+      */
+     private static void reportWindowFailure( MIDIFeatureExtractor feature,
+          int win,
+          MIDIIntermediateRepresentations intermediate,
+          RuntimeException exception )
+     {
+          intermediate.generate(MIDIIntermediateRepresentations.NOTE_COUNTS);
+          if (intermediate.total_number_notes == 0)
+               return;
+          
+          String name = feature.getFeatureDefinition().name;
+          System.err.println( "Could not extract " + name + " from window " + win + ": " + exception );
+          MIDIExtractionProfile profile = intermediate.getProfile();
+          if (profile != null)
+               profile.addFailure(name, win, exception);
+     }
+     
+     
+     /**
+      * Finds the averages and standard deviations over a whole recording
       * of each of the windows-based features. Generates a feature definition
       * for each such feature. If only one value is present (i.e. only one
       * window) then this value is stored without any standard deviation.
       *
-      * @param	window_feature_values        The extracted window feature values
-      *                                      for this recording. The first
-      *                                      indice identifies the window, the
-      *                                      second identifies the feature and
-      *                                      the third identifies the feature
-      *                                      value. The third dimension will
-      *                                      be null if the given feature could
-      *                                      not be extracted for the given
-      *                                      window.
+      * @param	overall_values               The feature values of all of the
+      *                                      windows of this recording, as
+      *                                      accumulated while they were saved.
       * @param	overall_feature_definitions  The feature definitions of the
       *                                      features that are returned by this
       *                                      method. This array will be filled
@@ -599,8 +1595,8 @@ public class MIDIFeatureProcessor
       *                                      values.
       * @return                              The extracted overall average and
       *                                      standard deviations of the window
-      *                                      feature values that were passed to
-      *                                      this method. The first indice
+      *                                      feature values that were
+      *                                      accumulated. The first indice
       *                                      identifies the feature and the
       *                                      second iddentifies the feature
       *                                      value. The order of the features
@@ -609,20 +1605,25 @@ public class MIDIFeatureProcessor
       *                                      overall_feature_definitions
       *                                      parameter is filled with.
       */
-     private double[][] getOverallRecordingFeatures( double[][][] window_feature_values,
+     private double[][] getOverallRecordingFeatures( MIDIOverallFeatureValues overall_values,
           FeatureDefinition[][] overall_feature_definitions )
      {
           LinkedList<double[]> values = new LinkedList<double[]>();
           LinkedList<FeatureDefinition> definitions = new LinkedList<FeatureDefinition>();
           
           for (int feat = 0; feat < feature_extractors.length; feat++)
-               if ( window_feature_values[window_feature_values.length - 1][feat] != null &&
+          {
+               // Find the values from the last window that this feature could
+               // be extracted from, if any
+               double[] last_values = overall_values.getLastValues(feat);
+               
+               if ( last_values != null &&
                features_to_save[feat] )
                {
-               if (window_feature_values.length == 1)
+               if (overall_values.getNumberWindows() == 1)
                {
                     definitions.add(feature_extractors[feat].getFeatureDefinition());
-                    values.add(window_feature_values[0][feat]);
+                    values.add(last_values);
                }
                else
                {
@@ -631,45 +1632,20 @@ public class MIDIFeatureProcessor
                     FeatureDefinition average_definition = new FeatureDefinition( this_def.name + " Overall Average",
                          this_def.description + "\nThis is the overall average over all windows.",
                          this_def.is_sequential,
-                         window_feature_values[window_feature_values.length - 1][feat].length );
+                         last_values.length );
                     FeatureDefinition stdv_definition = new FeatureDefinition( this_def.name + " Overall Standard Deviation",
                          this_def.description + "\nThis is the overall standard deviation over all windows.",
                          this_def.is_sequential,
-                         window_feature_values[window_feature_values.length - 1][feat].length );
-                    
-                    // Find the averages and standard deviations
-                    double[] averages = new double[window_feature_values[window_feature_values.length - 1][feat].length];
-                    double[] stdvs = new double[window_feature_values[window_feature_values.length - 1][feat].length];
-                    for (int val = 0; val < window_feature_values[window_feature_values.length - 1][feat].length; val++)
-                    {
-                         // Find the number of windows that have values for this value feature
-                         int count = 0;
-                         for (int win = 0; win < window_feature_values.length; win++)
-                              if (window_feature_values[win][feat] != null)
-                                   count++;
-                         
-                         // Find the values to find the average and standard deviations of
-                         double[] values_to_process = new double[count];
-                         int current = 0;
-                         for (int win = 0; win < window_feature_values.length; win++)
-                              if (window_feature_values[win][feat] != null)
-                              {
-                              values_to_process[current] = window_feature_values[win][feat][val];
-                              current++;
-                              }
-                         
-                         // Calculate the averages and standard deviations
-                         averages[val] = mckay.utilities.staticlibraries.MathAndStatsMethods.getAverage(values_to_process);
-                         stdvs[val] = mckay.utilities.staticlibraries.MathAndStatsMethods.getStandardDeviation(values_to_process);
-                    }
+                         last_values.length );
                     
                     // Store the results
-                    values.add(averages);
+                    values.add(overall_values.getAverages(feat));
                     definitions.add(average_definition);
-                    values.add(stdvs);
+                    values.add(overall_values.getStandardDeviations(feat));
                     definitions.add(stdv_definition);
                }
                }
+          }
           
           // Finalize the values
           overall_feature_definitions[0] = definitions.toArray(new FeatureDefinition[1]);
@@ -709,87 +1685,119 @@ public class MIDIFeatureProcessor
      
      
      /**
-      * Writes the given feature values extracted from a recording to the
-      * feature_vector_file XML file referred to by the values_writer field.
-      * Writes both the individual window features and the overall recording
-      * features to disk.
+      * Writes the given feature values extracted from a window of a recording
+      * to the feature_vector_file XML file referred to by the values_writer
+      * field, if the features of each window are to be saved, and adds them
+      * to the overall values of the recording. The entry for the recording is
+      * started before its first window is written. Windows must be saved in
+      * order.
       *
-      * @param	feature_values               The extracted feature values for
-      *                                      this recording. The first indice
-      *                                      identifies the window, the second
-      *                                      identifies the feature and the
-      *                                      third identifies the feature value.
-      *                                      The third dimension will be null if
-      *                                      the given feature could not be
-      *                                      extracted for the given window.
-      * @param	identifier                   A string to use for identifying
-      *                                      this recording. Often a file path.
-      * @param	overall_feature_values       The extracted overall average and
-      *                                      standard deviations of the window
-      *                                      feature values. The first indice
-      *                                      identifies the feature and the
-      *                                      second identifies the feature
-      *                                      value. The order of the features
-      *                                      correspond to the
-      *                                      overall_feature_definitions
-      *                                      parameter. This value is null if
-      *                                      overall feature values were not
-      *                                      extracted.
-      * @param	overall_feature_definitions  The feature definitions of the
-      *                                      features that are in the
-      *                                      overall_feature_values parameter.
-      *                                      Will be null if no overall features
-      *                                      were extracted.
-      * @throws	Exception                    Throws an exception if cannot
-      *                                      write.
+      * @param	win                  The indice of the window.
+      * @param	feature_values       The extracted feature values for this
+      *                              window. The first indice identifies the
+      *                              feature and the second identifies the
+      *                              feature value. The second dimension will
+      *                              be null if the given feature could not be
+      *                              extracted for the window.
+      * @param	identifier           A string to use for identifying this
+      *                              recording. Often a file path.
+      * @param	overall_values       The overall values of the recording that
+      *                              the feature values are added to.
+      * @param	profile              The profile to add the time taken to save
+      *                              the window to, or null.
+      * @throws	Exception            Throws an exception if cannot write.
       */
-     private void saveFeatureVectorsForARecording( double[][][] feature_values,
+     private void saveWindowFeatures( int win,
+          double[][] feature_values,
           String identifier,
-          double[][] overall_feature_values,
-          FeatureDefinition[] overall_feature_definitions )
+          MIDIOverallFeatureValues overall_values,
+          MIDIExtractionProfile profile )
           throws Exception
      {
+          long start = System.nanoTime();
+          
           // Start the entry for the recording
-          values_writer.writeBytes("\t<data_set>\n");
-          values_writer.writeBytes("\t\t<data_set_id>" + identifier + "</data_set_id>\n");
+          if (win == 0)
+          {
+               values_writer.writeBytes("\t<data_set>\n");
+               values_writer.writeBytes("\t\t<data_set_id>" + identifier + "</data_set_id>\n");
+          }
           
-          // Write the features for individual windows
+          // Write the features for the window
           if (save_features_for_each_window)
-               for (int win = 0; win < feature_values.length; win++)
-               {
-//				double start_time = ((double) window_start_indices[win]) / sampling_rate;
-// FIX THIS start_time DEFINITION
+          {
                double start_time = 0.0;
-//				double end_time = ((double) (window_start_indices[win] + window_size - 1)) / sampling_rate;
-// FIX THIS end_time DEFINITION
                double end_time = 0.0;
+               if (!do_not_use_windows)
+               {
+                    start_time = win * (window_size - window_overlap_offset);
+                    end_time = start_time + window_size;
+               }
                values_writer.writeBytes( "\t\t<section start=\"" + start_time +
                     "\" stop=\"" + end_time + "\">\n");
-               for (int feat = 0; feat < feature_values[win].length; feat++)
+               for (int feat = 0; feat < feature_values.length; feat++)
                {
                     if (features_to_save[feat])
-                         if (feature_values[win][feat] != null)
+                         if (feature_values[feat] != null)
                          {
                          String feature_name = feature_extractors[feat].getFeatureDefinition().name;
                          values_writer.writeBytes("\t\t\t<feature>\n");
                          values_writer.writeBytes("\t\t\t\t<name>" + feature_name + "</name>\n");
-                         for (int val = 0; val < feature_values[win][feat].length; val++)
+                         for (int val = 0; val < feature_values[feat].length; val++)
                          {
-                              String value = mckay.utilities.staticlibraries.StringMethods.getDoubleInScientificNotation(feature_values[win][feat][val], 4);
+                              String value = mckay.utilities.staticlibraries.StringMethods.getDoubleInScientificNotation(feature_values[feat][val], 4);
                               values_writer.writeBytes("\t\t\t\t<v>" + value + "</v>\n");
                          }
                          values_writer.writeBytes("\t\t\t</feature>\n");
                          }
                }
                values_writer.writeBytes("\t\t</section>\n");
-               }
+          }
+          
+          // Accumulate the overall values
+          overall_values.add(feature_values);
+          
+          if (profile != null)
+               profile.addTime("phase", "saving", System.nanoTime() - start);
+     }
+     
+     
+     /**
+      * Finishes the entry for a recording whose windows have all been saved
+      * by saveWindowFeatures in the feature_vector_file XML file, writing the
+      * overall averages and standard deviations of its features if
+      * appropriate. The feature definitions are also saved if they have not
+      * been already, and the measurements of the recording are written to
+      * the profile report if there is one.
+      *
+      * @param	overall_values       The overall values of the recording.
+      * @param	identifier           A string to use for identifying this
+      *                              recording. Often a file path.
+      * @param	profile              The measurements of the extraction of the
+      *                              recording, or null if there are none.
+      * @throws	Exception            Throws an exception if cannot write.
+      */
+     private void finishSavingRecording( MIDIOverallFeatureValues overall_values,
+          String identifier,
+          MIDIExtractionProfile profile )
+          throws Exception
+     {
+          long start = System.nanoTime();
+          
+          // Find the feature averages and standard deviations if appropriate
+          FeatureDefinition[][] overall_feature_definitions = new FeatureDefinition[1][];
+          overall_feature_definitions[0] = null;
+          double[][] overall_feature_values = null;
+          if (save_overall_recording_features)
+               overall_feature_values = getOverallRecordingFeatures( overall_values,
+                    overall_feature_definitions );
           
           // Write the features for the file
           if (overall_feature_values != null)
                for (int feat = 0; feat < overall_feature_values.length; feat++)
                {
                values_writer.writeBytes("\t\t<feature>\n");
-               values_writer.writeBytes("\t\t\t<name>" + overall_feature_definitions[feat].name + "</name>\n");
+               values_writer.writeBytes("\t\t\t<name>" + overall_feature_definitions[0][feat].name + "</name>\n");
                for (int val = 0; val < overall_feature_values[feat].length; val++)
                {
                     String value = mckay.utilities.staticlibraries.StringMethods.getDoubleInScientificNotation(overall_feature_values[feat][val], 4);
@@ -800,6 +1808,18 @@ public class MIDIFeatureProcessor
           
           // End the entry for the recording
           values_writer.writeBytes("\t</data_set>\n\n");
+          
+          // Save the feature definitions
+          if (!definitions_written)
+               saveFeatureDefinitions(overall_values.getLastWindowValues(), overall_feature_definitions[0]);
+          
+          // Report the measurements of this recording
+          if (profile != null && profile_writer != null)
+          {
+               profile.addTime("phase", "saving", System.nanoTime() - start);
+               profile.write(profile_writer, identifier);
+               batch_profile.addAll(profile);
+          }
      }
      
      
@@ -808,11 +1828,11 @@ public class MIDIFeatureProcessor
       * definitions_writer field. Writes both overall and individual feature
       * definitions.
       *
-      * @param	feature_values               The extracted feature values for a
-      *                                      recording. The first indice
-      *                                      identifies the window, the second
-      *                                      identifies the feature and the
-      *                                      third identifies the feature value.
+      * @param	last_window_features         The extracted feature values of
+      *                                      the last window of a recording.
+      *                                      The first indice identifies the
+      *                                      feature and the second identifies
+      *                                      the feature value.
       * @param	overall_feature_definitions  The feature definitions of the
       *                                      features that are in the features
       *                                      for the recording. Will be null if
@@ -820,7 +1840,7 @@ public class MIDIFeatureProcessor
       * @throws	Exception                    Throws an exception if cannot
       *                                      write.
       */
-     private void saveFeatureDefinitions( double[][][] feature_values,
+     private void saveFeatureDefinitions( double[][] last_window_features,
           FeatureDefinition[] overall_feature_definitions )
           throws Exception
      {
@@ -841,8 +1861,6 @@ public class MIDIFeatureProcessor
                );
           definitions_writer.writeBytes(feature_key_header);
           
-          double[][] last_window_features = feature_values[feature_values.length - 1];
-          
           // Write the window functions
           if (save_features_for_each_window)
                for (int feat = 0; feat < feature_extractors.length; feat++)
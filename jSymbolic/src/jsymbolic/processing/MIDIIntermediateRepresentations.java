@@ -20,6 +20,13 @@ import  javax.sound.midi.*;
  * a number of different representations of the MIDI file and statistics about
  * it. These fields can then be accessed by feature objects.
  *
+ * <p>The fields are divided into groups, each identified by one of the
+ * constants below. A group may be generated when an object is constructed, or
+ * only when it is requested through the generate method. Each group is only
+ * generated once, along with any other groups that it is calculated from, so
+ * that a feature extractor that requests only what it needs does not pay for
+ * the representations that other feature extractors use.
+ *
  * <p><b>Important Notes:<b>
  *
  * <p>- Patches are numbered one unit lower here than in their General MIDI
@@ -40,6 +47,90 @@ public class MIDIIntermediateRepresentations
      /* FIELDS ****************************************************************/
      
      
+     /**
+      * Identifies the meta_data field.
+      */
+     public static final int    META_DATA = 0;
+     
+     /**
+      * Identifies the pitched_instrumentation_frequencies and
+      * pitched_instrumentation_intervals fields.
+      */
+     public static final int    PITCHED_INSTRUMENTATION = 1;
+     
+     /**
+      * Identifies the non_pitched_instrumentation_frequencies field.
+      */
+     public static final int    NON_PITCHED_INSTRUMENTATION = 2;
+     
+     /**
+      * Identifies the total_number_notes, total_number_pitched_notes,
+      * total_number_unpitched_notes and pitched_note_counts fields.
+      */
+     public static final int    NOTE_COUNTS = 3;
+     
+     /**
+      * Identifies the recording_length field.
+      */
+     public static final int    RECORDING_LENGTH = 4;
+     
+     /**
+      * Identifies the channel_intervals, sounding_channels_run_starts,
+      * sounding_channels_run_counts and channel_statistics fields.
+      */
+     public static final int    TEXTURE = 5;
+     
+     /**
+      * Identifies the rhythmic_histogram field.
+      */
+     public static final int    RHYTHMIC_HISTOGRAM = 6;
+     
+     /**
+      * Identifies the rhythmic_histogram_table field.
+      */
+     public static final int    RHYTHMIC_HISTOGRAM_TABLE = 7;
+     
+     /**
+      * Identifies the note_durations field.
+      */
+     public static final int    NOTE_DURATIONS = 8;
+     
+     /**
+      * Identifies the note_beginnings field.
+      */
+     public static final int    NOTE_BEGINNINGS = 9;
+     
+     /**
+      * Identifies the note_loudnesses field.
+      */
+     public static final int    NOTE_LOUDNESSES = 10;
+     
+     /**
+      * Identifies the basic_pitch_histogram, pitch_class_histogram and
+      * fifths_pitch_histogram fields.
+      */
+     public static final int    PITCH_HISTOGRAMS = 11;
+     
+     /**
+      * Identifies the pitch_bends_list field.
+      */
+     public static final int    PITCH_BENDS = 12;
+     
+     /**
+      * Identifies the melodic_histogram and melody_list fields.
+      */
+     public static final int    MELODIC = 13;
+     
+     /**
+      * Identifies the sequence field.
+      */
+     public static final int    SEQUENCE = 14;
+     
+     /**
+      * The number of groups of fields identified by the constants above.
+      */
+     public static final int    NUMBER_OF_REPRESENTATIONS = 15;
+     
      /**
       * A listing of meta information. Indices correspond to the following:
       *
@@ -66,12 +157,13 @@ public class MIDIIntermediateRepresentations
      public    int[][]        pitched_instrumentation_frequencies;
      
      /**
-      * A table with rows (first indice) corresponding to MIDI ticks in the MIDI
-      * file. The columns (second indice) correspond to the pitched General MIDI
-      * patches. An entry is set to true if a particular patch is playing at
-      * least one note during a particular MIDI tick.
+      * The MIDI ticks during which each pitched General MIDI patch is playing
+      * at least one note. The first indice corresponds to the patch. Each
+      * array holds pairs of ticks in increasing order, the first of each pair
+      * being the first tick of a span of ticks during which the patch is
+      * playing and the second being the tick after the last tick of the span.
       */
-     public    boolean[][]    pitched_instrumentation_tick_map;
+     public    long[][]       pitched_instrumentation_intervals;
      
      /**
       * An array whose indice corresponds to patches from the MIDI Percussion
@@ -107,21 +199,48 @@ public class MIDIIntermediateRepresentations
       */
      public    int            total_number_unpitched_notes;
      
+     /**
+      * The total number of Note Ons in the recording that were played using
+      * each General MIDI pitched patch. Indices correspond to patch numbers.
+      * Any notes on Channel 10 (percussion) are ignored.
+      */
+     public    int[]          pitched_note_counts;
+     
      /**
       * The length in seconds of the recording
       */
      public    int            recording_length;
      
      /**
-      * A table with rows (first indice) corresponding to MIDI ticks in the MIDI
-      * file. The columns (second indice) correspond to the MIDI channels. An
-      * entry is set to true if one or more notes was sounding on the given
-      * channel during the given MIDI tick.
+      * The number of MIDI ticks in the recording, including tick 0.
+      */
+     public    long           number_of_ticks;
+     
+     /**
+      * The MIDI ticks during which one or more notes are sounding on each
+      * channel. The first indice corresponds to the channel. Each array holds
+      * pairs of ticks in increasing order, the first of each pair being the
+      * first tick of a span of ticks during which notes are sounding and the
+      * second being the tick after the last tick of the span.
       *
       * <p>NOTE: this includes channel 10, even though it is understood that
       * channel 10 notes are played using percussion patches, not pitch patches.
       */
-     public    boolean[][]    channel_tick_map;
+     public    long[][]       channel_intervals;
+     
+     /**
+      * The first ticks of consecutive spans of ticks during which the number
+      * of channels with at least one note sounding stays the same. The first
+      * entry is always 0 and a final entry equal to number_of_ticks is added
+      * after the first tick of the last span.
+      */
+     public    long[]         sounding_channels_run_starts;
+     
+     /**
+      * The number of channels with at least one note sounding during each
+      * span of ticks in sounding_channels_run_starts.
+      */
+     public    int[]          sounding_channels_run_counts;
      
      /**
       * A table with rows (first indice) corresponding to channels and the
@@ -193,15 +312,15 @@ public class MIDIIntermediateRepresentations
      public    LinkedList     note_durations;
      
      /**
-      * A table with rows corresponding to MIDI ticks and columns corresponding
-      * to MIDI channels. Entries are set to true whenever a Note On event
-      * occurred on a given channel, and to false otherwise.
+      * The MIDI ticks on which Note On events occurred. The first indice
+      * corresponds to the MIDI channel, and each array holds the ticks on
+      * which at least one Note On occurred on that channel, in increasing
+      * order and without duplicates.
       *
-      * <p>A final column (column 16) was added whose entry was set to true if
-      * at least one Note On occurred on any channel at the corresponding MIDI
-      * tick, and to false otherwise.
+      * <p>A final entry (indice 16) was added that holds the ticks on which at
+      * least one Note On occurred on any channel.
       */
-     public    boolean[][]    note_beginnings_map;
+     public    long[][]       note_beginnings;
      
      /**
       * Gives the loudnesses of all notes. The first indice corresponds to
@@ -271,31 +390,109 @@ public class MIDIIntermediateRepresentations
      public    LinkedList[]   melody_list;
      
      /**
-      * An array with an entry for each tick. The value at each indice gives the
-      * duration of a tick in seconds at that particular point in the recording.
+      * The ticks at which the duration of a tick changes, in increasing order.
+      * The first entry is always 0. Used by getSecondsPerTick and
+      * addSecondsOfTicks.
+      */
+     private   long[]         tempo_change_ticks;
+     
+     /**
+      * The duration of a tick in seconds from each tick in tempo_change_ticks
+      * up to the next one.
       */
-     public    double[]       seconds_per_tick;
+     private   double[]       tempo_seconds_per_tick;
      
      /**
-      * A table with rows (first indice) corresponding to MIDI ticks in the MIDI
-      * file. The columns (second indice) correspond to the MIDI channels. An
-      * entry is set to the channel volume as set by channel volume controller
-      * messages divided by 127.
+      * The ticks at which the volume of each channel changes, in increasing
+      * order. The first indice corresponds to the channel. The first entry for
+      * each channel is always 0. Used by getVolume.
+      */
+     private   long[][]       volume_change_ticks;
+     
+     /**
+      * The channel volume as set by channel volume controller messages divided
+      * by 127, from each tick in volume_change_ticks up to the next one.
       *
       * <p>NOTE: the default is set to 1.0, which corresponds to a controller
       * value of 127.
       */
-     public    double[][]     volumes;
+     private   double[][]     channel_volumes;
+     
+     /**
+      * The first and last ticks (exclusive), channel and patch of every note in
+      * the recording. Notes are ordered by track and then by the order of
+      * their Note Ons within each track. The number of notes is given by
+      * number_note_intervals.
+      */
+     private   boolean        note_intervals_generated;
+     private   long[]         note_start_ticks;
+     private   long[]         note_end_ticks;
+     private   int[]          note_channels;
+     private   int[]          note_patches;
+     private   int            number_note_intervals;
+     
+     /**
+      * Whether each group of fields has been generated. Indices correspond to
+      * the constants identifying the groups.
+      */
+     private   boolean[]      generated;
+     
+     /**
+      * The profile that the time taken to generate each group of fields is
+      * added to. Null if generation is not to be timed.
+      */
+     private   MIDIExtractionProfile profile;
+     
+     /**
+      * The total time in nanoseconds spent generating groups of fields while
+      * a profile has been set. While a group is being generated, this only
+      * holds the time spent generating the groups that it is calculated from,
+      * so that it is not counted as part of the time of that group as well.
+      */
+     private   long           generation_time;
+     
+     /**
+      * The names of the groups of fields, used when timing them. Indices
+      * correspond to the constants identifying the groups.
+      */
+     private static final String[] REPRESENTATION_NAMES = { "META_DATA",
+          "PITCHED_INSTRUMENTATION",
+          "NON_PITCHED_INSTRUMENTATION",
+          "NOTE_COUNTS",
+          "RECORDING_LENGTH",
+          "TEXTURE",
+          "RHYTHMIC_HISTOGRAM",
+          "RHYTHMIC_HISTOGRAM_TABLE",
+          "NOTE_DURATIONS",
+          "NOTE_BEGINNINGS",
+          "NOTE_LOUDNESSES",
+          "PITCH_HISTOGRAMS",
+          "PITCH_BENDS",
+          "MELODIC",
+          "SEQUENCE" };
+     
+     /**
+      * The MIDI events of the recording, from which all of the other fields
+      * are calculated. Null if this object was constructed from the counts of
+      * a window.
+      */
+     public    MIDIEventTable events;
      
      /**
-      * Data loaded from a MIDI file
+      * The counts of the windows of a recording and the indice of the window
+      * that this object describes. The groups of fields for which
+      * canGenerateFromWindowCounts is true are filled in from these counts
+      * rather than from the events. Null if there are no counts.
       */
-     private   Sequence       sequence;
+     private   MIDIWindowCounts window_counts;
+     private   int            window;
      
      /**
-      * Data loaded from a MIDI file
+      * The recording as a javax.sound.midi Sequence. This is only built from
+      * events when it is requested, or taken from the Sequence that this object
+      * was constructed from.
       */
-     private   Track[]        tracks;
+     public    Sequence       sequence;
      
      /**
       * Average number of MIDI ticks corresponding to 1 second of score time
@@ -322,223 +519,295 @@ public class MIDIIntermediateRepresentations
      public MIDIIntermediateRepresentations(Sequence midi_sequence)
      throws Exception
      {
-          // Check the MIDI sequence. Throw exceptions if the it uses SMPTE timing
-          // or if it is too big. Fill sequence and tracks fields otherwise.
-          sequence = midi_sequence;
-          tracks = sequence.getTracks();
-          if (sequence.getDivisionType() != Sequence.PPQ)
+          this(midi_sequence, true);
+     }
+     
+     
+     /**
+      * Parses the given MIDI sequence. Fills all of the fields with the
+      * appropriate values extracted from this sequence if generate_all is
+      * true. Otherwise fields are only filled when they are requested through
+      * the generate method.
+      *
+      * <p>Throws exceptions if an error is encountered when parsing the file.
+      * These exceptions contain informative information about the error.
+      *
+      * @param      midi_sequence  The MIDI sequence to extract information
+      *                            from.
+      * @param      generate_all   Whether to fill all of the fields now.
+      * @throws     Exception      Informative exceptions are thrown if problems
+      *                            are encountered during parsing.
+      */
+     public MIDIIntermediateRepresentations(Sequence midi_sequence, boolean generate_all)
+     throws Exception
+     {
+          this(new MIDIEventTable(midi_sequence), generate_all);
+     }
+     
+     
+     /**
+      * Parses the given MIDI events. Fills all of the fields with the
+      * appropriate values extracted from these events if generate_all is
+      * true. Otherwise fields are only filled when they are requested through
+      * the generate method.
+      *
+      * <p>Throws exceptions if an error is encountered when parsing the events.
+      * These exceptions contain informative information about the error.
+      *
+      * @param      midi_events    The MIDI events to extract information
+      *                            from.
+      * @param      generate_all   Whether to fill all of the fields now.
+      * @throws     Exception      Informative exceptions are thrown if problems
+      *                            are encountered during parsing.
+      */
+     public MIDIIntermediateRepresentations(MIDIEventTable midi_events, boolean generate_all)
+     throws Exception
+     {
+          // Check the MIDI events. Throw exceptions if they use SMPTE timing
+          // or if they are too long. Fill the events field otherwise.
+          events = midi_events;
+          if (events.division_type != Sequence.PPQ)
                throw new Exception("The current MIDI sequence uses SMPTE time encoding." +
                     "\nOnly PPQ time encoding is excepted here.");
-          if ( ((double) sequence.getTickLength()) > ((double) Integer.MAX_VALUE) - 1.0)
+          if ( ((double) events.tick_length) > ((double) Integer.MAX_VALUE) - 1.0)
                throw new Exception("The currentMIDI sequence could not be processed because it is too big.");
           
           // Caclulate timing information
-          mean_ticks_per_sec = ((double) sequence.getTickLength()) / ((double) sequence.getMicrosecondLength() / 1000000.0);
+          mean_ticks_per_sec = ((double) events.tick_length) / ((double) events.microsecond_length / 1000000.0);
           
-          // Make sure that tempo change messages are accounted for in seconds_per_tick
+          // Make sure that tempo change messages are accounted for in tick durations
+          number_of_ticks = events.tick_length + 1;
           generateTempoAndVolumeMaps();
           
-//for (int i = 0; i < seconds_per_tick.length; i++)
-//	System.out.println(i + " " + seconds_per_tick[i]);
-          
-/*
-for (int i = 0 ;i < volumes.length; i++)
-{
-        System.out.print("\nTick: " + i + "     ");
-        for (int j = 0; j < volumes[i].length; j++)
-        {
-                System.out.print("j: " + j + " vol: " + volumes[i][j] + "    ");
-        }
-}
- */
-          
           // Fill in the public fields of this class
+          generated = new boolean[NUMBER_OF_REPRESENTATIONS];
+          if (generate_all)
+               for (int representation = 0; representation < NUMBER_OF_REPRESENTATIONS; representation++)
+                    generate(representation);
+     }
+     
+     
+     /**
+      * Prepares the fields of the given window of a recording without the
+      * events of the window. Only the groups of fields for which
+      * canGenerateFromWindowCounts is true can be generated, as they are
+      * filled in from the given counts. Generating any other group throws an
+      * IllegalStateException.
+      *
+      * @param      counts         The counts of the windows of a recording.
+      * @param      window         The indice of the window to describe.
+      */
+     public MIDIIntermediateRepresentations(MIDIWindowCounts counts, int window)
+     {
+          window_counts = counts;
+          this.window = window;
+          generated = new boolean[NUMBER_OF_REPRESENTATIONS];
+     }
+     
+     
+     /* PUBLIC METHODS ********************************************************/
+     
+     
+     /**
+      * Sets the profile that the time taken to generate each group of fields
+      * from now on is to be added to. The time of each group does not include
+      * the time taken by the other groups that it is calculated from.
+      *
+      * @param	profile            The profile to add times to, or null if
+      *                            generation is not to be timed.
+      */
+     public void setProfile(MIDIExtractionProfile profile)
+     {
+          this.profile = profile;
+     }
+     
+     
+     /**
+      * Returns the profile set by setProfile, or null if there is none.
+      */
+     public MIDIExtractionProfile getProfile()
+     {
+          return profile;
+     }
+     
+     
+     /**
+      * Returns the total time in nanoseconds spent generating groups of
+      * fields while a profile has been set.
+      */
+     public long getGenerationTime()
+     {
+          return generation_time;
+     }
+     
+     
+     /**
+      * Returns the name of the group of fields identified by the given
+      * constant, e.g. "TEXTURE" for TEXTURE.
+      *
+      * @param	representation     The constant identifying the group of
+      *                            fields.
+      * @return                    The name of the group.
+      */
+     public static String getRepresentationName(int representation)
+     {
+          return REPRESENTATION_NAMES[representation];
+     }
+     
+     
+     /**
+      * Fills in the given groups of fields if they have not already been
+      * filled in, along with any other groups that they are calculated from.
+      *
+      * @param	representations    The constants identifying the groups of
+      *                            fields to fill in. All groups are filled in
+      *                            if this is null.
+      */
+     public void generate(int[] representations)
+     {
+          if (representations == null)
+               for (int representation = 0; representation < NUMBER_OF_REPRESENTATIONS; representation++)
+                    generate(representation);
+          else
+               for (int i = 0; i < representations.length; i++)
+                    generate(representations[i]);
+     }
+     
+     
+     /**
+      * Fills in the given group of fields if it has not already been filled
+      * in, along with any other groups that it is calculated from.
+      *
+      * @param	representation     The constant identifying the group of fields
+      *                            to fill in.
+      */
+     public void generate(int representation)
+     {
+          if (generated[representation])
+               return;
           
-          generateMetaInfo();
-          
-/*
-int quality = ((Integer) meta_data[0]).intValue();
-Object[] numerators_objects = ((LinkedList) meta_data[1]).toArray();
-int[] numerators = new int[numerators_objects.length];
-for (int i = 0; i < numerators.length; i++)
-        numerators[i] = ((Integer) numerators_objects[i]).intValue();
-Object[] denominators_objects = ((LinkedList) meta_data[2]).toArray();
-int[] denominators = new int[denominators_objects.length];
-for (int i = 0; i < denominators.length; i++)
-        denominators[i] = ((Integer) denominators_objects[i]).intValue();
-int tempo = ((Integer) meta_data[3]).intValue();
-System.out.println(quality);
-for (int i = 0; i < numerators.length; i++)
-        System.out.print(numerators[i] + " ");
-for (int i = 0; i < denominators.length; i++)
-        System.out.print(denominators[i] + " ");
-System.out.println("\n" + tempo);
-System.out.println();
- */
-          
-          generatePitchedInstrumentationIntermediateRepresentations();
-          
-//for (int i = 0 ; i < pitched_instrumentation_frequencies.length; i ++)
-//	System.out.println("INST: " + i + "   N Ons: " + pitched_instrumentation_frequencies[i][0] + "    Time: " + pitched_instrumentation_frequencies[i][1]);
-          
-          
-/*
-for (int i = 0; i < pitched_instrumentation_tick_map.length; i++)
-{
-        System.out.print("Tick: " + i + " - ");
-        for (int j = 0; j < pitched_instrumentation_tick_map[i].length; j++)
-                System.out.print("Inst " + j + ": " + pitched_instrumentation_tick_map[i][j] + "  |  ");
-        System.out.print("\n");
-}
- */
-          
-          generateNonPitchedInstrumentationIntermediateRepresentation();
-          
-//for (int i = 0; i < non_pitched_instrumentation_frequencies.length; i++)
-//	System.out.println(i + " " + non_pitched_instrumentation_frequencies[i]);
-          
-          
-          generateNoteCountsIntermediateRepresentations();
-          
-//System.out.println(total_number_notes + " " + total_number_pitched_notes + " " + total_number_unpitched_notes);
-          
-          generateDurationIntermediateRepresentation();
-          
-//System.out.println(recording_length);
-          
-          
-          generateTextureIntermediateRepresentation();
-          
-          
-/*
-for (int i = 0; i < channel_tick_map.length; i++)
-{
-        System.out.print("Tick: " + i + " - ");
-        for (int j = 0; j < channel_tick_map[i].length; j++)
-                System.out.print("Channel " + j + ": " + channel_tick_map[i][j] + "  |  ");
-        System.out.print("\n");
-}
- */
-          
-/*
-for (int i = 0; i < channel_statistics.length; i++)
-{
-        System.out.print("Channel: " + i + "  ");
-        for (int j = 0; j < channel_statistics[i].length; j++)
-                System.out.print(channel_statistics[i][j] + "    ");
-        System.out.print("\n");
-}
- */
-          
-          generateRhythmicHistogramIntermediateRepresentation();
-          
-//for (int i = 0; i < rhythmic_histogram.length; i++)
-//	System.out.println("BPM: " + i + ": " + rhythmic_histogram[i]);
-          
-          
-          generateRhythmicHistogramTableIntermediateRepresentation();
-          
-/*
-for (int i = 0 ;i < rhythmic_histogram_table.length; i++)
-{
-        System.out.print("\nBPM: " + i + "     ");
-        for (int j = 0; j < rhythmic_histogram_table[i].length; j++)
-                System.out.print("   " + rhythmic_histogram_table[i][j]);
-}
- */
-          
-          generateNoteDurationsIntermediateRepresentation();
-          
-/*
-for (int i = 0; i < note_durations.size(); i++)
-{
-        double duration = ((Double) (note_durations.get(i))).doubleValue();
-        System.out.println(duration);
-}
- */
-          
-          generateNoteBeginningsMapIntermediateRepresentation();
-          
-/*
-for (int i = 0 ;i < note_beginnings_map.length; i++)
-{
-        System.out.print("\ntick: " + i + "     ");
-        for (int j = 0; j < note_beginnings_map[i].length; j++)
-                System.out.print("   " + note_beginnings_map[i][j]);
-}
- */
-          
-          generateNoteLoudnesses();
-          
-/*
-for (int i = 0 ;i < note_loudnesses.length; i++)
-{
-        System.out.print("\nCHAN: " + i + "  ");
-        for (int j = 0; j < note_loudnesses[i].length; j++)
-                System.out.print("   " + note_loudnesses[i][j]);
-}
-System.out.println("\n");
- */
-          
-          generatePitchHistogramsIntermediateRepresentations();
-          
-/*
-System.out.println("basic_pitch_histogram");
-for (int i = 0; i < basic_pitch_histogram.length; i++)
-        System.out.println(i + ": " + basic_pitch_histogram[i]);
-System.out.println("pitch_class_histogram");
-for (int i = 0; i < pitch_class_histogram.length; i++)
-        System.out.println(i + ": " + pitch_class_histogram[i]);
-System.out.println("fifths_pitch_histogram");
-for (int i = 0; i < fifths_pitch_histogram.length; i++)
-        System.out.println(i + ": " + fifths_pitch_histogram[i]);
- */
-          
-          generatePitchBendsList();
-          
-/*
-Object[] notes_objects = pitch_bends_list.toArray();
-LinkedList[] notes = new LinkedList[notes_objects.length];
-for (int i = 0; i < notes.length; i++)
-        notes[i] = (LinkedList) notes_objects[i];
-int[][] pitch_bends = new int[notes.length][];
-for (int i = 0; i < notes.length; i++)
-{
-        Object[] this_note_pitch_bends_objects = notes[i].toArray();
-        pitch_bends[i] = new int[this_note_pitch_bends_objects.length];
-        for (int j = 0; j < pitch_bends[i].length; j++)
-                pitch_bends[i][j] = ((Integer) this_note_pitch_bends_objects[j]).intValue();
-}
-System.out.println(pitch_bends.length);
-for (int i = 0; i < pitch_bends.length; i++)
-{
-        for (int j = 0; j < pitch_bends[i].length; j++)
-                System.out.print(pitch_bends[i][j] + " ");
-        System.out.print("\n\n");
-}
-System.out.print("\n\n--\n\n");
- */
-          
-          generateMelodicIntermediateRepresentations();
+          long start = 0;
+          long outer_generation_time = generation_time;
+          if (profile != null)
+          {
+               start = System.nanoTime();
+               generation_time = 0;
+          }
           
-/*
-for (int i = 0; i < melodic_histogram.length; i++)
-        System.out.println(i + ": " + melodic_histogram[i]);
- */
+          if (window_counts != null && canGenerateFromWindowCounts(representation))
+               generateFromWindowCounts(representation);
+          else if (events == null)
+               throw new IllegalStateException(REPRESENTATION_NAMES[representation] +
+                    " cannot be generated without the MIDI events of the window.");
+          else
+          {
+               switch (representation)
+               {
+                    case META_DATA:
+                         generateMetaInfo();
+                         break;
+                    case PITCHED_INSTRUMENTATION:
+                         generateNoteIntervalsIfNeeded();
+                         generatePitchedInstrumentationIntermediateRepresentations();
+                         break;
+                    case NON_PITCHED_INSTRUMENTATION:
+                         generateNonPitchedInstrumentationIntermediateRepresentation();
+                         break;
+                    case NOTE_COUNTS:
+                         generateNoteIntervalsIfNeeded();
+                         generateNoteCountsIntermediateRepresentations();
+                         break;
+                    case RECORDING_LENGTH:
+                         generateDurationIntermediateRepresentation();
+                         break;
+                    case TEXTURE:
+                         generateNoteIntervalsIfNeeded();
+                         generateTextureIntermediateRepresentation();
+                         break;
+                    case RHYTHMIC_HISTOGRAM:
+                         generateRhythmicHistogramIntermediateRepresentation();
+                         break;
+                    case RHYTHMIC_HISTOGRAM_TABLE:
+                         generate(RHYTHMIC_HISTOGRAM);
+                         generateRhythmicHistogramTableIntermediateRepresentation();
+                         break;
+                    case NOTE_DURATIONS:
+                         generateNoteIntervalsIfNeeded();
+                         generateNoteDurationsIntermediateRepresentation();
+                         break;
+                    case NOTE_BEGINNINGS:
+                         generateNoteIntervalsIfNeeded();
+                         generateNoteBeginningsMapIntermediateRepresentation();
+                         break;
+                    case NOTE_LOUDNESSES:
+                         generate(TEXTURE);
+                         generateNoteLoudnesses();
+                         break;
+                    case PITCH_HISTOGRAMS:
+                         generatePitchHistogramsIntermediateRepresentations();
+                         break;
+                    case PITCH_BENDS:
+                         generatePitchBendsList();
+                         break;
+                    case MELODIC:
+                         generateMelodicIntermediateRepresentations();
+                         break;
+                    case SEQUENCE:
+                         sequence = events.getSequence();
+                         break;
+               }
+          }
           
-/*
-for (int i = 0 ;i < melody_list.length; i++)
-{
-        System.out.print("\nChannel: " + i + "     ");
-        for (int j = 0; j < melody_list[i].size(); j++)
-                System.out.print(" " + ((Integer) melody_list[i].get(j)).intValue());
-}
- */
+          generated[representation] = true;
           
+          if (profile != null)
+          {
+               long time = System.nanoTime() - start;
+               profile.addTime("representation", REPRESENTATION_NAMES[representation], time - generation_time);
+               generation_time = outer_generation_time + time;
+          }
      }
      
      
-     /* PUBLIC METHODS ********************************************************/
+     /**
+      * Has the groups of fields for which canGenerateFromWindowCounts is true
+      * filled in from the given counts of a window from now on, rather than
+      * from the events of this object. This object must hold the events of
+      * that window, as produced by MIDIMethods.breakSequenceIntoWindows, in
+      * which case the fields are the same as if they had been generated from
+      * the events.
+      *
+      * @param	counts             The counts of a series of windows.
+      * @param	window             The indice of the window whose events this
+      *                            object holds.
+      */
+     public void setWindowCounts(MIDIWindowCounts counts, int window)
+     {
+          window_counts = counts;
+          this.window = window;
+     }
+     
+     
+     /**
+      * Returns whether the given group of fields can be filled in from the
+      * counts of a window held by a MIDIWindowCounts, without the events of
+      * the window. These are the PITCH_HISTOGRAMS,
+      * NON_PITCHED_INSTRUMENTATION, NOTE_COUNTS, NOTE_DURATIONS and MELODIC
+      * groups.
+      *
+      * @param	representation     The constant identifying the group of
+      *                            fields.
+      * @return                    Whether the group can be filled in from
+      *                            the counts of a window.
+      */
+     public static boolean canGenerateFromWindowCounts(int representation)
+     {
+          return representation == PITCH_HISTOGRAMS ||
+               representation == NON_PITCHED_INSTRUMENTATION ||
+               representation == NOTE_COUNTS ||
+               representation == NOTE_DURATIONS ||
+               representation == MELODIC;
+     }
      
      
      /**
@@ -554,59 +823,117 @@ for (int i = 0 ;i < melody_list.length; i++)
      public static double calculateInstrumentGroupFrequency( int[] instruments,
           MIDIIntermediateRepresentations sequence_info)
      {
+          sequence_info.generate(NOTE_COUNTS);
+          
           int notes_played = 0;
           for (int i = 0; i < instruments.length; i++)
-               notes_played += sequence_info.pitched_instrumentation_frequencies[ instruments[i] ][0];
+               notes_played += sequence_info.pitched_note_counts[ instruments[i] ];
           
           return ((double) notes_played) / ((double) sequence_info.total_number_notes);
      }
      
      
+     /**
+      * Returns the duration in seconds of the given MIDI tick, taking tempo
+      * change messages into account.
+      *
+      * @param	tick     The tick to find the duration of.
+      * @return          The duration of the tick in seconds.
+      */
+     public double getSecondsPerTick(long tick)
+     {
+          return tempo_seconds_per_tick[ findSpan(tempo_change_ticks, tick) ];
+     }
+     
+     
+     /**
+      * Adds the durations in seconds of the given range of MIDI ticks to the
+      * given number of seconds, one tick at a time in increasing order, and
+      * returns the result. Adding tick by tick gives exactly the same result
+      * as adding the durations of the ticks individually would.
+      *
+      * @param	seconds       The number of seconds to add to.
+      * @param	first_tick    The first tick to add the duration of.
+      * @param	end_tick      The tick after the last tick to add the duration
+      *                       of.
+      * @return               The given number of seconds plus the durations of
+      *                       the ticks.
+      */
+     public double addSecondsOfTicks(double seconds, long first_tick, long end_tick)
+     {
+          if (first_tick >= end_tick)
+               return seconds;
+          int span = findSpan(tempo_change_ticks, first_tick);
+          long tick = first_tick;
+          while (tick < end_tick)
+          {
+               long span_end = end_tick;
+               if (span + 1 < tempo_change_ticks.length && tempo_change_ticks[span + 1] < span_end)
+                    span_end = tempo_change_ticks[span + 1];
+               double seconds_per_tick = tempo_seconds_per_tick[span];
+               for (; tick < span_end; tick++)
+                    seconds += seconds_per_tick;
+               span++;
+          }
+          return seconds;
+     }
+     
+     
+     /**
+      * Returns the channel volume as set by channel volume controller messages
+      * divided by 127 on the given channel during the given tick. The default
+      * is 1.0, which corresponds to a controller value of 127.
+      *
+      * @param	tick     The tick to find the volume during.
+      * @param	channel  The channel to find the volume of.
+      * @return          The volume, from 0.0 to 1.0.
+      */
+     public double getVolume(long tick, int channel)
+     {
+          return channel_volumes[channel][ findSpan(volume_change_ticks[channel], tick) ];
+     }
+     
+     
      /* PRIVATE METHODS *******************************************************/
      
      
      /**
       * Look through the recording in order to find tempo change and channel
-      * volume controller messages. Fill in seconds_per_tick and volumes based
+      * volume controller messages. Fill in tempo_change_ticks,
+      * tempo_seconds_per_tick, volume_change_ticks and channel_volumes based
       * on these messages.
+      *
+      * <p>Each message sets the tempo or volume of all subsequent ticks, with
+      * messages being applied track by track, so the value during a tick is
+      * set by the message that comes latest in that order among those that
+      * occur at or before the tick.
       */
      private void generateTempoAndVolumeMaps()
      {
-          // Instantiate seconds_per_tick and initialize entries to the average
-          // number of ticks per second
-          seconds_per_tick = new double[ (int) sequence.getTickLength() + 1];
-          for (int i = 0; i < seconds_per_tick.length; i++)
-               seconds_per_tick[i] = 1.0 / mean_ticks_per_sec;
-          
-          // Instantiate volumes and initialize entries to 1.0
-          volumes = new double[ (int) sequence.getTickLength() + 1][ 16 ];
-          for (int i = 0; i < volumes.length; i++)
-               for (int j = 0; j < volumes[i].length; j++)
-                    volumes[i][j] = 1.0;
-          
-          // Fill in tempo changes
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          // Find the number of PPQ ticks per beat
+          int ticks_per_beat = events.resolution;
+          
+          // The ticks and values of tempo changes and of volume changes for
+          // each channel, in the order in which they are applied
+          LinkedList<long[]> tempo_changes = new LinkedList<long[]>();
+          LinkedList<long[]>[] volume_changes = new LinkedList[16];
+          for (int chan = 0; chan < volume_changes.length; chan++)
+               volume_changes[chan] = new LinkedList<long[]>();
+          LinkedList<Double> tempo_values = new LinkedList<Double>();
+          
+          // Find the tempo and volume changes
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
           {
                // Go through all the events in the current track, searching for tempo change messages
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
                {
-                    // Get the MIDI message corresponding to the next MIDI event
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    
                     // If message is a MetaMessage (which tempo change messages are)
-                    if (message instanceof MetaMessage)
+                    if (events.isMetaMessage(n_event))
                     {
-                         MetaMessage meta_message = (MetaMessage) message;
-                         
-                         if (meta_message.getType() == 0x51) // tempo change message
+                         if (events.getMetaType(n_event) == 0x51) // tempo change message
                          {
-                              // Find the number of PPQ ticks per beat
-                              int ticks_per_beat = sequence.getResolution();
-                              
                               // Find the number of microseconds per beat
-                              byte[]	meta_data = meta_message.getData();
+                              byte[]	meta_data = events.getData(n_event);
                               int	microseconds_per_beat = ((meta_data[0] & 0xFF) << 16)
                               | ((meta_data[1] & 0xFF) << 8)
                               | (meta_data[2] & 0xFF);
@@ -615,33 +942,314 @@ for (int i = 0 ;i < melody_list.length; i++)
                               double current_seconds_per_tick = ((double) microseconds_per_beat) / ((double) ticks_per_beat);
                               current_seconds_per_tick = current_seconds_per_tick / 1000000.0;
                               
-//System.out.println("Tick: " + event.getTick() + "  Current: " + current_seconds_per_tick  + "   Average: " + (1.0 / mean_ticks_per_sec));
-                              
-                              // Make all subsequent tempos be at the current_seconds_per_tick rate
-                              for (int i = (int) event.getTick(); i < seconds_per_tick.length; i++)
-                                   seconds_per_tick[i] = current_seconds_per_tick;
+                              tempo_changes.add(new long[] {events.ticks[n_event], tempo_changes.size()});
+                              tempo_values.add(new Double(current_seconds_per_tick));
                          }
                     }
                     
                     // If message is a ShortMessage (which volume controller messages are)
-                    if (message instanceof ShortMessage)
+                    if (events.isShortMessage(n_event))
                     {
-                         ShortMessage short_message = (ShortMessage) message;
-                         
-                         if (short_message.getCommand() == 0xb0) // Controller message
+                         if (events.getCommand(n_event) == 0xb0) // Controller message
                          {
-                              if (short_message.getData1() == 7) // Volume controller
+                              if (events.getData1(n_event) == 7) // Volume controller
+                                   volume_changes[events.getChannel(n_event)].add(new long[] {events.ticks[n_event], events.getData2(n_event)});
+                         }
+                    }
+               }
+          }
+          
+          // Fill in the tempo map. The default is the average number of
+          // ticks per second.
+          double[] values = new double[tempo_values.size()];
+          for (int i = 0; i < values.length; i++)
+               values[i] = tempo_values.get(i).doubleValue();
+          Object[] tempo_map = getChangeMap(tempo_changes, values, 1.0 / mean_ticks_per_sec);
+          tempo_change_ticks = (long[]) tempo_map[0];
+          tempo_seconds_per_tick = (double[]) tempo_map[1];
+          
+          // Fill in the volume maps. The default is 1.0.
+          volume_change_ticks = new long[16][];
+          channel_volumes = new double[16][];
+          for (int chan = 0; chan < 16; chan++)
+          {
+               values = new double[volume_changes[chan].size()];
+               int i = 0;
+               for (long[] change : volume_changes[chan])
+               {
+                    values[i] = ((double) change[1]) / 127.0;
+                    change[1] = i;
+                    i++;
+               }
+               Object[] volume_map = getChangeMap(volume_changes[chan], values, 1.0);
+               volume_change_ticks[chan] = (long[]) volume_map[0];
+               channel_volumes[chan] = (double[]) volume_map[1];
+          }
+     }
+     
+     
+     /**
+      * Finds the start ticks and values of the spans of ticks during which a
+      * value set by messages stays the same. Each message sets the value of
+      * all subsequent ticks, and the messages are applied in the order given.
+      *
+      * @param	changes       The changes in the order that they are applied.
+      *                       Each entry holds the tick of the change and its
+      *                       indice in values.
+      * @param	values        The value set by each change.
+      * @param	default_value The value before any change.
+      * @return               The start ticks (long[]) and values (double[]) of
+      *                       the spans. The first span starts on tick 0.
+      */
+     private static Object[] getChangeMap( LinkedList<long[]> changes,
+          double[] values,
+          double default_value )
+     {
+          // Sort the changes by tick, keeping the order in which they are
+          // applied for changes on the same tick
+          long[][] sorted = changes.toArray(new long[changes.size()][]);
+          java.util.Arrays.sort(sorted, new java.util.Comparator<long[]>()
+          {
+               public int compare(long[] a, long[] b)
+               {
+                    return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+               }
+          });
+          
+          // The value of a tick is set by the latest applied change at or
+          // before it
+          long[] starts = new long[sorted.length + 1];
+          double[] span_values = new double[sorted.length + 1];
+          starts[0] = 0;
+          span_values[0] = default_value;
+          int number_spans = 1;
+          long latest_applied = -1;
+          for (int i = 0; i < sorted.length; i++)
+          {
+               if (sorted[i][1] < latest_applied)
+                    continue;
+               latest_applied = sorted[i][1];
+               if (sorted[i][0] != starts[number_spans - 1])
+                    number_spans++;
+               starts[number_spans - 1] = sorted[i][0];
+               span_values[number_spans - 1] = values[(int) sorted[i][1]];
+          }
+          
+          long[] final_starts = new long[number_spans];
+          double[] final_values = new double[number_spans];
+          System.arraycopy(starts, 0, final_starts, 0, number_spans);
+          System.arraycopy(span_values, 0, final_values, 0, number_spans);
+          return new Object[] {final_starts, final_values};
+     }
+     
+     
+     /**
+      * Returns the indice of the span that contains the given tick, given the
+      * start ticks of the spans in increasing order, the first being 0.
+      */
+     private static int findSpan(long[] starts, long tick)
+     {
+          int low = 0;
+          int high = starts.length - 1;
+          while (low < high)
+          {
+               int middle = (low + high + 1) >>> 1;
+               if (starts[middle] <= tick)
+                    low = middle;
+               else
+                    high = middle - 1;
+          }
+          return low;
+     }
+     
+     
+     /**
+      * Calls generateNoteIntervals if it has not already been called.
+      */
+     private void generateNoteIntervalsIfNeeded()
+     {
+          if (!note_intervals_generated)
+          {
+               generateNoteIntervals();
+               note_intervals_generated = true;
+          }
+     }
+     
+     
+     /**
+      * Find the first and last ticks, channel and patch of every note, filling
+      * the note_start_ticks, note_end_ticks, note_channels, note_patches and
+      * number_note_intervals fields.
+      *
+      * <p>A note ends at the first Note Off (or Note On with velocity 0) with
+      * the same channel and pitch that follows its Note On in the same track.
+      * Notes that are never ended last until the tick equal to the number of
+      * events in their track, as they always have here, but never past the
+      * end of the recording. Each track is read in a single pass.
+      */
+     private void generateNoteIntervals()
+     {
+          // Count the notes
+          int number_notes = 0;
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
+               {
+                    if (events.isShortMessage(n_event))
+                    {
+                         if (events.getCommand(n_event) == 0x90 && events.getData2(n_event) != 0)
+                              number_notes++;
+                    }
+               }
+          note_start_ticks = new long[number_notes];
+          note_end_ticks = new long[number_notes];
+          note_channels = new int[number_notes];
+          note_patches = new int[number_notes];
+          number_note_intervals = 0;
+          
+          // The indices of the notes waiting for a Note Off on each channel
+          // and pitch
+          int[][] waiting_notes = new int[16 * 128][];
+          int[] number_waiting = new int[16 * 128];
+          
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
+          {
+               // Keep track of what patch is being used for each channel.
+               // Default is 0. Channel 10 patches are not tracked.
+               int[] current_patch_numbers = new int[16];
+               
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
+               {
+                    if (events.isShortMessage(n_event))
+                    {
+                         int channel = events.getChannel(n_event);
+                         int key = channel * 128 + events.getData1(n_event);
+                         int command = events.getCommand(n_event);
+                         if (command == 0xc0 && channel != 10 - 1)
+                              current_patch_numbers[channel] = events.getData1(n_event);
+                         else if (command == 0x90 && events.getData2(n_event) != 0)
+                         {
+                              // Start a note and wait for its Note Off
+                              int note = number_note_intervals++;
+                              note_start_ticks[note] = events.ticks[n_event];
+                              note_channels[note] = channel;
+                              note_patches[note] = current_patch_numbers[channel];
+                              if (waiting_notes[key] == null)
+                                   waiting_notes[key] = new int[4];
+                              else if (number_waiting[key] == waiting_notes[key].length)
                               {
-                                   // Make all subsequent volumes for the given channel
-                                   // to the given volume
-                                   for (int i = (int) event.getTick(); i < seconds_per_tick.length; i++)
-                                        volumes[i][ short_message.getChannel() ] = ((double) short_message.getData2()) / 127.0;
-                                   
-//System.out.println("-> " + event.getTick() + " " + short_message.getChannel() + " " + short_message.getData2());
+                                   int[] larger = new int[waiting_notes[key].length * 2];
+                                   System.arraycopy(waiting_notes[key], 0, larger, 0, number_waiting[key]);
+                                   waiting_notes[key] = larger;
                               }
+                              waiting_notes[key][number_waiting[key]++] = note;
+                         }
+                         else if (command == 0x80 || command == 0x90)
+                         {
+                              // End every note waiting on this channel and pitch
+                              for (int i = 0; i < number_waiting[key]; i++)
+                                   note_end_ticks[ waiting_notes[key][i] ] = events.ticks[n_event];
+                              number_waiting[key] = 0;
                          }
                     }
                }
+               
+               // Notes with no Note Off end on the tick equal to the number of
+               // events in the track
+               for (int key = 0; key < number_waiting.length; key++)
+               {
+                    for (int i = 0; i < number_waiting[key]; i++)
+                         note_end_ticks[ waiting_notes[key][i] ] = Math.min(events.getTrackSize(n_track), number_of_ticks);
+                    number_waiting[key] = 0;
+               }
+          }
+     }
+     
+     
+     /**
+      * Returns the union of the spans of ticks of the given notes. Only notes
+      * for which include[note] is true are used, or all notes if include is
+      * null. The result holds pairs of ticks in increasing order, the first of
+      * each pair being the first tick of a span and the second being the tick
+      * after its last tick. Spans that touch are joined.
+      */
+     private long[] getNoteUnion(boolean[] include)
+     {
+          // Sort the notes by start tick. Ticks fit in 31 bits, so each note
+          // is packed into a single long.
+          long[] packed = new long[number_note_intervals];
+          int number_packed = 0;
+          for (int note = 0; note < number_note_intervals; note++)
+               if ( (include == null || include[note]) &&
+                    note_end_ticks[note] > note_start_ticks[note] )
+                    packed[number_packed++] = (note_start_ticks[note] << 32) | note_end_ticks[note];
+          java.util.Arrays.sort(packed, 0, number_packed);
+          
+          // Join overlapping spans
+          long[] union = new long[number_packed * 2];
+          int number_union = 0;
+          for (int i = 0; i < number_packed; i++)
+          {
+               long start = packed[i] >>> 32;
+               long end = packed[i] & 0xFFFFFFFFL;
+               if (number_union > 0 && start <= union[number_union - 1])
+               {
+                    if (end > union[number_union - 1])
+                         union[number_union - 1] = end;
+               }
+               else
+               {
+                    union[number_union++] = start;
+                    union[number_union++] = end;
+               }
+          }
+          long[] result = new long[number_union];
+          System.arraycopy(union, 0, result, 0, number_union);
+          return result;
+     }
+     
+     
+     /**
+      * Fill in the given group of fields, for which canGenerateFromWindowCounts
+      * must be true, from window_counts.
+      */
+     private void generateFromWindowCounts(int representation)
+     {
+          switch (representation)
+          {
+               case NON_PITCHED_INSTRUMENTATION:
+                    non_pitched_instrumentation_frequencies = new int[128];
+                    System.arraycopy(window_counts.getPercussionCounts(window), 0, non_pitched_instrumentation_frequencies, 0, 128);
+                    break;
+               case NOTE_COUNTS:
+                    pitched_note_counts = new int[128];
+                    System.arraycopy(window_counts.getPatchCounts(window), 0, pitched_note_counts, 0, 128);
+                    total_number_pitched_notes = 0;
+                    for (int i = 0; i < pitched_note_counts.length; i++)
+                         total_number_pitched_notes += pitched_note_counts[i];
+                    total_number_unpitched_notes = 0;
+                    int[] percussion_counts = window_counts.getPercussionCounts(window);
+                    for (int i = 0; i < percussion_counts.length; i++)
+                         total_number_unpitched_notes += percussion_counts[i];
+                    total_number_notes = total_number_pitched_notes + total_number_unpitched_notes;
+                    break;
+               case NOTE_DURATIONS:
+                    note_durations = window_counts.getNoteDurations(window);
+                    break;
+               case PITCH_HISTOGRAMS:
+                    int[] pitch_counts = window_counts.getPitchCounts(window);
+                    basic_pitch_histogram = new double[128];
+                    for (int i = 0; i < basic_pitch_histogram.length; i++)
+                         basic_pitch_histogram[i] = pitch_counts[i];
+                    generatePitchHistogramsFromBasicCounts();
+                    break;
+               case MELODIC:
+                    int[] interval_counts = window_counts.getMelodicIntervalCounts(window);
+                    melodic_histogram = new double[128];
+                    for (int i = 0; i < melodic_histogram.length; i++)
+                         melodic_histogram[i] = interval_counts[i];
+                    normalizeMelodicHistogram();
+                    melody_list = window_counts.getMelodyList(window);
+                    break;
           }
      }
      
@@ -663,23 +1271,18 @@ for (int i = 0 ;i < melody_list.length; i++)
           boolean tempo_found = false;
           
           // Search for MetaMessages
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
           {
                // Go through all the events in the current track, searching for meta messages
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
                {
-                    // Get the MIDI message corresponding to the next MIDI event
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    
                     // If message is a MetaMessage
-                    if (message instanceof MetaMessage)
+                    if (events.isMetaMessage(n_event))
                     {
-                         byte[] data = ((MetaMessage) message).getData();
+                         byte[] data = events.getData(n_event);
                          
                          // Check if major or minor
-                         if (((MetaMessage) message).getType() == 0x59)
+                         if (events.getMetaType(n_event) == 0x59)
                          {
                               if (!key_sig_found)
                               {
@@ -693,14 +1296,14 @@ for (int i = 0 ;i < melody_list.length; i++)
                          }
                          
                          // Check time signature
-                         if (((MetaMessage) message).getType() ==  0x58)
+                         if (events.getMetaType(n_event) ==  0x58)
                          {
                               ((LinkedList) meta_data[1]).add(new Integer((int) (data[0] & 0xFF)));
                               ((LinkedList) meta_data[2]).add(new Integer((int) (1 << (data[1] & 0xFF))));
                          }
                          
                          // Check the initial tempo
-                         if (((MetaMessage) message).getType() == 0x51)
+                         if (events.getMetaType(n_event) == 0x51)
                          {
                               if (!tempo_found)
                               {
@@ -724,116 +1327,41 @@ for (int i = 0 ;i < melody_list.length; i++)
      
      
      /**
-      * Find the correct contents for the pitched_instrumentation_tick_map and
+      * Find the correct contents for the pitched_instrumentation_intervals and
       * the pitched_instrumentation_frequencies fields
       */
      private void generatePitchedInstrumentationIntermediateRepresentations()
      {
           // Instantiate pitched_instrumentation_frequencies and initialize entries to 0
           pitched_instrumentation_frequencies = new int[128][2];
-          for (int i = 0; i < pitched_instrumentation_frequencies.length; i++)
-          {
-               pitched_instrumentation_frequencies[i][0] = 0;
-               pitched_instrumentation_frequencies[i][1] = 0;
-          }
           
-          // Instantiate pitched_instrumentation_tick_map and initialize entries to false
-          pitched_instrumentation_tick_map = new boolean[(int) sequence.getTickLength() + 1][128];
-          for (int i = 0; i < pitched_instrumentation_tick_map.length; i++)
-               for (int j = 0; j < pitched_instrumentation_tick_map[i].length; j++)
-                    pitched_instrumentation_tick_map[i][j] = false;
-          
-          // Fill in fields
-          for (int n_track = 0; n_track < tracks.length; n_track++)
-          {
-               // Keep track of what patch is being used for each channel.
-               // Default is 0.
-               int[] current_patch_numbers = new int[16];
-               for (int i = 0; i < current_patch_numbers.length; i++)
-                    current_patch_numbers[i] = 0;
-               
-               // Go through all the events in the current track, searching for
-               // note ons, note offs and program change messages
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+          // Count the Note Ons of each patch and find the spans of ticks during
+          // which each patch is playing. Channel 10 (percussion) is ignored.
+          pitched_instrumentation_intervals = new long[128][];
+          boolean[][] patch_notes = new boolean[128][];
+          for (int note = 0; note < number_note_intervals; note++)
+               if (note_channels[note] != 10 - 1)
                {
-                    // Get the MIDI message corresponding to the next MIDI event
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    
-                    // If message is a ShortMessage (which Note Ons, Note Offs and
-                    // Program Change messages are)
-                    if (message instanceof ShortMessage)
-                    {
-                         ShortMessage short_message = (ShortMessage) message;
-                         if (short_message.getChannel() != 10 - 1) // not channel 10 (percussion)
-                         {
-                              // If a Program Change message is encountered, then
-                              // update current_patch_numbers
-                              if (short_message.getCommand() == 0xc0)
-                                   current_patch_numbers[ short_message.getChannel() ] = short_message.getData1();
-                              
-                              // If a Note On message is encountered, then increment first column of
-                              // pitched_instrumentation_frequencies and note that have started playing
-                              // the appropriate instrument
-                              if (short_message.getCommand() == 0x90)
-                              {
-                                   if (short_message.getData2() != 0) // not velocity 0
-                                   {
-                                        // Increment the Note On count in pitched_instrumentation_frequencies
-                                        pitched_instrumentation_frequencies[ current_patch_numbers[ short_message.getChannel() ] ][ 0 ]++;
-                                        
-                                        // Look ahead to find the corresponding note off for this note on
-                                        int event_start_tick = (int) event.getTick();
-                                        int event_end_tick = track.size(); // when the note off occurs (default to last tick)
-                                        for (int i = n_event + 1; i < track.size(); i++)
-                                        {
-                                             MidiEvent end_event = track.get(i);
-                                             MidiMessage end_message = end_event.getMessage();
-                                             if (end_message instanceof ShortMessage)
-                                             {
-                                                  ShortMessage end_short_message = (ShortMessage) end_message;
-                                                  if (end_short_message.getChannel() == short_message.getChannel()) // must be on same channel
-                                                  {
-                                                       if (end_short_message.getCommand() == 0x80) // note off
-                                                       {
-                                                            if (end_short_message.getData1() == short_message.getData1()) // same pitch
-                                                            {
-                                                                 event_end_tick = (int) end_event.getTick();
-                                                                 i = track.size() + 1; // exit loop
-                                                            }
-                                                       }
-                                                       if (end_short_message.getCommand() == 0x90) // note on (with vel 0 is equiv to note off)
-                                                            if (end_short_message.getData2() == 0) // velocity 0
-                                                                 if (end_short_message.getData1() == short_message.getData1()) // same pitch
-                                                                 {
-                                                            event_end_tick = (int) end_event.getTick();
-                                                            i = track.size() + 1; // exit loop
-                                                                 }
-                                                  }
-                                             }
-                                        }
-                                        
-                                        // Fill in pitched_instrumentation_tick_map for all the ticks corresponding to this note
-                                        for (int i = event_start_tick ; i < event_end_tick ; i++)
-                                             pitched_instrumentation_tick_map[ i ][ current_patch_numbers[ short_message.getChannel() ] ] = true;
-                                   }
-                              }
-                         }
-                    }
+                    int patch = note_patches[note];
+                    pitched_instrumentation_frequencies[patch][0]++;
+                    if (patch_notes[patch] == null)
+                         patch_notes[patch] = new boolean[number_note_intervals];
+                    patch_notes[patch][note] = true;
                }
-          }
           
           // Record the total time that each instrument was sounding in pitched_instrumentation_frequencies
-          double[] total = new double[pitched_instrumentation_frequencies.length];
-          for (int i = 0; i < total.length; i++)
-               total[i] = 0.0;
           for (int instrument = 0; instrument < pitched_instrumentation_frequencies.length; instrument++)
-               for (int tick = 0; tick < pitched_instrumentation_tick_map.length; tick++)
-                    if (pitched_instrumentation_tick_map[tick][instrument])
-                         total[instrument] = total[instrument] + seconds_per_tick[tick];
-          for (int i = 0; i < total.length; i++)
-               pitched_instrumentation_frequencies[i][1] = (int) total[i];
+          {
+               if (patch_notes[instrument] == null)
+                    pitched_instrumentation_intervals[instrument] = new long[0];
+               else
+                    pitched_instrumentation_intervals[instrument] = getNoteUnion(patch_notes[instrument]);
+               double total = 0.0;
+               long[] intervals = pitched_instrumentation_intervals[instrument];
+               for (int i = 0; i < intervals.length; i += 2)
+                    total = addSecondsOfTicks(total, intervals[i], intervals[i + 1]);
+               pitched_instrumentation_frequencies[instrument][1] = (int) total;
+          }
      }
      
      
@@ -851,30 +1379,24 @@ for (int i = 0 ;i < melody_list.length; i++)
                non_pitched_instrumentation_frequencies[i] = 0;
           
           // Fill in non_pitched_instrumentation_frequencies
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
           {
                // Go through all the events in the current track, searching for note ons
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
                {
-                    // Get the MIDI message corresponding to the next MIDI event
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    
                     // If message is a ShortMessage (which Note Ons are)
-                    if (message instanceof ShortMessage)
+                    if (events.isShortMessage(n_event))
                     {
-                         ShortMessage short_message = (ShortMessage) message;
-                         if (short_message.getChannel() == 10 - 1) // is channel 10 (percussion)
+                         if (events.getChannel(n_event) == 10 - 1) // is channel 10 (percussion)
                          {
                               // If a Note On message is encountered, then increment appropriate row of
                               // non_pitched_instrumentation_frequencies
-                              if (short_message.getCommand() == 0x90)
+                              if (events.getCommand(n_event) == 0x90)
                               {
-                                   if (short_message.getData2() != 0) // not velocity 0
+                                   if (events.getData2(n_event) != 0) // not velocity 0
                                    {
                                         // Increment the Note On count in non_pitched_instrumentation_frequencies
-                                        non_pitched_instrumentation_frequencies[ short_message.getData1() ]++;
+                                        non_pitched_instrumentation_frequencies[ events.getData1(n_event) ]++;
                                    }
                               }
                          }
@@ -886,42 +1408,26 @@ for (int i = 0 ;i < melody_list.length; i++)
      
      /**
       * Find the correct values for the total_number_notes,
-      * total_number_pitched_notes and total_number_unpitched_notes fields
+      * total_number_pitched_notes, total_number_unpitched_notes and
+      * pitched_note_counts fields
       */
      private void generateNoteCountsIntermediateRepresentations()
      {
-          // Calculate total_number_notes
-          total_number_notes = 0;
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          // Count the Note Ons of each pitched patch and on channel 10
+          pitched_note_counts = new int[128];
+          total_number_pitched_notes = 0;
+          total_number_unpitched_notes = 0;
+          for (int note = 0; note < number_note_intervals; note++)
           {
-               // Go through all the events in the current track, searching for note ons
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               if (note_channels[note] == 10 - 1)
+                    total_number_unpitched_notes++;
+               else
                {
-                    // Get the MIDI message corresponding to the next MIDI event
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    
-                    // If message is a ShortMessage (which Note Ons are)
-                    if (message instanceof ShortMessage)
-                    {
-                         ShortMessage short_message = (ShortMessage) message;
-                         if (short_message.getCommand() == 0x90)
-                              if (short_message.getData2() != 0) // not velocity 0
-                                   total_number_notes++;
-                    }
+                    pitched_note_counts[ note_patches[note] ]++;
+                    total_number_pitched_notes++;
                }
           }
-          
-          // Calculate total_number_pitched_notes
-          total_number_pitched_notes = 0;
-          for (int i = 0; i < pitched_instrumentation_frequencies.length; i++)
-               total_number_pitched_notes = total_number_pitched_notes + pitched_instrumentation_frequencies[i][0];
-          
-          // Calculate total_number_unpitched_notes
-          total_number_unpitched_notes = 0;
-          for (int i = 0; i < non_pitched_instrumentation_frequencies.length; i++)
-               total_number_unpitched_notes = total_number_unpitched_notes + non_pitched_instrumentation_frequencies[i];
+          total_number_notes = number_note_intervals;
      }
      
      
@@ -930,22 +1436,17 @@ for (int i = 0 ;i < melody_list.length; i++)
       */
      private void generateDurationIntermediateRepresentation()
      {
-          recording_length = (int) (sequence.getMicrosecondLength() / 1000000);
+          recording_length = (int) (events.microsecond_length / 1000000);
      }
      
      
      /**
-      * Find the correct contents for the channel_tick_map and
+      * Find the correct contents for the channel_intervals,
+      * sounding_channels_run_starts, sounding_channels_run_counts and
       * channel_statistics fields. Note that channel 10 is included.
       */
      private void generateTextureIntermediateRepresentation()
      {
-          // Instantiate channel_tick_map and initialize entries to false
-          channel_tick_map = new boolean[(int) sequence.getTickLength() + 1 ][16];
-          for (int i = 0; i < channel_tick_map.length; i++)
-               for (int j = 0; j < channel_tick_map[i].length; j++)
-                    channel_tick_map[i][j] = false;
-          
           // Instantiate channel_statistics and initialize entries to 0
           channel_statistics = new int[16][7];
           for (int i = 0; i < channel_statistics.length; i++)
@@ -987,113 +1488,116 @@ for (int i = 0 ;i < melody_list.length; i++)
           for (int i = 0; i < sum_of_pitches.length; i++)
                sum_of_pitches[i] = 0;
           
-          // Fill in channel_tick_map
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          // Fill in channel_statistics
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
           {
                // Go through all the events in the current track, searching for
-               // note ons and note offs
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               // note ons
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
                {
-                    // Get the MIDI message corresponding to the next MIDI event
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    
                     // If message is a ShortMessage (which Note Ons and Note Offs are)
-                    if (message instanceof ShortMessage)
+                    if (events.isShortMessage(n_event))
                     {
-                         ShortMessage short_message = (ShortMessage) message;
-                         
                          // If a Note On message is encountered
-                         if (short_message.getCommand() == 0x90)
+                         if (events.getCommand(n_event) == 0x90)
                          {
-                              if (short_message.getData2() != 0) // not velocity 0
+                              if (events.getData2(n_event) != 0) // not velocity 0
                               {
                                    // Total the number of note ons per channel and thereby fill out column 0
                                    // of channel_statistics
-                                   channel_statistics[ short_message.getChannel() ][ 0 ]++;
+                                   channel_statistics[ events.getChannel(n_event) ][ 0 ]++;
                                    
                                    // Total the loudnesses of Note Ons for each channel
-                                   channel_statistics[ short_message.getChannel() ][ 2 ] += (int) (((double) short_message.getData2()) * volumes[ (int) event.getTick() ][ short_message.getChannel() ]);
+                                   channel_statistics[ events.getChannel(n_event) ][ 2 ] += (int) (((double) events.getData2(n_event)) * getVolume(events.ticks[n_event], events.getChannel(n_event)));
                                    
                                    // Total the melodic semitones for each channel and adjust previous_pitches
-                                   int current_tick = (int) event.getTick();
-                                   if (previous_pitches[ short_message.getChannel() ] != -1)
+                                   int current_tick = (int) events.ticks[n_event];
+                                   if (previous_pitches[ events.getChannel(n_event) ] != -1)
                                    {
                                         // Check if the note is occuring on the same tick as the previous note
                                         // on this channel (which would indicate a vertical interval, not a melodic leap)
-                                        if (current_tick != last_tick[ short_message.getChannel() ])
+                                        if (current_tick != last_tick[ events.getChannel(n_event) ])
                                         {
-                                             interval_totals[ short_message.getChannel() ] +=
-                                                  Math.abs( previous_pitches[short_message.getChannel()] - short_message.getData1() );
-                                             number_intervals[ short_message.getChannel() ]++;
+                                             interval_totals[ events.getChannel(n_event) ] +=
+                                                  Math.abs( previous_pitches[events.getChannel(n_event)] - events.getData1(n_event) );
+                                             number_intervals[ events.getChannel(n_event) ]++;
                                         }
                                    }
-                                   last_tick[ short_message.getChannel() ] = current_tick;
-                                   previous_pitches[ short_message.getChannel() ] = short_message.getData1();
+                                   last_tick[ events.getChannel(n_event) ] = current_tick;
+                                   previous_pitches[ events.getChannel(n_event) ] = events.getData1(n_event);
                                    
                                    // Update highest_pitches if appropriate
-                                   if (short_message.getData1() > highest_pitches[short_message.getChannel()])
-                                        highest_pitches[short_message.getChannel()] = short_message.getData1();
+                                   if (events.getData1(n_event) > highest_pitches[events.getChannel(n_event)])
+                                        highest_pitches[events.getChannel(n_event)] = events.getData1(n_event);
                                    
                                    // Update lowest_pitches if appropriate
-                                   if (short_message.getData1() < lowest_pitches[short_message.getChannel()])
-                                        lowest_pitches[short_message.getChannel()] = short_message.getData1();
+                                   if (events.getData1(n_event) < lowest_pitches[events.getChannel(n_event)])
+                                        lowest_pitches[events.getChannel(n_event)] = events.getData1(n_event);
                                    
                                    // Update sum_of_pitches
-                                   sum_of_pitches[short_message.getChannel()] += short_message.getData1();
-                                   
-                                   // Look ahead to find the corresponding note off for this note on
-                                   int event_start_tick = (int) event.getTick();
-                                   int event_end_tick = track.size(); // when the note off occurs (default to last tick)
-                                   for (int i = n_event + 1; i < track.size(); i++)
-                                   {
-                                        MidiEvent end_event = track.get(i);
-                                        MidiMessage end_message = end_event.getMessage();
-                                        if (end_message instanceof ShortMessage)
-                                        {
-                                             ShortMessage end_short_message = (ShortMessage) end_message;
-                                             if (end_short_message.getChannel() == short_message.getChannel()) // must be on same channel
-                                             {
-                                                  if (end_short_message.getCommand() == 0x80) // note off
-                                                  {
-                                                       if (end_short_message.getData1() == short_message.getData1()) // same pitch
-                                                       {
-                                                            event_end_tick = (int) end_event.getTick();
-                                                            i = track.size() + 1; // exit loop
-                                                       }
-                                                  }
-                                                  if (end_short_message.getCommand() == 0x90) // note on (with vel 0 is equiv to note off)
-                                                       if (end_short_message.getData2() == 0) // velocity 0
-                                                            if (end_short_message.getData1() == short_message.getData1()) // same pitch
-                                                            {
-                                                       event_end_tick = (int) end_event.getTick();
-                                                       i = track.size() + 1; // exit loop
-                                                            }
-                                             }
-                                        }
-                                   }
-                                   
-                                   // Fill in channel_tick_map for all the ticks corresponding to this note
-                                   for (int i = event_start_tick ; i < event_end_tick ; i++)
-                                        channel_tick_map[ i ][ short_message.getChannel() ] = true;
+                                   sum_of_pitches[events.getChannel(n_event)] += events.getData1(n_event);
                               }
                          }
                     }
                }
           }
           
+          // Find the spans of ticks during which one or more notes were playing
+          // on each channel
+          channel_intervals = new long[16][];
+          boolean[][] channel_notes = new boolean[16][number_note_intervals];
+          for (int note = 0; note < number_note_intervals; note++)
+               channel_notes[ note_channels[note] ][note] = true;
+          for (int chan = 0; chan < channel_intervals.length; chan++)
+               channel_intervals[chan] = getNoteUnion(channel_notes[chan]);
+          
           // Find the total amount of time that one or more notes were playing on each
           // channel and fill out column 1
-          double[] total = new double[channel_statistics.length];
-          for (int i = 0; i < total.length; i++)
-               total[i] = 0.0;
-          for (int i = 0; i < channel_tick_map.length; i++)
-               for (int j = 0; j < channel_tick_map[i].length; j++)
-                    if (channel_tick_map[i][j])
-                         total[j] = total[j] + seconds_per_tick[i];
-          for (int i = 0; i < channel_statistics.length; i++)
-               channel_statistics[i][1] = (int) total[i];
+          for (int chan = 0; chan < channel_statistics.length; chan++)
+          {
+               double total = 0.0;
+               for (int i = 0; i < channel_intervals[chan].length; i += 2)
+                    total = addSecondsOfTicks(total, channel_intervals[chan][i], channel_intervals[chan][i + 1]);
+               channel_statistics[chan][1] = (int) total;
+          }
+          
+          // Find the number of channels sounding during each run of ticks by
+          // sorting the starts and ends of the channel spans. Each is packed
+          // with the tick in the high bits and whether it is a start in the
+          // low bit, so that ends sort before starts on the same tick.
+          int number_boundaries = 0;
+          for (int chan = 0; chan < channel_intervals.length; chan++)
+               number_boundaries += channel_intervals[chan].length;
+          long[] boundaries = new long[number_boundaries];
+          int b = 0;
+          for (int chan = 0; chan < channel_intervals.length; chan++)
+               for (int i = 0; i < channel_intervals[chan].length; i += 2)
+               {
+                    boundaries[b++] = (channel_intervals[chan][i] << 1) | 1;
+                    boundaries[b++] = channel_intervals[chan][i + 1] << 1;
+               }
+          java.util.Arrays.sort(boundaries);
+          long[] run_starts = new long[number_boundaries + 2];
+          int[] run_counts = new int[number_boundaries + 1];
+          int number_runs = 1;
+          run_starts[0] = 0;
+          run_counts[0] = 0;
+          for (int i = 0; i < number_boundaries; i++)
+          {
+               long tick = boundaries[i] >>> 1;
+               int count = run_counts[number_runs - 1] + ((boundaries[i] & 1) == 1 ? 1 : -1);
+               if (tick != run_starts[number_runs - 1])
+               {
+                    run_starts[number_runs] = tick;
+                    number_runs++;
+               }
+               run_counts[number_runs - 1] = count;
+          }
+          sounding_channels_run_starts = new long[number_runs + 1];
+          sounding_channels_run_counts = new int[number_runs];
+          System.arraycopy(run_starts, 0, sounding_channels_run_starts, 0, number_runs);
+          System.arraycopy(run_counts, 0, sounding_channels_run_counts, 0, number_runs);
+          sounding_channels_run_starts[number_runs] = number_of_ticks;
           
           // Fill column 2 by dividing the total scaled velocities by the number of Note Onts
           // for each channel
@@ -1137,36 +1641,47 @@ for (int i = 0 ;i < melody_list.length; i++)
           for (int i = 0; i < rhythmic_histogram.length; i++)
                rhythmic_histogram[i] = 0.0;
           
-          // Generate an array whose indices correspond to ticks and whose contents
-          // correspond to total velocity of all notes occuring at each given tick
-          int[] rhythm_score = new int[((int) sequence.getTickLength()) + 1];
-          for (int i = 0; i < rhythm_score.length; i++)
-               rhythm_score[i] = 0;
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          // Find the ticks with note ons and the total loudness of the note ons
+          // on each of them, in order of ticks
+          int[] time_order = events.getTimeOrder();
+          long[] onset_ticks = new long[time_order.length];
+          int[] onset_loudnesses = new int[time_order.length];
+          int number_onsets = 0;
+          for (int i = 0; i < time_order.length; i++)
           {
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               int n_event = time_order[i];
+               if (events.isShortMessage(n_event) && events.getCommand(n_event) == 0x90) // note on
                {
-                    // Get the MIDI message corresponding to the next MIDI event and find the MIDI tick
-                    // that it corresponds to
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    int current_tick = (int) event.getTick();
-                    
-                    // Mark rhythm_score with combined loudness on a tick with a note on
-                    if (message instanceof ShortMessage)
+                    int current_tick = (int) events.ticks[n_event];
+                    int loudness = (int) (((double) events.getData2(n_event)) * getVolume(current_tick, events.getChannel(n_event)));
+                    if (number_onsets == 0 || onset_ticks[number_onsets - 1] != current_tick)
                     {
-                         ShortMessage short_message = (ShortMessage) message;
-                         if (short_message.getCommand() == 0x90) // note on
-                              rhythm_score[current_tick] += (int) (((double) short_message.getData2()) * volumes[ current_tick ][ short_message.getChannel() ]);
+                         onset_ticks[number_onsets] = current_tick;
+                         onset_loudnesses[number_onsets] = 0;
+                         number_onsets++;
                     }
+                    onset_loudnesses[number_onsets - 1] += loudness;
                }
           }
           
-          // Histogram based on tick interval bins
+          // Histogram based on tick interval bins. This is the autocorrelation
+          // of the total loudness on each tick at each lag, found from the
+          // pairs of ticks with note ons that are the lag apart, as all other
+          // ticks contribute nothing. The products are summed exactly, so the
+          // result is the same as when summing over all ticks.
           double[] tick_histogram = new double[convertBPMtoTicks(min_BPM - 1)];
-          for (int lag = convertBPMtoTicks(max_BPM); lag < tick_histogram.length; lag++)
-               tick_histogram[lag] = autoCorrelate(rhythm_score, lag);
+          int min_lag = convertBPMtoTicks(max_BPM);
+          long[] lag_totals = new long[tick_histogram.length];
+          for (int i = 0; i < number_onsets; i++)
+               for (int j = i; j < number_onsets && onset_ticks[j] - onset_ticks[i] < tick_histogram.length; j++)
+               {
+                    int lag = (int) (onset_ticks[j] - onset_ticks[i]);
+                    if (lag >= min_lag)
+                         lag_totals[lag] += onset_loudnesses[j] * onset_loudnesses[i];
+               }
+          double number_ticks = (double) (events.tick_length + 1);
+          for (int lag = min_lag; lag < tick_histogram.length; lag++)
+               tick_histogram[lag] = ((double) lag_totals[lag]) / number_ticks; // divide by N
           
           // Histogram with tick intervals collected into beats per minute bins
           for (int bin = min_BPM; bin <= max_BPM; bin++)
@@ -1236,119 +1751,41 @@ for (int i = 0 ;i < melody_list.length; i++)
           note_durations = new LinkedList();
           
           // Fill in the list
-          for (int n_track = 0; n_track < tracks.length; n_track++)
-          {
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
-               {
-                    // Get the MIDI message corresponding to the next MIDI event
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    
-                    // If message is a ShortMessage (which Note Ons are)
-                    if (message instanceof ShortMessage)
-                    {
-                         ShortMessage short_message = (ShortMessage) message;
-                         
-                         // If a Note On message is encountered
-                         if (short_message.getCommand() == 0x90)
-                         {
-                              if (short_message.getData2() != 0) // not velocity 0
-                              {
-                                   // Look ahead to find the corresponding note off for this note on
-                                   int event_start_tick = (int) event.getTick();
-                                   int event_end_tick = track.size(); // when the note off occurs (default to last tick)
-                                   for (int i = n_event + 1; i < track.size(); i++)
-                                   {
-                                        MidiEvent end_event = track.get(i);
-                                        MidiMessage end_message = end_event.getMessage();
-                                        if (end_message instanceof ShortMessage)
-                                        {
-                                             ShortMessage end_short_message = (ShortMessage) end_message;
-                                             if (end_short_message.getChannel() == short_message.getChannel()) // must be on same channel
-                                             {
-                                                  if (end_short_message.getCommand() == 0x80) // note off
-                                                  {
-                                                       if (end_short_message.getData1() == short_message.getData1()) // same pitch
-                                                       {
-                                                            event_end_tick = (int) end_event.getTick();
-                                                            i = track.size() + 1; // exit loop
-                                                       }
-                                                  }
-                                                  if (end_short_message.getCommand() == 0x90) // note on (with vel 0 is equiv to note off)
-                                                       if (end_short_message.getData2() == 0) // velocity 0
-                                                            if (end_short_message.getData1() == short_message.getData1()) // same pitch
-                                                            {
-                                                       event_end_tick = (int) end_event.getTick();
-                                                       i = track.size() + 1; // exit loop
-                                                            }
-                                             }
-                                        }
-                                   }
-                                   
-                                   // Calculate duration of note
-                                   double duration = 0;
-                                   for (int i = event_start_tick ; i < event_end_tick ; i++)
-                                        duration += seconds_per_tick[i];
-                                   
-                                   // Add note to list
-                                   note_durations.add(new Double(duration));
-                              }
-                         }
-                    }
-               }
-          }
+          for (int note = 0; note < number_note_intervals; note++)
+               note_durations.add(new Double(addSecondsOfTicks(0.0, note_start_ticks[note], note_end_ticks[note])));
      }
      
      
      /**
-      * Find the contents for the note_beginnings_map and note_endings_map
-      * fields
+      * Find the contents for the note_beginnings field
       */
      private void generateNoteBeginningsMapIntermediateRepresentation()
      {
-          // Instantiate note_beginnings_map and set entries to false
-          note_beginnings_map = new boolean[((int) sequence.getTickLength()) + 1][17];
-          for (int i = 0; i < note_beginnings_map.length; i++)
-               for (int j = 0; j < note_beginnings_map[i].length; j++)
-                    note_beginnings_map[i][j] = false;
-          
-          // Fill in note_beginnings_map for all channels
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          // Collect the ticks of the Note Ons on each channel, packed with the
+          // tick in the high bits and the channel in the low bits
+          long[] packed = new long[number_note_intervals];
+          for (int note = 0; note < number_note_intervals; note++)
+               packed[note] = (note_start_ticks[note] << 4) | note_channels[note];
+          java.util.Arrays.sort(packed);
+          
+          // Fill in note_beginnings, with entry 16 holding the ticks on which
+          // a Note On occured on at least one channel
+          int[] counts = new int[17];
+          long[][] ticks = new long[17][packed.length];
+          for (int i = 0; i < packed.length; i++)
           {
-               // Go through all the events in the current track, searching for note ons
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
-               {
-                    // Get the MIDI message corresponding to the next MIDI event
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    
-                    // If message is a ShortMessage (which Note Ons are)
-                    if (message instanceof ShortMessage)
-                    {
-                         ShortMessage short_message = (ShortMessage) message;
-                         if (short_message.getCommand() == 0x90) // note on
-                         {
-                              if (short_message.getData2() != 0) // not velocity 0
-                                   note_beginnings_map[ (int) event.getTick() ][ short_message.getChannel() ] = true;
-                         }
-                    }
-               }
+               long tick = packed[i] >>> 4;
+               int channel = (int) (packed[i] & 15);
+               if (counts[channel] == 0 || ticks[channel][counts[channel] - 1] != tick)
+                    ticks[channel][counts[channel]++] = tick;
+               if (counts[16] == 0 || ticks[16][counts[16] - 1] != tick)
+                    ticks[16][counts[16]++] = tick;
           }
-          
-          // Fill in column 16 of note_beginnings_map to show if any Note Ons occured
-          // on at least one channel on the corresponding tick
-          for (int i = 0; i < note_beginnings_map.length; i++)
+          note_beginnings = new long[17][];
+          for (int i = 0; i < note_beginnings.length; i++)
           {
-               for (int j = 0; j < note_beginnings_map[i].length - 1; j++)
-               {
-                    if (note_beginnings_map[i][j])
-                    {
-                         note_beginnings_map[i][16] = true;
-                         j = note_beginnings_map[i].length; // exit loop
-                    }
-               }
+               note_beginnings[i] = new long[counts[i]];
+               System.arraycopy(ticks[i], 0, note_beginnings[i], 0, counts[i]);
           }
      }
      
@@ -1369,23 +1806,19 @@ for (int i = 0 ;i < melody_list.length; i++)
                notes_so_far[i] = 0;
           
           // Fill in note_loudnesses
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
           {
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
                {
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    if (message instanceof ShortMessage)
+                    if (events.isShortMessage(n_event))
                     {
-                         ShortMessage short_message = (ShortMessage) message;
-                         if (short_message.getCommand() == 0x90) // note on
+                         if (events.getCommand(n_event) == 0x90) // note on
                          {
-                              if (short_message.getData2() != 0) // not velocity 0
+                              if (events.getData2(n_event) != 0) // not velocity 0
                               {
-                                   int channel = short_message.getChannel();
-                                   int tick = (int) event.getTick();
-                                   note_loudnesses[channel][notes_so_far[channel]] = (int) (((double) short_message.getData2()) * volumes[tick][channel]);
+                                   int channel = events.getChannel(n_event);
+                                   int tick = (int) events.ticks[n_event];
+                                   note_loudnesses[channel][notes_so_far[channel]] = (int) (((double) events.getData2(n_event)) * getVolume(tick, channel));
                                    notes_so_far[channel]++;
                               }
                          }
@@ -1407,29 +1840,36 @@ for (int i = 0 ;i < melody_list.length; i++)
                basic_pitch_histogram[i] = 0.0;
           
           // Fill basic_pitch_histogram
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
           {
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
                {
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
                     // Increment pitch of a note on
-                    if (message instanceof ShortMessage)
+                    if (events.isShortMessage(n_event))
                     {
-                         ShortMessage short_message = (ShortMessage) message;
-                         if (short_message.getChannel() != 10 - 1) // not channel 10 (percussion)
+                         if (events.getChannel(n_event) != 10 - 1) // not channel 10 (percussion)
                          {
-                              if (short_message.getCommand() == 0x90) // note on
+                              if (events.getCommand(n_event) == 0x90) // note on
                               {
-                                   if (short_message.getData2() != 0) // not velocity 0
-                                        basic_pitch_histogram[short_message.getData1()]++;
+                                   if (events.getData2(n_event) != 0) // not velocity 0
+                                        basic_pitch_histogram[events.getData1(n_event)]++;
                               }
                          }
                     }
                }
           }
           
+          generatePitchHistogramsFromBasicCounts();
+     }
+     
+     
+     /**
+      * Normalize basic_pitch_histogram, which holds the number of Note Ons of
+      * each pitch, and find the contents of the pitch_class_histogram and
+      * fifths_pitch_histogram fields from it.
+      */
+     private void generatePitchHistogramsFromBasicCounts()
+     {
           // Normalize basic_pitch_histogram
           double sum = 0.0;
           for (int i = 0; i < basic_pitch_histogram.length; i++)
@@ -1469,47 +1909,43 @@ for (int i = 0 ;i < melody_list.length; i++)
                going[i] = null;
           
           // Fill pitch_bends_list
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
           {
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
                {
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    if (message instanceof ShortMessage)
+                    if (events.isShortMessage(n_event))
                     {
-                         ShortMessage short_message = (ShortMessage) message;
-                         if (short_message.getChannel() != 10 - 1) // not channel 10 (percussion)
+                         if (events.getChannel(n_event) != 10 - 1) // not channel 10 (percussion)
                          {
                               // If message is a pitch bend
-                              if (short_message.getCommand() == 0xe0)
+                              if (events.getCommand(n_event) == 0xe0)
                               {
                                    // If a pitch bend has already been given for this note
-                                   if (going[short_message.getChannel()] != null)
+                                   if (going[events.getChannel(n_event)] != null)
                                    {
-                                        int pitch_bend_value = short_message.getData2();
-                                        going[short_message.getChannel()].add(new Integer(pitch_bend_value));
+                                        int pitch_bend_value = events.getData2(n_event);
+                                        going[events.getChannel(n_event)].add(new Integer(pitch_bend_value));
                                    }
                                    
                                    // If a pitch bend has not already been given for this note
                                    else
                                    {
-                                        int pitch_bend_value = short_message.getData2();
+                                        int pitch_bend_value = events.getData2(n_event);
                                         LinkedList this_note = new LinkedList();
                                         this_note.add(new Integer(pitch_bend_value));
                                         pitch_bends_list.add(this_note);
                                         
-                                        going[short_message.getChannel()] = this_note;
+                                        going[events.getChannel(n_event)] = this_note;
                                    }
                               }
                               
                               // If message is a Note Off
-                              if (short_message.getCommand() == 0x80) // note off
-                                   going[short_message.getChannel()] = null;
-                              else if (short_message.getCommand() == 0x90) // note on
+                              if (events.getCommand(n_event) == 0x80) // note off
+                                   going[events.getChannel(n_event)] = null;
+                              else if (events.getCommand(n_event) == 0x90) // note on
                               {
-                                   if (short_message.getData2() == 0) // velocity 0
-                                        going[short_message.getChannel()] = null;
+                                   if (events.getData2(n_event) == 0) // velocity 0
+                                        going[events.getChannel(n_event)] = null;
                               }
                          }
                     }
@@ -1544,36 +1980,32 @@ for (int i = 0 ;i < melody_list.length; i++)
                last_tick[i] = -1;
           
           // Fill melodic_histogram and melody_list
-          for (int n_track = 0; n_track < tracks.length; n_track++)
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
           {
-               Track track = tracks[n_track];
-               for (int n_event = 0; n_event < track.size(); n_event++)
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
                {
-                    MidiEvent event = track.get(n_event);
-                    MidiMessage message = event.getMessage();
-                    if (message instanceof ShortMessage)
+                    if (events.isShortMessage(n_event))
                     {
-                         ShortMessage short_message = (ShortMessage) message;
-                         if (short_message.getCommand() == 0x90) // note on
+                         if (events.getCommand(n_event) == 0x90) // note on
                          {
-                              if (short_message.getChannel() != 10 - 1) // not channel 10 (percussion)
+                              if (events.getChannel(n_event) != 10 - 1) // not channel 10 (percussion)
                               {
-                                   if (short_message.getData2() != 0) // not velocity 0
+                                   if (events.getData2(n_event) != 0) // not velocity 0
                                    {
-                                        int current_tick = (int) event.getTick();
-                                        if (previous_pitches[ short_message.getChannel() ] != -1)
+                                        int current_tick = (int) events.ticks[n_event];
+                                        if (previous_pitches[ events.getChannel(n_event) ] != -1)
                                         {
                                              // Check if the note is occuring on the same tick as the previous note
                                              // on this channel (which would indicate a vertical interval, not a melodic leap)
-                                             if (current_tick != last_tick[ short_message.getChannel() ])
+                                             if (current_tick != last_tick[ events.getChannel(n_event) ])
                                              {
-                                                  int interval =  short_message.getData1() - previous_pitches[short_message.getChannel()] ;
+                                                  int interval =  events.getData1(n_event) - previous_pitches[events.getChannel(n_event)] ;
                                                   melodic_histogram[ Math.abs(interval) ]++;
-                                                  melody_list[short_message.getChannel()].add(new Integer(interval));
+                                                  melody_list[events.getChannel(n_event)].add(new Integer(interval));
                                              }
                                         }
-                                        last_tick[ short_message.getChannel() ] = current_tick;
-                                        previous_pitches[ short_message.getChannel() ] = short_message.getData1();
+                                        last_tick[ events.getChannel(n_event) ] = current_tick;
+                                        previous_pitches[ events.getChannel(n_event) ] = events.getData1(n_event);
                                    }
                               }
                          }
@@ -1581,7 +2013,16 @@ for (int i = 0 ;i < melody_list.length; i++)
                }
           }
           
-          // Normalize melodic_histogram
+          normalizeMelodicHistogram();
+     }
+     
+     
+     /**
+      * Normalize melodic_histogram, which holds the number of melodic
+      * intervals of each size.
+      */
+     private void normalizeMelodicHistogram()
+     {
           double sum = 0.0;
           for (int i = 0; i < melodic_histogram.length; i++)
                sum += melodic_histogram[i];
@@ -1619,20 +2060,4 @@ for (int i = 0 ;i < melody_list.length; i++)
      {
           return (int) ((mean_ticks_per_sec * 60) / BPM);
      }
-     
-     
-     /**
-      * Perform an autocorrelation on data with the given lag:
-      *
-      * y[lag] = (1/N) SUM(n to N){ x[n] * x[n-lag] }
-      */
-     private double autoCorrelate(int[] data, int lag)
-     {
-          double result = 0.0;
-          
-          for (int i = lag; i < data.length; i++)
-               result += (double) (data[i] * data[i-lag]);
-          
-          return result / (double) data.length; // divide by N
-     }
 }
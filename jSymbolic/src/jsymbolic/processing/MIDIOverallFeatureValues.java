@@ -0,0 +1,213 @@
+/*
+ * MIDIOverallFeatureValues.java
+ * Version 1.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package jsymbolic.processing;
+
+
+/**
+ * The averages and standard deviations over all of the windows of a
+ * recording of the values of each feature, accumulated one window at a time.
+ * This allows the values of each window to be discarded as soon as they have
+ * been saved, so that the memory needed does not depend on the number of
+ * windows.
+ *
+ * <p>The averages are the sums of the values divided by the number of
+ * windows that have values, so they are exactly the same as those found from
+ * all of the values at once. The standard deviations are sample standard
+ * deviations, updated with Welford's method.
+ *
+ * <p>The values of the last window, and the last values of each feature,
+ * are also kept, as they determine which features are saved.
+ *
+ * @author Cory McKay
+ */
+public class MIDIOverallFeatureValues
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The number of windows whose values have been added.
+      */
+     private   int            number_windows;
+
+     /**
+      * The values of the last window added. The first indice identifies the
+      * feature and the second the feature value. Entries are null for
+      * features that could not be extracted from the window.
+      */
+     private   double[][]     last_window_values;
+
+     /**
+      * The values of each feature in the last window that it could be
+      * extracted from. The first indice identifies the feature and the
+      * second the feature value. Null for features that could not be
+      * extracted from any window.
+      */
+     private   double[][]     last_values;
+
+     /**
+      * The number of windows that each feature could be extracted from.
+      */
+     private   int[]          counts;
+
+     /**
+      * The sums of each value of each feature over all windows.
+      */
+     private   double[][]     sums;
+
+     /**
+      * The running means of each value of each feature, as updated by
+      * Welford's method.
+      */
+     private   double[][]     means;
+
+     /**
+      * The sums of the squared differences from the mean of each value of
+      * each feature, as updated by Welford's method.
+      */
+     private   double[][]     squared_differences;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Prepares to accumulate the values of the given number of features.
+      *
+      * @param	number_features The number of features in each window.
+      */
+     public MIDIOverallFeatureValues(int number_features)
+     {
+          number_windows = 0;
+          last_window_values = null;
+          last_values = new double[number_features][];
+          counts = new int[number_features];
+          sums = new double[number_features][];
+          means = new double[number_features][];
+          squared_differences = new double[number_features][];
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Adds the feature values of the next window.
+      *
+      * @param	window_values   The feature values of the window. The first
+      *                         indice identifies the feature and the second
+      *                         the feature value. Entries are null for
+      *                         features that could not be extracted from the
+      *                         window.
+      * @throws	Exception       Throws an informative exception if a feature
+      *                         does not have the same number of values as in
+      *                         earlier windows.
+      */
+     public void add(double[][] window_values)
+     throws Exception
+     {
+          for (int feat = 0; feat < window_values.length; feat++)
+          {
+               double[] values = window_values[feat];
+               if (values == null)
+                    continue;
+
+               if (sums[feat] == null)
+               {
+                    sums[feat] = new double[values.length];
+                    means[feat] = new double[values.length];
+                    squared_differences[feat] = new double[values.length];
+               }
+               else if (sums[feat].length != values.length)
+                    throw new Exception( "Feature " + feat + " has " + values.length + " values in window " +
+                         number_windows + " but " + sums[feat].length + " values in earlier windows." );
+
+               counts[feat]++;
+               for (int val = 0; val < values.length; val++)
+               {
+                    double difference = values[val] - means[feat][val];
+                    sums[feat][val] += values[val];
+                    means[feat][val] += difference / counts[feat];
+                    squared_differences[feat][val] += difference * (values[val] - means[feat][val]);
+               }
+               last_values[feat] = values;
+          }
+          last_window_values = window_values;
+          number_windows++;
+     }
+
+
+     /**
+      * Returns the number of windows whose values have been added.
+      */
+     public int getNumberWindows()
+     {
+          return number_windows;
+     }
+
+
+     /**
+      * Returns the values of the last window added, or null if none have
+      * been. The first indice identifies the feature and the second the
+      * feature value.
+      */
+     public double[][] getLastWindowValues()
+     {
+          return last_window_values;
+     }
+
+
+     /**
+      * Returns the values of the given feature in the last window that it
+      * could be extracted from, or null if it could not be extracted from
+      * any window.
+      *
+      * @param	feat         The indice of the feature.
+      */
+     public double[] getLastValues(int feat)
+     {
+          return last_values[feat];
+     }
+
+
+     /**
+      * Returns the averages of the values of the given feature over the
+      * windows that it could be extracted from, or null if there are none.
+      *
+      * @param	feat         The indice of the feature.
+      */
+     public double[] getAverages(int feat)
+     {
+          if (sums[feat] == null)
+               return null;
+          double[] averages = new double[sums[feat].length];
+          for (int val = 0; val < averages.length; val++)
+               averages[val] = sums[feat][val] / ((double) counts[feat]);
+          return averages;
+     }
+
+
+     /**
+      * Returns the sample standard deviations of the values of the given
+      * feature over the windows that it could be extracted from, or null if
+      * there are none. These are 0 if there is only one such window.
+      *
+      * @param	feat         The indice of the feature.
+      */
+     public double[] getStandardDeviations(int feat)
+     {
+          if (sums[feat] == null)
+               return null;
+          double[] standard_deviations = new double[sums[feat].length];
+          if (counts[feat] > 1)
+               for (int val = 0; val < standard_deviations.length; val++)
+                    standard_deviations[val] = Math.sqrt(squared_differences[feat][val] / ((double) (counts[feat] - 1)));
+          return standard_deviations;
+     }
+}
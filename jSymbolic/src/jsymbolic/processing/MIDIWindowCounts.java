@@ -0,0 +1,713 @@
+/*
+ * MIDIWindowCounts.java
+ * Version 1.2
+ *
+ * Last modified on October 18, 2026.
+ * McGill University
+ */
+
+package jsymbolic.processing;
+
+import java.util.LinkedList;
+
+
+/**
+ * The note counts, melodic intervals and note durations of each of a series
+ * of windows of a recording, as the windows are produced by
+ * MIDIMethods.breakSequenceIntoWindows.
+ *
+ * <p>The counts are found in a single pass through the notes of the whole
+ * recording. The windows are swept in order, adding the notes that enter
+ * each window and removing the notes that leave it, so overlapping windows
+ * do not cause any note to be counted more than once. This gives the number
+ * of Note Ons of each pitch, percussion instrument and patch in each window,
+ * as well as the number of melodic intervals of each size. The interval
+ * between two consecutive notes of the same track and channel enters a
+ * window with its second note and leaves it with its first. Only the
+ * intervals that join the notes of a channel in one track to those of the
+ * same channel in a later track are found separately for each window.
+ *
+ * <p>The duration of each note is found once from the tempo map of the whole
+ * recording. The duration of a note in a window is the same unless the
+ * window cuts the note short or the note begins before the first tempo
+ * change message of the recording, in which case it is found again for the
+ * window.
+ *
+ * <p>Everything found here is the same as what
+ * MIDIIntermediateRepresentations finds from the events of each window, so
+ * the groups of fields that depend only on these can be filled in without
+ * breaking the recording into windows at all.
+ *
+ * @author Cory McKay
+ */
+public class MIDIWindowCounts
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The first tick of each window and the tick after the last tick of
+      * each window, in ticks of the whole recording.
+      */
+     private   long[]         window_start_ticks;
+     private   long[]         window_end_ticks;
+
+     /**
+      * The number of Note Ons of each pitch that are not on channel 10
+      * (percussion) in each window. The first indice identifies the window
+      * and the second the pitch.
+      */
+     private   int[][]        pitch_counts;
+
+     /**
+      * The number of Note Ons of each note (percussion instrument) on channel
+      * 10 in each window. The first indice identifies the window and the
+      * second the note.
+      */
+     private   int[][]        percussion_counts;
+
+     /**
+      * The number of Note Ons played using each General MIDI pitched patch in
+      * each window. Notes on channel 10 are not counted. The first indice
+      * identifies the window and the second the patch.
+      */
+     private   int[][]        patch_counts;
+
+     /**
+      * The number of melodic intervals of each size in semitones in each
+      * window, found in the same way as the melodic_histogram field of
+      * MIDIIntermediateRepresentations. The first indice identifies the
+      * window and the second the size.
+      */
+     private   int[][]        melodic_interval_counts;
+
+     /**
+      * The tick, pitch, channel and patch of every note of the recording.
+      * Notes are ordered by track and then by the order of their Note Ons
+      * within each track. The notes of each track begin at the indice given
+      * by track_first_notes, which has a final entry equal to the number of
+      * notes.
+      */
+     private   long[]         note_ticks;
+     private   int[]          note_pitches;
+     private   int[]          note_channels;
+     private   int[]          note_patches;
+     private   int[]          track_first_notes;
+
+     /**
+      * The previous and next notes of each note in the same track and on the
+      * same channel, or -1 if there is none. Not found for notes on channel
+      * 10.
+      */
+     private   int[]          previous_voice_notes;
+     private   int[]          next_voice_notes;
+
+     /**
+      * The tick of every Note Off (or Note On with a velocity of 0) of the
+      * recording, and the last window containing the Note On that
+      * breakSequenceIntoWindows pairs it with. Note Offs that are not paired
+      * with a Note On are copied to every window containing them, and have a
+      * last window of Integer.MAX_VALUE.
+      */
+     private   long[]         off_ticks;
+     private   int[]          off_last_windows;
+
+     /**
+      * The next Note Off of each Note Off in the same track and with the same
+      * channel and pitch, or -1 if there is none.
+      */
+     private   int[]          next_offs;
+
+     /**
+      * The first Note Off that follows the Note On of each note in the same
+      * track and with the same channel and pitch, or -1 if there is none.
+      * This is the Note Off that ends the note in the whole recording.
+      */
+     private   int[]          first_offs;
+
+     /**
+      * The duration in seconds of each note that is ended by a Note Off in
+      * the whole recording, found from the tempo map of the whole recording.
+      */
+     private   double[]       note_durations;
+
+     /**
+      * The intermediate representations of the whole recording, whose tempo
+      * map is used to find the durations of notes.
+      */
+     private   MIDIIntermediateRepresentations recording;
+
+     /**
+      * The first tick on which a tempo change message occurs in any track,
+      * or Long.MAX_VALUE if there are none. The duration of a tick in a
+      * window only differs from that in the whole recording before this tick.
+      */
+     private   long           first_tempo_tick;
+
+     /**
+      * The duration in seconds of the ticks before first_tempo_tick in each
+      * window that starts before it, which is based on the average tempo of
+      * the window. Not used for other windows.
+      */
+     private   double[]       default_seconds_per_tick;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Finds the notes of the given windows of the given events. Note Ons
+      * with a velocity of 0 are treated as Note Offs.
+      *
+      * @param	events               The MIDI events of the whole recording.
+      * @param	window_start_ticks   The first tick of each window. Must not
+      *                              decrease from one window to the next.
+      * @param	window_end_ticks     The tick after the last tick of each
+      *                              window. Must not decrease from one window
+      *                              to the next.
+      * @throws	Exception            Throws an informative exception if the
+      *                              events cannot be processed.
+      */
+     public MIDIWindowCounts( MIDIEventTable events,
+          long[] window_start_ticks,
+          long[] window_end_ticks )
+          throws Exception
+     {
+          this.window_start_ticks = window_start_ticks;
+          this.window_end_ticks = window_end_ticks;
+          recording = new MIDIIntermediateRepresentations(events, false);
+
+          findNotes(events);
+          countNotes(events);
+          findDefaultTempos(events);
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns the number of windows.
+      */
+     public int getNumberWindows()
+     {
+          return window_start_ticks.length;
+     }
+
+
+     /**
+      * Returns the number of Note Ons of each pitch that are not on channel 10
+      * in the given window. The returned array should not be changed.
+      */
+     public int[] getPitchCounts(int window)
+     {
+          return pitch_counts[window];
+     }
+
+
+     /**
+      * Returns the number of Note Ons of each note on channel 10 in the given
+      * window. The returned array should not be changed.
+      */
+     public int[] getPercussionCounts(int window)
+     {
+          return percussion_counts[window];
+     }
+
+
+     /**
+      * Returns the number of Note Ons played using each General MIDI pitched
+      * patch in the given window, ignoring channel 10. The returned array
+      * should not be changed.
+      */
+     public int[] getPatchCounts(int window)
+     {
+          return patch_counts[window];
+     }
+
+
+     /**
+      * Returns the number of melodic intervals of each size in semitones in
+      * the given window. The returned array should not be changed.
+      */
+     public int[] getMelodicIntervalCounts(int window)
+     {
+          return melodic_interval_counts[window];
+     }
+
+
+     /**
+      * Returns the melodic intervals of each channel in the given window, in
+      * the form of the melody_list field of MIDIIntermediateRepresentations.
+      *
+      * @param	window   The indice of the window.
+      * @return          A list of the intervals (as Integers) of each channel.
+      */
+     public LinkedList[] getMelodyList(int window)
+     {
+          LinkedList[] melody_list = new LinkedList[16];
+          for (int i = 0; i < melody_list.length; i++)
+               melody_list[i] = new LinkedList();
+
+          // Go through the notes of the window track by track, keeping the
+          // previous pitch and tick of each channel
+          int[] previous_pitches = new int[16];
+          long[] last_ticks = new long[16];
+          for (int i = 0; i < previous_pitches.length; i++)
+               previous_pitches[i] = -1;
+          for (int n_track = 0; n_track + 1 < track_first_notes.length; n_track++)
+          {
+               int end_note = findFirstNote(n_track, window_end_ticks[window]);
+               for (int note = findFirstNote(n_track, window_start_ticks[window]); note < end_note; note++)
+               {
+                    int channel = note_channels[note];
+                    if (channel == 10 - 1)
+                         continue;
+                    if (previous_pitches[channel] != -1 && note_ticks[note] != last_ticks[channel])
+                         melody_list[channel].add(new Integer(note_pitches[note] - previous_pitches[channel]));
+                    previous_pitches[channel] = note_pitches[note];
+                    last_ticks[channel] = note_ticks[note];
+               }
+          }
+          return melody_list;
+     }
+
+
+     /**
+      * Returns the durations in seconds of the notes of the given window, in
+      * the form of the note_durations field of
+      * MIDIIntermediateRepresentations.
+      *
+      * <p>In a window, a note ends at the first Note Off with the same
+      * channel and pitch in the same track that the window contains, or on
+      * the last tick of the window if the window contains none. A window
+      * does not contain the Note Offs that breakSequenceIntoWindows pairs
+      * with notes that began before the window.
+      *
+      * @param	window   The indice of the window.
+      * @return          The durations (as Doubles) of the notes of the
+      *                  window, ordered by track and then by the order of
+      *                  their Note Ons within each track.
+      */
+     public LinkedList<Double> getNoteDurations(int window)
+     {
+          long start_tick = window_start_ticks[window];
+          long end_tick = window_end_ticks[window];
+
+          // Whether the ticks of this window last as long as those of the
+          // whole recording
+          boolean recording_tempo = start_tick >= first_tempo_tick ||
+               default_seconds_per_tick[window] == recording.getSecondsPerTick(0);
+
+          LinkedList<Double> durations = new LinkedList<Double>();
+          for (int n_track = 0; n_track + 1 < track_first_notes.length; n_track++)
+          {
+               int end_note = findFirstNote(n_track, end_tick);
+               for (int note = findFirstNote(n_track, start_tick); note < end_note; note++)
+               {
+                    // Find the Note Off that ends the note in this window
+                    long note_end = end_tick - 1;
+                    for (int off = first_offs[note]; off != -1 && off_ticks[off] < end_tick; off = next_offs[off])
+                         if (off_last_windows[off] >= window)
+                         {
+                              note_end = off_ticks[off];
+                              break;
+                         }
+
+                    // Use the duration in the whole recording if it is the same
+                    if ( first_offs[note] != -1 && note_end == off_ticks[ first_offs[note] ] &&
+                         (recording_tempo || note_ticks[note] >= first_tempo_tick) )
+                         durations.add(new Double(note_durations[note]));
+                    else
+                         durations.add(new Double(addSecondsOfTicks(note_ticks[note], note_end, window)));
+               }
+          }
+          return durations;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Fills the fields describing the notes and Note Offs of the recording,
+      * going through each track once. Notes are paired with Note Offs in the
+      * same way as breakSequenceIntoWindows pairs them, and their patches
+      * are found in the same way as MIDIIntermediateRepresentations finds
+      * them.
+      */
+     private void findNotes(MIDIEventTable events)
+     {
+          // Count the notes and Note Offs
+          int number_notes = 0;
+          int number_offs = 0;
+          for (int n_event = 0; n_event < events.number_events; n_event++)
+               if (events.isShortMessage(n_event))
+               {
+                    int command = events.getCommand(n_event);
+                    if (command == 0x90 && events.getData2(n_event) != 0)
+                         number_notes++;
+                    else if (command == 0x80 || command == 0x90)
+                         number_offs++;
+               }
+          note_ticks = new long[number_notes];
+          note_pitches = new int[number_notes];
+          note_channels = new int[number_notes];
+          note_patches = new int[number_notes];
+          previous_voice_notes = new int[number_notes];
+          next_voice_notes = new int[number_notes];
+          first_offs = new int[number_notes];
+          note_durations = new double[number_notes];
+          off_ticks = new long[number_offs];
+          off_last_windows = new int[number_offs];
+          next_offs = new int[number_offs];
+          track_first_notes = new int[events.number_tracks + 1];
+
+          int note = 0;
+          int off = 0;
+          int[][] waiting_notes = new int[16 * 128][];
+          int[] number_waiting = new int[16 * 128];
+          int[] last_offs = new int[16 * 128];
+          int[] last_voice_notes = new int[16];
+          LinkedList<Integer>[] sounding_notes = new LinkedList[16 * 128];
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
+          {
+               // The patch of each channel, the last note of each channel and
+               // the last Note Off of each channel and pitch in this track,
+               // the notes waiting for their first Note Off and the last
+               // windows of the notes that breakSequenceIntoWindows is waiting
+               // to pair with Note Offs
+               int[] current_patch_numbers = new int[16];
+               java.util.Arrays.fill(last_voice_notes, -1);
+               java.util.Arrays.fill(last_offs, -1);
+               java.util.Arrays.fill(number_waiting, 0);
+               for (int key = 0; key < sounding_notes.length; key++)
+                    sounding_notes[key] = null;
+
+               track_first_notes[n_track] = note;
+               for (int n_event = events.track_starts[n_track]; n_event < events.track_starts[n_track + 1]; n_event++)
+               {
+                    if (!events.isShortMessage(n_event))
+                         continue;
+                    int channel = events.getChannel(n_event);
+                    int key = channel * 128 + events.getData1(n_event);
+                    int command = events.getCommand(n_event);
+                    long tick = events.ticks[n_event];
+                    if (command == 0xc0 && channel != 10 - 1)
+                         current_patch_numbers[channel] = events.getData1(n_event);
+                    else if (command == 0x90 && events.getData2(n_event) != 0)
+                    {
+                         note_ticks[note] = tick;
+                         note_pitches[note] = events.getData1(n_event);
+                         note_channels[note] = channel;
+                         note_patches[note] = current_patch_numbers[channel];
+                         first_offs[note] = -1;
+                         previous_voice_notes[note] = -1;
+                         next_voice_notes[note] = -1;
+                         if (channel != 10 - 1)
+                         {
+                              previous_voice_notes[note] = last_voice_notes[channel];
+                              if (last_voice_notes[channel] != -1)
+                                   next_voice_notes[ last_voice_notes[channel] ] = note;
+                              last_voice_notes[channel] = note;
+                         }
+
+                         // Wait for the first Note Off
+                         if (waiting_notes[key] == null)
+                              waiting_notes[key] = new int[4];
+                         else if (number_waiting[key] == waiting_notes[key].length)
+                         {
+                              int[] larger = new int[waiting_notes[key].length * 2];
+                              System.arraycopy(waiting_notes[key], 0, larger, 0, number_waiting[key]);
+                              waiting_notes[key] = larger;
+                         }
+                         waiting_notes[key][number_waiting[key]++] = note;
+
+                         // Wait to be paired with a Note Off if any window
+                         // contains the Note On
+                         int last_window = findLastWindow(tick);
+                         if (last_window != -1 && window_end_ticks[last_window] > tick)
+                         {
+                              if (sounding_notes[key] == null)
+                                   sounding_notes[key] = new LinkedList<Integer>();
+                              sounding_notes[key].add(new Integer(last_window));
+                         }
+                         note++;
+                    }
+                    else if (command == 0x80 || command == 0x90)
+                    {
+                         off_ticks[off] = tick;
+                         off_last_windows[off] = Integer.MAX_VALUE;
+                         if (sounding_notes[key] != null && !sounding_notes[key].isEmpty())
+                              off_last_windows[off] = sounding_notes[key].removeFirst().intValue();
+                         next_offs[off] = -1;
+                         if (last_offs[key] != -1)
+                              next_offs[ last_offs[key] ] = off;
+                         last_offs[key] = off;
+
+                         for (int i = 0; i < number_waiting[key]; i++)
+                              first_offs[ waiting_notes[key][i] ] = off;
+                         number_waiting[key] = 0;
+                         off++;
+                    }
+               }
+          }
+          track_first_notes[events.number_tracks] = note;
+
+          // Find the duration of each note that is ended in the whole
+          // recording
+          for (note = 0; note < number_notes; note++)
+               if (first_offs[note] != -1)
+                    note_durations[note] = recording.addSecondsOfTicks(0.0, note_ticks[note], off_ticks[ first_offs[note] ]);
+     }
+
+
+     /**
+      * Fills the pitch_counts, percussion_counts, patch_counts and
+      * melodic_interval_counts fields by sweeping through the windows in
+      * order. Notes enter a window when they begin before its end and leave
+      * it when they begin before its start.
+      */
+     private void countNotes(MIDIEventTable events)
+     {
+          // Find the notes in time order, and the position of each note in
+          // that order
+          int number_notes = note_ticks.length;
+          int[] event_notes = new int[events.number_events];
+          java.util.Arrays.fill(event_notes, -1);
+          int note = 0;
+          for (int n_event = 0; n_event < events.number_events; n_event++)
+               if ( events.isShortMessage(n_event) && events.getCommand(n_event) == 0x90 &&
+                    events.getData2(n_event) != 0 )
+                    event_notes[n_event] = note++;
+          int[] time_order = events.getTimeOrder();
+          int[] ordered_notes = new int[number_notes];
+          int[] positions = new int[number_notes];
+          int number_ordered = 0;
+          for (int i = 0; i < time_order.length; i++)
+               if (event_notes[ time_order[i] ] != -1)
+               {
+                    positions[ event_notes[time_order[i]] ] = number_ordered;
+                    ordered_notes[number_ordered++] = event_notes[ time_order[i] ];
+               }
+
+          // Find the notes of each track and channel other than channel 10,
+          // ordered by track and then by channel. Each of these voices has a
+          // range of notes in each window.
+          int[] voice_sizes = new int[events.number_tracks * 16];
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
+               for (note = track_first_notes[n_track]; note < track_first_notes[n_track + 1]; note++)
+                    if (note_channels[note] != 10 - 1)
+                         voice_sizes[n_track * 16 + note_channels[note]]++;
+          int number_voices = 0;
+          int[] voice_indices = new int[voice_sizes.length];
+          for (int i = 0; i < voice_sizes.length; i++)
+               if (voice_sizes[i] > 0)
+                    voice_indices[i] = number_voices++;
+          int[][] voice_notes = new int[number_voices][];
+          int[] voice_channels = new int[number_voices];
+          int[] voice_end_notes = new int[number_voices];
+          for (int i = 0; i < voice_sizes.length; i++)
+               if (voice_sizes[i] > 0)
+               {
+                    voice_notes[ voice_indices[i] ] = new int[ voice_sizes[i] ];
+                    voice_channels[ voice_indices[i] ] = i % 16;
+               }
+          for (int n_track = 0; n_track < events.number_tracks; n_track++)
+               for (note = track_first_notes[n_track]; note < track_first_notes[n_track + 1]; note++)
+                    if (note_channels[note] != 10 - 1)
+                    {
+                         int voice = voice_indices[ n_track * 16 + note_channels[note] ];
+                         voice_notes[voice][ voice_end_notes[voice]++ ] = note;
+                    }
+          java.util.Arrays.fill(voice_end_notes, 0);
+          int[] voice_first_notes = new int[number_voices];
+
+          // Slide through the windows
+          int number_windows = window_start_ticks.length;
+          pitch_counts = new int[number_windows][128];
+          percussion_counts = new int[number_windows][128];
+          patch_counts = new int[number_windows][128];
+          melodic_interval_counts = new int[number_windows][128];
+          int[] pitches = new int[128];
+          int[] percussion = new int[128];
+          int[] patches = new int[128];
+          int[] intervals = new int[128];
+          int next_entering = 0;
+          int next_leaving = 0;
+          for (int win = 0; win < number_windows; win++)
+          {
+               // Add the notes that begin before the end of the window, and the
+               // intervals from the previous notes of their voices unless those
+               // have already left
+               while (next_entering < number_notes && note_ticks[ ordered_notes[next_entering] ] < window_end_ticks[win])
+               {
+                    note = ordered_notes[next_entering];
+                    if (note_channels[note] == 10 - 1)
+                         percussion[ note_pitches[note] ]++;
+                    else
+                    {
+                         pitches[ note_pitches[note] ]++;
+                         patches[ note_patches[note] ]++;
+                         int previous = previous_voice_notes[note];
+                         if ( previous != -1 && positions[previous] >= next_leaving &&
+                              note_ticks[previous] != note_ticks[note] )
+                              intervals[ Math.abs(note_pitches[note] - note_pitches[previous]) ]++;
+                    }
+                    next_entering++;
+               }
+
+               // Remove the notes that begin before the start of the window,
+               // and the intervals to the next notes of their voices if those
+               // have entered
+               while (next_leaving < next_entering && note_ticks[ ordered_notes[next_leaving] ] < window_start_ticks[win])
+               {
+                    note = ordered_notes[next_leaving];
+                    if (note_channels[note] == 10 - 1)
+                         percussion[ note_pitches[note] ]--;
+                    else
+                    {
+                         pitches[ note_pitches[note] ]--;
+                         patches[ note_patches[note] ]--;
+                         int next = next_voice_notes[note];
+                         if ( next != -1 && positions[next] < next_entering &&
+                              note_ticks[next] != note_ticks[note] )
+                              intervals[ Math.abs(note_pitches[next] - note_pitches[note]) ]--;
+                    }
+                    next_leaving++;
+               }
+
+               System.arraycopy(pitches, 0, pitch_counts[win], 0, 128);
+               System.arraycopy(percussion, 0, percussion_counts[win], 0, 128);
+               System.arraycopy(patches, 0, patch_counts[win], 0, 128);
+               System.arraycopy(intervals, 0, melodic_interval_counts[win], 0, 128);
+
+               // Add the intervals between the last note of each channel in one
+               // track and the first note of the same channel in the next track
+               // with notes on that channel in the window
+               int[] previous_pitches = new int[16];
+               long[] last_ticks = new long[16];
+               java.util.Arrays.fill(previous_pitches, -1);
+               for (int voice = 0; voice < number_voices; voice++)
+               {
+                    int[] notes = voice_notes[voice];
+                    while (voice_end_notes[voice] < notes.length && note_ticks[ notes[voice_end_notes[voice]] ] < window_end_ticks[win])
+                         voice_end_notes[voice]++;
+                    while (voice_first_notes[voice] < voice_end_notes[voice] && note_ticks[ notes[voice_first_notes[voice]] ] < window_start_ticks[win])
+                         voice_first_notes[voice]++;
+                    if (voice_first_notes[voice] == voice_end_notes[voice])
+                         continue;
+
+                    int channel = voice_channels[voice];
+                    int first = notes[ voice_first_notes[voice] ];
+                    if (previous_pitches[channel] != -1 && note_ticks[first] != last_ticks[channel])
+                         melodic_interval_counts[win][ Math.abs(note_pitches[first] - previous_pitches[channel]) ]++;
+                    int last = notes[ voice_end_notes[voice] - 1 ];
+                    previous_pitches[channel] = note_pitches[last];
+                    last_ticks[channel] = note_ticks[last];
+               }
+          }
+     }
+
+
+     /**
+      * Fills the first_tempo_tick and default_seconds_per_tick fields. The
+      * duration of a tick before any tempo change message is based on the
+      * average tempo of the window, which is found in the same way as
+      * MIDIEventTable finds the length of a window in microseconds from the
+      * tempo change messages of its first track.
+      */
+     private void findDefaultTempos(MIDIEventTable events)
+     {
+          first_tempo_tick = Long.MAX_VALUE;
+          for (int n_event = 0; n_event < events.number_events; n_event++)
+               if (events.isMetaMessage(n_event) && events.getMetaType(n_event) == 0x51)
+                    first_tempo_tick = Math.min(first_tempo_tick, events.ticks[n_event]);
+
+          // Windows that start before the first tempo change message carry no
+          // tempo from before their start, so their first track only holds
+          // its own tempo change messages
+          default_seconds_per_tick = new double[window_start_ticks.length];
+          for (int win = 0; win < window_start_ticks.length && window_start_ticks[win] < first_tempo_tick; win++)
+          {
+               long microseconds = 0;
+               long change_tick = 0;
+               int tempo = 500000;
+               if (events.number_tracks > 0)
+                    for (int n_event = events.track_starts[0]; n_event < events.track_starts[1]; n_event++)
+                    {
+                         long tick = events.ticks[n_event] - window_start_ticks[win];
+                         if ( tick >= 0 && events.ticks[n_event] < window_end_ticks[win] &&
+                              events.isMetaMessage(n_event) && events.getMetaType(n_event) == 0x51 &&
+                              events.getData(n_event).length == 3 )
+                         {
+                              byte[] data = events.getData(n_event);
+                              microseconds += (long) (((double) (tick - change_tick)) * tempo / events.resolution);
+                              change_tick = tick;
+                              tempo = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+                         }
+                    }
+               long window_length = window_end_ticks[win] - window_start_ticks[win];
+               microseconds += (long) (((double) (window_length - change_tick)) * tempo / events.resolution);
+               double mean_ticks_per_sec = ((double) window_length) / ((double) microseconds / 1000000.0);
+               default_seconds_per_tick[win] = 1.0 / mean_ticks_per_sec;
+          }
+     }
+
+
+     /**
+      * Adds the durations in seconds of the given range of ticks of the
+      * given window one tick at a time, in the same way as
+      * MIDIIntermediateRepresentations.addSecondsOfTicks does for the events
+      * of the window.
+      */
+     private double addSecondsOfTicks(long first_tick, long end_tick, int window)
+     {
+          double seconds = 0.0;
+          long tick = first_tick;
+          for (; tick < end_tick && tick < first_tempo_tick; tick++)
+               seconds += default_seconds_per_tick[window];
+          return recording.addSecondsOfTicks(seconds, tick, end_tick);
+     }
+
+
+     /**
+      * Returns the indice of the last window that starts on or before the
+      * given tick, or -1 if there is none.
+      */
+     private int findLastWindow(long tick)
+     {
+          int low = -1;
+          int high = window_start_ticks.length - 1;
+          while (low < high)
+          {
+               int middle = (low + high + 1) >>> 1;
+               if (window_start_ticks[middle] <= tick)
+                    low = middle;
+               else
+                    high = middle - 1;
+          }
+          return low;
+     }
+
+
+     /**
+      * Returns the indice of the first note of the given track that begins on
+      * or after the given tick, or the indice after the last note of the
+      * track if there is none.
+      */
+     private int findFirstNote(int track, long tick)
+     {
+          int low = track_first_notes[track];
+          int high = track_first_notes[track + 1];
+          while (low < high)
+          {
+               int middle = (low + high) >>> 1;
+               if (note_ticks[middle] < tick)
+                    low = middle + 1;
+               else
+                    high = middle;
+          }
+          return low;
+     }
+}